@@ -23,6 +23,53 @@ SET time_zone = "+00:00";
 
 -- --------------------------------------------------------
 
+--
+-- 表的结构 `cluster_message`
+--
+
+CREATE TABLE `cluster_message` (
+  `id` bigint(20) NOT NULL,
+  `target_instance` varchar(100) NOT NULL,
+  `source_instance` varchar(100) NOT NULL,
+  `kind` tinyint(4) NOT NULL,
+  `correlation_id` bigint(20) NOT NULL,
+  `node_id` int(10) NOT NULL,
+  `type` varchar(100) DEFAULT NULL,
+  `priority` tinyint(4) DEFAULT NULL,
+  `payload` mediumtext,
+  `created_time` bigint(20) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
+--
+-- 表的结构 `cluster_session`
+--
+
+CREATE TABLE `cluster_session` (
+  `node_id` int(10) NOT NULL,
+  `instance_id` varchar(100) NOT NULL,
+  `connected_time` bigint(20) NOT NULL,
+  `lease_time` bigint(20) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
+--
+-- 表的结构 `flow_series`
+--
+
+CREATE TABLE `flow_series` (
+  `dimension` tinyint(4) NOT NULL,
+  `target_id` int(10) NOT NULL,
+  `resolution` tinyint(4) NOT NULL,
+  `bucket_time` bigint(20) NOT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
 --
 -- 表的结构 `forward`
 --
@@ -181,6 +228,26 @@ CREATE TABLE `user_node` (
 
 -- --------------------------------------------------------
 
+--
+-- 表的结构 `user_tunnel`
+--
+
+CREATE TABLE `user_tunnel` (
+  `id` int(10) NOT NULL,
+  `user_id` int(10) NOT NULL,
+  `tunnel_id` int(10) NOT NULL,
+  `flow` bigint(20) DEFAULT NULL,
+  `in_flow` bigint(20) NOT NULL DEFAULT '0',
+  `out_flow` bigint(20) NOT NULL DEFAULT '0',
+  `flow_reset_time` bigint(20) DEFAULT NULL,
+  `exp_time` bigint(20) DEFAULT NULL,
+  `speed_id` int(10) DEFAULT NULL,
+  `num` int(10) DEFAULT NULL,
+  `status` int(10) NOT NULL DEFAULT '1'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- --------------------------------------------------------
+
 --
 -- 表的结构 `vite_config`
 --
@@ -203,6 +270,26 @@ INSERT INTO `vite_config` (`id`, `name`, `value`, `time`) VALUES
 -- 转储表的索引
 --
 
+--
+-- 表的索引 `cluster_message`
+--
+ALTER TABLE `cluster_message`
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_target_instance` (`target_instance`,`id`);
+
+--
+-- 表的索引 `cluster_session`
+--
+ALTER TABLE `cluster_session`
+  ADD PRIMARY KEY (`node_id`);
+
+--
+-- 表的索引 `flow_series`
+--
+ALTER TABLE `flow_series`
+  ADD PRIMARY KEY (`dimension`,`target_id`,`resolution`,`bucket_time`),
+  ADD KEY `idx_dimension_resolution_bucket` (`dimension`,`resolution`,`bucket_time`);
+
 --
 -- 表的索引 `forward`
 --
@@ -225,7 +312,8 @@ ALTER TABLE `speed_limit`
 -- 表的索引 `statistics_flow`
 --
 ALTER TABLE `statistics_flow`
-  ADD PRIMARY KEY (`id`);
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_user_id` (`user_id`,`id`);
 
 --
 -- 表的索引 `tunnel`
@@ -246,6 +334,13 @@ ALTER TABLE `user_node`
   ADD PRIMARY KEY (`id`),
   ADD UNIQUE KEY `uk_user_node` (`user_id`,`node_id`);
 
+--
+-- 表的索引 `user_tunnel`
+--
+ALTER TABLE `user_tunnel`
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `uk_user_tunnel` (`user_id`,`tunnel_id`);
+
 --
 -- 表的索引 `vite_config`
 --
@@ -257,6 +352,12 @@ ALTER TABLE `vite_config`
 -- 在导出的表使用AUTO_INCREMENT
 --
 
+--
+-- 使用表AUTO_INCREMENT `cluster_message`
+--
+ALTER TABLE `cluster_message`
+  MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=1;
+
 --
 -- 使用表AUTO_INCREMENT `forward`
 --
@@ -299,6 +400,12 @@ ALTER TABLE `user`
 ALTER TABLE `user_node`
   MODIFY `id` int(10) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=1;
 
+--
+-- 使用表AUTO_INCREMENT `user_tunnel`
+--
+ALTER TABLE `user_tunnel`
+  MODIFY `id` int(10) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=1;
+
 --
 -- 使用表AUTO_INCREMENT `vite_config`
 --
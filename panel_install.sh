@@ -904,6 +904,78 @@ UPDATE \`statistics_flow\`
 SET \`created_time\` = UNIX_TIMESTAMP() * 1000
 WHERE \`created_time\` = 0 OR \`created_time\` IS NULL;
 
+-- statistics_flow 表：添加 user_id 索引（如果不存在）
+SET @sql = (
+  SELECT IF(
+    NOT EXISTS (
+      SELECT 1
+      FROM information_schema.STATISTICS
+      WHERE table_schema = DATABASE()
+        AND table_name = 'statistics_flow'
+        AND index_name = 'idx_user_id'
+    ),
+    'ALTER TABLE \`statistics_flow\` ADD INDEX \`idx_user_id\` (\`user_id\`, \`id\`);',
+    'SELECT "Index \`idx_user_id\` already exists in \`statistics_flow\`";'
+  )
+);
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 创建 user_tunnel 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`user_tunnel\` (
+  \`id\` int(10) NOT NULL AUTO_INCREMENT,
+  \`user_id\` int(10) NOT NULL,
+  \`tunnel_id\` int(10) NOT NULL,
+  \`flow\` bigint(20) DEFAULT NULL,
+  \`in_flow\` bigint(20) NOT NULL DEFAULT '0',
+  \`out_flow\` bigint(20) NOT NULL DEFAULT '0',
+  \`flow_reset_time\` bigint(20) DEFAULT NULL,
+  \`exp_time\` bigint(20) DEFAULT NULL,
+  \`speed_id\` int(10) DEFAULT NULL,
+  \`num\` int(10) DEFAULT NULL,
+  \`status\` int(10) NOT NULL DEFAULT '1',
+  PRIMARY KEY (\`id\`),
+  UNIQUE KEY \`uk_user_tunnel\` (\`user_id\`, \`tunnel_id\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 创建 flow_series 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`flow_series\` (
+  \`dimension\` tinyint(4) NOT NULL,
+  \`target_id\` int(10) NOT NULL,
+  \`resolution\` tinyint(4) NOT NULL,
+  \`bucket_time\` bigint(20) NOT NULL,
+  \`in_flow\` bigint(20) NOT NULL DEFAULT '0',
+  \`out_flow\` bigint(20) NOT NULL DEFAULT '0',
+  PRIMARY KEY (\`dimension\`, \`target_id\`, \`resolution\`, \`bucket_time\`),
+  KEY \`idx_dimension_resolution_bucket\` (\`dimension\`, \`resolution\`, \`bucket_time\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 创建 cluster_session 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`cluster_session\` (
+  \`node_id\` int(10) NOT NULL,
+  \`instance_id\` varchar(100) NOT NULL,
+  \`connected_time\` bigint(20) NOT NULL,
+  \`lease_time\` bigint(20) NOT NULL,
+  PRIMARY KEY (\`node_id\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 创建 cluster_message 表（如果不存在）
+CREATE TABLE IF NOT EXISTS \`cluster_message\` (
+  \`id\` bigint(20) NOT NULL AUTO_INCREMENT,
+  \`target_instance\` varchar(100) NOT NULL,
+  \`source_instance\` varchar(100) NOT NULL,
+  \`kind\` tinyint(4) NOT NULL,
+  \`correlation_id\` bigint(20) NOT NULL,
+  \`node_id\` int(10) NOT NULL,
+  \`type\` varchar(100) DEFAULT NULL,
+  \`priority\` tinyint(4) DEFAULT NULL,
+  \`payload\` mediumtext,
+  \`created_time\` bigint(20) NOT NULL,
+  PRIMARY KEY (\`id\`),
+  KEY \`idx_target_instance\` (\`target_instance\`, \`id\`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 EOF
 
   # 检查数据库容器
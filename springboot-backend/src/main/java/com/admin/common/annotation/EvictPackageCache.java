@@ -0,0 +1,13 @@
+package com.admin.common.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 操作成功（R.code == 0）后清空用户套餐信息缓存
+ * 用于修改用户、权限、转发、隧道、节点、限速等会影响套餐页内容的接口
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface EvictPackageCache {
+}
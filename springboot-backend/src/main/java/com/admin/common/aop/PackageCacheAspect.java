@@ -0,0 +1,29 @@
+package com.admin.common.aop;
+
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.lang.R;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 套餐信息缓存失效切面
+ * 处理 @EvictPackageCache 注解，接口返回成功后清空所有用户的套餐信息缓存
+ */
+@Aspect
+@Component
+public class PackageCacheAspect {
+
+    @Resource
+    private UserPackageCache userPackageCache;
+
+    @AfterReturning(value = "@annotation(com.admin.common.annotation.EvictPackageCache)", returning = "returnValue")
+    public void evict(Object returnValue) {
+        if (returnValue instanceof R && ((R) returnValue).getCode() != 0) {
+            return;
+        }
+        userPackageCache.invalidateAll();
+    }
+}
@@ -0,0 +1,166 @@
+package com.admin.common.cache;
+
+import com.admin.common.dto.UserPackageDto;
+import com.admin.common.utils.Md5Util;
+import com.alibaba.fastjson.JSON;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户套餐信息缓存
+ * <p>
+ * 套餐页被 Web、Android、iOS 客户端持续轮询，每次构建需要查询用户、节点权限、转发和 24 小时统计，
+ * 这里按用户缓存构建结果及其 ETag，客户端携带 If-None-Match 时内容未变化直接返回 304：
+ * 1. 流量写库后失效对应用户，整点快照后全部失效（图表进入新的小时）
+ * 2. 用户、权限、转发、隧道、节点、限速等管理操作成功后全部失效（@EvictPackageCache）
+ * 3. 每个条目最多存活 ttl-ms，覆盖配额暂停、定时重置等未显式失效的修改
+ * 4. 构建期间发生过失效时不写入缓存，避免把旧数据放回去
+ */
+@Component
+public class UserPackageCache {
+
+    @Value("${flux.cache.package-ttl-ms:60000}")
+    private long ttlMs;
+
+    @Value("${flux.cache.package-max-entries:10000}")
+    private int maxEntries;
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    // 每次失效递增，构建前后不一致说明构建期间数据可能已变化
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 获取未过期的缓存条目
+     *
+     * @return 条目不存在或已过期时返回null
+     */
+    public Entry get(Long userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null || System.currentTimeMillis() - entry.createdTime >= ttlMs) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * 当前失效代数，构建套餐信息之前获取，写入时传回
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 计算 ETag 并写入缓存，构建期间发生过失效时只返回条目不写入
+     *
+     * @param userId     用户ID
+     * @param packageDto 套餐信息
+     * @param generation 构建前获取的失效代数
+     * @return 缓存条目
+     */
+    public Entry put(Long userId, UserPackageDto packageDto, long generation) {
+        Entry entry = new Entry(packageDto, "\"" + Md5Util.md5(JSON.toJSONString(packageDto)) + "\"",
+                System.currentTimeMillis());
+        if (generation != this.generation.get()) {
+            return entry;
+        }
+        if (entries.size() >= maxEntries) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(e -> now - e.createdTime >= ttlMs);
+            if (entries.size() >= maxEntries) {
+                return entry;
+            }
+        }
+        entries.put(userId, entry);
+        return entry;
+    }
+
+    /**
+     * 记录一次 304 响应
+     */
+    public void recordNotModified() {
+        notModified.increment();
+    }
+
+    public void invalidate(Long userId) {
+        generation.incrementAndGet();
+        if (entries.remove(userId) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * 获取缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("notModified", notModified.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    /**
+     * 缓存条目
+     */
+    public static final class Entry {
+        private final UserPackageDto packageDto;
+        private final String etag;
+        private final long createdTime;
+
+        Entry(UserPackageDto packageDto, String etag, long createdTime) {
+            this.packageDto = packageDto;
+            this.etag = etag;
+            this.createdTime = createdTime;
+        }
+
+        public UserPackageDto getPackageDto() {
+            return packageDto;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * If-None-Match 中是否包含当前 ETag（支持逗号分隔的多个值、弱校验前缀和 *）
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = candidate.trim();
+                if (value.startsWith("W/")) {
+                    value = value.substring(2);
+                }
+                if ("*".equals(value) || etag.equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
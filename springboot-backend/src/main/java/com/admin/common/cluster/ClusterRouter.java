@@ -0,0 +1,379 @@
+package com.admin.common.cluster;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.utils.NodeCommandScheduler;
+import com.admin.common.utils.WebSocketServer;
+import com.admin.entity.ClusterMessage;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群模式下的节点命令路由
+ * <p>
+ * 节点的 WebSocket 连接只在一个后端实例上，flux.cluster.enabled=true 时多个实例可以部署在负载均衡之后：
+ * 1. 每个实例通过 ClusterTransport 登记自己持有的节点会话，每 lease-ms/3 续约一次，连接建立或断开时立即更新
+ * 2. 发往本实例没有连接的节点的命令（WebSocketServer.sendCommand）交给这里，找到持有该节点的实例后转发过去，
+ *    对方在本地执行后把 GostDto 发回，调用方得到的结果与本地执行相同
+ * 3. 所有传输操作都在 cluster-router 线程上完成，调用方只入队，不会阻塞在数据库上
+ * 4. 转发超过 forward-timeout-ms 没有响应时以"等待响应超时"完成；对方收到已超时的请求直接丢弃
+ * <p>
+ * 限制：流量上报经负载均衡分散到各实例，每个实例的配额引擎（UserQuotaEngine）只扣减自己接收的流量，
+ * 其他实例的流量要等对方检查点写库、本实例下一次检查点刷新已用流量后才计入。超额判断因此最多滞后约两个
+ * 检查点间隔（flux.flow.flush-interval-ms），期间超额用户在其他实例上的流量仍会继续通过。
+ * <p>
+ * 本地测试：同一数据库启动两个实例，server.port 分别为 6365、6366，都设置 flux.cluster.enabled=true，
+ * 实例ID默认取主机名加端口。节点连接其中一个实例后，从另一个实例操作该节点的转发即可。
+ */
+@Slf4j
+@Component
+public class ClusterRouter {
+
+    private static final int RECEIVE_BATCH = 200;
+
+    // 已处理消息在传输中最多保留的时间（正常情况下读取后立即删除，这里只清理接收方已下线的消息）
+    private static final long MESSAGE_RETENTION_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final ScheduledExecutorService ROUTER_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-router");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${flux.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${flux.cluster.instance-id:}")
+    private String configuredInstanceId;
+
+    @Value("${server.port:6365}")
+    private int serverPort;
+
+    @Value("${flux.cluster.poll-ms:100}")
+    private long pollMs;
+
+    @Value("${flux.cluster.lease-ms:15000}")
+    private long leaseMs;
+
+    @Value("${flux.cluster.forward-timeout-ms:15000}")
+    private long forwardTimeoutMs;
+
+    @Resource
+    private ClusterTransport clusterTransport;
+
+    private String instanceId;
+
+    // 本实例持有的节点会话：节点ID → 连接建立时间
+    private final ConcurrentHashMap<Long, Long> ownedNodes = new ConcurrentHashMap<>();
+    private volatile boolean ownershipChanged = true;
+    private long lastAdvertise;
+
+    private final ConcurrentLinkedQueue<Forward> outgoing = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ClusterMessage> replies = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Long, Forward> waiting = new ConcurrentHashMap<>();
+    // 起始值取自启动时间，重启后上一次运行的迟到响应不会对上新请求
+    private final AtomicLong correlationIds = new AtomicLong(System.currentTimeMillis() << 10);
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardedOk = new LongAdder();
+    private final LongAdder ownerMissing = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder lateResponses = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder expiredRequests = new LongAdder();
+    private final LongAdder transportErrors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        instanceId = StringUtils.isNotBlank(configuredInstanceId) ? configuredInstanceId : defaultInstanceId();
+        WebSocketServer.setClusterRouter(this);
+        ROUTER_EXECUTOR.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (Exception e) {
+                transportErrors.increment();
+                log.error("集群消息处理失败: {}", e.getMessage());
+            }
+        }, 0, pollMs, TimeUnit.MILLISECONDS);
+        log.info("集群模式已启用，实例ID: {}", instanceId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        WebSocketServer.setClusterRouter(null);
+        ROUTER_EXECUTOR.shutdownNow();
+        try {
+            // 释放本实例的登记，其他实例不必等租约过期
+            clusterTransport.advertise(instanceId, Collections.emptyMap(), System.currentTimeMillis());
+        } catch (Exception e) {
+            log.info("释放节点会话登记失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把命令转发到持有节点连接的实例
+     *
+     * @return 对方执行的结果，不会异常完成
+     */
+    public CompletableFuture<GostDto> forward(Long nodeId, Object msg, String type, NodeCommandScheduler.Priority priority) {
+        forwarded.increment();
+        Forward request = new Forward(correlationIds.incrementAndGet(), nodeId, type, JSON.toJSONString(msg), priority,
+                System.currentTimeMillis() + forwardTimeoutMs);
+        outgoing.add(request);
+        return request.future;
+    }
+
+    /**
+     * 节点连接建立在本实例上
+     */
+    public void nodeConnected(Long nodeId) {
+        ownedNodes.put(nodeId, System.currentTimeMillis());
+        ownershipChanged = true;
+    }
+
+    /**
+     * 节点连接从本实例断开
+     */
+    public void nodeDisconnected(Long nodeId) {
+        if (ownedNodes.remove(nodeId) != null) {
+            ownershipChanged = true;
+        }
+    }
+
+    /**
+     * 获取路由统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("instanceId", instanceId);
+        stats.put("transport", clusterTransport.getClass().getSimpleName());
+        stats.put("ownedNodes", new ArrayList<>(ownedNodes.keySet()));
+        stats.put("waiting", waiting.size());
+        stats.put("forwarded", forwarded.sum());
+        stats.put("forwardedOk", forwardedOk.sum());
+        stats.put("ownerMissing", ownerMissing.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("lateResponses", lateResponses.sum());
+        stats.put("executed", executed.sum());
+        stats.put("expiredRequests", expiredRequests.sum());
+        stats.put("transportErrors", transportErrors.sum());
+        return stats;
+    }
+
+    void poll() {
+        long now = System.currentTimeMillis();
+        if (ownershipChanged || now - lastAdvertise >= leaseMs / 3) {
+            ownershipChanged = false;
+            lastAdvertise = now;
+            clusterTransport.advertise(instanceId, new HashMap<>(ownedNodes), now);
+            clusterTransport.purge(now - MESSAGE_RETENTION_MS, now - leaseMs);
+        }
+        sendRequests(now);
+        sendReplies();
+        for (ClusterMessage message : clusterTransport.receive(instanceId, RECEIVE_BATCH)) {
+            if (message.getKind() != null && message.getKind() == ClusterMessage.KIND_REQUEST) {
+                handleRequest(message, now);
+            } else {
+                handleResponse(message);
+            }
+        }
+        expire(now);
+    }
+
+    /**
+     * 查找节点所在的实例并发出排队的转发请求
+     */
+    private void sendRequests(long now) {
+        List<Forward> batch = new ArrayList<>();
+        for (Forward request; (request = outgoing.poll()) != null; ) {
+            batch.add(request);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<Long> nodeIds = new HashSet<>();
+        for (Forward request : batch) {
+            nodeIds.add(request.nodeId);
+        }
+        Map<Long, String> owners;
+        try {
+            owners = clusterTransport.findOwners(nodeIds, now - leaseMs);
+        } catch (Exception e) {
+            transportErrors.increment();
+            for (Forward request : batch) {
+                request.future.complete(failure("转发命令失败: " + e.getMessage()));
+            }
+            return;
+        }
+
+        List<ClusterMessage> messages = new ArrayList<>();
+        List<Forward> sent = new ArrayList<>();
+        for (Forward request : batch) {
+            String owner = owners.get(request.nodeId);
+            if (owner == null) {
+                ownerMissing.increment();
+                request.future.complete(failure("节点不在线"));
+            } else if (owner.equals(instanceId)) {
+                // 排队期间节点连接到了本实例
+                WebSocketServer.executeForwarded(request.nodeId, JSON.parse(request.payload), request.type, request.priority)
+                        .thenAccept(request.future::complete);
+            } else {
+                ClusterMessage message = newMessage(owner, ClusterMessage.KIND_REQUEST, request.correlationId,
+                        request.nodeId, request.type, request.payload);
+                message.setPriority(request.priority.ordinal());
+                messages.add(message);
+                sent.add(request);
+                waiting.put(request.correlationId, request);
+            }
+        }
+        try {
+            clusterTransport.send(messages);
+        } catch (Exception e) {
+            transportErrors.increment();
+            for (Forward request : sent) {
+                if (waiting.remove(request.correlationId) != null) {
+                    request.future.complete(failure("转发命令失败: " + e.getMessage()));
+                }
+            }
+        }
+    }
+
+    private void sendReplies() {
+        List<ClusterMessage> batch = new ArrayList<>();
+        for (ClusterMessage reply; (reply = replies.poll()) != null; ) {
+            batch.add(reply);
+        }
+        // 发送失败时请求方会等到超时，不重试
+        clusterTransport.send(batch);
+    }
+
+    /**
+     * 在本实例执行转发来的命令，结果由下一轮发回
+     */
+    private void handleRequest(ClusterMessage message, long now) {
+        if (message.getCreatedTime() == null || now - message.getCreatedTime() > forwardTimeoutMs) {
+            expiredRequests.increment();
+            return;
+        }
+        executed.increment();
+        WebSocketServer.executeForwarded(message.getNodeId(), JSON.parse(message.getPayload()), message.getType(),
+                        priorityOf(message.getPriority()))
+                .thenAccept(result -> replies.add(newMessage(message.getSourceInstance(), ClusterMessage.KIND_RESPONSE,
+                        message.getCorrelationId(), message.getNodeId(), message.getType(), JSON.toJSONString(result))));
+    }
+
+    private void handleResponse(ClusterMessage message) {
+        Forward request = message.getCorrelationId() != null ? waiting.remove(message.getCorrelationId()) : null;
+        if (request == null) {
+            lateResponses.increment();
+            return;
+        }
+        GostDto result = JSON.parseObject(message.getPayload(), GostDto.class);
+        forwardedOk.increment();
+        request.future.complete(result != null ? result : failure("无响应消息"));
+    }
+
+    private void expire(long now) {
+        for (Iterator<Forward> it = waiting.values().iterator(); it.hasNext(); ) {
+            Forward request = it.next();
+            if (request.deadline <= now) {
+                it.remove();
+                timeouts.increment();
+                log.info("转发到节点 {} 的 {} 命令等待响应超时", request.nodeId, request.type);
+                request.future.complete(failure("等待响应超时"));
+            }
+        }
+    }
+
+    private ClusterMessage newMessage(String target, int kind, Long correlationId, Long nodeId, String type, String payload) {
+        ClusterMessage message = new ClusterMessage();
+        message.setTargetInstance(target);
+        message.setSourceInstance(instanceId);
+        message.setKind(kind);
+        message.setCorrelationId(correlationId);
+        message.setNodeId(nodeId);
+        message.setType(type);
+        message.setPayload(payload);
+        message.setCreatedTime(System.currentTimeMillis());
+        return message;
+    }
+
+    private static NodeCommandScheduler.Priority priorityOf(Integer ordinal) {
+        NodeCommandScheduler.Priority[] priorities = NodeCommandScheduler.Priority.values();
+        return ordinal != null && ordinal >= 0 && ordinal < priorities.length
+                ? priorities[ordinal] : NodeCommandScheduler.Priority.INTERACTIVE;
+    }
+
+    private static GostDto failure(String msg) {
+        GostDto result = new GostDto();
+        result.setMsg(msg);
+        return result;
+    }
+
+    private String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return host + ":" + serverPort;
+    }
+
+    /**
+     * 等待转发结果的命令
+     */
+    private static final class Forward {
+        private final long correlationId;
+        private final Long nodeId;
+        private final String type;
+        private final String payload;
+        private final NodeCommandScheduler.Priority priority;
+        private final long deadline;
+        private final CompletableFuture<GostDto> future = new CompletableFuture<>();
+
+        Forward(long correlationId, Long nodeId, String type, String payload, NodeCommandScheduler.Priority priority,
+                long deadline) {
+            this.correlationId = correlationId;
+            this.nodeId = nodeId;
+            this.type = type;
+            this.payload = payload;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+    }
+}
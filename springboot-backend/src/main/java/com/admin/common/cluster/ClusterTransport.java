@@ -0,0 +1,45 @@
+package com.admin.common.cluster;
+
+import com.admin.entity.ClusterMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实例间通信
+ * <p>
+ * 集群模式下 ClusterRouter 通过它登记本实例持有的节点会话、查找节点所在的实例，并收发转发的命令和响应。
+ * 所有方法只在 ClusterRouter 的调度线程上调用，实现可以阻塞。
+ * 默认实现为 DbClusterTransport（flux.cluster.transport=db），只依赖 MySQL。
+ */
+public interface ClusterTransport {
+
+    /**
+     * 登记本实例持有的节点会话并续约，未列出的节点视为已释放
+     *
+     * @param sessions  节点ID → 连接建立时间
+     * @param leaseTime 续约时间
+     */
+    void advertise(String instanceId, Map<Long, Long> sessions, long leaseTime);
+
+    /**
+     * 查找节点所在的实例
+     *
+     * @param minLeaseTime 续约时间早于该值的登记视为失效
+     * @return 节点ID → 实例ID，没有有效登记的节点不在结果中
+     */
+    Map<Long, String> findOwners(Collection<Long> nodeIds, long minLeaseTime);
+
+    void send(List<ClusterMessage> messages);
+
+    /**
+     * 取出发给本实例的消息，取出后即从传输中移除
+     */
+    List<ClusterMessage> receive(String instanceId, int limit);
+
+    /**
+     * 清理过期的消息和登记
+     */
+    void purge(long messagesBefore, long leasesBefore);
+}
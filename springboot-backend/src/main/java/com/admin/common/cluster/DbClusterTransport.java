@@ -0,0 +1,96 @@
+package com.admin.common.cluster;
+
+import com.admin.entity.ClusterMessage;
+import com.admin.entity.ClusterSession;
+import com.admin.mapper.ClusterMessageMapper;
+import com.admin.mapper.ClusterSessionMapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于数据库表的实例间通信
+ * <p>
+ * cluster_session 记录节点会话所在的实例；cluster_message 作为各实例的收件箱，
+ * 接收方按 (target_instance, id) 顺序读取后删除。每个实例只有一个读取线程，读取和删除之间不会与其他读取方竞争。
+ */
+@Component
+@ConditionalOnProperty(name = "flux.cluster.transport", havingValue = "db", matchIfMissing = true)
+public class DbClusterTransport implements ClusterTransport {
+
+    @Resource
+    private ClusterSessionMapper clusterSessionMapper;
+
+    @Resource
+    private ClusterMessageMapper clusterMessageMapper;
+
+    @Override
+    public void advertise(String instanceId, Map<Long, Long> sessions, long leaseTime) {
+        if (!sessions.isEmpty()) {
+            List<ClusterSession> rows = new ArrayList<>(sessions.size());
+            sessions.forEach((nodeId, connectedTime) -> {
+                ClusterSession row = new ClusterSession();
+                row.setNodeId(nodeId);
+                row.setInstanceId(instanceId);
+                row.setConnectedTime(connectedTime);
+                row.setLeaseTime(leaseTime);
+                rows.add(row);
+            });
+            clusterSessionMapper.batchUpsert(rows);
+        }
+        clusterSessionMapper.deleteReleased(instanceId, sessions.keySet());
+    }
+
+    @Override
+    public Map<Long, String> findOwners(Collection<Long> nodeIds, long minLeaseTime) {
+        Map<Long, String> owners = new HashMap<>();
+        if (nodeIds.isEmpty()) {
+            return owners;
+        }
+        List<ClusterSession> rows = clusterSessionMapper.selectList(new LambdaQueryWrapper<ClusterSession>()
+                .in(ClusterSession::getNodeId, nodeIds)
+                .ge(ClusterSession::getLeaseTime, minLeaseTime));
+        for (ClusterSession row : rows) {
+            owners.put(row.getNodeId(), row.getInstanceId());
+        }
+        return owners;
+    }
+
+    @Override
+    public void send(List<ClusterMessage> messages) {
+        if (!messages.isEmpty()) {
+            clusterMessageMapper.batchInsert(messages);
+        }
+    }
+
+    @Override
+    public List<ClusterMessage> receive(String instanceId, int limit) {
+        List<ClusterMessage> messages = clusterMessageMapper.selectList(new LambdaQueryWrapper<ClusterMessage>()
+                .eq(ClusterMessage::getTargetInstance, instanceId)
+                .orderByAsc(ClusterMessage::getId)
+                .last("LIMIT " + limit));
+        if (!messages.isEmpty()) {
+            List<Long> ids = new ArrayList<>(messages.size());
+            for (ClusterMessage message : messages) {
+                ids.add(message.getId());
+            }
+            clusterMessageMapper.deleteBatchIds(ids);
+        }
+        return messages;
+    }
+
+    @Override
+    public void purge(long messagesBefore, long leasesBefore) {
+        clusterMessageMapper.delete(new LambdaQueryWrapper<ClusterMessage>()
+                .lt(ClusterMessage::getCreatedTime, messagesBefore));
+        clusterSessionMapper.delete(new LambdaQueryWrapper<ClusterSession>()
+                .lt(ClusterSession::getLeaseTime, leasesBefore));
+    }
+}
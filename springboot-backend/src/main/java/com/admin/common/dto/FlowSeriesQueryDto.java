@@ -0,0 +1,30 @@
+package com.admin.common.dto;
+
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class FlowSeriesQueryDto {
+
+    // 统计粒度：minute、hour、day
+    @NotBlank(message = "统计粒度不能为空")
+    private String resolution;
+
+    @NotNull(message = "开始时间不能为空")
+    private Long startTime;
+
+    @NotNull(message = "结束时间不能为空")
+    private Long endTime;
+
+    // 统计维度：user、forward、node，用户流量接口固定为 user
+    private String dimension;
+
+    // 用户ID、转发ID或节点ID；用户流量接口仅管理员可指定，0 表示全体用户汇总，普通用户固定查询自己
+    private Long targetId;
+
+    // 排行返回条数，默认 20
+    private Integer limit;
+}
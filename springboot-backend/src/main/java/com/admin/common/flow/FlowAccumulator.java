@@ -0,0 +1,261 @@
+package com.admin.common.flow;
+
+import com.admin.common.cache.UserPackageCache;
+import com.admin.mapper.ForwardMapper;
+import com.admin.mapper.UserMapper;
+import com.admin.mapper.UserTunnelMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 流量写回累加器（write-behind）
+ * <p>
+ * 节点上报的流量先累加到内存计数器，由后台任务按固定间隔批量写入 forward / user / user_tunnel 表，
+ * 避免每次上报都对热点用户行执行 UPDATE 导致行锁争用。
+ * <p>
+ * 1. 计数器使用 LongAdder，上报路径无锁
+ * 2. 每个刷新周期 forward、user、user_tunnel 各执行一条 CASE 批量更新语句（超过批次大小时分批）
+ * 3. 写库失败时增量回填到计数器，下个周期重试，不丢流量，并把回填的增量返回给调用方；
+ *    user_tunnel 表结构缺失时权限级增量直接丢弃，不回填，不影响转发和用户流量的写回
+ * 4. 刷新由 FlowIngestShards 的检查点驱动，以便与流量日志的截断保持一致。检查点间隔 flux.flow.flush-interval-ms
+ *    即为未落库流量的最长滞留时间，取代原先单独的 flux.flow.max-staleness-ms；检查点失败时增量保留在内存和日志中，
+ *    滞留时间以 FlowIngestShards 统计中的 lastCheckpointAgeMs 为准。停机时由 FlowIngestShards 的最终检查点写库
+ * 5. 每次刷新后失效本周期流量已写库的用户的套餐信息缓存
+ */
+@Slf4j
+@Component
+public class FlowAccumulator {
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private final ConcurrentHashMap<Long, FlowCounter> forwardCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, FlowCounter> userCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, FlowCounter> userTunnelCounters = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    @Resource
+    private ForwardMapper forwardMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private UserTunnelMapper userTunnelMapper;
+
+    @Resource
+    private UserPackageCache userPackageCache;
+
+    /**
+     * 累加一次流量上报
+     *
+     * @param forwardId    转发ID
+     * @param userId       用户ID
+     * @param userTunnelId 用户隧道权限ID
+     * @param inFlow       下载流量
+     * @param outFlow      上传流量
+     */
+    public void add(Long forwardId, Long userId, Long userTunnelId, long inFlow, long outFlow) {
+        if (inFlow == 0 && outFlow == 0) {
+            return;
+        }
+        if (forwardId != null) {
+            forwardCounters.computeIfAbsent(forwardId, k -> new FlowCounter()).add(inFlow, outFlow);
+        }
+        if (userId != null) {
+            userCounters.computeIfAbsent(userId, k -> new FlowCounter()).add(inFlow, outFlow);
+        }
+        if (userTunnelId != null) {
+            userTunnelCounters.computeIfAbsent(userTunnelId, k -> new FlowCounter()).add(inFlow, outFlow);
+        }
+    }
+
+    /**
+     * 获取用户尚未落库的流量（in + out），用于限额判断时补齐数据库中的值
+     */
+    public long getPendingUserFlow(Long userId) {
+        FlowCounter counter = userCounters.get(userId);
+        return counter == null ? 0 : counter.total();
+    }
+
+    /**
+     * 获取用户隧道权限尚未落库的流量（in + out）
+     */
+    public long getPendingUserTunnelFlow(Long userTunnelId) {
+        FlowCounter counter = userTunnelCounters.get(userTunnelId);
+        return counter == null ? 0 : counter.total();
+    }
+
+    /**
+     * 获取转发尚未落库的流量（in + out）
+     */
+    public long getPendingForwardFlow(Long forwardId) {
+        FlowCounter counter = forwardCounters.get(forwardId);
+        return counter == null ? 0 : counter.total();
+    }
+
+    /**
+     * 丢弃用户尚未落库的增量，用于流量重置场景，避免重置前的流量在重置后被写回。
+     * 调用方需先让分片交出该用户的流量（FlowIngestShards.discardUser），否则之后交接的旧流量会重新累加
+     *
+     * @return 被丢弃的增量，没有时返回null
+     */
+    public FlowDelta discardUser(Long userId) {
+        FlowCounter counter = userCounters.remove(userId);
+        if (counter == null) {
+            return null;
+        }
+        return new FlowDelta(userId, counter.in.sum(), counter.out.sum());
+    }
+
+    /**
+     * 将累加的增量批量写入数据库
+     *
+     * @return 刷新结果，包含写库失败、已回填到计数器的增量
+     */
+    public FlushResult flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return FlushResult.SKIPPED;
+        }
+        try {
+            List<FlowDelta> forwardDeltas = drain(forwardCounters);
+            List<FlowDelta> userDeltas = drain(userCounters);
+            List<FlowDelta> userTunnelDeltas = drain(userTunnelCounters);
+
+            List<FlowDelta> failedForwards = write(forwardDeltas, forwardCounters, forwardMapper::batchAddFlow, "转发", false);
+            List<FlowDelta> failedUsers = write(userDeltas, userCounters, userMapper::batchAddFlow, "用户", false);
+            invalidatePersistedUsers(userDeltas, failedUsers);
+            List<FlowDelta> failedUserTunnels = write(userTunnelDeltas, userTunnelCounters,
+                    userTunnelMapper::batchAddFlow, "用户隧道权限", true);
+            return new FlushResult(true, failedForwards, failedUsers, failedUserTunnels);
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private void invalidatePersistedUsers(List<FlowDelta> userDeltas, List<FlowDelta> failedUsers) {
+        Set<Long> failedIds = new HashSet<>();
+        for (FlowDelta delta : failedUsers) {
+            failedIds.add(delta.getId());
+        }
+        for (FlowDelta delta : userDeltas) {
+            if (!failedIds.contains(delta.getId())) {
+                userPackageCache.invalidate(delta.getId());
+            }
+        }
+    }
+
+    private List<FlowDelta> drain(ConcurrentHashMap<Long, FlowCounter> counters) {
+        List<FlowDelta> deltas = new ArrayList<>();
+        for (Map.Entry<Long, FlowCounter> entry : counters.entrySet()) {
+            FlowCounter counter = entry.getValue();
+            long in = counter.in.sumThenReset();
+            long out = counter.out.sumThenReset();
+            // 计数器不做移除，数量以转发/用户总数为上限，避免移除与并发累加之间丢失增量
+            if (in == 0 && out == 0) {
+                continue;
+            }
+            deltas.add(new FlowDelta(entry.getKey(), in, out));
+        }
+        // 按ID排序，保证多实例并发更新时加锁顺序一致
+        deltas.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return deltas;
+    }
+
+    /**
+     * @param dropOnSchemaError 表结构缺失时丢弃增量，避免永远无法写入的增量反复回填
+     */
+    private List<FlowDelta> write(List<FlowDelta> deltas, ConcurrentHashMap<Long, FlowCounter> counters,
+                                  Function<List<FlowDelta>, Integer> writer, String label, boolean dropOnSchemaError) {
+        if (deltas.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<FlowDelta> failed = new ArrayList<>();
+        for (int i = 0; i < deltas.size(); i += FLUSH_BATCH_SIZE) {
+            List<FlowDelta> batch = deltas.subList(i, Math.min(i + FLUSH_BATCH_SIZE, deltas.size()));
+            try {
+                writer.apply(batch);
+            } catch (Exception e) {
+                if (dropOnSchemaError && e instanceof BadSqlGrammarException) {
+                    log.warn("{}表结构不可用，丢弃{}条增量: {}", label, batch.size(), e.getMessage());
+                    continue;
+                }
+                log.error("批量写入{}流量失败，{}条增量将在下个周期重试: {}", label, batch.size(), e.getMessage());
+                restore(counters, batch);
+                failed.addAll(batch);
+            }
+        }
+        return failed;
+    }
+
+    private void restore(ConcurrentHashMap<Long, FlowCounter> counters, List<FlowDelta> batch) {
+        for (FlowDelta delta : batch) {
+            counters.computeIfAbsent(delta.getId(), k -> new FlowCounter()).add(delta.getInFlow(), delta.getOutFlow());
+        }
+    }
+
+    /**
+     * 一次刷新的结果
+     */
+    @Getter
+    public static class FlushResult {
+
+        // 已有刷新在进行，本次未执行
+        static final FlushResult SKIPPED = new FlushResult(false,
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        private final boolean executed;
+
+        // 写库失败、已回填到计数器的转发增量
+        private final List<FlowDelta> failedForwards;
+
+        // 写库失败、已回填到计数器的用户增量
+        private final List<FlowDelta> failedUsers;
+
+        // 写库失败、已回填到计数器的用户隧道权限增量
+        private final List<FlowDelta> failedUserTunnels;
+
+        FlushResult(boolean executed, List<FlowDelta> failedForwards, List<FlowDelta> failedUsers,
+                    List<FlowDelta> failedUserTunnels) {
+            this.executed = executed;
+            this.failedForwards = failedForwards;
+            this.failedUsers = failedUsers;
+            this.failedUserTunnels = failedUserTunnels;
+        }
+    }
+
+    /**
+     * 单个ID的上下行计数器
+     */
+    private static class FlowCounter {
+        private final LongAdder in = new LongAdder();
+        private final LongAdder out = new LongAdder();
+
+        void add(long inFlow, long outFlow) {
+            if (inFlow != 0) {
+                in.add(inFlow);
+            }
+            if (outFlow != 0) {
+                out.add(outFlow);
+            }
+        }
+
+        long total() {
+            return in.sum() + out.sum();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.admin.common.flow;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 待落库的流量增量
+ * 用于批量更新 forward / user 表的 in_flow、out_flow
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlowDelta {
+
+    // 记录ID（转发ID或用户ID）
+    private Long id;
+
+    // 下载流量增量
+    private Long inFlow;
+
+    // 上传流量增量
+    private Long outFlow;
+}
@@ -0,0 +1,39 @@
+package com.admin.common.flow;
+
+import lombok.Getter;
+
+/**
+ * 一条已完成倍率换算的流量事件，由上报请求生成、分片线程消费
+ */
+@Getter
+public final class FlowEvent {
+
+    private final long forwardId;
+
+    private final long userId;
+
+    // 用户隧道权限ID，0 表示不计入用户隧道权限
+    private final long userTunnelId;
+
+    // 下载流量（已按倍率换算）
+    private final long inFlow;
+
+    // 上传流量（已按倍率换算）
+    private final long outFlow;
+
+    // 上报节点ID，仅用于流量时序统计，不写入流量日志，0 表示未知
+    private final long nodeId;
+
+    public FlowEvent(long forwardId, long userId, long userTunnelId, long inFlow, long outFlow) {
+        this(forwardId, userId, userTunnelId, inFlow, outFlow, 0);
+    }
+
+    public FlowEvent(long forwardId, long userId, long userTunnelId, long inFlow, long outFlow, long nodeId) {
+        this.forwardId = forwardId;
+        this.userId = userId;
+        this.userTunnelId = userTunnelId;
+        this.inFlow = inFlow;
+        this.outFlow = outFlow;
+        this.nodeId = nodeId;
+    }
+}
@@ -0,0 +1,565 @@
+package com.admin.common.flow;
+
+import com.admin.common.node.PauseDispatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 流量上报分片处理
+ * <p>
+ * 上报请求只负责解析和入队，按用户ID分到 N 个分片，每个分片由单个线程消费：
+ * 1. 分片线程独占本分片的计数器，按转发聚合后定期交给 FlowAccumulator 写回，无锁
+ * 2. 同一用户的事件总在同一线程处理，配额扣减和暂停判断天然串行
+ * 3. 每个分片容量有限，入队时按分片预占容量，一次请求内的事件要么全部入队要么全部拒绝
+ * 4. 分片积压时等待一小段时间仍无法入队则拒绝请求（节点收到非 ok 响应后保留流量下次重报），并记录丢弃指标
+ * <p>
+ * 持久化：事件入队前先写入 FlowJournal，写入成功才向节点返回 ok。检查点线程定期执行：
+ * 1. 切换日志段，并向每个分片投递屏障，等待屏障之前的事件全部交给累加器；
+ *    分片越过屏障后暂停定时交接，直到累加器取走本次写库的数据，保证写库的增量都来自旧日志段
+ * 2. 累加器写库，写库失败的增量重新写入当前日志段
+ * 3. 删除已切换出去的旧日志段；任一分片未确认交接时不写库、不删除，整批留给下一次检查点或重启回放
+ * 交接给累加器的流量同时按交接时间，以用户、转发、上报节点为维度记录到 FlowSeriesStore，时序增量也在检查点批量写库；
+ * 并计入 TopTalkers 的流量排行。
+ */
+@Slf4j
+@Component
+public class FlowIngestShards {
+
+    // 检查点屏障，不占用分片容量
+    private static final FlowEvent BARRIER = new FlowEvent(0, 0, 0, 0, 0);
+
+    private static final long BARRIER_TIMEOUT_SECONDS = 30;
+
+    private static final ScheduledExecutorService CHECKPOINT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "flow-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${flux.flow.ingest.shards:0}")
+    private int shardCount;
+
+    @Value("${flux.flow.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${flux.flow.ingest.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${flux.flow.ingest.handoff-interval-ms:1000}")
+    private long handoffIntervalMs;
+
+    @Value("${flux.flow.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    @Value("${flux.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Resource
+    private FlowAccumulator flowAccumulator;
+
+    @Resource
+    private FlowJournal flowJournal;
+
+    @Resource
+    private FlowSeriesStore flowSeriesStore;
+
+    @Resource
+    private TopTalkers topTalkers;
+
+    @Resource
+    private UserQuotaEngine userQuotaEngine;
+
+    @Resource
+    private PauseDispatcher pauseDispatcher;
+
+    private Shard[] shards;
+
+    private volatile boolean running = true;
+
+    // 上报路径持有读锁完成“写日志 + 入队”，检查点持有写锁完成“切换日志段 + 投递屏障”
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    // 检查点与流量重置互斥，保证补偿记录与被丢弃的增量处于同一批日志段
+    private final Object checkpointMutex = new Object();
+
+    // 检查点投递屏障到累加器取走数据期间为true，分片越过屏障后不再定时交接，新日志段的事件留到下一次检查点
+    private volatile boolean handoffPaused;
+
+    private final LongAdder acceptedEvents = new LongAdder();
+    private final LongAdder shedEvents = new LongAdder();
+    private final LongAdder shedRequests = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder failedCheckpoints = new LongAdder();
+    private volatile long lastCheckpointTime = System.currentTimeMillis();
+
+    @PostConstruct
+    public void start() {
+        replayJournal();
+
+        int count = shardCount > 0 ? shardCount : Math.min(16, Runtime.getRuntime().availableProcessors());
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i);
+            shards[i].thread.start();
+        }
+        CHECKPOINT_EXECUTOR.scheduleWithFixedDelay(this::scheduledCheckpoint,
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("流量上报分片启动，分片数 {}，单分片容量 {}", count, queueCapacity);
+    }
+
+    /**
+     * 提交一次上报请求中的所有流量事件
+     *
+     * @param events 流量事件
+     * @return 全部写入日志并入队返回true；任一分片积压超时或日志写入失败则全部拒绝并返回false
+     */
+    public boolean submit(List<FlowEvent> events) {
+        if (events.isEmpty()) {
+            return true;
+        }
+        if (!running) {
+            shed(events.size());
+            return false;
+        }
+
+        // 按分片分组，分片下标升序预占容量，避免不同请求交叉等待
+        Map<Integer, List<FlowEvent>> grouped = new LinkedHashMap<>();
+        for (FlowEvent event : events) {
+            grouped.computeIfAbsent(shardIndex(event.getUserId()), k -> new ArrayList<>()).add(event);
+        }
+        List<Integer> order = new ArrayList<>(grouped.keySet());
+        order.sort(Integer::compare);
+
+        List<Integer> acquired = new ArrayList<>();
+        try {
+            for (Integer index : order) {
+                int size = grouped.get(index).size();
+                if (!shards[index].permits.tryAcquire(size, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    shards[index].rejected.add(size);
+                    release(grouped, acquired);
+                    shed(events.size());
+                    return false;
+                }
+                acquired.add(index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(grouped, acquired);
+            shed(events.size());
+            return false;
+        }
+
+        checkpointLock.readLock().lock();
+        try {
+            // 停机在写锁下置位，持有读锁时再次确认，避免停机后仍有事件写入日志却没有分片处理
+            if (!running) {
+                release(grouped, acquired);
+                shed(events.size());
+                return false;
+            }
+            flowJournal.append(events);
+            for (Integer index : order) {
+                shards[index].queue.addAll(grouped.get(index));
+            }
+        } catch (IOException e) {
+            log.error("写入流量日志失败，拒绝本次上报: {}", e.getMessage());
+            release(grouped, acquired);
+            shed(events.size());
+            return false;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        acceptedEvents.add(events.size());
+        return true;
+    }
+
+    /**
+     * 丢弃用户尚未落库的流量（流量重置），并在日志中写入补偿记录，避免重启回放时恢复重置前的流量
+     * <p>
+     * 与检查点相同，先向用户所在分片投递屏障，等待重置前已接收的事件全部交给累加器后再丢弃，
+     * 避免分片中尚未交接的旧流量在重置后才累加进去
+     */
+    public void discardUser(Long userId) {
+        synchronized (checkpointMutex) {
+            if (!awaitShardHandoff(shards[shardIndex(userId)])) {
+                log.warn("等待用户 {} 所在分片交接超时，重置前的部分流量可能在重置后写回", userId);
+            }
+            FlowDelta discarded = flowAccumulator.discardUser(userId);
+            if (discarded == null || (discarded.getInFlow() == 0 && discarded.getOutFlow() == 0)) {
+                return;
+            }
+            try {
+                flowJournal.append(Collections.singletonList(
+                        new FlowEvent(0, userId, 0, -discarded.getInFlow(), -discarded.getOutFlow())));
+            } catch (IOException e) {
+                log.error("写入用户 {} 流量重置补偿记录失败: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取分片统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("shards", shards.length);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("acceptedEvents", acceptedEvents.sum());
+        stats.put("shedEvents", shedEvents.sum());
+        stats.put("shedRequests", shedRequests.sum());
+        stats.put("checkpoints", checkpoints.sum());
+        // 距上一次完成的检查点的时间，即未落库流量的最长滞留时间
+        stats.put("lastCheckpointAgeMs", System.currentTimeMillis() - lastCheckpointTime);
+        stats.put("failedCheckpoints", failedCheckpoints.sum());
+        List<Map<String, Object>> shardStats = new ArrayList<>();
+        for (Shard shard : shards) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("index", shard.index);
+            item.put("depth", shard.queue.size());
+            item.put("maxDepth", shard.maxDepth);
+            item.put("processed", shard.processed.sum());
+            item.put("rejected", shard.rejected.sum());
+            shardStats.add(item);
+        }
+        stats.put("shardStats", shardStats);
+        stats.put("journal", flowJournal.getStats());
+        stats.put("series", flowSeriesStore.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 停止接收后等待分片线程处理完积压数据并交给累加器，再执行最终检查点写库；
+        // 有分片未能在等待时间内退出时最终检查点不写库、不删除日志段，下次启动回放
+        checkpointLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        CHECKPOINT_EXECUTOR.shutdown();
+        try {
+            CHECKPOINT_EXECUTOR.awaitTermination(BARRIER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            for (Shard shard : shards) {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        checkpoint(false);
+        log.info("流量上报分片已停止");
+    }
+
+    private void scheduledCheckpoint() {
+        try {
+            checkpoint(true);
+        } catch (Exception e) {
+            failedCheckpoints.increment();
+            log.error("流量检查点执行失败: {}", e.getMessage());
+        }
+        if (clusterEnabled) {
+            // 其他实例接收的流量只能通过数据库看到，每次检查点后刷新配额的已用流量
+            try {
+                userQuotaEngine.refreshUsage();
+            } catch (Exception e) {
+                log.error("刷新配额已用流量失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 检查点：切换日志段 → 等待分片交接 → 写库 → 补写失败增量 → 删除旧日志段
+     *
+     * @param awaitShards 是否通过屏障等待分片交接，停机时分片线程已退出，无需等待
+     */
+    private void checkpoint(boolean awaitShards) {
+        synchronized (checkpointMutex) {
+            long cut;
+            CountDownLatch latch = new CountDownLatch(awaitShards ? shards.length : 0);
+            checkpointLock.writeLock().lock();
+            try {
+                cut = flowJournal.rotate();
+                if (awaitShards) {
+                    handoffPaused = true;
+                    for (Shard shard : shards) {
+                        shard.barriers.add(latch);
+                        shard.queue.add(BARRIER);
+                    }
+                }
+            } catch (IOException e) {
+                failedCheckpoints.increment();
+                log.error("切换流量日志段失败: {}", e.getMessage());
+                return;
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+
+            FlowAccumulator.FlushResult result;
+            try {
+                boolean handedOff;
+                try {
+                    // 停机时分片线程已退出，全部退出即视为已交接
+                    handedOff = awaitShards ? latch.await(BARRIER_TIMEOUT_SECONDS, TimeUnit.SECONDS) : allShardsStopped();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    handedOff = false;
+                }
+                if (!handedOff) {
+                    // 累加器中可能混有切换点之后的增量，此时写库再保留旧日志段，重启回放会重复计费
+                    failedCheckpoints.increment();
+                    log.warn("流量检查点未完成，分片未全部交接，本次不写库并保留日志段");
+                    return;
+                }
+                result = flowAccumulator.flush();
+            } finally {
+                handoffPaused = false;
+            }
+            // 时序数据不参与计费，写库失败的增量留在内存中重试，不影响日志段删除
+            flowSeriesStore.flush();
+            if (!result.isExecuted()) {
+                failedCheckpoints.increment();
+                log.info("流量检查点未完成，已有写库在进行，保留日志段");
+                return;
+            }
+
+            // 写库失败的增量已回填到计数器，重新写入当前日志段后旧日志段即可删除
+            List<FlowEvent> residual = new ArrayList<>();
+            for (FlowDelta delta : result.getFailedForwards()) {
+                residual.add(new FlowEvent(delta.getId(), 0, 0, delta.getInFlow(), delta.getOutFlow()));
+            }
+            for (FlowDelta delta : result.getFailedUsers()) {
+                residual.add(new FlowEvent(0, delta.getId(), 0, delta.getInFlow(), delta.getOutFlow()));
+            }
+            for (FlowDelta delta : result.getFailedUserTunnels()) {
+                residual.add(new FlowEvent(0, 0, delta.getId(), delta.getInFlow(), delta.getOutFlow()));
+            }
+            try {
+                flowJournal.append(residual);
+            } catch (IOException e) {
+                failedCheckpoints.increment();
+                log.error("补写流量日志失败，保留日志段: {}", e.getMessage());
+                return;
+            }
+            flowJournal.deleteBefore(cut);
+            checkpoints.increment();
+            lastCheckpointTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 回放流量日志，把上次停机前未写库的增量补回累加器，时序数据按回放时间记录
+     */
+    private void replayJournal() {
+        Set<Long> users = new HashSet<>();
+        Set<Long> userTunnels = new HashSet<>();
+        long replayTime = System.currentTimeMillis();
+        try {
+            flowJournal.open(event -> {
+                flowAccumulator.add(event.getForwardId() == 0 ? null : event.getForwardId(),
+                        event.getUserId() == 0 ? null : event.getUserId(),
+                        event.getUserTunnelId() == 0 ? null : event.getUserTunnelId(),
+                        event.getInFlow(), event.getOutFlow());
+                if (event.getUserId() != 0) {
+                    users.add(event.getUserId());
+                }
+                // 只有节点上报的原始事件同时带转发ID和用户ID，补写和补偿记录不计入时序；日志中没有上报节点
+                if (event.getForwardId() != 0 && event.getUserId() != 0) {
+                    flowSeriesStore.record(FlowSeriesStore.Dimension.USER, event.getUserId(),
+                            event.getInFlow(), event.getOutFlow(), replayTime);
+                    flowSeriesStore.record(FlowSeriesStore.Dimension.FORWARD, event.getForwardId(),
+                            event.getInFlow(), event.getOutFlow(), replayTime);
+                }
+                if (event.getUserTunnelId() != 0) {
+                    userTunnels.add(event.getUserTunnelId());
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("流量日志打开失败: " + e.getMessage(), e);
+        }
+        // 配额引擎先于回放加载，重新同步回放涉及的用户和用户隧道权限，把未落库流量计入已用量
+        users.forEach(userQuotaEngine::resync);
+        userTunnels.forEach(userQuotaEngine::resyncUserTunnel);
+    }
+
+    /**
+     * 向单个分片投递屏障并等待此前入队的事件交给累加器，调用时持有 checkpointMutex
+     *
+     * @return 分片已交接返回true；分片已停止或等待超时返回false
+     */
+    private boolean awaitShardHandoff(Shard shard) {
+        if (!running || !shard.thread.isAlive()) {
+            return false;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        checkpointLock.writeLock().lock();
+        try {
+            shard.barriers.add(latch);
+            shard.queue.add(BARRIER);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        try {
+            return latch.await(BARRIER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean allShardsStopped() {
+        for (Shard shard : shards) {
+            if (shard.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void shed(int eventCount) {
+        shedRequests.increment();
+        shedEvents.add(eventCount);
+    }
+
+    private void release(Map<Integer, List<FlowEvent>> grouped, List<Integer> acquired) {
+        for (Integer index : acquired) {
+            shards[index].permits.release(grouped.get(index).size());
+        }
+    }
+
+    private int shardIndex(long userId) {
+        return (int) Math.floorMod(userId, (long) shards.length);
+    }
+
+    /**
+     * 单个分片：一个队列、一个消费线程、线程私有的聚合计数器
+     */
+    private class Shard implements Runnable {
+        private final int index;
+        private final LinkedBlockingQueue<FlowEvent> queue = new LinkedBlockingQueue<>();
+        private final ConcurrentLinkedQueue<CountDownLatch> barriers = new ConcurrentLinkedQueue<>();
+        private final Semaphore permits = new Semaphore(queueCapacity);
+        private final Thread thread;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private volatile int maxDepth;
+
+        // 以下字段仅由分片线程访问：转发ID → [用户ID, 用户隧道权限ID, 下载, 上传]
+        private Map<Long, long[]> pending = new HashMap<>();
+        // 上报节点ID → [下载, 上传]，仅用于时序统计
+        private Map<Long, long[]> nodePending = new HashMap<>();
+        private long lastHandoff = System.currentTimeMillis();
+
+        Shard(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "flow-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    FlowEvent event = queue.poll(handoffIntervalMs, TimeUnit.MILLISECONDS);
+                    if (event == BARRIER) {
+                        handoff();
+                        CountDownLatch latch = barriers.poll();
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                        continue;
+                    }
+                    if (event != null) {
+                        int depth = queue.size() + 1;
+                        if (depth > maxDepth) {
+                            maxDepth = depth;
+                        }
+                        permits.release();
+                        apply(event);
+                    }
+                    if (!handoffPaused && System.currentTimeMillis() - lastHandoff >= handoffIntervalMs) {
+                        handoff();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("流量分片 {} 处理异常: {}", index, e.getMessage());
+                }
+            }
+            handoff();
+        }
+
+        private void apply(FlowEvent event) {
+            long[] counter = pending.get(event.getForwardId());
+            if (counter == null) {
+                counter = new long[]{event.getUserId(), event.getUserTunnelId(), 0L, 0L};
+                pending.put(event.getForwardId(), counter);
+            }
+            counter[2] += event.getInFlow();
+            counter[3] += event.getOutFlow();
+            if (event.getNodeId() != 0) {
+                long[] nodeCounter = nodePending.computeIfAbsent(event.getNodeId(), k -> new long[2]);
+                nodeCounter[0] += event.getInFlow();
+                nodeCounter[1] += event.getOutFlow();
+            }
+            processed.increment();
+
+            long bytes = event.getInFlow() + event.getOutFlow();
+            if (userQuotaEngine.consume(event.getUserId(), bytes)) {
+                pauseDispatcher.pauseUser(event.getUserId());
+            } else if (event.getUserTunnelId() != 0
+                    && userQuotaEngine.consumeUserTunnel(event.getUserTunnelId(), bytes)) {
+                // 用户整体已暂停时无需再单独暂停该权限下的转发
+                pauseDispatcher.pauseUserTunnel(event.getUserTunnelId());
+            }
+        }
+
+        private void handoff() {
+            lastHandoff = System.currentTimeMillis();
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<Long, long[]> batch = pending;
+            pending = new HashMap<>();
+            for (Map.Entry<Long, long[]> entry : batch.entrySet()) {
+                long[] counter = entry.getValue();
+                flowAccumulator.add(entry.getKey(), counter[0], counter[1] == 0 ? null : counter[1], counter[2], counter[3]);
+                flowSeriesStore.record(FlowSeriesStore.Dimension.USER, counter[0], counter[2], counter[3], lastHandoff);
+                flowSeriesStore.record(FlowSeriesStore.Dimension.FORWARD, entry.getKey(), counter[2], counter[3], lastHandoff);
+                topTalkers.record(entry.getKey(), counter[0], counter[2] + counter[3], lastHandoff);
+            }
+            if (!nodePending.isEmpty()) {
+                Map<Long, long[]> nodeBatch = nodePending;
+                nodePending = new HashMap<>();
+                for (Map.Entry<Long, long[]> entry : nodeBatch.entrySet()) {
+                    flowSeriesStore.record(FlowSeriesStore.Dimension.NODE, entry.getKey(),
+                            entry.getValue()[0], entry.getValue()[1], lastHandoff);
+                }
+            }
+        }
+    }
+}
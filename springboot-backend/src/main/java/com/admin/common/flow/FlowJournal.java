@@ -0,0 +1,306 @@
+package com.admin.common.flow;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 流量增量日志（内存映射、仅追加）
+ * <p>
+ * 上报请求被接收前，其中每条流量增量先追加到当前日志段，日志段是固定大小的内存映射文件：
+ * 1. 记录写入映射内存即进入页缓存，进程崩溃不会丢失；开启 fsync 后每次追加都会落盘，机器掉电也不丢失
+ * 2. 每条记录带魔数和 CRC，回放时遇到未写完的记录即停止
+ * 3. 检查点时切换到新日志段，旧日志段中的增量全部写入数据库后整段删除；
+ *    本进程写过的日志段不删除文件，清零魔数后留作备用段，下次切换时改名复用，映射始终只有当前段和少量备用段，
+ *    不会每个检查点新映射一个文件、等 GC 才释放
+ * 4. 启动时回放所有残留日志段，补回上次停机前未落库的流量
+ * <p>
+ * 记录格式（48 字节）：魔数(4) + CRC32(4) + 转发ID(8) + 用户ID(8) + 用户隧道权限ID(8) + 下载(8) + 上传(8)，
+ * ID 为 0 表示不计入对应维度
+ */
+@Slf4j
+@Component
+public class FlowJournal {
+
+    private static final int RECORD_SIZE = 48;
+    private static final int RECORD_MAGIC = 0x464C5732;
+    private static final String SEGMENT_PREFIX = "flow-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SPARE_SUFFIX = ".spare";
+
+    // 最多保留的备用段，检查点失败积压的更多日志段直接删除
+    private static final int MAX_SPARE_SEGMENTS = 2;
+
+    @Value("${flux.flow.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${flux.flow.journal.dir:./data/flow-journal}")
+    private String dir;
+
+    @Value("${flux.flow.journal.segment-size-bytes:67108864}")
+    private int segmentSize;
+
+    @Value("${flux.flow.journal.fsync:false}")
+    private boolean fsync;
+
+    private Path directory;
+
+    // 当前写入的日志段
+    private long currentSegmentId;
+    private MappedByteBuffer currentBuffer;
+
+    // 本进程映射的日志段：日志段ID → 映射，删除时回收为备用段
+    private final Map<Long, MappedByteBuffer> mappedSegments = new HashMap<>();
+    private final ArrayDeque<Spare> spares = new ArrayDeque<>();
+    private long spareSequence;
+
+    private long appendedRecords;
+    private long replayedRecords;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 打开日志目录，回放所有残留日志段，并创建新的当前日志段
+     * 回放过的日志段保留到下一次检查点落库后再删除
+     *
+     * @param consumer 回放的增量
+     */
+    public synchronized void open(Consumer<FlowEvent> consumer) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(dir).toAbsolutePath();
+        Files.createDirectories(directory);
+        segmentSize = Math.max(RECORD_SIZE * 1024, segmentSize - segmentSize % RECORD_SIZE);
+        // 上次运行留下的备用段没有映射，直接删除
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SPARE_SUFFIX)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        TreeMap<Long, Path> segments = listSegments();
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            replayedRecords += replay(entry.getValue(), consumer);
+        }
+        long nextId = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        openSegment(nextId);
+        log.info("流量日志已打开，目录 {}，回放 {} 个日志段共 {} 条记录", directory, segments.size(), replayedRecords);
+    }
+
+    /**
+     * 追加一批增量，返回后即视为已持久化
+     */
+    public synchronized void append(List<FlowEvent> events) throws IOException {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        int start = currentBuffer.position();
+        for (FlowEvent event : events) {
+            if (currentBuffer.remaining() < RECORD_SIZE) {
+                forceRange(start);
+                openSegment(currentSegmentId + 1);
+                start = 0;
+            }
+            writeRecord(currentBuffer, crc, event);
+        }
+        forceRange(start);
+        appendedRecords += events.size();
+    }
+
+    /**
+     * 切换到新的日志段，返回新日志段ID，ID 小于它的日志段在其增量落库后可以删除
+     */
+    public synchronized long rotate() throws IOException {
+        if (!enabled) {
+            return 0;
+        }
+        if (currentBuffer.position() > 0) {
+            openSegment(currentSegmentId + 1);
+        }
+        return currentSegmentId;
+    }
+
+    /**
+     * 删除 ID 小于指定值的日志段，本进程映射的日志段回收为备用段
+     */
+    public synchronized void deleteBefore(long segmentId) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (Map.Entry<Long, Path> entry : listSegments().headMap(segmentId).entrySet()) {
+                MappedByteBuffer buffer = mappedSegments.remove(entry.getKey());
+                if (buffer != null && spares.size() < MAX_SPARE_SEGMENTS) {
+                    recycle(entry.getValue(), buffer);
+                } else {
+                    Files.deleteIfExists(entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            log.error("删除流量日志段失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 获取日志统计信息
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled || directory == null) {
+            return stats;
+        }
+        stats.put("directory", directory.toString());
+        stats.put("currentSegment", currentSegmentId);
+        stats.put("currentSegmentBytes", currentBuffer.position());
+        stats.put("appendedRecords", appendedRecords);
+        stats.put("replayedRecords", replayedRecords);
+        stats.put("mappedSegments", mappedSegments.size() + spares.size());
+        stats.put("spareSegments", spares.size());
+        try {
+            stats.put("segments", listSegments().size());
+        } catch (IOException e) {
+            stats.put("segments", -1);
+        }
+        return stats;
+    }
+
+    private void openSegment(long segmentId) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%016d", segmentId) + SEGMENT_SUFFIX);
+        Spare spare = spares.poll();
+        if (spare != null) {
+            // 备用段的魔数已清零，改名后即为空的新日志段，沿用原有映射
+            Files.move(spare.path, path);
+            currentBuffer = spare.buffer;
+            currentBuffer.clear();
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // 映射在通道关闭后依然有效，新文件按段大小预分配并以 0 填充，0 魔数即表示段尾
+                currentBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+        }
+        mappedSegments.put(segmentId, currentBuffer);
+        currentSegmentId = segmentId;
+    }
+
+    /**
+     * 清零已写入记录的魔数后改名为备用段；复用时只覆盖前面的记录，必须保证后面的旧记录不会被回放
+     */
+    private void recycle(Path path, MappedByteBuffer buffer) throws IOException {
+        int end = buffer.position();
+        for (int position = 0; position < end; position += RECORD_SIZE) {
+            buffer.putInt(position, 0);
+        }
+        if (fsync && end > 0) {
+            buffer.force(0, end);
+        }
+        Path sparePath = directory.resolve("spare-" + (++spareSequence) + SPARE_SUFFIX);
+        Files.move(path, sparePath);
+        spares.add(new Spare(sparePath, buffer));
+    }
+
+    private void forceRange(int start) {
+        if (fsync && currentBuffer.position() > start) {
+            currentBuffer.force(start, currentBuffer.position() - start);
+        }
+    }
+
+    private long replay(Path path, Consumer<FlowEvent> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < RECORD_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size - size % RECORD_SIZE);
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int position = buffer.position();
+                int magic = buffer.getInt();
+                if (magic != RECORD_MAGIC) {
+                    break;
+                }
+                int checksum = buffer.getInt();
+                crc.reset();
+                crc.update(buffer.slice(position + 8, RECORD_SIZE - 8));
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("流量日志 {} 在偏移 {} 处记录不完整，停止回放该段", path.getFileName(), position);
+                    break;
+                }
+                long forwardId = buffer.getLong();
+                long userId = buffer.getLong();
+                long userTunnelId = buffer.getLong();
+                long inFlow = buffer.getLong();
+                long outFlow = buffer.getLong();
+                consumer.accept(new FlowEvent(forwardId, userId, userTunnelId, inFlow, outFlow));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 已清零、等待复用的日志段
+     */
+    private static final class Spare {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        Spare(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private static void writeRecord(MappedByteBuffer buffer, CRC32 crc, FlowEvent event) {
+        int position = buffer.position();
+        // 先写正文和校验，最后写魔数，崩溃时未写完的记录不会被识别为有效记录
+        buffer.position(position + 8);
+        buffer.putLong(event.getForwardId());
+        buffer.putLong(event.getUserId());
+        buffer.putLong(event.getUserTunnelId());
+        buffer.putLong(event.getInFlow());
+        buffer.putLong(event.getOutFlow());
+        crc.reset();
+        crc.update(buffer.slice(position + 8, RECORD_SIZE - 8));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, RECORD_MAGIC);
+    }
+}
@@ -0,0 +1,388 @@
+package com.admin.common.flow;
+
+import com.admin.entity.FlowSeries;
+import com.admin.mapper.FlowSeriesMapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 近期流量环形缓冲区（实时看板）
+ * <p>
+ * 按用户、转发、节点维度保存最近的分钟流量和小时流量，供实时看板和用户套餐页的 24 小时图表读取，不查询数据库：
+ * 1. 每个维度把对象ID映射为连续的下标，所有对象的数据平铺在一个 long[] 中，每个对象占固定数量的槽位
+ * 2. 槽位按时间桶序号取模循环使用，写入新时间桶时清零中间过期的槽位
+ * 3. 读取时在读锁内直接遍历底层数组回调访问者，不复制数据
+ * 4. 每个维度跟踪的对象数有上限，超过 25 小时没有流量的对象定期回收；内存占用通过 getStats 报告
+ * 5. 启动时从 flow_series 表加载最近的分钟桶和小时桶；预热成功且没有因上限拒绝过对象时，
+ *    未跟踪的对象即视为近期没有流量，直接返回 0，不查询数据库
+ */
+@Slf4j
+@Component
+public class FlowRateRings {
+
+    // 24 个完整小时加当前小时
+    private static final int HOUR_SLOTS = 25;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    @Value("${flux.flow.rings.minute-slots:60}")
+    private int minuteSlots;
+
+    @Value("${flux.flow.rings.max-series:65536}")
+    private int maxSeries;
+
+    @Resource
+    private FlowSeriesMapper flowSeriesMapper;
+
+    private final Map<FlowSeriesStore.Dimension, SeriesTable> tables = new EnumMap<>(FlowSeriesStore.Dimension.class);
+
+    /**
+     * 槽位访问者，bucketTime 为时间桶起始时间，bytes 为该时间桶内的流量（in + out）
+     */
+    @FunctionalInterface
+    public interface SlotVisitor {
+        void visit(long bucketTime, long bytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        for (FlowSeriesStore.Dimension dimension : FlowSeriesStore.Dimension.values()) {
+            tables.put(dimension, new SeriesTable());
+        }
+        try {
+            warmUp();
+        } catch (Exception e) {
+            tables.values().forEach(table -> table.complete = false);
+            log.error("流量环形缓冲区预热失败，将只包含启动后的流量: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 累加一次流量
+     *
+     * @param dimension   统计维度
+     * @param targetId    用户ID、转发ID或节点ID
+     * @param bytes       流量（in + out）
+     * @param minuteStart 分钟桶起始时间
+     * @param hourStart   小时桶起始时间
+     */
+    public void add(FlowSeriesStore.Dimension dimension, long targetId, long bytes, long minuteStart, long hourStart) {
+        if (bytes == 0) {
+            return;
+        }
+        tables.get(dimension).add(targetId, bytes, minuteStart, hourStart);
+    }
+
+    /**
+     * 按时间升序访问区间内的时间桶，区间超出缓冲区时只访问缓冲区覆盖的部分
+     *
+     * @param dimension  统计维度
+     * @param targetId   用户ID、转发ID或节点ID
+     * @param resolution 统计粒度，只支持分钟和小时
+     * @param startTime  开始时间（毫秒，含）
+     * @param endTime    结束时间（毫秒，含）
+     * @param visitor    访问者，在读锁内回调，不能再调用本类的写方法
+     * @return 缓冲区无法确定该对象的数据或粒度不支持时返回false，调用方应回退到 FlowSeriesStore
+     */
+    public boolean read(FlowSeriesStore.Dimension dimension, long targetId, FlowSeriesStore.Resolution resolution,
+                        long startTime, long endTime, SlotVisitor visitor) {
+        return tables.get(dimension).read(targetId, resolution, startTime, endTime, visitor);
+    }
+
+    /**
+     * 停止跟踪某个对象
+     */
+    public void remove(FlowSeriesStore.Dimension dimension, long targetId) {
+        tables.get(dimension).remove(targetId);
+    }
+
+    /**
+     * 回收超过 25 小时没有流量的对象
+     */
+    @Scheduled(cron = "0 20 * * * ?")
+    public void evictIdle() {
+        long currentHour = Math.floorDiv(System.currentTimeMillis(), HOUR_MILLIS);
+        for (Map.Entry<FlowSeriesStore.Dimension, SeriesTable> entry : tables.entrySet()) {
+            int evicted = entry.getValue().evictBefore(currentHour - HOUR_SLOTS);
+            if (evicted > 0) {
+                log.info("回收流量环形缓冲区（{}）{} 个空闲对象", entry.getKey().getName(), evicted);
+            }
+        }
+    }
+
+    /**
+     * 获取各维度跟踪的对象数和内存占用
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("minuteSlots", minuteSlots);
+        stats.put("hourSlots", HOUR_SLOTS);
+        stats.put("maxSeries", maxSeries);
+        stats.put("bytesPerSeries", (long) (minuteSlots + HOUR_SLOTS + 2) * Long.BYTES + Long.BYTES);
+        long totalBytes = 0;
+        for (Map.Entry<FlowSeriesStore.Dimension, SeriesTable> entry : tables.entrySet()) {
+            Map<String, Object> item = entry.getValue().getStats();
+            totalBytes += (Long) item.get("allocatedBytes");
+            stats.put(entry.getKey().getName(), item);
+        }
+        stats.put("allocatedBytes", totalBytes);
+        return stats;
+    }
+
+    private void warmUp() {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        for (FlowSeriesStore.Dimension dimension : FlowSeriesStore.Dimension.values()) {
+            loaded += warmUp(dimension, FlowSeriesStore.Resolution.HOUR, now - HOUR_SLOTS * HOUR_MILLIS);
+            loaded += warmUp(dimension, FlowSeriesStore.Resolution.MINUTE, now - minuteSlots * MINUTE_MILLIS);
+        }
+        log.info("流量环形缓冲区预热完成，加载 {} 个时间桶", loaded);
+    }
+
+    private int warmUp(FlowSeriesStore.Dimension dimension, FlowSeriesStore.Resolution resolution, long since) {
+        List<FlowSeries> rows = flowSeriesMapper.selectList(new LambdaQueryWrapper<FlowSeries>()
+                .eq(FlowSeries::getDimension, dimension.getCode())
+                .eq(FlowSeries::getResolution, resolution.getCode())
+                .ge(FlowSeries::getBucketTime, since));
+        SeriesTable table = tables.get(dimension);
+        for (FlowSeries row : rows) {
+            table.load(row.getTargetId(), resolution, row.getBucketTime(), row.getInFlow() + row.getOutFlow());
+        }
+        return rows.size();
+    }
+
+    /**
+     * 一个维度下所有对象的分钟环和小时环
+     */
+    private final class SeriesTable {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // 以下字段在锁内访问：对象ID → 下标，下标 → 对象ID，回收的下标
+        private final Map<Long, Integer> index = new HashMap<>();
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private final ArrayDeque<Integer> free = new ArrayDeque<>();
+        private int size;
+        private long rejected;
+        // 缓冲区是否包含所有近期有流量的对象
+        private volatile boolean complete = true;
+
+        private final Ring minute = new Ring(MINUTE_MILLIS, minuteSlots);
+        private final Ring hour = new Ring(HOUR_MILLIS, HOUR_SLOTS);
+
+        void add(long targetId, long bytes, long minuteStart, long hourStart) {
+            lock.writeLock().lock();
+            try {
+                int slot = slotOf(targetId);
+                if (slot < 0) {
+                    return;
+                }
+                minute.add(slot, minuteStart, bytes);
+                hour.add(slot, hourStart, bytes);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void load(long targetId, FlowSeriesStore.Resolution resolution, long bucketTime, long bytes) {
+            lock.writeLock().lock();
+            try {
+                int slot = slotOf(targetId);
+                if (slot < 0) {
+                    return;
+                }
+                (resolution == FlowSeriesStore.Resolution.MINUTE ? minute : hour).add(slot, bucketTime, bytes);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean read(long targetId, FlowSeriesStore.Resolution resolution, long startTime, long endTime,
+                     SlotVisitor visitor) {
+            Ring ring;
+            if (resolution == FlowSeriesStore.Resolution.MINUTE) {
+                ring = minute;
+            } else if (resolution == FlowSeriesStore.Resolution.HOUR) {
+                ring = hour;
+            } else {
+                return false;
+            }
+            lock.readLock().lock();
+            try {
+                Integer slot = index.get(targetId);
+                if (slot == null && !complete) {
+                    return false;
+                }
+                ring.read(slot == null ? -1 : slot, startTime, endTime, visitor);
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void remove(long targetId) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = index.remove(targetId);
+                if (slot != null) {
+                    release(slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        int evictBefore(long hourIndex) {
+            lock.writeLock().lock();
+            try {
+                int evicted = 0;
+                for (int slot = 0; slot < size; slot++) {
+                    long head = hour.heads[slot];
+                    if (head != EMPTY && head < hourIndex) {
+                        index.remove(ids[slot]);
+                        release(slot);
+                        evicted++;
+                    }
+                }
+                return evicted;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        Map<String, Object> getStats() {
+            lock.readLock().lock();
+            try {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("series", index.size());
+                stats.put("capacity", ids.length);
+                stats.put("rejected", rejected);
+                stats.put("complete", complete);
+                stats.put("allocatedBytes", (long) ids.length * Long.BYTES + minute.allocatedBytes() + hour.allocatedBytes());
+                return stats;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * 获取或分配对象的下标，达到上限时返回-1
+         */
+        private int slotOf(long targetId) {
+            Integer slot = index.get(targetId);
+            if (slot != null) {
+                return slot;
+            }
+            if (!free.isEmpty()) {
+                slot = free.poll();
+            } else if (size < maxSeries) {
+                if (size == ids.length) {
+                    int capacity = Math.min(ids.length * 2, maxSeries);
+                    ids = Arrays.copyOf(ids, capacity);
+                    minute.grow(capacity);
+                    hour.grow(capacity);
+                }
+                slot = size++;
+            } else {
+                rejected++;
+                complete = false;
+                return -1;
+            }
+            ids[slot] = targetId;
+            index.put(targetId, slot);
+            return slot;
+        }
+
+        private void release(int slot) {
+            minute.heads[slot] = EMPTY;
+            hour.heads[slot] = EMPTY;
+            free.add(slot);
+        }
+    }
+
+    /**
+     * 一种粒度的环形缓冲区，对象 i 占用 data[i * slots, (i + 1) * slots)
+     */
+    private static final class Ring {
+        private final long slotMillis;
+        private final int slots;
+        private long[] data;
+        // 每个对象最近写入的时间桶序号，EMPTY 表示没有数据
+        private long[] heads;
+        // 时间桶起始时间相对 slotMillis 整倍数的偏移（服务器时区非整点偏移时不为 0）
+        private long phase;
+
+        Ring(long slotMillis, int slots) {
+            this.slotMillis = slotMillis;
+            this.slots = slots;
+            this.data = new long[INITIAL_CAPACITY * slots];
+            this.heads = new long[INITIAL_CAPACITY];
+            Arrays.fill(heads, EMPTY);
+        }
+
+        void grow(int capacity) {
+            int previous = heads.length;
+            data = Arrays.copyOf(data, capacity * slots);
+            heads = Arrays.copyOf(heads, capacity);
+            Arrays.fill(heads, previous, capacity, EMPTY);
+        }
+
+        void add(int slot, long bucketStart, long bytes) {
+            long bucket = Math.floorDiv(bucketStart, slotMillis);
+            phase = bucketStart - bucket * slotMillis;
+            int base = slot * slots;
+            long head = heads[slot];
+            if (head == EMPTY || bucket - head >= slots) {
+                Arrays.fill(data, base, base + slots, 0L);
+                heads[slot] = bucket;
+            } else if (bucket > head) {
+                for (long b = head + 1; b <= bucket; b++) {
+                    data[base + (int) Math.floorMod(b, (long) slots)] = 0L;
+                }
+                heads[slot] = bucket;
+            } else if (bucket <= head - slots) {
+                // 早于缓冲区覆盖范围
+                return;
+            }
+            data[base + (int) Math.floorMod(bucket, (long) slots)] += bytes;
+        }
+
+        /**
+         * 访问对象的时间桶，slot 为 -1 时按全 0 访问
+         */
+        void read(int slot, long startTime, long endTime, SlotVisitor visitor) {
+            long first = Math.floorDiv(startTime - phase, slotMillis);
+            long last = Math.floorDiv(endTime - phase, slotMillis);
+            first = Math.max(first, last - slots + 1);
+            int base = slot * slots;
+            long head = slot < 0 ? EMPTY : heads[slot];
+            for (long b = first; b <= last; b++) {
+                long bytes = head == EMPTY || b > head || b <= head - slots
+                        ? 0L : data[base + (int) Math.floorMod(b, (long) slots)];
+                visitor.visit(b * slotMillis + phase, bytes);
+            }
+        }
+
+        long allocatedBytes() {
+            return (long) data.length * Long.BYTES + (long) heads.length * Long.BYTES;
+        }
+    }
+}
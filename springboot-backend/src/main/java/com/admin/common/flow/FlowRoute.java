@@ -0,0 +1,39 @@
+package com.admin.common.flow;
+
+import lombok.Getter;
+
+/**
+ * 转发的流量路由信息（不可变）
+ * 由 FlowRoutingTable 预编译，流量上报时直接按转发ID查表
+ */
+@Getter
+public final class FlowRoute {
+
+    private final long forwardId;
+
+    private final long userId;
+
+    // 用户隧道权限ID，管理员或未分配权限时为0
+    private final long userTunnelId;
+
+    private final long tunnelId;
+
+    private final int tunnelType;
+
+    // 出口节点倍率之和（定点数，仅隧道转发），入口倍率在上报时按上报节点取
+    private final long outRatio;
+
+    // 转发的远程目标地址，用于流量排行
+    private final String remoteAddr;
+
+    public FlowRoute(long forwardId, long userId, long userTunnelId, long tunnelId, int tunnelType, long outRatio,
+                     String remoteAddr) {
+        this.forwardId = forwardId;
+        this.userId = userId;
+        this.userTunnelId = userTunnelId;
+        this.tunnelId = tunnelId;
+        this.tunnelType = tunnelType;
+        this.outRatio = outRatio;
+        this.remoteAddr = remoteAddr;
+    }
+}
@@ -0,0 +1,510 @@
+package com.admin.common.flow;
+
+import com.admin.entity.Forward;
+import com.admin.entity.Node;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.mapper.ForwardMapper;
+import com.admin.mapper.NodeMapper;
+import com.admin.mapper.TunnelMapper;
+import com.admin.mapper.UserTunnelMapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流量上报路由表
+ * <p>
+ * 预编译 转发ID → (用户ID, 用户隧道ID, 隧道类型, 出口倍率) 的不可变快照，
+ * 上报热路径只做一次 Map 查找和一次定点数乘法，不访问数据库、不创建 BigDecimal。
+ * <p>
+ * 1. 启动时全量构建，之后按固定间隔全量重建兜底
+ * 2. 转发、隧道、节点、用户隧道权限变更时由对应 Service 调用 refresh/remove 增量更新
+ * 3. 写操作串行执行，复制后整体替换快照（copy-on-write），读操作无锁
+ * 4. 查不到的转发按需从数据库加载一次（例如转发刚创建、尚未刷新路由），数据库中也不存在的转发ID
+ *    在 MISSING_FORWARD_TTL_MS 内不再查询；这类ID最多记录 MAX_MISSING_FORWARDS 个，满时先清理过期的，仍满则不再记录
+ * 5. 节点、隧道、转发独立于用户隧道权限加载，user_tunnel 加载失败只影响权限级计费，不影响倍率
+ */
+@Slf4j
+@Component
+public class FlowRoutingTable {
+
+    /**
+     * 倍率定点数精度：1.0 = 10000
+     */
+    public static final long RATIO_SCALE = 10000L;
+
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+
+    // 数据库中不存在的转发ID短时间内不再重复查询
+    private static final long MISSING_FORWARD_TTL_MS = 60000L;
+
+    // 节点上报的无效转发ID不可信，记录数量设上限
+    private static final int MAX_MISSING_FORWARDS = 10000;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final ConcurrentHashMap<Long, Long> missingForwards = new ConcurrentHashMap<>();
+
+    @Resource
+    private ForwardMapper forwardMapper;
+
+    @Resource
+    private TunnelMapper tunnelMapper;
+
+    @Resource
+    private NodeMapper nodeMapper;
+
+    @Resource
+    private UserTunnelMapper userTunnelMapper;
+
+    @PostConstruct
+    public void init() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("流量路由表初始化失败，将按需加载: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定时全量重建，兜底未覆盖到的变更路径
+     */
+    @Scheduled(fixedDelayString = "${flux.flow.routing.rebuild-interval-ms:300000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("流量路由表重建失败: {}", e.getMessage());
+        }
+    }
+
+    // ========== 读取 ==========
+
+    /**
+     * 获取转发的路由信息，快照中不存在时从数据库加载
+     *
+     * @param forwardId 转发ID
+     * @return 路由信息，转发或隧道不存在时返回null
+     */
+    public FlowRoute getRoute(long forwardId) {
+        FlowRoute route = snapshot.routes.get(forwardId);
+        if (route != null) {
+            return route;
+        }
+        Long missingAt = missingForwards.get(forwardId);
+        if (missingAt != null && System.currentTimeMillis() - missingAt < MISSING_FORWARD_TTL_MS) {
+            return null;
+        }
+        route = refreshForward(forwardId);
+        if (route == null) {
+            markMissing(forwardId);
+        }
+        return route;
+    }
+
+    private void markMissing(long forwardId) {
+        long now = System.currentTimeMillis();
+        if (missingForwards.size() >= MAX_MISSING_FORWARDS) {
+            missingForwards.values().removeIf(missingAt -> now - missingAt >= MISSING_FORWARD_TTL_MS);
+            if (missingForwards.size() >= MAX_MISSING_FORWARDS) {
+                return;
+            }
+        }
+        missingForwards.put(forwardId, now);
+    }
+
+    /**
+     * 计算上报节点对应的有效倍率（定点数）
+     * 端口转发：入口节点倍率；隧道转发：入口节点倍率 + 出口节点倍率之和
+     */
+    public long effectiveRatio(FlowRoute route, Node reportingNode) {
+        Long inRatio = reportingNode == null ? null : snapshot.nodeRatios.get(reportingNode.getId());
+        if (inRatio == null) {
+            inRatio = reportingNode == null ? RATIO_SCALE : toFixedRatio(reportingNode.getTrafficRatio());
+        }
+        return inRatio + route.getOutRatio();
+    }
+
+    /**
+     * 按定点倍率换算流量，结果向零截断（与 BigDecimal.longValue() 一致）
+     */
+    public static long applyRatio(long bytes, long ratio) {
+        if (ratio == RATIO_SCALE) {
+            return bytes;
+        }
+        long high = Math.multiplyHigh(bytes, ratio);
+        long low = bytes * ratio;
+        if (high == (low >> 63)) {
+            return low / RATIO_SCALE;
+        }
+        // 乘积溢出时拆分计算
+        return (bytes / RATIO_SCALE) * ratio + (bytes % RATIO_SCALE) * ratio / RATIO_SCALE;
+    }
+
+    /**
+     * 倍率转换为定点数，超出4位小数的部分四舍五入
+     */
+    public static long toFixedRatio(BigDecimal ratio) {
+        if (ratio == null) {
+            return RATIO_SCALE;
+        }
+        return ratio.setScale(4, RoundingMode.HALF_UP).movePointRight(4).longValue();
+    }
+
+    public int size() {
+        return snapshot.routes.size();
+    }
+
+    // ========== 全量构建 ==========
+
+    /**
+     * 全量重建路由快照
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Snapshot current = snapshot;
+
+        Map<Long, Long> nodeRatios = new HashMap<>();
+        for (Node node : nodeMapper.selectList(new QueryWrapper<Node>().select("id", "traffic_ratio"))) {
+            nodeRatios.put(node.getId(), toFixedRatio(node.getTrafficRatio()));
+        }
+
+        Map<Long, TunnelInfo> tunnels = new HashMap<>();
+        for (Tunnel tunnel : tunnelMapper.selectList(new QueryWrapper<Tunnel>()
+                .select("id", "type", "out_node_id", "out_node_ids"))) {
+            tunnels.put(tunnel.getId(), compileTunnel(tunnel, nodeRatios));
+        }
+
+        Map<Long, Long> userTunnels = loadUserTunnels(current.userTunnels);
+
+        Map<Long, FlowRoute> routes = new HashMap<>();
+        for (Forward forward : forwardMapper.selectList(new QueryWrapper<Forward>()
+                .select("id", "user_id", "tunnel_id", "remote_addr"))) {
+            FlowRoute route = compileRoute(forward, tunnels, userTunnels);
+            if (route != null) {
+                routes.put(forward.getId(), route);
+            }
+        }
+
+        snapshot = new Snapshot(routes, tunnels, nodeRatios, userTunnels);
+        missingForwards.clear();
+        log.info("流量路由表重建完成，转发 {} 条，耗时 {}ms", routes.size(), System.currentTimeMillis() - start);
+    }
+
+    // ========== 增量更新 ==========
+
+    /**
+     * 转发创建或更新后刷新路由
+     *
+     * @return 最新路由，转发或隧道不存在时返回null
+     */
+    public synchronized FlowRoute refreshForward(long forwardId) {
+        missingForwards.remove(forwardId);
+        Forward forward = forwardMapper.selectById(forwardId);
+        Snapshot current = snapshot;
+        Map<Long, FlowRoute> routes = new HashMap<>(current.routes);
+        Map<Long, TunnelInfo> tunnels = current.tunnels;
+        Map<Long, Long> nodeRatios = current.nodeRatios;
+
+        FlowRoute route = null;
+        if (forward != null && forward.getTunnelId() != null) {
+            long tunnelId = forward.getTunnelId().longValue();
+            if (!tunnels.containsKey(tunnelId)) {
+                Tunnel tunnel = tunnelMapper.selectById(tunnelId);
+                if (tunnel != null) {
+                    nodeRatios = withOutNodeRatios(tunnel, nodeRatios);
+                    tunnels = new HashMap<>(tunnels);
+                    tunnels.put(tunnelId, compileTunnel(tunnel, nodeRatios));
+                }
+            }
+            route = compileRoute(forward, tunnels, current.userTunnels);
+        }
+
+        if (route != null) {
+            routes.put(forwardId, route);
+        } else if (routes.remove(forwardId) == null && tunnels == current.tunnels) {
+            // 快照无变化，不必替换
+            return null;
+        }
+        snapshot = new Snapshot(routes, tunnels, nodeRatios, current.userTunnels);
+        return route;
+    }
+
+    /**
+     * 转发删除后移除路由
+     */
+    public synchronized void removeForward(long forwardId) {
+        Snapshot current = snapshot;
+        if (!current.routes.containsKey(forwardId)) {
+            return;
+        }
+        Map<Long, FlowRoute> routes = new HashMap<>(current.routes);
+        routes.remove(forwardId);
+        snapshot = new Snapshot(routes, current.tunnels, current.nodeRatios, current.userTunnels);
+    }
+
+    /**
+     * 隧道创建或更新后刷新隧道及其下所有转发的路由
+     */
+    public synchronized void refreshTunnel(long tunnelId) {
+        Tunnel tunnel = tunnelMapper.selectById(tunnelId);
+        Snapshot current = snapshot;
+        Map<Long, TunnelInfo> tunnels = new HashMap<>(current.tunnels);
+        Map<Long, Long> nodeRatios = current.nodeRatios;
+        if (tunnel == null) {
+            tunnels.remove(tunnelId);
+        } else {
+            nodeRatios = withOutNodeRatios(tunnel, nodeRatios);
+            tunnels.put(tunnelId, compileTunnel(tunnel, nodeRatios));
+        }
+        Map<Long, FlowRoute> routes = recompileRoutes(current.routes, Collections.singleton(tunnelId), tunnels, current.userTunnels);
+        snapshot = new Snapshot(routes, tunnels, nodeRatios, current.userTunnels);
+    }
+
+    /**
+     * 节点创建、更新或删除后刷新倍率，并重算以该节点为出口的隧道路由
+     */
+    public synchronized void refreshNode(long nodeId) {
+        Node node = nodeMapper.selectById(nodeId);
+        Snapshot current = snapshot;
+        Map<Long, Long> nodeRatios = new HashMap<>(current.nodeRatios);
+        if (node == null) {
+            nodeRatios.remove(nodeId);
+        } else {
+            nodeRatios.put(nodeId, toFixedRatio(node.getTrafficRatio()));
+        }
+
+        Map<Long, TunnelInfo> tunnels = new HashMap<>(current.tunnels);
+        Set<Long> affectedTunnels = new LinkedHashSet<>();
+        for (Map.Entry<Long, TunnelInfo> entry : current.tunnels.entrySet()) {
+            if (entry.getValue().containsOutNode(nodeId)) {
+                TunnelInfo old = entry.getValue();
+                tunnels.put(entry.getKey(), new TunnelInfo(old.type, old.outNodeIds, sumOutRatio(old.type, old.outNodeIds, nodeRatios)));
+                affectedTunnels.add(entry.getKey());
+            }
+        }
+        Map<Long, FlowRoute> routes = affectedTunnels.isEmpty()
+                ? current.routes
+                : recompileRoutes(current.routes, affectedTunnels, tunnels, current.userTunnels);
+        snapshot = new Snapshot(routes, tunnels, nodeRatios, current.userTunnels);
+    }
+
+    /**
+     * 用户隧道权限分配或移除后刷新该用户在该隧道下的转发路由
+     */
+    public synchronized void refreshUserTunnel(Integer userId, Integer tunnelId) {
+        if (userId == null || tunnelId == null) {
+            return;
+        }
+        UserTunnel userTunnel;
+        try {
+            userTunnel = userTunnelMapper.selectOne(new QueryWrapper<UserTunnel>()
+                    .select("id", "user_id", "tunnel_id")
+                    .eq("user_id", userId)
+                    .eq("tunnel_id", tunnelId)
+                    .last("LIMIT 1"));
+        } catch (Exception e) {
+            log.warn("加载用户隧道权限失败，保留原路由: {}", e.getMessage());
+            return;
+        }
+        Snapshot current = snapshot;
+        Map<Long, Long> userTunnels = new HashMap<>(current.userTunnels);
+        long key = userTunnelKey(userId, tunnelId);
+        if (userTunnel == null) {
+            userTunnels.remove(key);
+        } else {
+            userTunnels.put(key, userTunnel.getId().longValue());
+        }
+
+        long userTunnelId = userTunnel == null ? 0L : userTunnel.getId().longValue();
+        Map<Long, FlowRoute> routes = new HashMap<>(current.routes);
+        for (FlowRoute route : current.routes.values()) {
+            if (route.getUserId() == userId && route.getTunnelId() == tunnelId) {
+                routes.put(route.getForwardId(), new FlowRoute(route.getForwardId(), route.getUserId(), userTunnelId,
+                        route.getTunnelId(), route.getTunnelType(), route.getOutRatio(), route.getRemoteAddr()));
+            }
+        }
+        snapshot = new Snapshot(routes, current.tunnels, current.nodeRatios, userTunnels);
+    }
+
+    // ========== 内部方法 ==========
+
+    /**
+     * 加载用户隧道权限映射，失败时沿用上一份快照，不影响转发路由和倍率的构建
+     */
+    private Map<Long, Long> loadUserTunnels(Map<Long, Long> fallback) {
+        try {
+            Map<Long, Long> userTunnels = new HashMap<>();
+            for (UserTunnel userTunnel : userTunnelMapper.selectList(new QueryWrapper<UserTunnel>()
+                    .select("id", "user_id", "tunnel_id"))) {
+                userTunnels.put(userTunnelKey(userTunnel.getUserId(), userTunnel.getTunnelId()), userTunnel.getId().longValue());
+            }
+            return userTunnels;
+        } catch (Exception e) {
+            log.warn("加载用户隧道权限失败，沿用上次结果: {}", e.getMessage());
+            return fallback;
+        }
+    }
+
+    /**
+     * 补齐隧道出口节点的倍率，快照未构建或节点尚未刷新时从数据库加载，避免出口倍率按0计算
+     */
+    private Map<Long, Long> withOutNodeRatios(Tunnel tunnel, Map<Long, Long> nodeRatios) {
+        int type = tunnel.getType() == null ? 0 : tunnel.getType();
+        if (type != TUNNEL_TYPE_TUNNEL_FORWARD) {
+            return nodeRatios;
+        }
+        Map<Long, Long> result = nodeRatios;
+        for (long outNodeId : resolveOutNodeIds(tunnel)) {
+            if (result.containsKey(outNodeId)) {
+                continue;
+            }
+            Node node = nodeMapper.selectById(outNodeId);
+            if (node != null) {
+                if (result == nodeRatios) {
+                    result = new HashMap<>(nodeRatios);
+                }
+                result.put(outNodeId, toFixedRatio(node.getTrafficRatio()));
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, FlowRoute> recompileRoutes(Map<Long, FlowRoute> routes, Set<Long> tunnelIds,
+                                                 Map<Long, TunnelInfo> tunnels, Map<Long, Long> userTunnels) {
+        Map<Long, FlowRoute> result = new HashMap<>(routes);
+        for (FlowRoute route : routes.values()) {
+            if (!tunnelIds.contains(route.getTunnelId())) {
+                continue;
+            }
+            TunnelInfo tunnel = tunnels.get(route.getTunnelId());
+            if (tunnel == null) {
+                result.remove(route.getForwardId());
+            } else {
+                result.put(route.getForwardId(), new FlowRoute(route.getForwardId(), route.getUserId(),
+                        route.getUserTunnelId(), route.getTunnelId(), tunnel.type, tunnel.outRatio, route.getRemoteAddr()));
+            }
+        }
+        return result;
+    }
+
+    private FlowRoute compileRoute(Forward forward, Map<Long, TunnelInfo> tunnels, Map<Long, Long> userTunnels) {
+        if (forward == null || forward.getTunnelId() == null || forward.getUserId() == null) {
+            return null;
+        }
+        TunnelInfo tunnel = tunnels.get(forward.getTunnelId().longValue());
+        if (tunnel == null) {
+            return null;
+        }
+        Long userTunnelId = userTunnels.get(userTunnelKey(forward.getUserId(), forward.getTunnelId()));
+        return new FlowRoute(forward.getId(), forward.getUserId(), userTunnelId == null ? 0L : userTunnelId,
+                forward.getTunnelId(), tunnel.type, tunnel.outRatio, forward.getRemoteAddr());
+    }
+
+    private TunnelInfo compileTunnel(Tunnel tunnel, Map<Long, Long> nodeRatios) {
+        int type = tunnel.getType() == null ? 0 : tunnel.getType();
+        long[] outNodeIds = resolveOutNodeIds(tunnel);
+        return new TunnelInfo(type, outNodeIds, sumOutRatio(type, outNodeIds, nodeRatios));
+    }
+
+    private long sumOutRatio(int type, long[] outNodeIds, Map<Long, Long> nodeRatios) {
+        if (type != TUNNEL_TYPE_TUNNEL_FORWARD) {
+            return 0L;
+        }
+        long sum = 0L;
+        for (long outNodeId : outNodeIds) {
+            Long ratio = nodeRatios.get(outNodeId);
+            if (ratio != null) {
+                sum += ratio;
+            }
+        }
+        return sum;
+    }
+
+    private long[] resolveOutNodeIds(Tunnel tunnel) {
+        Set<Long> outNodeIds = new LinkedHashSet<>();
+        if (tunnel.getOutNodeIds() != null && !tunnel.getOutNodeIds().trim().isEmpty()) {
+            for (String part : tunnel.getOutNodeIds().split(",")) {
+                String trimmed = part.trim();
+                if (!trimmed.isEmpty()) {
+                    try {
+                        outNodeIds.add(Long.parseLong(trimmed));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        if (outNodeIds.isEmpty() && tunnel.getOutNodeId() != null) {
+            outNodeIds.add(tunnel.getOutNodeId());
+        }
+        List<Long> ids = new ArrayList<>(outNodeIds);
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static long userTunnelKey(long userId, long tunnelId) {
+        return (userId << 32) | (tunnelId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 隧道的编译结果
+     */
+    private static final class TunnelInfo {
+        private final int type;
+        private final long[] outNodeIds;
+        private final long outRatio;
+
+        TunnelInfo(int type, long[] outNodeIds, long outRatio) {
+            this.type = type;
+            this.outNodeIds = outNodeIds;
+            this.outRatio = outRatio;
+        }
+
+        boolean containsOutNode(long nodeId) {
+            for (long id : outNodeIds) {
+                if (id == nodeId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 路由快照，构建后不再修改
+     */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+        private final Map<Long, FlowRoute> routes;
+        private final Map<Long, TunnelInfo> tunnels;
+        private final Map<Long, Long> nodeRatios;
+        private final Map<Long, Long> userTunnels;
+
+        Snapshot(Map<Long, FlowRoute> routes, Map<Long, TunnelInfo> tunnels,
+                 Map<Long, Long> nodeRatios, Map<Long, Long> userTunnels) {
+            this.routes = routes;
+            this.tunnels = tunnels;
+            this.nodeRatios = nodeRatios;
+            this.userTunnels = userTunnels;
+        }
+    }
+}
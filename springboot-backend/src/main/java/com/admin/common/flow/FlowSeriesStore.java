@@ -0,0 +1,464 @@
+package com.admin.common.flow;
+
+import com.admin.common.task.RetentionManager;
+import com.admin.common.task.RetentionPolicy;
+import com.admin.entity.FlowSeries;
+import com.admin.mapper.FlowSeriesMapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多粒度流量时序存储
+ * <p>
+ * 分片线程交接流量时按当前时间，分别以用户、转发、上报节点为维度记录到三个粒度的时间桶：
+ * 1. 分钟桶默认保留 48 小时，小时桶默认保留 90 天，天桶永久保留；过期数据由 RetentionManager 按索引分批清理
+ * 2. 三个粒度在记录时同时累加（增量汇总），不需要回扫明细数据生成小时、天数据
+ * 3. 每个用户的流量同时累加到用户ID为 0 的全体汇总序列
+ * 4. 增量先在内存中聚合，由流量检查点批量 upsert 到 flow_series 表，写库失败的增量保留在内存中下次重试
+ * 5. 区间查询按主键范围读取，并合并内存中尚未写库的增量，缺失的时间桶补 0
+ * 6. 排行查询按维度汇总区间内各对象的流量，用于定位流量最大的转发或节点
+ * 7. 同时写入 FlowRateRings，最近的分钟、小时数据由环形缓冲区直接提供
+ * <p>
+ * 时序数据仅用于统计展示，不参与计费：检查点写库失败后进程崩溃会丢失这部分增量，
+ * 而日志回放的增量按回放时间重新记录。
+ */
+@Slf4j
+@Component
+public class FlowSeriesStore {
+
+    // 全体用户汇总序列的用户ID
+    public static final long ALL_USERS = 0L;
+
+    private static final int UPSERT_BATCH_SIZE = 500;
+
+    // 单次区间查询最多返回的数据点
+    private static final int MAX_POINTS = 2000;
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    private static final Comparator<FlowSeries> KEY_ORDER = Comparator
+            .comparing(FlowSeries::getDimension)
+            .thenComparing(FlowSeries::getTargetId)
+            .thenComparing(FlowSeries::getResolution)
+            .thenComparing(FlowSeries::getBucketTime);
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // 尚未写库的增量：时间桶 → [下载, 上传]
+    private final ConcurrentHashMap<SeriesKey, long[]> pending = new ConcurrentHashMap<>();
+
+    // 最近一次计算的时间桶：[分钟桶, 小时桶, 天桶]，同一分钟内的记录直接复用
+    private volatile long[] currentBuckets = new long[RESOLUTIONS.length];
+
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+
+    @Value("${flux.retention.flow-series-minute-hours:48}")
+    private long minuteRetentionHours;
+
+    @Value("${flux.retention.flow-series-hour-days:90}")
+    private long hourRetentionDays;
+
+    @Resource
+    private FlowSeriesMapper flowSeriesMapper;
+
+    @Resource
+    private FlowRateRings flowRateRings;
+
+    @Resource
+    private RetentionManager retentionManager;
+
+    /**
+     * 为每个维度的分钟桶和小时桶注册保留策略，条件覆盖 (dimension, resolution, bucket_time) 索引
+     */
+    @PostConstruct
+    public void init() {
+        for (Dimension dimension : Dimension.values()) {
+            registerRetention(dimension, Resolution.MINUTE, TimeUnit.HOURS.toMillis(minuteRetentionHours));
+            registerRetention(dimension, Resolution.HOUR, TimeUnit.DAYS.toMillis(hourRetentionDays));
+        }
+    }
+
+    /**
+     * 记录一次流量
+     *
+     * @param dimension 统计维度
+     * @param targetId  用户ID、转发ID或节点ID
+     * @param inFlow    下载流量
+     * @param outFlow   上传流量
+     * @param timestamp 流量发生时间（毫秒）
+     */
+    public void record(Dimension dimension, long targetId, long inFlow, long outFlow, long timestamp) {
+        if (inFlow == 0 && outFlow == 0) {
+            return;
+        }
+        long[] buckets = bucketsOf(timestamp);
+        long minuteStart = buckets[Resolution.MINUTE.ordinal()];
+        long hourStart = buckets[Resolution.HOUR.ordinal()];
+        flowRateRings.add(dimension, targetId, inFlow + outFlow, minuteStart, hourStart);
+        if (dimension == Dimension.USER && targetId != ALL_USERS) {
+            flowRateRings.add(Dimension.USER, ALL_USERS, inFlow + outFlow, minuteStart, hourStart);
+        }
+        for (Resolution resolution : RESOLUTIONS) {
+            long bucket = buckets[resolution.ordinal()];
+            add(new SeriesKey(dimension, targetId, resolution, bucket), inFlow, outFlow);
+            if (dimension == Dimension.USER && targetId != ALL_USERS) {
+                add(new SeriesKey(Dimension.USER, ALL_USERS, resolution, bucket), inFlow, outFlow);
+            }
+        }
+    }
+
+    /**
+     * 将内存中的增量批量写入数据库
+     *
+     * @return 全部写入成功返回true
+     */
+    public boolean flush() {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        List<FlowSeries> rows = new ArrayList<>(pending.size());
+        for (SeriesKey key : pending.keySet()) {
+            // remove 与 record 中的 compute 对同一个键互斥，移除后的新增量会进入新的条目
+            long[] value = pending.remove(key);
+            if (value == null || (value[0] == 0 && value[1] == 0)) {
+                continue;
+            }
+            rows.add(key.toRow(value[0], value[1]));
+        }
+        // 按主键排序，保证多实例并发写入时加锁顺序一致
+        rows.sort(KEY_ORDER);
+
+        boolean success = true;
+        for (int i = 0; i < rows.size(); i += UPSERT_BATCH_SIZE) {
+            List<FlowSeries> batch = rows.subList(i, Math.min(i + UPSERT_BATCH_SIZE, rows.size()));
+            try {
+                flowSeriesMapper.batchUpsert(batch);
+                flushedRows.add(batch.size());
+            } catch (Exception e) {
+                log.error("批量写入流量时序失败，{}条增量将在下次重试: {}", batch.size(), e.getMessage());
+                for (FlowSeries row : batch) {
+                    add(new SeriesKey(Dimension.of(row.getDimension()), row.getTargetId(),
+                                    Resolution.of(row.getResolution()), row.getBucketTime()),
+                            row.getInFlow(), row.getOutFlow());
+                }
+                failedRows.add(batch.size());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 区间查询，返回按时间升序、补齐空桶的数据点
+     *
+     * @param dimension  统计维度
+     * @param targetId   用户ID、转发ID或节点ID，用户维度下 0 表示全体用户汇总
+     * @param resolution 统计粒度
+     * @param startTime  开始时间（毫秒，含）
+     * @param endTime    结束时间（毫秒，含）
+     * @return 数据点列表，最多 MAX_POINTS 个
+     */
+    public List<FlowSeries> query(Dimension dimension, long targetId, Resolution resolution, long startTime, long endTime) {
+        long start = bucketOf(startTime, resolution);
+        if (endTime < start) {
+            return new ArrayList<>();
+        }
+        List<FlowSeries> rows = flowSeriesMapper.selectList(new LambdaQueryWrapper<FlowSeries>()
+                .eq(FlowSeries::getDimension, dimension.getCode())
+                .eq(FlowSeries::getTargetId, targetId)
+                .eq(FlowSeries::getResolution, resolution.getCode())
+                .ge(FlowSeries::getBucketTime, start)
+                .le(FlowSeries::getBucketTime, endTime));
+        Map<Long, FlowSeries> stored = new HashMap<>(rows.size() * 4 / 3 + 1);
+        for (FlowSeries row : rows) {
+            stored.put(row.getBucketTime(), row);
+        }
+
+        List<FlowSeries> points = new ArrayList<>();
+        for (long bucket = start; bucket <= endTime && points.size() < MAX_POINTS; bucket = nextBucket(bucket, resolution)) {
+            FlowSeries row = stored.get(bucket);
+            long inFlow = row == null ? 0 : row.getInFlow();
+            long outFlow = row == null ? 0 : row.getOutFlow();
+            SeriesKey key = new SeriesKey(dimension, targetId, resolution, bucket);
+            long[] unflushed = pending.get(key);
+            if (unflushed != null) {
+                inFlow += unflushed[0];
+                outFlow += unflushed[1];
+            }
+            points.add(key.toRow(inFlow, outFlow));
+        }
+        return points;
+    }
+
+    /**
+     * 按时间范围内的总流量对同一维度下的对象排序，用于定位流量最大的转发或节点
+     *
+     * @param dimension  统计维度
+     * @param resolution 统计粒度
+     * @param startTime  开始时间（毫秒，含）
+     * @param endTime    结束时间（毫秒，含）
+     * @param limit      返回条数
+     * @return 按总流量倒序的汇总行，bucketTime 为区间起始时间桶
+     */
+    public List<FlowSeries> rank(Dimension dimension, Resolution resolution, long startTime, long endTime, int limit) {
+        long start = bucketOf(startTime, resolution);
+        Map<Long, FlowSeries> totals = new HashMap<>();
+        for (FlowSeries row : flowSeriesMapper.sumByTarget(dimension.getCode(), resolution.getCode(), start, endTime)) {
+            totals.put(row.getTargetId(), new SeriesKey(dimension, row.getTargetId(), resolution, start)
+                    .toRow(row.getInFlow(), row.getOutFlow()));
+        }
+        for (Map.Entry<SeriesKey, long[]> entry : pending.entrySet()) {
+            SeriesKey key = entry.getKey();
+            if (key.dimension != dimension || key.resolution != resolution
+                    || key.bucketTime < start || key.bucketTime > endTime) {
+                continue;
+            }
+            FlowSeries total = totals.computeIfAbsent(key.targetId,
+                    id -> new SeriesKey(dimension, id, resolution, start).toRow(0, 0));
+            total.setInFlow(total.getInFlow() + entry.getValue()[0]);
+            total.setOutFlow(total.getOutFlow() + entry.getValue()[1]);
+        }
+        if (dimension == Dimension.USER) {
+            totals.remove(ALL_USERS);
+        }
+
+        List<FlowSeries> ranked = new ArrayList<>(totals.values());
+        ranked.sort((a, b) -> Long.compare(b.getInFlow() + b.getOutFlow(), a.getInFlow() + a.getOutFlow()));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    /**
+     * 删除用户、转发或节点的全部时序数据
+     */
+    public void remove(Dimension dimension, Long targetId) {
+        pending.keySet().removeIf(key -> key.dimension == dimension && key.targetId == targetId);
+        flowRateRings.remove(dimension, targetId);
+        flowSeriesMapper.delete(new LambdaQueryWrapper<FlowSeries>()
+                .eq(FlowSeries::getDimension, dimension.getCode())
+                .eq(FlowSeries::getTargetId, targetId));
+    }
+
+    /**
+     * 获取时序存储统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingBuckets", pending.size());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("failedRows", failedRows.sum());
+        return stats;
+    }
+
+    /**
+     * 时间所在的时间桶起始时间
+     */
+    public long bucketOf(long timestamp, Resolution resolution) {
+        return Instant.ofEpochMilli(timestamp).atZone(zone).truncatedTo(resolution.getUnit()).toInstant().toEpochMilli();
+    }
+
+    private long nextBucket(long bucket, Resolution resolution) {
+        // 天桶按日历加一天，夏令时切换日不是 24 小时
+        ZonedDateTime time = Instant.ofEpochMilli(bucket).atZone(zone);
+        return time.plus(1, resolution.getUnit()).toInstant().toEpochMilli();
+    }
+
+    private void registerRetention(Dimension dimension, Resolution resolution, long retentionMillis) {
+        Map<String, Object> conditions = new LinkedHashMap<>();
+        conditions.put("dimension", dimension.getCode());
+        conditions.put("resolution", resolution.getCode());
+        retentionManager.register(RetentionPolicy.byIndex(
+                "flow_series/" + dimension.getName() + "/" + resolution.getName(),
+                "flow_series", conditions, "bucket_time", retentionMillis));
+    }
+
+    private long[] bucketsOf(long timestamp) {
+        long[] buckets = currentBuckets;
+        long minute = buckets[Resolution.MINUTE.ordinal()];
+        if (timestamp >= minute && timestamp - minute < 60_000L) {
+            return buckets;
+        }
+        long[] computed = new long[RESOLUTIONS.length];
+        for (Resolution resolution : RESOLUTIONS) {
+            computed[resolution.ordinal()] = bucketOf(timestamp, resolution);
+        }
+        currentBuckets = computed;
+        return computed;
+    }
+
+    private void add(SeriesKey key, long inFlow, long outFlow) {
+        pending.compute(key, (k, value) -> {
+            if (value == null) {
+                value = new long[2];
+            }
+            value[0] += inFlow;
+            value[1] += outFlow;
+            return value;
+        });
+    }
+
+    /**
+     * 统计维度
+     */
+    public enum Dimension {
+        USER(1, "user"),
+        FORWARD(2, "forward"),
+        NODE(3, "node");
+
+        private final int code;
+        private final String name;
+
+        Dimension(int code, String name) {
+            this.code = code;
+            this.name = name;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 按名称查找维度，不支持时返回null
+         */
+        public static Dimension of(String name) {
+            for (Dimension dimension : values()) {
+                if (dimension.name.equalsIgnoreCase(name)) {
+                    return dimension;
+                }
+            }
+            return null;
+        }
+
+        static Dimension of(int code) {
+            for (Dimension dimension : values()) {
+                if (dimension.code == code) {
+                    return dimension;
+                }
+            }
+            throw new IllegalArgumentException("未知的统计维度: " + code);
+        }
+    }
+
+    /**
+     * 统计粒度
+     */
+    public enum Resolution {
+        MINUTE(1, "minute", ChronoUnit.MINUTES),
+        HOUR(2, "hour", ChronoUnit.HOURS),
+        DAY(3, "day", ChronoUnit.DAYS);
+
+        private final int code;
+        private final String name;
+        private final ChronoUnit unit;
+
+        Resolution(int code, String name, ChronoUnit unit) {
+            this.code = code;
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+
+        /**
+         * 按名称查找粒度，不支持时返回null
+         */
+        public static Resolution of(String name) {
+            for (Resolution resolution : values()) {
+                if (resolution.name.equalsIgnoreCase(name)) {
+                    return resolution;
+                }
+            }
+            return null;
+        }
+
+        static Resolution of(int code) {
+            for (Resolution resolution : values()) {
+                if (resolution.code == code) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("未知的统计粒度: " + code);
+        }
+    }
+
+    /**
+     * 时间桶主键
+     */
+    private static final class SeriesKey {
+        private final Dimension dimension;
+        private final long targetId;
+        private final Resolution resolution;
+        private final long bucketTime;
+
+        SeriesKey(Dimension dimension, long targetId, Resolution resolution, long bucketTime) {
+            this.dimension = dimension;
+            this.targetId = targetId;
+            this.resolution = resolution;
+            this.bucketTime = bucketTime;
+        }
+
+        FlowSeries toRow(long inFlow, long outFlow) {
+            FlowSeries row = new FlowSeries();
+            row.setDimension(dimension.getCode());
+            row.setTargetId(targetId);
+            row.setResolution(resolution.getCode());
+            row.setBucketTime(bucketTime);
+            row.setInFlow(inFlow);
+            row.setOutFlow(outFlow);
+            return row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey that = (SeriesKey) o;
+            return targetId == that.targetId && bucketTime == that.bucketTime
+                    && dimension == that.dimension && resolution == that.resolution;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = dimension.ordinal();
+            result = 31 * result + Long.hashCode(targetId);
+            result = 31 * result + resolution.ordinal();
+            return 31 * result + Long.hashCode(bucketTime);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.admin.common.flow;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流量排行（Space-Saving 流式热点统计）
+ * <p>
+ * 分片线程交接流量时，按转发、用户、远程目标三个维度把字节数计入热点统计，查询最近 5 分钟、1 小时、24 小时的前 N 名，
+ * 不扫描 forward 表：
+ * 1. 每个统计器只保留固定数量的计数器（Space-Saving），新对象替换计数最小的对象并继承其计数作为误差上界，内存有界
+ * 2. 每个时间窗口由若干子窗口统计器组成环，子窗口过期后清空复用，查询时合并窗口内的子窗口
+ * 3. 结果中的 bytes 为估计值（不低于真实值），error 为可能的高估上界，bytes - error 为真实值的下界；
+ *    合并子窗口时，对象在某个已满子窗口中缺失的部分按该子窗口的最小计数补足，保持上述性质
+ */
+@Component
+public class TopTalkers {
+
+    @Value("${flux.flow.top.capacity:256}")
+    private int capacity;
+
+    @Resource
+    private FlowRoutingTable flowRoutingTable;
+
+    private final Map<Dimension, Map<Window, WindowedSketch>> sketches = new EnumMap<>(Dimension.class);
+
+    @PostConstruct
+    public void init() {
+        for (Dimension dimension : Dimension.values()) {
+            Map<Window, WindowedSketch> windows = new EnumMap<>(Window.class);
+            for (Window window : Window.values()) {
+                windows.put(window, new WindowedSketch(window, capacity));
+            }
+            sketches.put(dimension, windows);
+        }
+    }
+
+    /**
+     * 记录一次转发流量
+     *
+     * @param forwardId 转发ID
+     * @param userId    用户ID
+     * @param bytes     流量（in + out）
+     * @param timestamp 记录时间（毫秒）
+     */
+    public void record(long forwardId, long userId, long bytes, long timestamp) {
+        if (bytes <= 0) {
+            return;
+        }
+        offer(Dimension.FORWARD, forwardId, bytes, timestamp);
+        offer(Dimension.USER, userId, bytes, timestamp);
+        FlowRoute route = flowRoutingTable.getRoute(forwardId);
+        if (route != null && route.getRemoteAddr() != null) {
+            offer(Dimension.REMOTE, route.getRemoteAddr(), bytes, timestamp);
+        }
+    }
+
+    /**
+     * 查询窗口内流量最大的前 N 个对象
+     *
+     * @param dimension 统计维度
+     * @param window    时间窗口
+     * @param limit     返回条数，不超过统计器容量
+     * @return 按估计流量倒序的列表，每项包含 key、bytes、error
+     */
+    public List<Map<String, Object>> top(Dimension dimension, Window window, int limit) {
+        return sketches.get(dimension).get(window).top(Math.min(limit, capacity), System.currentTimeMillis());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void offer(Dimension dimension, Object key, long bytes, long timestamp) {
+        for (WindowedSketch sketch : sketches.get(dimension).values()) {
+            sketch.offer(key, bytes, timestamp);
+        }
+    }
+
+    /**
+     * 统计维度
+     */
+    public enum Dimension {
+        FORWARD("forward"),
+        USER("user"),
+        REMOTE("remote");
+
+        private final String name;
+
+        Dimension(String name) {
+            this.name = name;
+        }
+
+        public static Dimension of(String name) {
+            for (Dimension dimension : values()) {
+                if (dimension.name.equalsIgnoreCase(name)) {
+                    return dimension;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 时间窗口：窗口由 subWindows 个长度为 subWindowMillis 的子窗口组成
+     */
+    public enum Window {
+        FIVE_MINUTES("5m", 60_000L, 5),
+        ONE_HOUR("1h", 300_000L, 12),
+        ONE_DAY("24h", 3_600_000L, 24);
+
+        private final String name;
+        private final long subWindowMillis;
+        private final int subWindows;
+
+        Window(String name, long subWindowMillis, int subWindows) {
+            this.name = name;
+            this.subWindowMillis = subWindowMillis;
+            this.subWindows = subWindows;
+        }
+
+        public static Window of(String name) {
+            for (Window window : values()) {
+                if (window.name.equalsIgnoreCase(name)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 滑动窗口：子窗口统计器组成的环
+     */
+    private static final class WindowedSketch {
+        private final Window window;
+        private final SpaceSaving[] ring;
+        private final long[] epochs;
+
+        WindowedSketch(Window window, int capacity) {
+            this.window = window;
+            this.ring = new SpaceSaving[window.subWindows];
+            this.epochs = new long[window.subWindows];
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = new SpaceSaving(capacity);
+                epochs[i] = -1;
+            }
+        }
+
+        synchronized void offer(Object key, long bytes, long timestamp) {
+            long epoch = timestamp / window.subWindowMillis;
+            int index = (int) (epoch % ring.length);
+            if (epochs[index] != epoch) {
+                ring[index].clear();
+                epochs[index] = epoch;
+            }
+            ring[index].offer(key, bytes);
+        }
+
+        synchronized List<Map<String, Object>> top(int limit, long now) {
+            long current = now / window.subWindowMillis;
+            // 合并窗口内各子窗口的计数和误差：[计数, 误差, 出现该对象的子窗口最小计数之和]
+            Map<Object, long[]> merged = new HashMap<>();
+            long totalMin = 0;
+            for (int i = 0; i < ring.length; i++) {
+                if (epochs[i] < 0 || epochs[i] <= current - ring.length) {
+                    continue;
+                }
+                long min = ring[i].minCount();
+                totalMin += min;
+                ring[i].forEach((key, count, error) -> {
+                    long[] total = merged.computeIfAbsent(key, k -> new long[3]);
+                    total[0] += count;
+                    total[1] += error;
+                    total[2] += min;
+                });
+            }
+            // 对象在某个已满的子窗口中不存在时，其真实计数不超过该子窗口的最小计数，计入估计值和误差
+            for (long[] total : merged.values()) {
+                long missing = totalMin - total[2];
+                total[0] += missing;
+                total[1] += missing;
+            }
+            List<Map.Entry<Object, long[]>> entries = new ArrayList<>(merged.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+            List<Map<String, Object>> result = new ArrayList<>(Math.min(limit, entries.size()));
+            for (Map.Entry<Object, long[]> entry : entries) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("key", entry.getKey());
+                item.put("bytes", entry.getValue()[0]);
+                item.put("error", entry.getValue()[1]);
+                result.add(item);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Space-Saving 统计器：固定容量的计数器，按计数组织为最小堆，堆顶为计数最小的对象
+     */
+    static final class SpaceSaving {
+        private final Object[] keys;
+        private final long[] counts;
+        private final long[] errors;
+        private final Map<Object, Integer> positions;
+        private int size;
+
+        SpaceSaving(int capacity) {
+            this.keys = new Object[capacity];
+            this.counts = new long[capacity];
+            this.errors = new long[capacity];
+            this.positions = new HashMap<>(capacity * 4 / 3 + 1);
+        }
+
+        void offer(Object key, long weight) {
+            Integer position = positions.get(key);
+            if (position != null) {
+                counts[position] += weight;
+                siftDown(position);
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = weight;
+                errors[size] = 0;
+                positions.put(key, size);
+                siftUp(size++);
+                return;
+            }
+            // 替换计数最小的对象，新对象继承其计数作为误差
+            positions.remove(keys[0]);
+            long min = counts[0];
+            keys[0] = key;
+            counts[0] = min + weight;
+            errors[0] = min;
+            positions.put(key, 0);
+            siftDown(0);
+        }
+
+        /**
+         * 计数器已满时返回最小计数，未满时未出现的对象计数必为 0
+         */
+        long minCount() {
+            return size == keys.length ? counts[0] : 0L;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0, size, null);
+            positions.clear();
+            size = 0;
+        }
+
+        void forEach(CounterVisitor visitor) {
+            for (int i = 0; i < size; i++) {
+                visitor.visit(keys[i], counts[i], errors[i]);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (counts[parent] <= counts[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+                if (counts[i] <= counts[smallest]) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Object key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long count = counts[a];
+            counts[a] = counts[b];
+            counts[b] = count;
+            long error = errors[a];
+            errors[a] = errors[b];
+            errors[b] = error;
+            positions.put(keys[a], a);
+            positions.put(keys[b], b);
+        }
+    }
+
+    @FunctionalInterface
+    interface CounterVisitor {
+        void visit(Object key, long count, long error);
+    }
+}
@@ -0,0 +1,317 @@
+package com.admin.common.flow;
+
+import com.admin.entity.User;
+import com.admin.entity.UserTunnel;
+import com.admin.mapper.UserMapper;
+import com.admin.mapper.UserTunnelMapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户配额引擎
+ * <p>
+ * 在内存中维护每个用户及每个用户隧道权限的流量上限、已用流量、到期时间和状态，流量上报时直接扣减判断，
+ * 不再每次上报后重新查询 user / user_tunnel 表。
+ * <p>
+ * 1. 启动时全量加载，未加载的用户在首次上报时按需加载
+ * 2. 超额、到期或状态非正常时，只触发一次暂停（consume 返回 true 一次）；
+ *    暂停未被节点全部确认时 PauseDispatcher 调用 rearm / rearmUserTunnel，下一次上报重新触发
+ * 3. 用户或用户隧道权限修改、流量重置、到期处理和转发恢复后调用 resync / resyncUserTunnel 重新加载并重新布防
+ * 4. 定时全量校准，修正与数据库之间的偏差
+ * 5. 用户隧道权限加载失败（例如 user_tunnel 表缺失）只记录日志，不影响用户配额
+ * 6. 集群模式下每个实例只看得到自己接收的流量，检查点写库后由 FlowIngestShards 调用 refreshUsage，
+ *    从数据库重新读取已用流量，其他实例已写库的流量在下一次检查点后计入
+ * <p>
+ * 流量上限为空或0时：用户按原有规则视为0流量，有任何用量即暂停；用户隧道权限视为不限流量，
+ * 只按到期时间和状态判断，避免启用权限级限额后未设置流量的权限被全部暂停。
+ */
+@Slf4j
+@Component
+public class UserQuotaEngine {
+
+    private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
+    private static final int USER_STATUS_ACTIVE = 1;
+
+    private final ConcurrentHashMap<Long, Quota> quotas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Quota> userTunnelQuotas = new ConcurrentHashMap<>();
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Resource
+    private UserTunnelMapper userTunnelMapper;
+
+    @Resource
+    private FlowAccumulator flowAccumulator;
+
+    @PostConstruct
+    public void init() {
+        try {
+            loadAll();
+        } catch (Exception e) {
+            log.error("用户配额加载失败，将按需加载: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定时全量校准
+     */
+    @Scheduled(fixedDelayString = "${flux.flow.quota.resync-interval-ms:600000}")
+    public void scheduledResync() {
+        try {
+            loadAll();
+        } catch (Exception e) {
+            log.error("用户配额校准失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 扣减用户流量并判断是否需要暂停该用户的所有服务
+     *
+     * @param userId 用户ID
+     * @param bytes  本次上报流量（已按倍率换算，上下行之和）
+     * @return 首次越过限制时返回true，之后不再重复返回true，直到resync
+     */
+    public boolean consume(Long userId, long bytes) {
+        Quota quota = quotas.get(userId);
+        if (quota == null) {
+            quota = load(userId);
+        }
+        return consume(quota, bytes);
+    }
+
+    /**
+     * 扣减用户隧道权限流量并判断是否需要暂停该权限下的所有转发
+     *
+     * @param userTunnelId 用户隧道权限ID
+     * @param bytes        本次上报流量（已按倍率换算，上下行之和）
+     * @return 首次越过限制时返回true，之后不再重复返回true，直到resyncUserTunnel
+     */
+    public boolean consumeUserTunnel(Long userTunnelId, long bytes) {
+        Quota quota = userTunnelQuotas.get(userTunnelId);
+        if (quota == null) {
+            quota = loadUserTunnel(userTunnelId);
+        }
+        return consume(quota, bytes);
+    }
+
+    /**
+     * 用户限额、流量或状态变化后重新加载
+     */
+    public void resync(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (load(userId) == null) {
+            quotas.remove(userId);
+        }
+    }
+
+    /**
+     * 从数据库重新读取已加载的用户和用户隧道权限的已用流量（加上本实例未落库的流量），不重新布防。
+     * 分片中尚未交给累加器的流量在读取后不再计入，偏差以一个交接间隔为上限
+     */
+    public void refreshUsage() {
+        List<User> users = userMapper.selectList(new QueryWrapper<User>().select("id", "in_flow", "out_flow"));
+        for (User user : users) {
+            Quota quota = quotas.get(user.getId());
+            if (quota != null) {
+                quota.used.set(nullToZero(user.getInFlow()) + nullToZero(user.getOutFlow())
+                        + flowAccumulator.getPendingUserFlow(user.getId()));
+            }
+        }
+        if (userTunnelQuotas.isEmpty()) {
+            return;
+        }
+        try {
+            List<UserTunnel> userTunnels = userTunnelMapper.selectList(new QueryWrapper<UserTunnel>()
+                    .select("id", "in_flow", "out_flow"));
+            for (UserTunnel userTunnel : userTunnels) {
+                long id = userTunnel.getId().longValue();
+                Quota quota = userTunnelQuotas.get(id);
+                if (quota != null) {
+                    quota.used.set(nullToZero(userTunnel.getInFlow()) + nullToZero(userTunnel.getOutFlow())
+                            + flowAccumulator.getPendingUserTunnelFlow(id));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("用户隧道权限已用流量刷新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 暂停未全部确认后重新布防，下一次上报仍超限时再次触发暂停，不重新加载
+     */
+    public void rearm(Long userId) {
+        Quota quota = userId == null ? null : quotas.get(userId);
+        if (quota != null) {
+            quota.fired.set(false);
+        }
+    }
+
+    /**
+     * 用户隧道权限的暂停未全部确认后重新布防
+     */
+    public void rearmUserTunnel(Long userTunnelId) {
+        Quota quota = userTunnelId == null ? null : userTunnelQuotas.get(userTunnelId);
+        if (quota != null) {
+            quota.fired.set(false);
+        }
+    }
+
+    /**
+     * 用户删除后移除
+     */
+    public void remove(Long userId) {
+        if (userId != null) {
+            quotas.remove(userId);
+        }
+    }
+
+    /**
+     * 用户隧道权限限额、流量或状态变化后重新加载
+     */
+    public void resyncUserTunnel(Long userTunnelId) {
+        if (userTunnelId == null) {
+            return;
+        }
+        if (loadUserTunnel(userTunnelId) == null) {
+            userTunnelQuotas.remove(userTunnelId);
+        }
+    }
+
+    /**
+     * 用户隧道权限删除后移除
+     */
+    public void removeUserTunnel(Long userTunnelId) {
+        if (userTunnelId != null) {
+            userTunnelQuotas.remove(userTunnelId);
+        }
+    }
+
+    public int size() {
+        return quotas.size();
+    }
+
+    private boolean consume(Quota quota, long bytes) {
+        if (quota == null) {
+            return false;
+        }
+        long used = bytes == 0 ? quota.used.get() : quota.used.addAndGet(bytes);
+        if (!quota.isViolated(used, System.currentTimeMillis())) {
+            return false;
+        }
+        return quota.fired.compareAndSet(false, true);
+    }
+
+    private void loadAll() {
+        List<User> users = userMapper.selectList(new QueryWrapper<User>()
+                .select("id", "flow", "in_flow", "out_flow", "exp_time", "status"));
+        for (User user : users) {
+            apply(user);
+        }
+        int userTunnelCount;
+        try {
+            List<UserTunnel> userTunnels = userTunnelMapper.selectList(new QueryWrapper<UserTunnel>()
+                    .select("id", "flow", "in_flow", "out_flow", "exp_time", "status"));
+            for (UserTunnel userTunnel : userTunnels) {
+                apply(userTunnel);
+            }
+            userTunnelCount = userTunnels.size();
+        } catch (Exception e) {
+            log.warn("用户隧道权限配额加载失败: {}", e.getMessage());
+            userTunnelCount = userTunnelQuotas.size();
+        }
+        log.info("用户配额加载完成，共 {} 个用户，{} 个用户隧道权限", users.size(), userTunnelCount);
+    }
+
+    private Quota load(Long userId) {
+        User user = userMapper.selectById(userId);
+        if (user == null) {
+            return null;
+        }
+        return apply(user);
+    }
+
+    private Quota loadUserTunnel(Long userTunnelId) {
+        UserTunnel userTunnel;
+        try {
+            userTunnel = userTunnelMapper.selectById(userTunnelId);
+        } catch (Exception e) {
+            log.warn("加载用户隧道权限 {} 配额失败: {}", userTunnelId, e.getMessage());
+            return null;
+        }
+        if (userTunnel == null) {
+            return null;
+        }
+        return apply(userTunnel);
+    }
+
+    private Quota apply(User user) {
+        long used = nullToZero(user.getInFlow()) + nullToZero(user.getOutFlow())
+                + flowAccumulator.getPendingUserFlow(user.getId());
+        Quota quota = quotas.computeIfAbsent(user.getId(), k -> new Quota());
+        quota.reset(user.getFlow(), false, used, user.getExpTime(), user.getStatus());
+        return quota;
+    }
+
+    private Quota apply(UserTunnel userTunnel) {
+        long id = userTunnel.getId().longValue();
+        long used = nullToZero(userTunnel.getInFlow()) + nullToZero(userTunnel.getOutFlow())
+                + flowAccumulator.getPendingUserTunnelFlow(id);
+        Quota quota = userTunnelQuotas.computeIfAbsent(id, k -> new Quota());
+        quota.reset(userTunnel.getFlow(), true, used, userTunnel.getExpTime(), userTunnel.getStatus());
+        return quota;
+    }
+
+    private long nullToZero(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    /**
+     * 单个用户或用户隧道权限的配额状态
+     */
+    private static class Quota {
+        // 不限流量时为 Long.MAX_VALUE
+        private volatile long limitBytes;
+        private volatile Long expTime;
+        private volatile int status;
+        private final AtomicLong used = new AtomicLong();
+        private final AtomicBoolean fired = new AtomicBoolean(false);
+
+        /**
+         * @param zeroUnlimited 流量上限为空或0时是否视为不限流量
+         */
+        void reset(Long flowGb, boolean zeroUnlimited, long usedBytes, Long expTime, Integer status) {
+            if (flowGb == null || flowGb <= 0) {
+                this.limitBytes = zeroUnlimited ? Long.MAX_VALUE : 0L;
+            } else {
+                this.limitBytes = flowGb * BYTES_TO_GB;
+            }
+            this.expTime = expTime;
+            this.status = status == null ? USER_STATUS_ACTIVE : status;
+            this.used.set(usedBytes);
+            // 限额或状态已更新，重新布防，下一次上报时按最新数据判断
+            this.fired.set(false);
+        }
+
+        boolean isViolated(long usedBytes, long now) {
+            if (limitBytes < usedBytes) {
+                return true;
+            }
+            if (expTime != null && expTime <= now) {
+                return true;
+            }
+            return status != USER_STATUS_ACTIVE;
+        }
+    }
+}
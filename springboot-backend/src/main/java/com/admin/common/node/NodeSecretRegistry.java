@@ -0,0 +1,146 @@
+package com.admin.common.node;
+
+import com.admin.entity.Node;
+import com.admin.mapper.NodeMapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点密钥注册表
+ * <p>
+ * 流量上报、配置上报和 WebSocket 握手都需要按 secret 查找节点，node.secret 没有索引，
+ * 这里在内存中维护 secret → Node 的映射：
+ * 1. 启动时全量加载，NodeServiceImpl 创建/更新/删除节点时同步更新
+ * 2. 未知 secret 做负缓存，配置错误的节点反复请求不会打到数据库
+ * 3. 统计命中、未命中和负缓存命中次数
+ * <p>
+ * 注意：缓存的 Node 用于身份识别和倍率计算，status、version 等运行时字段以数据库为准。
+ */
+@Slf4j
+@Component
+public class NodeSecretRegistry {
+
+    private static final long NEGATIVE_TTL_MS = 60000L;
+    private static final int NEGATIVE_MAX_SIZE = 10000;
+
+    private final ConcurrentHashMap<String, Node> nodesBySecret = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, String> secretsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> unknownSecrets = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    @Resource
+    private NodeMapper nodeMapper;
+
+    @PostConstruct
+    public void init() {
+        try {
+            List<Node> nodes = nodeMapper.selectList(new QueryWrapper<>());
+            for (Node node : nodes) {
+                put(node);
+            }
+            log.info("节点密钥注册表加载完成，共 {} 个节点", nodes.size());
+        } catch (Exception e) {
+            log.error("节点密钥注册表加载失败，将按需加载: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 根据密钥查找节点
+     *
+     * @param secret 节点密钥
+     * @return 节点，不存在时返回null
+     */
+    public Node getBySecret(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            return null;
+        }
+        Node node = nodesBySecret.get(secret);
+        if (node != null) {
+            hits.increment();
+            return node;
+        }
+
+        Long unknownAt = unknownSecrets.get(secret);
+        if (unknownAt != null && System.currentTimeMillis() - unknownAt < NEGATIVE_TTL_MS) {
+            negativeHits.increment();
+            return null;
+        }
+
+        misses.increment();
+        node = nodeMapper.selectOne(new QueryWrapper<Node>().eq("secret", secret).last("LIMIT 1"));
+        if (node == null) {
+            if (unknownSecrets.size() >= NEGATIVE_MAX_SIZE) {
+                unknownSecrets.clear();
+            }
+            unknownSecrets.put(secret, System.currentTimeMillis());
+            return null;
+        }
+        put(node);
+        return node;
+    }
+
+    /**
+     * 节点创建或更新后刷新缓存
+     */
+    public void refresh(Long nodeId) {
+        if (nodeId == null) {
+            return;
+        }
+        Node node = nodeMapper.selectById(nodeId);
+        if (node == null) {
+            remove(nodeId);
+            return;
+        }
+        put(node);
+    }
+
+    /**
+     * 节点删除后移除缓存
+     */
+    public void remove(Long nodeId) {
+        if (nodeId == null) {
+            return;
+        }
+        String secret = secretsById.remove(nodeId);
+        if (secret != null) {
+            nodesBySecret.remove(secret);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", nodesBySecret.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("negativeHits", negativeHits.sum());
+        stats.put("negativeSize", unknownSecrets.size());
+        return stats;
+    }
+
+    private void put(Node node) {
+        if (node == null || node.getId() == null || node.getSecret() == null) {
+            return;
+        }
+        String oldSecret = secretsById.put(node.getId(), node.getSecret());
+        if (oldSecret != null && !oldSecret.equals(node.getSecret())) {
+            nodesBySecret.remove(oldSecret);
+        }
+        nodesBySecret.put(node.getSecret(), node);
+        unknownSecrets.remove(node.getSecret());
+    }
+}
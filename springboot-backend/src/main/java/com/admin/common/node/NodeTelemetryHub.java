@@ -0,0 +1,232 @@
+package com.admin.common.node;
+
+import com.admin.common.utils.WebSocketServer;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点监控数据推送
+ * <p>
+ * 每个节点每 2 秒上报一次系统信息，原来在节点的消息线程上逐条转发给所有管理员，写入次数为 节点数 × 管理员数。
+ * 这里只记录每个节点最新的一条，由独立线程按固定周期推送：
+ * 1. 节点线程只做一次 Map 写入，周期内同一节点的多条上报只推送最新一条
+ * 2. 发送过订阅消息的管理员每周期收到一帧合并消息 {"type":"infos","data":{节点ID: 监控数据}}，只包含订阅的且有更新的节点
+ * 3. 未订阅的会话（旧版客户端）仍按节点收到原格式的 info 消息
+ * 4. 每条上报只解析一次，精简结果在所有管理员之间共享
+ */
+@Slf4j
+@Component
+public class NodeTelemetryHub {
+
+    // 合并消息中保留的字段（前端节点页使用的字段）
+    private static final String[] COMPACT_FIELDS = {"cpu_usage", "memory_usage", "bytes_transmitted", "bytes_received", "uptime"};
+
+    private static final ScheduledExecutorService TICK_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "telemetry-tick");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${flux.telemetry.tick-ms:2000}")
+    private long tickMs;
+
+    private final ConcurrentHashMap<Long, Sample> latest = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder pushedSamples = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        TICK_EXECUTOR.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (Exception e) {
+                log.error("推送节点监控数据失败: {}", e.getMessage());
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        TICK_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 记录节点上报的系统信息，只保留最新一条
+     */
+    public void publish(Long nodeId, String payload) {
+        samples.increment();
+        latest.put(nodeId, new Sample(nodeId, payload, versions.incrementAndGet()));
+    }
+
+    /**
+     * 节点离线时丢弃其最新数据
+     */
+    public void removeNode(Long nodeId) {
+        latest.remove(nodeId);
+    }
+
+    /**
+     * 管理员连接建立，默认按旧格式推送所有节点
+     */
+    public void addSession(WebSocketSession session) {
+        subscribers.put(session.getId(), new Subscriber(session));
+    }
+
+    public void removeSession(String sessionId) {
+        subscribers.remove(sessionId);
+    }
+
+    /**
+     * 订阅指定节点，之后按合并格式推送
+     *
+     * @param nodeIds 节点ID，为null或空时订阅所有节点
+     */
+    public void subscribe(WebSocketSession session, Collection<Long> nodeIds) {
+        Subscriber subscriber = subscribers.computeIfAbsent(session.getId(), k -> new Subscriber(session));
+        subscriber.nodeIds = nodeIds == null || nodeIds.isEmpty() ? null : new HashSet<>(nodeIds);
+        subscriber.combined = true;
+    }
+
+    /**
+     * 获取推送统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tickMs", tickMs);
+        stats.put("nodes", latest.size());
+        stats.put("subscribers", subscribers.size());
+        stats.put("samples", samples.sum());
+        stats.put("ticks", ticks.sum());
+        stats.put("frames", frames.sum());
+        stats.put("pushedSamples", pushedSamples.sum());
+        return stats;
+    }
+
+    void tick() {
+        ticks.increment();
+        if (subscribers.isEmpty() || latest.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers.values()) {
+            if (!subscriber.session.isOpen()) {
+                subscribers.remove(subscriber.session.getId());
+                continue;
+            }
+            Set<Long> nodeIds = subscriber.nodeIds;
+            boolean combined = subscriber.combined;
+            StringBuilder data = null;
+            for (Sample sample : nodeIds == null ? latest.values() : samplesOf(nodeIds)) {
+                Long sent = subscriber.sentVersions.get(sample.nodeId);
+                if (sent != null && sent >= sample.version) {
+                    continue;
+                }
+                subscriber.sentVersions.put(sample.nodeId, sample.version);
+                pushedSamples.increment();
+                if (!combined) {
+                    frames.increment();
+                    WebSocketServer.sendBroadcast(subscriber.session, "info:" + sample.nodeId, sample.legacyFrame());
+                    continue;
+                }
+                data = data == null ? new StringBuilder("{\"type\":\"infos\",\"data\":{") : data.append(',');
+                data.append('"').append(sample.nodeId).append("\":").append(sample.compact());
+            }
+            if (data != null) {
+                frames.increment();
+                WebSocketServer.sendBroadcast(subscriber.session, "infos", data.append("}}").toString());
+            }
+        }
+    }
+
+    private Collection<Sample> samplesOf(Set<Long> nodeIds) {
+        Map<Long, Sample> result = new HashMap<>();
+        for (Long nodeId : nodeIds) {
+            Sample sample = latest.get(nodeId);
+            if (sample != null) {
+                result.put(nodeId, sample);
+            }
+        }
+        return result.values();
+    }
+
+    /**
+     * 节点的一条上报，两种格式按需生成一次后共享
+     */
+    private static final class Sample {
+        private final Long nodeId;
+        private final String payload;
+        private final long version;
+        private String legacyFrame;
+        private String compact;
+
+        Sample(Long nodeId, String payload, long version) {
+            this.nodeId = nodeId;
+            this.payload = payload;
+            this.version = version;
+        }
+
+        String legacyFrame() {
+            if (legacyFrame == null) {
+                JSONObject frame = new JSONObject();
+                frame.put("id", String.valueOf(nodeId));
+                frame.put("type", "info");
+                frame.put("data", payload);
+                legacyFrame = frame.toJSONString();
+            }
+            return legacyFrame;
+        }
+
+        String compact() {
+            if (compact == null) {
+                JSONObject result = new JSONObject();
+                try {
+                    JSONObject info = JSON.parseObject(payload);
+                    for (String field : COMPACT_FIELDS) {
+                        result.put(field, info.get(field));
+                    }
+                } catch (Exception e) {
+                    log.info("节点 {} 监控数据解析失败: {}", nodeId, e.getMessage());
+                }
+                compact = result.toJSONString();
+            }
+            return compact;
+        }
+    }
+
+    /**
+     * 管理员会话的订阅，sentVersions 只在推送线程上访问
+     */
+    private static final class Subscriber {
+        private final WebSocketSession session;
+        private final Map<Long, Long> sentVersions = new HashMap<>();
+        private volatile Set<Long> nodeIds;
+        private volatile boolean combined;
+
+        Subscriber(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.admin.common.node;
+
+import com.admin.common.dto.GostDto;
+import com.admin.common.flow.UserQuotaEngine;
+import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.NodeCommandScheduler;
+import com.admin.entity.Forward;
+import com.admin.entity.Tunnel;
+import com.admin.entity.UserTunnel;
+import com.admin.mapper.ForwardMapper;
+import com.admin.mapper.TunnelMapper;
+import com.admin.mapper.UserTunnelMapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 异步暂停调度器
+ * <p>
+ * 用户超额、到期或被禁用时暂停其所有转发，调用方（流量上报请求）立即返回：
+ * 1. 跳过已暂停的转发和已有暂停任务在途的转发
+ * 2. 按节点合并服务名，每个节点只发送一帧多服务 PauseService
+ * 3. 不同节点并行发送，全部完成后只把各节点都确认暂停的转发状态置为暂停
+ * <p>
+ * 节点的 PauseService 是整帧成功或失败的：任一服务不存在时返回 "service X not found"，其余服务也不会暂停。
+ * 因此不存在的服务（节点上本就没有，无需暂停）从帧中去掉后重发剩余部分；其他失败退回到按转发逐个暂停。
+ * 仍未确认的转发保持原状态并释放在途标记，并让 UserQuotaEngine 重新布防，下一次上报时重新触发暂停。
+ */
+@Slf4j
+@Component
+public class PauseDispatcher {
+
+    private static final int FORWARD_STATUS_PAUSED = 0;
+    private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2;
+    private static final Pattern SERVICE_NOT_FOUND = Pattern.compile("service (\\S+) not found");
+    private static final int SEND_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService PLAN_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "pause-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ExecutorService SEND_EXECUTOR = Executors.newFixedThreadPool(SEND_PARALLELISM, r -> {
+        Thread thread = new Thread(r, "pause-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 暂停在途的转发ID
+    private final Set<Long> inFlightForwards = ConcurrentHashMap.newKeySet();
+
+    @Resource
+    private ForwardMapper forwardMapper;
+
+    @Resource
+    private TunnelMapper tunnelMapper;
+
+    @Resource
+    private UserTunnelMapper userTunnelMapper;
+
+    @Resource
+    private UserQuotaEngine userQuotaEngine;
+
+    /**
+     * 异步暂停用户的所有转发
+     *
+     * @param userId 用户ID
+     */
+    public void pauseUser(Long userId) {
+        PLAN_EXECUTOR.execute(() -> {
+            try {
+                List<Forward> forwards = forwardMapper.selectList(new QueryWrapper<Forward>()
+                        .eq("user_id", userId)
+                        .ne("status", FORWARD_STATUS_PAUSED));
+                dispatch(forwards, () -> userQuotaEngine.rearm(userId));
+            } catch (Exception e) {
+                log.error("暂停用户 {} 的转发失败: {}", userId, e.getMessage());
+                userQuotaEngine.rearm(userId);
+            }
+        });
+    }
+
+    /**
+     * 异步暂停用户隧道权限下的所有转发
+     *
+     * @param userTunnelId 用户隧道权限ID
+     */
+    public void pauseUserTunnel(Long userTunnelId) {
+        PLAN_EXECUTOR.execute(() -> {
+            try {
+                UserTunnel userTunnel = userTunnelMapper.selectById(userTunnelId);
+                if (userTunnel == null) {
+                    return;
+                }
+                List<Forward> forwards = forwardMapper.selectList(new QueryWrapper<Forward>()
+                        .eq("user_id", userTunnel.getUserId())
+                        .eq("tunnel_id", userTunnel.getTunnelId())
+                        .ne("status", FORWARD_STATUS_PAUSED));
+                dispatch(forwards, () -> userQuotaEngine.rearmUserTunnel(userTunnelId));
+            } catch (Exception e) {
+                log.error("暂停用户隧道权限 {} 的转发失败: {}", userTunnelId, e.getMessage());
+                userQuotaEngine.rearmUserTunnel(userTunnelId);
+            }
+        });
+    }
+
+    /**
+     * 异步暂停指定转发
+     *
+     * @param forwards 转发列表
+     */
+    public void pauseForwards(List<Forward> forwards) {
+        PLAN_EXECUTOR.execute(() -> {
+            try {
+                dispatch(forwards, null);
+            } catch (Exception e) {
+                log.error("暂停转发失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    public int getInFlightCount() {
+        return inFlightForwards.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        PLAN_EXECUTOR.shutdown();
+        SEND_EXECUTOR.shutdown();
+        try {
+            if (!SEND_EXECUTOR.awaitTermination(5, TimeUnit.SECONDS)) {
+                SEND_EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SEND_EXECUTOR.shutdownNow();
+        }
+    }
+
+    /**
+     * @param onUnconfirmed 有转发未能确认暂停时执行，用于重新布防配额；为null时不处理
+     */
+    private void dispatch(List<Forward> forwards, Runnable onUnconfirmed) {
+        Set<Long> claimed = new LinkedHashSet<>();
+        for (Forward forward : forwards) {
+            if (forward.getStatus() != null && forward.getStatus() == FORWARD_STATUS_PAUSED) {
+                continue;
+            }
+            if (inFlightForwards.add(forward.getId())) {
+                claimed.add(forward.getId());
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        // 按节点汇总需要暂停的服务，服务名 → 转发ID
+        Map<Long, Map<String, Long>> servicesByNode = new LinkedHashMap<>();
+        Map<Integer, Tunnel> tunnelCache = new HashMap<>();
+        try {
+            for (Forward forward : forwards) {
+                if (!claimed.contains(forward.getId())) {
+                    continue;
+                }
+                Tunnel tunnel = tunnelCache.computeIfAbsent(forward.getTunnelId(), tunnelMapper::selectById);
+                if (tunnel == null) {
+                    continue;
+                }
+                String name = buildServiceName(forward.getId(), forward.getUserId());
+                for (Long inNodeId : resolveInNodeIds(tunnel)) {
+                    Map<String, Long> services = servicesByNode.computeIfAbsent(inNodeId, k -> new LinkedHashMap<>());
+                    services.put(name + "_tcp", forward.getId());
+                    services.put(name + "_udp", forward.getId());
+                }
+                if (Objects.equals(tunnel.getType(), TUNNEL_TYPE_TUNNEL_FORWARD) && !Boolean.TRUE.equals(tunnel.getMuxEnabled())) {
+                    for (Long outNodeId : resolveOutNodeIds(tunnel)) {
+                        servicesByNode.computeIfAbsent(outNodeId, k -> new LinkedHashMap<>()).put(name + "_tls", forward.getId());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            claimed.forEach(inFlightForwards::remove);
+            throw e;
+        }
+
+        // 不同节点并行发送，各自返回未能确认暂停的转发
+        List<CompletableFuture<Set<Long>>> futures = new ArrayList<>();
+        for (Map.Entry<Long, Map<String, Long>> entry : servicesByNode.entrySet()) {
+            Long nodeId = entry.getKey();
+            Map<String, Long> services = entry.getValue();
+            // 限额暂停优先于节点上排队的其他命令
+            futures.add(CompletableFuture.supplyAsync(() -> NodeCommandScheduler.call(NodeCommandScheduler.Priority.ENFORCEMENT,
+                    () -> pauseOnNode(nodeId, services)), SEND_EXECUTOR));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            boolean allConfirmed = false;
+            try {
+                Set<Long> confirmed = new LinkedHashSet<>(claimed);
+                for (CompletableFuture<Set<Long>> future : futures) {
+                    if (future.isCompletedExceptionally()) {
+                        // 无法判断哪些服务已暂停，整批留待重试
+                        confirmed.clear();
+                        break;
+                    }
+                    confirmed.removeAll(future.join());
+                }
+                if (confirmed.size() < claimed.size()) {
+                    log.info("{} 个转发未能确认暂停，等待下次重试", claimed.size() - confirmed.size());
+                }
+                if (!confirmed.isEmpty()) {
+                    UpdateWrapper<Forward> updateWrapper = new UpdateWrapper<>();
+                    updateWrapper.in("id", confirmed).set("status", FORWARD_STATUS_PAUSED);
+                    forwardMapper.update(null, updateWrapper);
+                }
+                allConfirmed = confirmed.size() == claimed.size();
+            } catch (Exception e) {
+                log.error("更新转发暂停状态失败: {}", e.getMessage());
+            } finally {
+                claimed.forEach(inFlightForwards::remove);
+                // 先释放在途标记再重新布防，避免下一次触发时转发仍被视为在途而跳过
+                if (!allConfirmed && onUnconfirmed != null) {
+                    onUnconfirmed.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * 在单个节点上暂停服务
+     *
+     * @param services 服务名 → 转发ID
+     * @return 未能确认暂停的转发ID
+     */
+    private Set<Long> pauseOnNode(Long nodeId, Map<String, Long> services) {
+        Map<String, Long> remaining = new LinkedHashMap<>(services);
+        while (!remaining.isEmpty()) {
+            GostDto result = GostUtil.PauseServices(nodeId, new ArrayList<>(remaining.keySet()));
+            if (isOk(result)) {
+                return Collections.emptySet();
+            }
+            String missing = missingService(result);
+            if (missing == null || remaining.remove(missing) == null) {
+                log.info("节点 {} 暂停 {} 个服务失败，改为逐个转发暂停: {}", nodeId, remaining.size(), result == null ? null : result.getMsg());
+                return pauseEachForward(nodeId, remaining);
+            }
+            // 节点上不存在的服务无需暂停，去掉后重发剩余部分
+        }
+        return Collections.emptySet();
+    }
+
+    /**
+     * 按转发逐个暂停，单个转发失败不影响其他转发
+     */
+    private Set<Long> pauseEachForward(Long nodeId, Map<String, Long> services) {
+        Map<Long, List<String>> servicesByForward = new LinkedHashMap<>();
+        services.forEach((name, forwardId) -> servicesByForward.computeIfAbsent(forwardId, k -> new ArrayList<>()).add(name));
+
+        Set<Long> failed = new LinkedHashSet<>();
+        for (Map.Entry<Long, List<String>> entry : servicesByForward.entrySet()) {
+            List<String> remaining = new ArrayList<>(entry.getValue());
+            while (!remaining.isEmpty()) {
+                GostDto result = GostUtil.PauseServices(nodeId, remaining);
+                if (isOk(result)) {
+                    break;
+                }
+                String missing = missingService(result);
+                if (missing == null || !remaining.remove(missing)) {
+                    log.info("节点 {} 暂停转发 {} 失败: {}", nodeId, entry.getKey(), result == null ? null : result.getMsg());
+                    failed.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return failed;
+    }
+
+    private static boolean isOk(GostDto result) {
+        return result != null && Objects.equals(result.getMsg(), "OK");
+    }
+
+    private static String missingService(GostDto result) {
+        if (result == null || result.getMsg() == null) {
+            return null;
+        }
+        Matcher matcher = SERVICE_NOT_FOUND.matcher(result.getMsg());
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private List<Long> resolveInNodeIds(Tunnel tunnel) {
+        return parseNodeIds(tunnel.getInNodeIds(), tunnel.getInNodeId());
+    }
+
+    private List<Long> resolveOutNodeIds(Tunnel tunnel) {
+        return parseNodeIds(tunnel.getOutNodeIds(), tunnel.getOutNodeId());
+    }
+
+    private List<Long> parseNodeIds(String nodeIds, Long fallbackNodeId) {
+        Set<Long> result = new LinkedHashSet<>();
+        if (nodeIds != null && !nodeIds.trim().isEmpty()) {
+            for (String part : nodeIds.split(",")) {
+                String trimmed = part.trim();
+                if (!trimmed.isEmpty()) {
+                    try {
+                        result.add(Long.parseLong(trimmed));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        if (result.isEmpty() && fallbackNodeId != null) {
+            result.add(fallbackNodeId);
+        }
+        return result.isEmpty() ? Collections.emptyList() : new ArrayList<>(result);
+    }
+
+    private String buildServiceName(Long forwardId, Integer userId) {
+        return forwardId + "_" + userId + "_0";
+    }
+}
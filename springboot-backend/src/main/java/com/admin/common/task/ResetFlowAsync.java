@@ -1,6 +1,10 @@
 package com.admin.common.task;
 
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.flow.FlowIngestShards;
+import com.admin.common.flow.UserQuotaEngine;
 import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.NodeCommandScheduler;
 import com.admin.entity.Forward;
 import com.admin.entity.Tunnel;
 import com.admin.entity.User;
@@ -35,6 +39,15 @@ public class ResetFlowAsync {
     @Resource
     TunnelService tunnelService;
 
+    @Resource
+    FlowIngestShards flowIngestShards;
+
+    @Resource
+    UserQuotaEngine userQuotaEngine;
+
+    @Resource
+    UserPackageCache userPackageCache;
+
     /**
      * 每天0点执行流量重置任务
      * 查询出用户和隧道的重置流量日期是今天的数据，将上下流量重置为0
@@ -67,6 +80,9 @@ public class ResetFlowAsync {
             user();
 
             log.info("到期任务执行完成");
+
+            // 流量和账号状态已变化，套餐信息全部重新构建
+            userPackageCache.invalidateAll();
             
         } catch (Exception e) {
             log.info("定时任务执行失败", e);
@@ -108,11 +124,14 @@ public class ResetFlowAsync {
             
             // 批量重置用户流量 - 使用SQL原子操作避免与到期任务的并发冲突
             for (User user : usersToReset) {
+                // 丢弃重置前尚未写回的流量，避免重置后被累加回去
+                flowIngestShards.discardUser(user.getId());
                 UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
                 updateWrapper.eq("id", user.getId())
                            .setSql("in_flow = 0, out_flow = 0"); // 使用SQL原子操作，只更新流量字段
                 
                 boolean success = userService.update(null, updateWrapper);
+                userQuotaEngine.resync(user.getId());
                 if (success) {
                     log.info("用户[ID: {}, 用户名: {}]流量重置成功，重置日期: 每月{}号", 
                            user.getId(), user.getUser(), user.getFlowResetTime());
@@ -133,12 +152,13 @@ public class ResetFlowAsync {
             // 查询对应转发
             List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("user_id", user.getId()).eq("status", 1));
             for (Forward forward : forwardList) {
-                pauseForwardService(forward);
+                NodeCommandScheduler.run(NodeCommandScheduler.Priority.ENFORCEMENT, () -> pauseForwardService(forward));
                 forward.setStatus(0);
                 forwardService.updateById(forward);
             }
             user.setStatus(0);
             userService.updateById(user);
+            userQuotaEngine.resync(user.getId());
         }
     }
 
@@ -0,0 +1,239 @@
+package com.admin.common.task;
+
+import com.admin.mapper.RetentionMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 历史表保留清理
+ * <p>
+ * 各历史表在启动时注册自己的 RetentionPolicy（保留时长由各自的配置项决定），由独立线程定期分批删除过期数据：
+ * 1. 每批最多删除 chunk-size 行，批次之间暂停 chunk-pause-ms，避免长事务和长时间持有锁
+ * 2. 每条策略单次运行的时间不超过 max-run-ms，未清理完的部分留到下次运行
+ * 3. 按策略统计删除行数、批次数和耗时，通过 getStats 报告
+ * 新增历史表时只需注册一条策略，不需要新增定时任务。
+ */
+@Slf4j
+@Component
+public class RetentionManager {
+
+    private static final ScheduledExecutorService PURGE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "retention-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${flux.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${flux.retention.chunk-pause-ms:200}")
+    private long chunkPauseMs;
+
+    @Value("${flux.retention.max-run-ms:300000}")
+    private long maxRunMs;
+
+    @Value("${flux.retention.interval-ms:3600000}")
+    private long intervalMs;
+
+    @Value("${flux.retention.initial-delay-ms:600000}")
+    private long initialDelayMs;
+
+    @Resource
+    private RetentionMapper retentionMapper;
+
+    private final List<PolicyState> policies = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        PURGE_EXECUTOR.scheduleWithFixedDelay(this::purgeAll, initialDelayMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        PURGE_EXECUTOR.shutdownNow();
+    }
+
+    /**
+     * 注册保留策略，同名策略会被替换
+     */
+    public void register(RetentionPolicy policy) {
+        PolicyState state = new PolicyState(policy);
+        for (int i = 0; i < policies.size(); i++) {
+            if (policies.get(i).policy.getName().equals(policy.getName())) {
+                policies.set(i, state);
+                return;
+            }
+        }
+        policies.add(state);
+    }
+
+    /**
+     * 依次清理所有策略，单条策略失败不影响其他策略
+     */
+    public void purgeAll() {
+        for (PolicyState state : policies) {
+            if (!running) {
+                return;
+            }
+            try {
+                purge(state);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                state.lastError = e.getMessage();
+                log.error("清理历史数据（{}）失败: {}", state.policy.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取各策略的清理统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("chunkSize", chunkSize);
+        stats.put("chunkPauseMs", chunkPauseMs);
+        stats.put("maxRunMs", maxRunMs);
+        stats.put("intervalMs", intervalMs);
+        long totalRows = 0;
+        long totalMillis = 0;
+        List<Map<String, Object>> items = new ArrayList<>(policies.size());
+        for (PolicyState state : policies) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", state.policy.getName());
+            item.put("table", state.policy.getTable());
+            item.put("mode", state.policy.isByPrimaryKey() ? "primaryKey" : "index");
+            item.put("retentionMillis", state.policy.getRetentionMillis());
+            item.put("runs", state.runs.sum());
+            item.put("chunks", state.chunks.sum());
+            item.put("purgedRows", state.purgedRows.sum());
+            item.put("totalMillis", state.totalMillis.sum());
+            item.put("lastRunAt", state.lastRunAt);
+            item.put("lastRunRows", state.lastRunRows);
+            item.put("lastRunMillis", state.lastRunMillis);
+            item.put("lastRunComplete", state.lastRunComplete);
+            item.put("lastError", state.lastError);
+            items.add(item);
+            totalRows += state.purgedRows.sum();
+            totalMillis += state.totalMillis.sum();
+        }
+        stats.put("purgedRows", totalRows);
+        stats.put("totalMillis", totalMillis);
+        stats.put("policies", items);
+        return stats;
+    }
+
+    private void purge(PolicyState state) throws InterruptedException {
+        RetentionPolicy policy = state.policy;
+        long start = System.currentTimeMillis();
+        long cutoff = start - policy.getRetentionMillis();
+        long rows = 0;
+        boolean complete = false;
+        try {
+            long afterId = 0;
+            while (running) {
+                int deleted;
+                if (policy.isByPrimaryKey()) {
+                    long[] range = expiredRange(policy, afterId, cutoff);
+                    deleted = range == null ? 0
+                            : retentionMapper.deleteRange(policy.getTable(), policy.getPkColumn(), range[0], range[1]);
+                    complete = range == null || range[2] < chunkSize;
+                    if (range != null) {
+                        afterId = range[1];
+                    }
+                } else {
+                    deleted = retentionMapper.deleteExpired(policy.getTable(), policy.getConditions(),
+                            policy.getTimeColumn(), cutoff, chunkSize);
+                    complete = deleted < chunkSize;
+                }
+                rows += deleted;
+                if (deleted > 0) {
+                    state.chunks.increment();
+                    state.purgedRows.add(deleted);
+                }
+                if (complete || System.currentTimeMillis() - start >= maxRunMs) {
+                    break;
+                }
+                Thread.sleep(chunkPauseMs);
+            }
+        } finally {
+            long elapsed = System.currentTimeMillis() - start;
+            state.runs.increment();
+            state.totalMillis.add(elapsed);
+            state.lastRunAt = start;
+            state.lastRunRows = rows;
+            state.lastRunMillis = elapsed;
+            state.lastRunComplete = complete;
+            state.lastError = null;
+        }
+        if (rows > 0) {
+            log.info("清理历史数据（{}）{} 条，耗时 {}ms{}", policy.getName(), rows,
+                    state.lastRunMillis, complete ? "" : "，未清理完的部分下次继续");
+        }
+    }
+
+    /**
+     * 按主键顺序读取一批行，返回开头连续过期的主键区间 [起始主键, 结束主键, 读取行数]，开头的行未过期时返回null
+     */
+    private long[] expiredRange(RetentionPolicy policy, long afterId, long cutoff) {
+        List<Map<String, Object>> head = retentionMapper.selectHead(policy.getTable(), policy.getPkColumn(),
+                policy.getTimeColumn(), afterId, chunkSize);
+        long first = 0;
+        long last = 0;
+        int expired = 0;
+        for (Map<String, Object> row : head) {
+            if (((Number) row.get("ts")).longValue() >= cutoff) {
+                break;
+            }
+            long id = ((Number) row.get("pk")).longValue();
+            if (expired == 0) {
+                first = id;
+            }
+            last = id;
+            expired++;
+        }
+        if (expired == 0) {
+            return null;
+        }
+        // 整批都已过期时才可能还有更早写入的过期行，否则本次清理完成
+        return new long[]{first, last, expired == head.size() ? head.size() : 0};
+    }
+
+    /**
+     * 策略及其统计
+     */
+    private static final class PolicyState {
+        private final RetentionPolicy policy;
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder purgedRows = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private volatile long lastRunAt;
+        private volatile long lastRunRows;
+        private volatile long lastRunMillis;
+        private volatile boolean lastRunComplete;
+        private volatile String lastError;
+
+        PolicyState(RetentionPolicy policy) {
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.admin.common.task;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 历史表保留策略
+ * <p>
+ * 两种分批删除方式：
+ * 1. 按主键：适用于自增主键且按时间顺序写入的表，按主键顺序读取一批行，删除开头连续过期的主键区间
+ * 2. 按索引：适用于主键与时间无关的表，按固定条件和时间列逐批 DELETE ... LIMIT，条件和时间列需被同一个索引覆盖
+ * <p>
+ * 表名、列名直接拼入 SQL，只能使用代码中的常量，不能来自用户输入。
+ */
+public final class RetentionPolicy {
+
+    private final String name;
+    private final String table;
+    private final String timeColumn;
+    private final String pkColumn;
+    private final Map<String, Object> conditions;
+    private final long retentionMillis;
+
+    private RetentionPolicy(String name, String table, String timeColumn, String pkColumn,
+                            Map<String, Object> conditions, long retentionMillis) {
+        if (retentionMillis <= 0) {
+            throw new IllegalArgumentException("保留时长必须大于0: " + name);
+        }
+        this.name = name;
+        this.table = table;
+        this.timeColumn = timeColumn;
+        this.pkColumn = pkColumn;
+        this.conditions = conditions;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * 按主键分批删除
+     *
+     * @param table           表名
+     * @param pkColumn        自增主键列
+     * @param timeColumn      时间列（毫秒时间戳）
+     * @param retentionMillis 保留时长（毫秒）
+     */
+    public static RetentionPolicy byPrimaryKey(String table, String pkColumn, String timeColumn, long retentionMillis) {
+        return new RetentionPolicy(table, table, timeColumn, pkColumn, Collections.emptyMap(), retentionMillis);
+    }
+
+    /**
+     * 按索引分批删除
+     *
+     * @param name            策略名称，同一张表有多条策略时用于区分
+     * @param table           表名
+     * @param conditions      固定的等值条件，列名 → 值
+     * @param timeColumn      时间列（毫秒时间戳）
+     * @param retentionMillis 保留时长（毫秒）
+     */
+    public static RetentionPolicy byIndex(String name, String table, Map<String, Object> conditions,
+                                          String timeColumn, long retentionMillis) {
+        return new RetentionPolicy(name, table, timeColumn, null,
+                Collections.unmodifiableMap(new LinkedHashMap<>(conditions)), retentionMillis);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getTimeColumn() {
+        return timeColumn;
+    }
+
+    public String getPkColumn() {
+        return pkColumn;
+    }
+
+    public Map<String, Object> getConditions() {
+        return conditions;
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    public boolean isByPrimaryKey() {
+        return pkColumn != null;
+    }
+}
@@ -1,12 +1,15 @@
 package com.admin.common.task;
 
 
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.flow.FlowAccumulator;
 import com.admin.entity.StatisticsFlow;
 import com.admin.entity.User;
-import com.admin.service.StatisticsFlowService;
+import com.admin.mapper.StatisticsFlowMapper;
 import com.admin.service.UserService;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -17,18 +20,54 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
 @EnableScheduling
 public class StatisticsFlowAsync {
 
+    private static final int INSERT_BATCH_SIZE = 1000;
+
     @Resource
     UserService userService;
 
+    @Value("${flux.retention.statistics-flow-hours:48}")
+    private long retentionHours;
+
+    @Resource
+    StatisticsFlowMapper statisticsFlowMapper;
+
     @Resource
-    StatisticsFlowService statisticsFlowService;
+    FlowAccumulator flowAccumulator;
+
+    @Resource
+    RetentionManager retentionManager;
+
+    @Resource
+    UserPackageCache userPackageCache;
+
+    // 每个用户上一次快照的累计流量，仅由启动加载和整点任务访问
+    private volatile Map<Long, Long> lastTotals;
+
+    /**
+     * 启动时用一条分组查询加载每个用户最近一次快照的累计流量
+     */
+    @PostConstruct
+    public void init() {
+        // 快照按整点顺序写入，自增主键与时间同序，按主键分批清理
+        retentionManager.register(RetentionPolicy.byPrimaryKey("statistics_flow", "id", "created_time",
+                TimeUnit.HOURS.toMillis(retentionHours)));
+        try {
+            lastTotals = loadLastTotals();
+            log.info("流量快照基线加载完成，共 {} 个用户", lastTotals.size());
+        } catch (Exception e) {
+            log.error("流量快照基线加载失败，将在首次快照时重试: {}", e.getMessage());
+        }
+    }
 
     @Scheduled(cron = "0 0 * * * ?")
     public void statistics_flow() {
@@ -36,55 +75,87 @@ public class StatisticsFlowAsync {
         String hourString = currentHour.format(DateTimeFormatter.ofPattern("HH:mm"));
         long time = new Date().getTime();
 
-        // 删除48小时前的数据
-        long nowMs = new Date().getTime();
-        long cutoffMs = nowMs - 48L * 60 * 60 * 1000;
-        statisticsFlowService.remove(
-                new LambdaQueryWrapper<StatisticsFlow>()
-                        .lt(StatisticsFlow::getCreatedTime, cutoffMs)
-        );
-
-
-
-
+        Map<Long, Long> previous = lastTotals;
+        if (previous == null) {
+            previous = loadLastTotals();
+        }
 
-        List<User> list = userService.list();
-        List<StatisticsFlow> statisticsFlowList = new ArrayList<>();
+        // 只查询计算所需的字段，累计流量补上尚未写回数据库的部分
+        List<User> list = userService.list(new QueryWrapper<User>().select("id", "in_flow", "out_flow"));
+        Map<Long, Long> currentTotals = new HashMap<>(list.size() * 4 / 3 + 1);
+        List<StatisticsFlow> statisticsFlowList = computeSnapshot(list, previous, flowAccumulator,
+                hourString, time, currentTotals);
+
+        // 每批写入成功后立即把这批用户的基线推进到本次累计值，中途失败时已写入的用户下一小时不会重复计算增量，
+        // 未写入的用户仍以上一次快照为准
+        Map<Long, Long> committed = new HashMap<>(previous);
+        for (int i = 0; i < statisticsFlowList.size(); i += INSERT_BATCH_SIZE) {
+            List<StatisticsFlow> batch = statisticsFlowList.subList(i, Math.min(i + INSERT_BATCH_SIZE, statisticsFlowList.size()));
+            try {
+                statisticsFlowMapper.insertBatch(batch);
+            } catch (RuntimeException e) {
+                lastTotals = committed;
+                throw e;
+            }
+            for (StatisticsFlow statisticsFlow : batch) {
+                committed.put(statisticsFlow.getUserId(), statisticsFlow.getTotalFlow());
+            }
+        }
 
-        for (User user : list) {
-            long currentFlow = user.getInFlow() + user.getOutFlow();
+        // 全部写入成功，已删除的用户随之移出基线
+        lastTotals = currentTotals;
 
-            // 从数据库获取上一次记录
-            StatisticsFlow lastFlowRecord = statisticsFlowService.getOne(
-                    new LambdaQueryWrapper<StatisticsFlow>()
-                            .eq(StatisticsFlow::getUserId, user.getId()) 
-                            .orderByDesc(StatisticsFlow::getId)         
-                            .last("LIMIT 1")                     
-            );
+        // 套餐页的24小时图表进入新的小时
+        userPackageCache.invalidateAll();
+    }
 
-            long currentTotalFlow = currentFlow;
+    /**
+     * 根据用户当前累计流量和上一次快照的基线计算本小时快照
+     *
+     * @param currentTotals 输出参数，写入每个用户本次的累计流量
+     */
+    static List<StatisticsFlow> computeSnapshot(List<User> users, Map<Long, Long> previous, FlowAccumulator flowAccumulator,
+                                                String hourString, long time, Map<Long, Long> currentTotals) {
+        List<StatisticsFlow> statisticsFlowList = new ArrayList<>(users.size());
+        for (User user : users) {
+            long currentTotalFlow = nullToZero(user.getInFlow()) + nullToZero(user.getOutFlow())
+                    + flowAccumulator.getPendingUserFlow(user.getId());
             long incrementFlow = currentTotalFlow;
-            
-            if (lastFlowRecord != null) {
-                long lastTotalFlow = lastFlowRecord.getTotalFlow();
+
+            Long lastTotalFlow = previous.get(user.getId());
+            if (lastTotalFlow != null) {
                 incrementFlow = currentTotalFlow - lastTotalFlow;
-                
+
+                // 流量被重置过，本小时增量按当前累计计算
                 if (incrementFlow < 0) {
-                    incrementFlow = currentTotalFlow; 
+                    incrementFlow = currentTotalFlow;
                 }
             }
 
             StatisticsFlow statisticsFlow = new StatisticsFlow();
             statisticsFlow.setUserId(user.getId());
-            statisticsFlow.setFlow(incrementFlow);        
-            statisticsFlow.setTotalFlow(currentTotalFlow); 
+            statisticsFlow.setFlow(incrementFlow);
+            statisticsFlow.setTotalFlow(currentTotalFlow);
             statisticsFlow.setTime(hourString);
             statisticsFlow.setCreatedTime(time);
 
             statisticsFlowList.add(statisticsFlow);
+            currentTotals.put(user.getId(), currentTotalFlow);
+        }
+        return statisticsFlowList;
+    }
+
+    private Map<Long, Long> loadLastTotals() {
+        List<StatisticsFlow> latest = statisticsFlowMapper.selectLatestTotals();
+        Map<Long, Long> totals = new HashMap<>(latest.size() * 4 / 3 + 1);
+        for (StatisticsFlow record : latest) {
+            totals.put(record.getUserId(), nullToZero(record.getTotalFlow()));
         }
+        return totals;
+    }
 
-        statisticsFlowService.saveBatch(statisticsFlowList);
+    private static long nullToZero(Long value) {
+        return value == null ? 0L : value;
     }
 
 }
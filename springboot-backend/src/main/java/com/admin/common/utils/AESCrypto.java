@@ -5,7 +5,6 @@ import lombok.extern.slf4j.Slf4j;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
@@ -14,6 +13,9 @@ import java.util.Base64;
 /**
  * AES加密工具类
  * 使用AES-256-GCM模式，与Go端保持兼容
+ * <p>
+ * Cipher 和 SecureRandom 按线程复用：每次加解密只重新 init，不再 Cipher.getInstance，
+ * 也不再在多个线程之间争用同一个 SecureRandom。IV 和密文直接在解码后的数组上按偏移量处理，不做额外拷贝。
  */
 @Slf4j
 public class AESCrypto {
@@ -22,9 +24,19 @@ public class AESCrypto {
     private static final String TRANSFORMATION = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12; // GCM推荐的IV长度
     private static final int GCM_TAG_LENGTH = 16; // GCM认证标签长度
+
+    // Cipher 不是线程安全的，每个线程持有一个实例，每次使用前用当前密钥和IV重新初始化
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (Exception e) {
+            throw new IllegalStateException("不支持的加密算法: " + TRANSFORMATION, e);
+        }
+    });
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
     
     private final SecretKeySpec secretKey;
-    private final SecureRandom secureRandom;
     
     /**
      * 构造函数
@@ -40,7 +52,6 @@ public class AESCrypto {
             MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
             byte[] keyBytes = sha256.digest(secret.getBytes(StandardCharsets.UTF_8));
             this.secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
-            this.secureRandom = new SecureRandom();
             
             log.info("AES加密器初始化成功");
         } catch (Exception e) {
@@ -60,27 +71,22 @@ public class AESCrypto {
         }
         
         try {
-            // 生成随机IV（nonce）
+            Cipher cipher = CIPHER.get();
+
+            // 输出格式为 IV + ciphertext，与Go端格式保持一致，随机IV直接写入输出数组头部
+            byte[] output = new byte[GCM_IV_LENGTH + data.length + GCM_TAG_LENGTH];
             byte[] iv = new byte[GCM_IV_LENGTH];
-            secureRandom.nextBytes(iv);
-            
-            // 创建GCM参数规范
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            
-            // 初始化Cipher
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, gcmSpec);
-            
-            // 加密数据
-            byte[] ciphertext = cipher.doFinal(data);
-            
-            // 组合IV + ciphertext，与Go端格式保持一致
-            ByteBuffer buffer = ByteBuffer.allocate(iv.length + ciphertext.length);
-            buffer.put(iv);
-            buffer.put(ciphertext);
+            RANDOM.get().nextBytes(iv);
+            System.arraycopy(iv, 0, output, 0, GCM_IV_LENGTH);
+
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            int written = cipher.doFinal(data, 0, data.length, output, GCM_IV_LENGTH);
+            if (written != data.length + GCM_TAG_LENGTH) {
+                throw new IllegalStateException("密文长度异常: " + written);
+            }
             
             // 返回Base64编码结果
-            return Base64.getEncoder().encodeToString(buffer.array());
+            return Base64.getEncoder().encodeToString(output);
             
         } catch (Exception e) {
             log.info("数据加密失败", e);
@@ -114,27 +120,17 @@ public class AESCrypto {
             // Base64解码
             byte[] encrypted = Base64.getDecoder().decode(encryptedData);
             
-            if (encrypted.length < GCM_IV_LENGTH) {
+            if (encrypted.length < GCM_IV_LENGTH + GCM_TAG_LENGTH) {
                 throw new IllegalArgumentException("加密数据长度不足");
             }
             
-            // 分离IV和密文
-            ByteBuffer buffer = ByteBuffer.wrap(encrypted);
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            buffer.get(iv);
-            
-            byte[] ciphertext = new byte[buffer.remaining()];
-            buffer.get(ciphertext);
-            
-            // 创建GCM参数规范
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            
-            // 初始化Cipher
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmSpec);
+            // IV和密文直接按偏移量使用，不再拆分拷贝
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey,
+                    new GCMParameterSpec(GCM_TAG_LENGTH * 8, encrypted, 0, GCM_IV_LENGTH));
             
             // 解密数据
-            return cipher.doFinal(ciphertext);
+            return cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
             
         } catch (Exception e) {
             log.info("数据解密失败", e);
@@ -165,4 +161,4 @@ public class AESCrypto {
             return null;
         }
     }
-} 
\ No newline at end of file
+}
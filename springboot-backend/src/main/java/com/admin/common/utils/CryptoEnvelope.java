@@ -0,0 +1,132 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * 加密消息信封编解码
+ * <p>
+ * 节点发送的加密消息格式为 {"encrypted":true,"data":"<Base64>","timestamp":...}。
+ * 解码时用 JsonScanner 直接在字符串上扫描顶层字段，只截取 data 字段，不构造 JSON 对象；
+ * 编码时直接拼接字符串。data 中出现转义字符等非常规情况时回退到 fastjson 解析。
+ */
+public final class CryptoEnvelope {
+
+    private static final String KEY_ENCRYPTED = "encrypted";
+    private static final String KEY_DATA = "data";
+
+    private CryptoEnvelope() {
+    }
+
+    /**
+     * 提取加密信封中的密文
+     *
+     * @param payload 原始消息
+     * @return 消息为加密信封时返回 data 字段，否则返回null
+     */
+    public static String extractData(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        int length = payload.length();
+        int i = JsonScanner.skipWhitespace(payload, 0);
+        if (i >= length || payload.charAt(i) != '{') {
+            return null;
+        }
+        i++;
+
+        boolean encrypted = false;
+        int dataStart = -1;
+        int dataEnd = -1;
+        boolean dataEscaped = false;
+
+        while (true) {
+            i = JsonScanner.skipWhitespace(payload, i);
+            if (i >= length) {
+                return null;
+            }
+            char c = payload.charAt(i);
+            if (c == '}') {
+                break;
+            }
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') {
+                return null;
+            }
+
+            // 字段名
+            int keyEnd = JsonScanner.scanString(payload, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            int keyStart = i + 1;
+            int keyLength = keyEnd - keyStart;
+            i = JsonScanner.skipWhitespace(payload, keyEnd + 1);
+            if (i >= length || payload.charAt(i) != ':') {
+                return null;
+            }
+            i = JsonScanner.skipWhitespace(payload, i + 1);
+            if (i >= length) {
+                return null;
+            }
+
+            // 字段值
+            if (keyLength == KEY_ENCRYPTED.length() && payload.startsWith(KEY_ENCRYPTED, keyStart)) {
+                encrypted = payload.startsWith("true", i);
+                i = JsonScanner.skipValue(payload, i);
+            } else if (keyLength == KEY_DATA.length() && payload.startsWith(KEY_DATA, keyStart)
+                    && payload.charAt(i) == '"') {
+                int end = JsonScanner.scanString(payload, i);
+                if (end < 0) {
+                    return null;
+                }
+                dataStart = i + 1;
+                dataEnd = end;
+                int escape = payload.indexOf('\\', dataStart);
+                dataEscaped = escape >= 0 && escape < dataEnd;
+                i = end + 1;
+            } else {
+                i = JsonScanner.skipValue(payload, i);
+            }
+            if (i < 0) {
+                return null;
+            }
+        }
+
+        if (!encrypted || dataStart < 0) {
+            return null;
+        }
+        if (dataEscaped) {
+            JSONObject json = JSON.parseObject(payload);
+            return json.getString(KEY_DATA);
+        }
+        return payload.substring(dataStart, dataEnd);
+    }
+
+    /**
+     * 判断消息是否为加密信封
+     */
+    public static boolean isEnvelope(String payload) {
+        return extractData(payload) != null;
+    }
+
+    /**
+     * 构造加密信封
+     *
+     * @param encryptedData Base64编码的密文
+     * @return 信封JSON字符串
+     */
+    public static String wrap(String encryptedData) {
+        // Base64 字符均无需转义
+        return new StringBuilder(encryptedData.length() + 64)
+                .append("{\"encrypted\":true,\"data\":\"")
+                .append(encryptedData)
+                .append("\",\"timestamp\":")
+                .append(System.currentTimeMillis())
+                .append('}')
+                .toString();
+    }
+}
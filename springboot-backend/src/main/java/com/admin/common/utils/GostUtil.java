@@ -10,85 +10,133 @@ import org.aspectj.apache.bcel.generic.RET;
 
 import java.util.List;
 import java.util.Objects;
-
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 节点 gost 配置命令
+ * 每个命令都有同步和异步两个版本：同步版本阻塞等待节点响应，异步版本（xxxAsync）发出命令后立即返回，
+ * 需要向多个节点发送命令时可以先全部发出再统一等待，耗时取决于最慢的节点而不是所有节点之和。
+ * 异步结果不会异常完成，超时、节点离线等失败同样以 GostDto.msg 返回。
+ * AddService/UpdateService/DeleteService 经 NodeCommandCoalescer 与同一节点短时间内的同类命令合并发送。
+ */
 public class GostUtil {
     private static final long FAIL_TIMEOUT_NANOS = 600_000_000_000L;
 
 
     public static GostDto AddLimiters(Long node_id, Long name, String speed) {
+        return AddLimitersAsync(node_id, name, speed).join();
+    }
+
+    public static CompletableFuture<GostDto> AddLimitersAsync(Long node_id, Long name, String speed) {
         JSONObject data = createLimiterData(name, speed);
-        return WebSocketServer.send_msg(node_id, data, "AddLimiters");
+        return WebSocketServer.send_msg_async(node_id, data, "AddLimiters");
     }
 
     public static GostDto UpdateLimiters(Long node_id, Long name, String speed) {
+        return UpdateLimitersAsync(node_id, name, speed).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateLimitersAsync(Long node_id, Long name, String speed) {
         JSONObject data = createLimiterData(name, speed);
         JSONObject req = new JSONObject();
         req.put("limiter", name + "");
         req.put("data", data);
-        return WebSocketServer.send_msg(node_id, req, "UpdateLimiters");
+        return WebSocketServer.send_msg_async(node_id, req, "UpdateLimiters");
     }
 
     public static GostDto DeleteLimiters(Long node_id, Long name) {
+        return DeleteLimitersAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteLimitersAsync(Long node_id, Long name) {
         JSONObject req = new JSONObject();
         req.put("limiter", name + "");
-        return WebSocketServer.send_msg(node_id, req, "DeleteLimiters");
+        return WebSocketServer.send_msg_async(node_id, req, "DeleteLimiters");
     }
 
     public static GostDto AddService(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
+        return AddServiceAsync(node_id, name, in_port, limiter, remoteAddr, fow_type, tunnel, strategy, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> AddServiceAsync(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
         JSONArray services = new JSONArray();
         String[] protocols = {"tcp", "udp"};
         for (String protocol : protocols) {
             JSONObject service = createServiceConfig(name, in_port, limiter, remoteAddr, protocol, fow_type, tunnel, strategy, interfaceName);
             services.add(service);
         }
-        return WebSocketServer.send_msg(node_id, services, "AddService");
+        return NodeCommandCoalescer.submit(node_id, "AddService", services);
     }
 
     public static GostDto AddServices(Long node_id, JSONArray services) {
-        return WebSocketServer.send_msg(node_id, services, "AddService");
+        return AddServicesAsync(node_id, services).join();
+    }
+
+    public static CompletableFuture<GostDto> AddServicesAsync(Long node_id, JSONArray services) {
+        return NodeCommandCoalescer.submit(node_id, "AddService", services);
     }
 
     public static GostDto UpdateService(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
+        return UpdateServiceAsync(node_id, name, in_port, limiter, remoteAddr, fow_type, tunnel, strategy, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateServiceAsync(Long node_id, String name, Integer in_port, Integer limiter, String remoteAddr, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
         JSONArray services = new JSONArray();
         String[] protocols = {"tcp", "udp"};
         for (String protocol : protocols) {
             JSONObject service = createServiceConfig(name, in_port, limiter, remoteAddr, protocol, fow_type, tunnel, strategy, interfaceName);
             services.add(service);
         }
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        return NodeCommandCoalescer.submit(node_id, "UpdateService", services);
     }
 
     public static GostDto UpdateServices(Long node_id, JSONArray services) {
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        return UpdateServicesAsync(node_id, services).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateServicesAsync(Long node_id, JSONArray services) {
+        return NodeCommandCoalescer.submit(node_id, "UpdateService", services);
     }
 
     public static GostDto DeleteService(Long node_id, String name) {
-        JSONObject data = new JSONObject();
+        return DeleteServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteServiceAsync(Long node_id, String name) {
         JSONArray services = new JSONArray();
         services.add(name + "_tcp");
         services.add(name + "_udp");
-        data.put("services", services);
-        return WebSocketServer.send_msg(node_id, data, "DeleteService");
+        return NodeCommandCoalescer.submit(node_id, "DeleteService", services);
     }
 
     public static GostDto DeleteServices(Long node_id, List<String> services) {
-        JSONObject data = new JSONObject();
+        return DeleteServicesAsync(node_id, services).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteServicesAsync(Long node_id, List<String> services) {
         JSONArray serviceArray = new JSONArray();
         if (services != null && !services.isEmpty()) {
             serviceArray.addAll(services);
         }
-        data.put("services", serviceArray);
-        return WebSocketServer.send_msg(node_id, data, "DeleteService");
+        return NodeCommandCoalescer.submit(node_id, "DeleteService", serviceArray);
     }
 
     public static GostDto AddRemoteService(Long node_id, String name, Integer out_port, String remoteAddr,  String protocol, String strategy, String interfaceName) {
+        return AddRemoteServiceAsync(node_id, name, out_port, remoteAddr, protocol, strategy, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> AddRemoteServiceAsync(Long node_id, String name, Integer out_port, String remoteAddr,  String protocol, String strategy, String interfaceName) {
         JSONObject data = createRemoteServiceConfig(name, out_port, remoteAddr, protocol, strategy, interfaceName);
         JSONArray services = new JSONArray();
         services.add(data);
-        return WebSocketServer.send_msg(node_id, services, "AddService");
+        return NodeCommandCoalescer.submit(node_id, "AddService", services);
     }
 
     public static GostDto AddMuxService(Long node_id, String name, Integer port, String protocol, String interfaceName) {
+        return AddMuxServiceAsync(node_id, name, port, protocol, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> AddMuxServiceAsync(Long node_id, String name, Integer port, String protocol, String interfaceName) {
         JSONObject data = new JSONObject();
         data.put("name", name + "_mux");
         data.put("addr", ":" + port);
@@ -112,17 +160,25 @@ public class GostUtil {
 
         JSONArray services = new JSONArray();
         services.add(data);
-        return WebSocketServer.send_msg(node_id, services, "AddService");
+        return NodeCommandCoalescer.submit(node_id, "AddService", services);
     }
 
     public static GostDto UpdateRemoteService(Long node_id, String name, Integer out_port, String remoteAddr,String protocol, String strategy, String interfaceName) {
+        return UpdateRemoteServiceAsync(node_id, name, out_port, remoteAddr, protocol, strategy, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateRemoteServiceAsync(Long node_id, String name, Integer out_port, String remoteAddr,String protocol, String strategy, String interfaceName) {
         JSONObject data = createRemoteServiceConfig(name, out_port, remoteAddr, protocol, strategy, interfaceName);
         JSONArray services = new JSONArray();
         services.add(data);
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        return NodeCommandCoalescer.submit(node_id, "UpdateService", services);
     }
 
     public static GostDto UpdateMuxService(Long node_id, String name, Integer port, String protocol, String interfaceName) {
+        return UpdateMuxServiceAsync(node_id, name, port, protocol, interfaceName).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateMuxServiceAsync(Long node_id, String name, Integer port, String protocol, String interfaceName) {
         JSONObject data = new JSONObject();
         data.put("name", name + "_mux");
         data.put("addr", ":" + port);
@@ -146,23 +202,27 @@ public class GostUtil {
 
         JSONArray services = new JSONArray();
         services.add(data);
-        return WebSocketServer.send_msg(node_id, services, "UpdateService");
+        return NodeCommandCoalescer.submit(node_id, "UpdateService", services);
     }
 
     public static GostDto DeleteRemoteService(Long node_id, String name) {
+        return DeleteRemoteServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteRemoteServiceAsync(Long node_id, String name) {
         JSONArray data = new JSONArray();
         data.add(name + "_tls");
-        JSONObject req = new JSONObject();
-        req.put("services", data);
-        return WebSocketServer.send_msg(node_id, req, "DeleteService");
+        return NodeCommandCoalescer.submit(node_id, "DeleteService", data);
     }
 
     public static GostDto DeleteMuxService(Long node_id, String name) {
+        return DeleteMuxServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteMuxServiceAsync(Long node_id, String name) {
         JSONArray data = new JSONArray();
         data.add(name + "_mux");
-        JSONObject req = new JSONObject();
-        req.put("services", data);
-        return WebSocketServer.send_msg(node_id, req, "DeleteService");
+        return NodeCommandCoalescer.submit(node_id, "DeleteService", data);
     }
 
     public static JSONObject buildServiceConfig(String name, Integer in_port, Integer limiter, String remoteAddr, String protocol, Integer fow_type, Tunnel tunnel, String strategy, String interfaceName) {
@@ -174,40 +234,74 @@ public class GostUtil {
     }
 
     public static GostDto PauseService(Long node_id, String name) {
+        return PauseServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> PauseServiceAsync(Long node_id, String name) {
         JSONObject data = new JSONObject();
         JSONArray services = new JSONArray();
         services.add(name + "_tcp");
         services.add(name + "_udp");
         data.put("services", services);
-        return WebSocketServer.send_msg(node_id, data, "PauseService");
+        return WebSocketServer.send_msg_async(node_id, data, "PauseService");
     }
 
     public static GostDto ResumeService(Long node_id, String name) {
+        return ResumeServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> ResumeServiceAsync(Long node_id, String name) {
         JSONObject data = new JSONObject();
         JSONArray services = new JSONArray();
         services.add(name + "_tcp");
         services.add(name + "_udp");
         data.put("services", services);
-        return WebSocketServer.send_msg(node_id, data, "ResumeService");
+        return WebSocketServer.send_msg_async(node_id, data, "ResumeService");
     }
 
     public static GostDto PauseRemoteService(Long node_id, String name) {
+        return PauseRemoteServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> PauseRemoteServiceAsync(Long node_id, String name) {
         JSONObject data = new JSONObject();
         JSONArray services = new JSONArray();
         services.add(name + "_tls");
         data.put("services", services);
-        return WebSocketServer.send_msg(node_id, data, "PauseService");
+        return WebSocketServer.send_msg_async(node_id, data, "PauseService");
+    }
+
+    public static GostDto PauseServices(Long node_id, List<String> services) {
+        return PauseServicesAsync(node_id, services).join();
+    }
+
+    public static CompletableFuture<GostDto> PauseServicesAsync(Long node_id, List<String> services) {
+        JSONObject data = new JSONObject();
+        JSONArray serviceArray = new JSONArray();
+        if (services != null && !services.isEmpty()) {
+            serviceArray.addAll(services);
+        }
+        data.put("services", serviceArray);
+        return WebSocketServer.send_msg_async(node_id, data, "PauseService");
     }
 
     public static GostDto ResumeRemoteService(Long node_id, String name) {
+        return ResumeRemoteServiceAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> ResumeRemoteServiceAsync(Long node_id, String name) {
         JSONObject data = new JSONObject();
         JSONArray services = new JSONArray();
         services.add(name + "_tls");
         data.put("services", services);
-        return WebSocketServer.send_msg(node_id, data, "ResumeService");
+        return WebSocketServer.send_msg_async(node_id, data, "ResumeService");
     }
 
     public static GostDto AddChains(Long node_id, String name, String remoteAddr, String protocol, String interfaceName, boolean useSocks, String strategy) {
+        return AddChainsAsync(node_id, name, remoteAddr, protocol, interfaceName, useSocks, strategy).join();
+    }
+
+    public static CompletableFuture<GostDto> AddChainsAsync(Long node_id, String name, String remoteAddr, String protocol, String interfaceName, boolean useSocks, String strategy) {
         JSONObject dialer = new JSONObject();
         dialer.put("type", protocol);
         if (Objects.equals(protocol, "quic")){
@@ -263,10 +357,14 @@ public class GostUtil {
         data.put("name", name + "_chains");
         data.put("hops", hops);
 
-        return WebSocketServer.send_msg(node_id, data, "AddChains");
+        return WebSocketServer.send_msg_async(node_id, data, "AddChains");
     }
 
     public static GostDto UpdateChains(Long node_id, String name, String remoteAddr, String protocol, String interfaceName, boolean useSocks, String strategy) {
+        return UpdateChainsAsync(node_id, name, remoteAddr, protocol, interfaceName, useSocks, strategy).join();
+    }
+
+    public static CompletableFuture<GostDto> UpdateChainsAsync(Long node_id, String name, String remoteAddr, String protocol, String interfaceName, boolean useSocks, String strategy) {
         JSONObject dialer = new JSONObject();
         dialer.put("type", protocol);
 
@@ -323,13 +421,17 @@ public class GostUtil {
         JSONObject req = new JSONObject();
         req.put("chain", name + "_chains");
         req.put("data", data);
-       return WebSocketServer.send_msg(node_id, req, "UpdateChains");
+       return WebSocketServer.send_msg_async(node_id, req, "UpdateChains");
     }
 
     public static GostDto DeleteChains(Long node_id, String name) {
+        return DeleteChainsAsync(node_id, name).join();
+    }
+
+    public static CompletableFuture<GostDto> DeleteChainsAsync(Long node_id, String name) {
         JSONObject data = new JSONObject();
         data.put("chain", name + "_chains");
-        return WebSocketServer.send_msg(node_id, data, "DeleteChains");
+        return WebSocketServer.send_msg_async(node_id, data, "DeleteChains");
     }
 
     private static JSONObject createLimiterData(Long name, String speed) {
@@ -0,0 +1,83 @@
+package com.admin.common.utils;
+
+/**
+ * 顶层 JSON 字段扫描工具
+ * <p>
+ * 在原始字符串上按位置跳过空白、字符串和任意值，不构造 JSON 对象也不分配内存，
+ * 供只需要读取少数顶层字段的解析器使用（CryptoEnvelope、NodeFrames）。
+ */
+final class JsonScanner {
+
+    private JsonScanner() {
+    }
+
+    static int skipWhitespace(String s, int i) {
+        int length = s.length();
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 从起始引号开始扫描字符串，返回结束引号的位置，未闭合返回-1
+     */
+    static int scanString(String s, int start) {
+        int length = s.length();
+        for (int i = start + 1; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过一个任意类型的值，返回值之后的位置，格式错误返回-1
+     */
+    static int skipValue(String s, int start) {
+        int length = s.length();
+        char first = s.charAt(start);
+        if (first == '"') {
+            int end = scanString(s, start);
+            return end < 0 ? -1 : end + 1;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            for (int i = start; i < length; i++) {
+                char c = s.charAt(i);
+                if (c == '"') {
+                    i = scanString(s, i);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        // 数字、true、false、null
+        int i = start;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+}
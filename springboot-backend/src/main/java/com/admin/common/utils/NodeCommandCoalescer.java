@@ -0,0 +1,329 @@
+package com.admin.common.utils;
+
+import com.admin.common.dto.GostDto;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 节点服务命令合并
+ * <p>
+ * 批量修改转发（修改用户限速、编辑隧道、批量删除）时每条转发都会向节点发送一次 AddService/UpdateService/DeleteService，
+ * 节点每收到一帧都要重新加载并保存配置。节点协议本身接受数组，这里把同一节点在 WINDOW_MS 内排队的同类命令合并成一帧：
+ * 1. 每个节点只有一个待发送批次，类型不同、服务名重复或超过 MAX_BATCH_ITEMS 时先发出当前批次，保证同一节点的命令顺序不变
+ * 2. 合并帧成功时所有调用方都得到该结果
+ * 3. 合并帧失败时，节点返回的错误会指明出错的服务（service xxx not found / already exists / failed），
+ *    该服务所属的命令直接得到这个结果（单独发送也是同样的结果），其余命令重新合并发送；无法识别时逐条重发。
+ *    超时、节点不在线、发送失败等面板侧的失败不是节点的执行结果，节点可能已经执行了这一帧，
+ *    重发会让同步调用方再等一轮超时，也会重复执行 AddService，因此所有命令直接得到该结果，不重发
+ * <p>
+ * 节点对合并帧的处理并不都是原子的：
+ * - AddService、DeleteService 先校验全部服务再执行，失败时整帧未生效
+ * - UpdateService 只预先校验服务是否存在，之后逐个关闭、重新解析并注册。第 k 个服务解析或注册失败时，
+ *   前面的服务已经替换为新配置，第 k 个服务已被关闭，后面的服务未改动，且本帧的配置不会保存
+ * 因此失败后重发的剩余命令中可能包含已生效的 UpdateService。重发是安全的：节点对同名服务再次关闭并按同一份配置
+ * 重建，结果与只执行一次相同（代价是这些服务的监听重启一次），并且重发成功后配置才会保存；
+ * 如果不重发，这些服务在节点重启后会回到旧配置。
+ * 4. 其他命令发送前先发出该节点的待发送批次（WebSocketServer.send_msg_async），不会越过排队中的服务命令
+ * 5. 只合并优先级相同的命令（NodeCommandScheduler），优先级在入队时确定
+ */
+@Slf4j
+public final class NodeCommandCoalescer {
+
+    // 合并窗口：第一条命令入队后最多等待的时间
+    private static final long WINDOW_MS = 20;
+
+    // 单帧最多合并的服务数量
+    private static final int MAX_BATCH_ITEMS = 200;
+
+    // 节点错误信息中的服务名，例如 service xxx not found、create service xxx failed: ...
+    private static final Pattern FAILED_SERVICE_PATTERN = Pattern.compile("service (\\S+) (?:not found|already exists|failed)");
+
+    // 面板侧产生的失败（NodeCommandScheduler、WebSocketServer、ClusterRouter），不是节点返回的错误
+    private static final String[] LOCAL_FAILURE_PREFIXES = {
+            "等待响应超时", "节点不在线", "节点连接已断开", "节点命令队列已满", "无响应消息", "发送消息失败", "转发命令失败"
+    };
+
+    private static final ScheduledExecutorService FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "node-command-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ConcurrentHashMap<Long, NodeQueue> queues = new ConcurrentHashMap<>();
+
+    private static final LongAdder commands = new LongAdder();
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder mergedFrames = new LongAdder();
+    private static final LongAdder mergedCommands = new LongAdder();
+    private static final LongAdder resentCommands = new LongAdder();
+
+    private NodeCommandCoalescer() {
+    }
+
+    /**
+     * 排队一条服务命令，在窗口结束或被其他命令挤出时发送
+     *
+     * @param nodeId 节点ID
+     * @param type   AddService / UpdateService / DeleteService
+     * @param items  服务配置（Add/Update）或服务名（Delete）
+     * @return 该命令的结果，不会异常完成
+     */
+    public static CompletableFuture<GostDto> submit(Long nodeId, String type, JSONArray items) {
+        commands.increment();
+        PendingCommand command = new PendingCommand(type, items, NodeCommandScheduler.currentPriority());
+        NodeQueue queue = queues.computeIfAbsent(nodeId, NodeQueue::new);
+        synchronized (queue) {
+            if (command.items.isEmpty()) {
+                // 空命令由节点直接拒绝，不能并入其他命令
+                queue.flush();
+                sendSingle(nodeId, command);
+                return command.future;
+            }
+            if (!queue.accepts(command)) {
+                queue.flush();
+            }
+            queue.add(command);
+            if (queue.timer == null) {
+                queue.timer = FLUSH_EXECUTOR.schedule(() -> {
+                    synchronized (queue) {
+                        queue.flush();
+                    }
+                }, WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return command.future;
+    }
+
+    /**
+     * 立即发出节点的待发送批次
+     */
+    public static void flush(Long nodeId) {
+        NodeQueue queue = queues.get(nodeId);
+        if (queue == null) {
+            return;
+        }
+        synchronized (queue) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * 获取合并统计
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowMs", WINDOW_MS);
+        stats.put("maxBatchItems", MAX_BATCH_ITEMS);
+        stats.put("commands", commands.sum());
+        stats.put("frames", frames.sum());
+        stats.put("mergedFrames", mergedFrames.sum());
+        stats.put("mergedCommands", mergedCommands.sum());
+        stats.put("resentCommands", resentCommands.sum());
+        return stats;
+    }
+
+    private static void sendSingle(Long nodeId, PendingCommand command) {
+        frames.increment();
+        WebSocketServer.sendCommand(nodeId, command.payload(), command.type, command.priority)
+                .thenAccept(command.future::complete);
+    }
+
+    private static void sendMerged(Long nodeId, String type, NodeCommandScheduler.Priority priority, List<PendingCommand> batch) {
+        JSONArray items = new JSONArray();
+        for (PendingCommand command : batch) {
+            items.addAll(command.items);
+        }
+        frames.increment();
+        mergedFrames.increment();
+        mergedCommands.add(batch.size());
+        WebSocketServer.sendCommand(nodeId, buildPayload(type, items), type, priority).thenAccept(result -> {
+            if (result != null && Objects.equals(result.getMsg(), "OK")) {
+                for (PendingCommand command : batch) {
+                    command.future.complete(result);
+                }
+                return;
+            }
+            log.info("节点 {} 合并的 {} 条 {} 命令执行失败: {}", nodeId, batch.size(), type,
+                    result != null ? result.getMsg() : null);
+            if (isLocalFailure(result)) {
+                for (PendingCommand command : batch) {
+                    command.future.complete(result);
+                }
+                return;
+            }
+            PendingCommand failed = findFailedCommand(batch, result);
+            if (failed == null) {
+                // 无法判断是哪一条命令导致的，逐条重发以得到每条命令自己的结果；
+                // UpdateService 可能已部分生效，按同一配置重发是幂等的（见类注释）
+                resentCommands.add(batch.size());
+                for (PendingCommand command : batch) {
+                    sendSingle(nodeId, command);
+                }
+                return;
+            }
+            failed.future.complete(result);
+            // 剩余命令按原顺序重发，其中已生效的 UpdateService 会按同一配置再执行一次并保存配置
+            List<PendingCommand> rest = new ArrayList<>(batch);
+            rest.remove(failed);
+            resentCommands.add(rest.size());
+            if (rest.size() == 1) {
+                sendSingle(nodeId, rest.get(0));
+            } else if (!rest.isEmpty()) {
+                sendMerged(nodeId, type, priority, rest);
+            }
+        });
+    }
+
+    /**
+     * 是否为面板侧的失败，节点未返回结果
+     */
+    private static boolean isLocalFailure(GostDto result) {
+        if (result == null || result.getMsg() == null) {
+            return true;
+        }
+        for (String prefix : LOCAL_FAILURE_PREFIXES) {
+            if (result.getMsg().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 根据节点返回的错误找出出错服务所属的命令
+     */
+    private static PendingCommand findFailedCommand(List<PendingCommand> batch, GostDto result) {
+        if (result == null || result.getMsg() == null) {
+            return null;
+        }
+        Matcher matcher = FAILED_SERVICE_PATTERN.matcher(result.getMsg());
+        if (!matcher.find()) {
+            return null;
+        }
+        String name = matcher.group(1);
+        for (PendingCommand command : batch) {
+            for (Object item : command.items) {
+                if (name.equals(itemName(item))) {
+                    return command;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Object buildPayload(String type, JSONArray items) {
+        if (!"DeleteService".equals(type)) {
+            return items;
+        }
+        JSONObject data = new JSONObject();
+        data.put("services", items);
+        return data;
+    }
+
+    private static String itemName(Object item) {
+        return item instanceof JSONObject ? ((JSONObject) item).getString("name") : String.valueOf(item);
+    }
+
+    /**
+     * 单个节点的待发送批次，所有方法在持有队列锁时调用
+     */
+    private static final class NodeQueue {
+        private final Long nodeId;
+        private final List<PendingCommand> pending = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+        private String type;
+        private NodeCommandScheduler.Priority priority;
+        private int itemCount;
+        private ScheduledFuture<?> timer;
+
+        NodeQueue(Long nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        boolean accepts(PendingCommand command) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            if (!type.equals(command.type) || priority != command.priority
+                    || itemCount + command.items.size() > MAX_BATCH_ITEMS) {
+                return false;
+            }
+            for (Object item : command.items) {
+                if (names.contains(itemName(item))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(PendingCommand command) {
+            type = command.type;
+            priority = command.priority;
+            pending.add(command);
+            itemCount += command.items.size();
+            for (Object item : command.items) {
+                names.add(itemName(item));
+            }
+        }
+
+        void flush() {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<PendingCommand> batch = new ArrayList<>(pending);
+            String batchType = type;
+            NodeCommandScheduler.Priority batchPriority = priority;
+            pending.clear();
+            names.clear();
+            itemCount = 0;
+            // 在队列锁内发送，保证同一节点的帧按入队顺序写出
+            if (batch.size() == 1) {
+                sendSingle(nodeId, batch.get(0));
+            } else {
+                sendMerged(nodeId, batchType, batchPriority, batch);
+            }
+        }
+    }
+
+    /**
+     * 排队中的命令
+     */
+    private static final class PendingCommand {
+        private final String type;
+        private final JSONArray items;
+        private final NodeCommandScheduler.Priority priority;
+        private final CompletableFuture<GostDto> future = new CompletableFuture<>();
+
+        PendingCommand(String type, JSONArray items, NodeCommandScheduler.Priority priority) {
+            this.type = type;
+            this.items = items != null ? items : new JSONArray();
+            this.priority = priority;
+        }
+
+        Object payload() {
+            return buildPayload(type, items);
+        }
+    }
+}
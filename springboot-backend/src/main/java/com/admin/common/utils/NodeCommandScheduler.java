@@ -0,0 +1,440 @@
+package com.admin.common.utils;
+
+import com.admin.common.dto.GostDto;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 节点命令调度
+ * <p>
+ * 节点按顺序处理命令，批量同步（隧道重建、节点上线同步、限速刷新）一次发出几百条命令时，
+ * 之后的暂停服务、诊断等命令要排在后面，可能等到超时。这里按节点控制发出的命令：
+ * 1. 每个节点同时等待响应的命令不超过 maxInFlight（flux.node.command.max-in-flight），其余在面板侧排队
+ * 2. 排队的命令分三条通道，按 ENFORCEMENT（限额暂停）> INTERACTIVE（管理员操作、诊断）> BULK（批量同步）的顺序发出，
+ *    同一通道内先进先出
+ * 3. 高优先级命令不会越过涉及同名服务的低优先级命令（例如排队中的 UpdateService 和之后的 PauseService），
+ *    这种情况下进入对方所在的通道，保证同一服务的命令顺序不变
+ * 4. 调用方通过 run/call 指定其中发出的命令的优先级，未指定时为 INTERACTIVE；优先级绑定在线程上，
+ *    在命令结果的回调中发出后续命令时，回调可能运行在节点响应线程、超时线程或其他调用方的线程上，
+ *    需要在创建回调时取得 currentPriority() 并在回调中用 call 显式指定
+ * 5. 每条通道最多排队 laneCapacity（flux.node.command.lane-capacity）条，满时新命令立即以失败完成
+ * 6. ENFORCEMENT、INTERACTIVE 命令从提交起计时，超过 commandTimeoutMs（flux.node.command.timeout-ms）仍未收到响应
+ *    即以"等待响应超时"完成，排队中已超时的命令不再发出；同步等待结果的调用方因此最多阻塞这么长时间
+ * 7. BULK 命令一次排入整个节点的同步任务，排队时间可能远超 commandTimeoutMs，因此单独计时：
+ *    排队超过 bulkQueueTimeoutMs（flux.node.command.bulk-queue-timeout-ms）仍未发出以"排队等待超时"完成，
+ *    发出后再按 commandTimeoutMs 等待响应
+ */
+public final class NodeCommandScheduler {
+
+    public enum Priority {
+        ENFORCEMENT,
+        INTERACTIVE,
+        BULK
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    private static final ConcurrentHashMap<Long, NodeLanes> nodes = new ConcurrentHashMap<>();
+
+    private static volatile int maxInFlight = 4;
+    private static volatile int laneCapacity = 1024;
+    private static volatile long commandTimeoutMs = 10000;
+    private static volatile long bulkQueueTimeoutMs = 300000;
+
+    private static final LongAdder[] submitted = newCounters();
+    private static final LongAdder[] queued = newCounters();
+    private static final LatencyHistogram[] queueWait = newHistograms();
+    private static final LongAdder[] rejected = newCounters();
+    private static final LongAdder demoted = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+
+    private NodeCommandScheduler() {
+    }
+
+    /**
+     * 以指定优先级执行，期间在当前线程发出的节点命令使用该优先级
+     */
+    public static void run(Priority priority, Runnable action) {
+        call(priority, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static <T> T call(Priority priority, Supplier<T> action) {
+        Priority previous = CURRENT.get();
+        CURRENT.set(priority);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 当前线程发出命令的优先级
+     */
+    public static Priority currentPriority() {
+        Priority priority = CURRENT.get();
+        return priority != null ? priority : Priority.INTERACTIVE;
+    }
+
+    static void setMaxInFlight(int limit) {
+        maxInFlight = Math.max(1, limit);
+    }
+
+    static void setLaneCapacity(int capacity) {
+        laneCapacity = Math.max(1, capacity);
+    }
+
+    static void setCommandTimeoutMs(long timeoutMs) {
+        commandTimeoutMs = Math.max(1, timeoutMs);
+    }
+
+    static void setBulkQueueTimeoutMs(long timeoutMs) {
+        bulkQueueTimeoutMs = Math.max(1, timeoutMs);
+    }
+
+    /**
+     * 提交一条命令，节点有空闲额度且没有排队命令时直接发出
+     *
+     * @param msg  命令数据，用于识别涉及的服务名
+     * @param send 实际发送，在节点锁内调用，保证发出顺序与调度顺序一致，不能阻塞
+     * @return 命令结果，不会异常完成；通道已满时立即以失败完成，超时规则见类注释
+     */
+    static CompletableFuture<GostDto> submit(Long nodeId, Priority priority, Object msg,
+                                             Supplier<CompletableFuture<GostDto>> send) {
+        submitted[priority.ordinal()].increment();
+        QueuedCommand command = new QueuedCommand(priority, msg, send);
+        NodeLanes lanes = nodes.computeIfAbsent(nodeId, k -> new NodeLanes());
+        if (priority == Priority.BULK) {
+            CompletableFuture.delayedExecutor(bulkQueueTimeoutMs, TimeUnit.MILLISECONDS)
+                    .execute(() -> expireQueued(lanes, command));
+        } else {
+            command.future.completeOnTimeout(failure("等待响应超时"), commandTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        List<Runnable> completions;
+        boolean accepted;
+        synchronized (lanes) {
+            accepted = lanes.enqueue(command);
+            lanes.drain();
+            completions = lanes.takeCompletions();
+        }
+        if (!accepted) {
+            rejected[priority.ordinal()].increment();
+            command.future.complete(failure("节点命令队列已满"));
+        }
+        completions.forEach(Runnable::run);
+        return command.future;
+    }
+
+    /**
+     * 获取调度统计，nodes 只包含有排队或在途命令的节点
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("laneCapacity", laneCapacity);
+        stats.put("commandTimeoutMs", commandTimeoutMs);
+        stats.put("bulkQueueTimeoutMs", bulkQueueTimeoutMs);
+        stats.put("demoted", demoted.sum());
+        stats.put("expired", expired.sum());
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        for (Priority priority : PRIORITIES) {
+            Map<String, Object> lane = new LinkedHashMap<>();
+            lane.put("submitted", submitted[priority.ordinal()].sum());
+            lane.put("queued", queued[priority.ordinal()].sum());
+            lane.put("rejected", rejected[priority.ordinal()].sum());
+            lane.put("queueWait", queueWait[priority.ordinal()].getStats());
+            lanes.put(priority.name(), lane);
+        }
+        stats.put("lanes", lanes);
+        Map<String, Object> busyNodes = new LinkedHashMap<>();
+        nodes.forEach((nodeId, node) -> {
+            Map<String, Object> item = node.getStats();
+            if (item != null) {
+                busyNodes.put(String.valueOf(nodeId), item);
+            }
+        });
+        stats.put("nodes", busyNodes);
+        return stats;
+    }
+
+    /**
+     * 命令涉及的服务名：服务数组中的 name，或 services 列表（删除、暂停、恢复），或单个对象的 name
+     */
+    static Set<String> serviceNames(Object msg) {
+        if (msg instanceof Collection) {
+            Set<String> names = new HashSet<>();
+            for (Object item : (Collection<?>) msg) {
+                if (item instanceof JSONObject) {
+                    addName(names, ((JSONObject) item).get("name"));
+                }
+            }
+            return names;
+        }
+        if (msg instanceof JSONObject) {
+            JSONObject data = (JSONObject) msg;
+            Set<String> names = new HashSet<>();
+            Object services = data.get("services");
+            if (services instanceof Collection) {
+                for (Object name : (Collection<?>) services) {
+                    addName(names, name);
+                }
+            }
+            addName(names, data.get("name"));
+            return names;
+        }
+        return Collections.emptySet();
+    }
+
+    private static void addName(Set<String> names, Object name) {
+        if (name instanceof String) {
+            names.add((String) name);
+        }
+    }
+
+    /**
+     * BULK 命令排队超时：仍未发出则标记丢弃并以失败完成，已发出的命令由响应计时处理
+     */
+    private static void expireQueued(NodeLanes lanes, QueuedCommand command) {
+        synchronized (lanes) {
+            if (command.dispatched || command.future.isDone()) {
+                return;
+            }
+            command.expired = true;
+        }
+        command.future.complete(failure("排队等待超时"));
+    }
+
+    private static GostDto failure(String message) {
+        GostDto failure = new GostDto();
+        failure.setMsg(message);
+        return failure;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[PRIORITIES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[PRIORITIES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * 单个节点的通道，所有字段在持有节点锁时访问。
+     * 调用方的 future 一律在释放节点锁后完成，回调中再发命令不会在持有节点锁时进入其他锁
+     */
+    private static final class NodeLanes {
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<QueuedCommand>[] lanes = new ArrayDeque[PRIORITIES.length];
+        private final List<Runnable> completions = new ArrayList<>();
+        private int inFlight;
+        private boolean draining;
+
+        NodeLanes() {
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new ArrayDeque<>();
+            }
+        }
+
+        /**
+         * @return 目标通道已满时返回false，命令不入队
+         */
+        boolean enqueue(QueuedCommand command) {
+            int lane = command.priority.ordinal();
+            // 从最低优先级开始找涉及同名服务的排队命令，找到则排在它后面
+            for (int i = lanes.length - 1; i > lane; i--) {
+                if (conflicts(lanes[i], command)) {
+                    lane = i;
+                    demoted.increment();
+                    break;
+                }
+            }
+            if (lanes[lane].size() >= laneCapacity) {
+                return false;
+            }
+            if (inFlight >= maxInFlight || !isEmpty()) {
+                queued[command.priority.ordinal()].increment();
+            }
+            lanes[lane].add(command);
+            return true;
+        }
+
+        /**
+         * 在额度内按优先级发出排队的命令。发送可能同步完成并重入（节点不在线），重入时只归还额度，由外层循环继续发出
+         */
+        void drain() {
+            if (draining) {
+                return;
+            }
+            draining = true;
+            try {
+                while (inFlight < maxInFlight) {
+                    QueuedCommand next = poll();
+                    if (next == null) {
+                        break;
+                    }
+                    dispatch(next);
+                }
+            } finally {
+                draining = false;
+            }
+        }
+
+        private void dispatch(QueuedCommand command) {
+            inFlight++;
+            command.dispatched = true;
+            if (command.priority == Priority.BULK) {
+                command.future.completeOnTimeout(failure("等待响应超时"), commandTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            queueWait[command.priority.ordinal()].record(
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - command.enqueuedNanos));
+            CompletableFuture<GostDto> result;
+            try {
+                result = command.send.get();
+            } catch (Exception e) {
+                result = CompletableFuture.completedFuture(failure("发送消息失败: " + e.getMessage()));
+            }
+            result.whenComplete((dto, e) -> {
+                List<Runnable> ready;
+                synchronized (this) {
+                    inFlight--;
+                    completions.add(() -> complete(command, dto, e));
+                    if (draining) {
+                        // 同步完成，由外层在释放锁后完成
+                        return;
+                    }
+                    drain();
+                    ready = takeCompletions();
+                }
+                ready.forEach(Runnable::run);
+            });
+        }
+
+        List<Runnable> takeCompletions() {
+            if (completions.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Runnable> ready = new ArrayList<>(completions);
+            completions.clear();
+            return ready;
+        }
+
+        private static void complete(QueuedCommand command, GostDto dto, Throwable e) {
+            if (e == null) {
+                command.future.complete(dto);
+                return;
+            }
+            command.future.complete(failure("发送消息失败: " + e.getMessage()));
+        }
+
+        /**
+         * 取出下一条待发命令，排队期间已超时的命令直接丢弃
+         */
+        private QueuedCommand poll() {
+            for (ArrayDeque<QueuedCommand> lane : lanes) {
+                QueuedCommand command;
+                while ((command = lane.poll()) != null) {
+                    if (!command.expired && !command.future.isDone()) {
+                        return command;
+                    }
+                    expired.increment();
+                }
+            }
+            return null;
+        }
+
+        private boolean isEmpty() {
+            for (ArrayDeque<QueuedCommand> lane : lanes) {
+                if (!lane.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean conflicts(ArrayDeque<QueuedCommand> lane, QueuedCommand command) {
+            if (lane.isEmpty() || command.names().isEmpty()) {
+                return false;
+            }
+            for (QueuedCommand queuedCommand : lane) {
+                for (String name : queuedCommand.names()) {
+                    if (command.names().contains(name)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        synchronized Map<String, Object> getStats() {
+            if (inFlight == 0 && isEmpty()) {
+                return null;
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("inFlight", inFlight);
+            for (Priority priority : PRIORITIES) {
+                stats.put(priority.name().toLowerCase(), lanes[priority.ordinal()].size());
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * 排队中的命令
+     */
+    private static final class QueuedCommand {
+        private final Priority priority;
+        private final Object msg;
+        private final Supplier<CompletableFuture<GostDto>> send;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<GostDto> future = new CompletableFuture<>();
+        private Set<String> names;
+        // 以下两个字段在持有节点锁时访问
+        private boolean dispatched;
+        private boolean expired;
+
+        QueuedCommand(Priority priority, Object msg, Supplier<CompletableFuture<GostDto>> send) {
+            this.priority = priority;
+            this.msg = msg;
+            this.send = send;
+        }
+
+        // 只在需要判断顺序时解析，在节点锁内调用
+        Set<String> names() {
+            if (names == null) {
+                names = serviceNames(msg);
+            }
+            return names;
+        }
+    }
+}
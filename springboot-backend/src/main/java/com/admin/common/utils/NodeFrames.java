@@ -0,0 +1,212 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * 节点 WebSocket 消息解析
+ * <p>
+ * 节点发来的消息有三类：
+ * 1. 心跳（系统信息），顶层包含 memory_usage 字段，每 2 秒一条
+ * 2. 命令响应，顶层包含 requestId 字段
+ * 3. 其他主动上报的事件
+ * kind 只扫描顶层字段名，识别出类型即返回，不构造 JSON 对象、不截取子串，心跳路径没有额外的内存分配；
+ * readResponse 一次扫描记录各字段的位置，字段值在处理方用到时才解码。
+ */
+public final class NodeFrames {
+
+    public enum Kind {
+        HEARTBEAT,
+        COMMAND_RESPONSE,
+        EVENT
+    }
+
+    private static final String KEY_MEMORY_USAGE = "memory_usage";
+    private static final String KEY_REQUEST_ID = "requestId";
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_MESSAGE = "message";
+    private static final String KEY_DATA = "data";
+
+    private NodeFrames() {
+    }
+
+    /**
+     * 识别消息类型，格式错误的消息按事件处理
+     */
+    public static Kind kind(String payload) {
+        if (payload == null) {
+            return Kind.EVENT;
+        }
+        int length = payload.length();
+        int i = JsonScanner.skipWhitespace(payload, 0);
+        if (i >= length || payload.charAt(i) != '{') {
+            return Kind.EVENT;
+        }
+        i++;
+        while (true) {
+            i = JsonScanner.skipWhitespace(payload, i);
+            if (i >= length) {
+                return Kind.EVENT;
+            }
+            char c = payload.charAt(i);
+            if (c == '}') {
+                return Kind.EVENT;
+            }
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') {
+                return Kind.EVENT;
+            }
+            int keyEnd = JsonScanner.scanString(payload, i);
+            if (keyEnd < 0) {
+                return Kind.EVENT;
+            }
+            int keyStart = i + 1;
+            int keyLength = keyEnd - keyStart;
+            if (keyEquals(payload, keyStart, keyLength, KEY_MEMORY_USAGE)) {
+                return Kind.HEARTBEAT;
+            }
+            if (keyEquals(payload, keyStart, keyLength, KEY_REQUEST_ID)) {
+                return Kind.COMMAND_RESPONSE;
+            }
+            i = JsonScanner.skipWhitespace(payload, keyEnd + 1);
+            if (i >= length || payload.charAt(i) != ':') {
+                return Kind.EVENT;
+            }
+            i = JsonScanner.skipWhitespace(payload, i + 1);
+            if (i >= length) {
+                return Kind.EVENT;
+            }
+            i = JsonScanner.skipValue(payload, i);
+            if (i < 0) {
+                return Kind.EVENT;
+            }
+        }
+    }
+
+    /**
+     * 解析命令响应，记录 requestId、type、message、data 的位置
+     *
+     * @return 格式错误或没有 requestId 时返回null
+     */
+    public static Response readResponse(String payload) {
+        Response response = new Response(payload);
+        int length = payload.length();
+        int i = JsonScanner.skipWhitespace(payload, 0);
+        if (i >= length || payload.charAt(i) != '{') {
+            return null;
+        }
+        i++;
+        while (true) {
+            i = JsonScanner.skipWhitespace(payload, i);
+            if (i >= length) {
+                return null;
+            }
+            char c = payload.charAt(i);
+            if (c == '}') {
+                break;
+            }
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') {
+                return null;
+            }
+            int keyEnd = JsonScanner.scanString(payload, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            int keyStart = i + 1;
+            int keyLength = keyEnd - keyStart;
+            i = JsonScanner.skipWhitespace(payload, keyEnd + 1);
+            if (i >= length || payload.charAt(i) != ':') {
+                return null;
+            }
+            i = JsonScanner.skipWhitespace(payload, i + 1);
+            if (i >= length) {
+                return null;
+            }
+            int valueStart = i;
+            i = JsonScanner.skipValue(payload, i);
+            if (i < 0) {
+                return null;
+            }
+            if (keyEquals(payload, keyStart, keyLength, KEY_REQUEST_ID)) {
+                response.requestIdStart = valueStart;
+                response.requestIdEnd = i;
+            } else if (keyEquals(payload, keyStart, keyLength, KEY_TYPE)) {
+                response.typeStart = valueStart;
+                response.typeEnd = i;
+            } else if (keyEquals(payload, keyStart, keyLength, KEY_MESSAGE)) {
+                response.messageStart = valueStart;
+                response.messageEnd = i;
+            } else if (keyEquals(payload, keyStart, keyLength, KEY_DATA)) {
+                response.dataStart = valueStart;
+                response.dataEnd = i;
+            }
+        }
+        return response.getRequestId() != null ? response : null;
+    }
+
+    private static boolean keyEquals(String payload, int keyStart, int keyLength, String key) {
+        return keyLength == key.length() && payload.startsWith(key, keyStart);
+    }
+
+    /**
+     * 命令响应，字段按需解码
+     */
+    public static final class Response {
+        private final String payload;
+        private int requestIdStart = -1;
+        private int requestIdEnd;
+        private int typeStart = -1;
+        private int typeEnd;
+        private int messageStart = -1;
+        private int messageEnd;
+        private int dataStart = -1;
+        private int dataEnd;
+
+        Response(String payload) {
+            this.payload = payload;
+        }
+
+        public String getRequestId() {
+            return stringValue(requestIdStart, requestIdEnd);
+        }
+
+        public String getType() {
+            return stringValue(typeStart, typeEnd);
+        }
+
+        public String getMessage() {
+            return stringValue(messageStart, messageEnd);
+        }
+
+        /**
+         * data 字段为对象时解析返回，否则返回null
+         */
+        public JSONObject getData() {
+            if (dataStart < 0 || payload.charAt(dataStart) != '{') {
+                return null;
+            }
+            return JSON.parseObject(payload.substring(dataStart, dataEnd));
+        }
+
+        /**
+         * 读取字符串类型的字段值，值不存在或不是字符串时返回null
+         */
+        private String stringValue(int start, int end) {
+            if (start < 0 || payload.charAt(start) != '"') {
+                return null;
+            }
+            int escape = payload.indexOf('\\', start + 1);
+            if (escape >= 0 && escape < end - 1) {
+                return (String) JSON.parse(payload.substring(start, end));
+            }
+            return payload.substring(start + 1, end - 1);
+        }
+    }
+}
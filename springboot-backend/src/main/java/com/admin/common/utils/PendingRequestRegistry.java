@@ -0,0 +1,265 @@
+package com.admin.common.utils;
+
+import com.admin.common.dto.GostDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 等待节点响应的请求表
+ * <p>
+ * 1. requestId 为自增序号的 36 进制字符串，起始值取自启动时间，重启后节点迟到的旧响应不会对上新请求
+ * 2. 超时由时间轮处理：每 TICK_MS 前进一格，只检查当前格内到期的请求，不为每个请求创建定时任务；
+ *    已完成的请求在所在格被检查时顺带移除
+ * 3. 请求完成、超时、发送失败三者以从请求表中移除为准，只有一方生效
+ * 4. 按节点和命令类型分别记录往返延迟（p50/p99）、超时数，按节点记录迟到的响应数
+ */
+@Slf4j
+public final class PendingRequestRegistry {
+
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final ScheduledExecutorService WHEEL_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pending-request-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final long FIRST_SEQ = System.currentTimeMillis() << 10;
+    private static final AtomicLong seq = new AtomicLong(FIRST_SEQ);
+
+    private static final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<Pending>[] wheel = newWheel();
+    private static volatile long currentTick;
+
+    private static final ConcurrentHashMap<Long, Metrics> nodeMetrics = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Metrics> typeMetrics = new ConcurrentHashMap<>();
+
+    private static final LongAdder registered = new LongAdder();
+    private static final LongAdder completed = new LongAdder();
+    private static final LongAdder timeouts = new LongAdder();
+    private static final LongAdder sendFailures = new LongAdder();
+    private static final LongAdder lateResponses = new LongAdder();
+    private static final LongAdder unknownResponses = new LongAdder();
+
+    static {
+        WHEEL_EXECUTOR.scheduleAtFixedRate(() -> {
+            try {
+                advance();
+            } catch (Exception e) {
+                log.error("处理请求超时失败: {}", e.getMessage());
+            }
+        }, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private PendingRequestRegistry() {
+    }
+
+    /**
+     * 登记一个等待响应的请求
+     *
+     * @param timeoutMs 超时时间，到期后 future 以"等待响应超时"完成
+     */
+    static Pending register(Long nodeId, String type, long timeoutMs) {
+        long id = seq.incrementAndGet();
+        // 向上取整再加一格，保证等待时间不少于 timeoutMs
+        long expireTick = currentTick + (timeoutMs + TICK_MS - 1) / TICK_MS + 1;
+        Pending request = new Pending(id, nodeId, type, expireTick);
+        pending.put(id, request);
+        wheel[(int) (expireTick & WHEEL_MASK)].add(request);
+        registered.increment();
+        return request;
+    }
+
+    /**
+     * 按 requestId 完成请求
+     *
+     * @return 没有对应的等待中请求（已超时或未知）时返回false
+     */
+    static boolean complete(Long nodeId, String requestId, GostDto result) {
+        long id = parseId(requestId);
+        Pending request = id > 0 ? pending.remove(id) : null;
+        if (request == null) {
+            if (id > FIRST_SEQ && id <= seq.get()) {
+                lateResponses.increment();
+                if (nodeId != null) {
+                    metricsOf(nodeId).lateResponses.increment();
+                }
+                log.info("节点 {} 的响应 {} 到达时请求已超时，丢弃", nodeId, requestId);
+            } else {
+                unknownResponses.increment();
+            }
+            return false;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.startNanos);
+        completed.increment();
+        metricsOf(request.nodeId).latency.record(elapsedMs);
+        metricsOf(request.type).latency.record(elapsedMs);
+        log.info("节点 {} 响应 {} 用时 {}ms: {}", request.nodeId, request.type, elapsedMs, result.getMsg());
+        request.future.complete(result);
+        return true;
+    }
+
+    /**
+     * 发送失败，立即以失败原因完成请求，不计入延迟
+     */
+    static void fail(Pending request, String message) {
+        if (!pending.remove(request.id, request)) {
+            return;
+        }
+        sendFailures.increment();
+        GostDto result = new GostDto();
+        result.setMsg(message);
+        request.future.complete(result);
+    }
+
+    /**
+     * 获取请求表统计，nodes 和 types 中的延迟单位为毫秒
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tickMs", TICK_MS);
+        stats.put("wheelSize", WHEEL_SIZE);
+        stats.put("inFlight", pending.size());
+        stats.put("registered", registered.sum());
+        stats.put("completed", completed.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("sendFailures", sendFailures.sum());
+        stats.put("lateResponses", lateResponses.sum());
+        stats.put("unknownResponses", unknownResponses.sum());
+
+        Map<Long, Integer> inFlightByNode = new LinkedHashMap<>();
+        for (Pending request : pending.values()) {
+            inFlightByNode.merge(request.nodeId, 1, Integer::sum);
+        }
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        nodeMetrics.forEach((nodeId, metrics) -> {
+            Map<String, Object> item = metrics.getStats();
+            item.put("inFlight", inFlightByNode.getOrDefault(nodeId, 0));
+            nodes.put(String.valueOf(nodeId), item);
+        });
+        stats.put("nodes", nodes);
+
+        Map<String, Object> types = new LinkedHashMap<>();
+        typeMetrics.forEach((type, metrics) -> {
+            Map<String, Object> item = metrics.getStats();
+            item.remove("lateResponses");
+            types.put(type, item);
+        });
+        stats.put("types", types);
+        return stats;
+    }
+
+    /**
+     * 时间轮前进一格，处理该格中到期的请求
+     */
+    private static void advance() {
+        long tick = ++currentTick;
+        ConcurrentLinkedQueue<Pending> slot = wheel[(int) (tick & WHEEL_MASK)];
+        for (Iterator<Pending> it = slot.iterator(); it.hasNext(); ) {
+            Pending request = it.next();
+            if (request.future.isDone()) {
+                it.remove();
+                continue;
+            }
+            if (request.expireTick > tick) {
+                // 超时时间超过一圈，下一圈再检查
+                continue;
+            }
+            it.remove();
+            if (!pending.remove(request.id, request)) {
+                continue;
+            }
+            timeouts.increment();
+            metricsOf(request.nodeId).timeouts.increment();
+            metricsOf(request.type).timeouts.increment();
+            log.info("节点 {} 响应 {} 超时，可能存在连接问题", request.nodeId, request.type);
+            GostDto result = new GostDto();
+            result.setMsg("等待响应超时");
+            request.future.complete(result);
+        }
+    }
+
+    private static long parseId(String requestId) {
+        if (requestId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(requestId, Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Metrics metricsOf(Long nodeId) {
+        return nodeMetrics.computeIfAbsent(nodeId, k -> new Metrics());
+    }
+
+    private static Metrics metricsOf(String type) {
+        return typeMetrics.computeIfAbsent(type != null ? type : "", k -> new Metrics());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentLinkedQueue<Pending>[] newWheel() {
+        ConcurrentLinkedQueue<Pending>[] slots = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        return slots;
+    }
+
+    /**
+     * 等待响应的请求
+     */
+    static final class Pending {
+        private final long id;
+        private final Long nodeId;
+        private final String type;
+        private final long expireTick;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<GostDto> future = new CompletableFuture<>();
+
+        Pending(long id, Long nodeId, String type, long expireTick) {
+            this.id = id;
+            this.nodeId = nodeId;
+            this.type = type;
+            this.expireTick = expireTick;
+        }
+
+        String requestId() {
+            return Long.toString(id, Character.MAX_RADIX);
+        }
+
+        CompletableFuture<GostDto> future() {
+            return future;
+        }
+    }
+
+    /**
+     * 单个节点或命令类型的统计
+     */
+    private static final class Metrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder lateResponses = new LongAdder();
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = latency.getStats();
+            stats.put("timeouts", timeouts.sum());
+            stats.put("lateResponses", lateResponses.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.admin.common.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket 会话发送队列
+ * <p>
+ * 每个会话一个有界队列，由共享写线程池依次写出，调用方只负责入队，慢速的管理员浏览器或拥塞的节点链路不会阻塞广播线程和心跳处理：
+ * 1. 命令队列（发往节点的命令、心跳确认）不丢弃，队列满时调用方最多等待 COMMAND_OFFER_TIMEOUT_MS，仍然放不下才返回失败；
+ *    经节点命令调度发出的命令和心跳确认使用 offerCommand，队列满时立即失败
+ * 2. 广播队列（发给管理员的节点状态）按 key 合并，同一 key 只保留最新一条；队列满时丢弃最早的一条
+ * 3. 同一会话同一时刻只有一个写任务，单次最多写 DRAIN_BATCH 条后让出线程，避免一个会话长期占用写线程
+ * 4. 写失败时关闭队列并清理会话
+ */
+@Slf4j
+final class SessionWriter {
+
+    private static final int COMMAND_CAPACITY = 1024;
+    private static final int BROADCAST_CAPACITY = 256;
+    private static final long COMMAND_OFFER_TIMEOUT_MS = 5000;
+    private static final int DRAIN_BATCH = 64;
+
+    private static final ExecutorService WRITER_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2), new ThreadFactory() {
+                private final AtomicInteger index = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ws-writer-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static final LongAdder commandsSent = new LongAdder();
+    static final LongAdder commandsRejected = new LongAdder();
+    static final LongAdder broadcastsSent = new LongAdder();
+    static final LongAdder broadcastsConflated = new LongAdder();
+    static final LongAdder broadcastsDropped = new LongAdder();
+    static final LongAdder writeFailures = new LongAdder();
+
+    private final WebSocketSession session;
+    private final ArrayDeque<String> commands = new ArrayDeque<>();
+    private final LinkedHashMap<Object, String> broadcasts = new LinkedHashMap<>();
+    private boolean scheduled;
+    private boolean closed;
+    private int maxDepth;
+
+    SessionWriter(WebSocketSession session) {
+        this.session = session;
+    }
+
+    /**
+     * 命令入队，队列满时等待写线程腾出空间
+     *
+     * @return 会话已关闭或等待超时返回false
+     */
+    boolean enqueueCommand(String message) {
+        return enqueueCommand(message, COMMAND_OFFER_TIMEOUT_MS);
+    }
+
+    /**
+     * 命令入队，不等待
+     *
+     * @return 会话已关闭或队列已满返回false
+     */
+    boolean offerCommand(String message) {
+        return enqueueCommand(message, 0);
+    }
+
+    private boolean enqueueCommand(String message, long timeoutMs) {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!closed && commands.size() >= COMMAND_CAPACITY) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (closed || commands.size() >= COMMAND_CAPACITY) {
+                commandsRejected.increment();
+                return false;
+            }
+            commands.add(message);
+            maxDepth = Math.max(maxDepth, commands.size() + broadcasts.size());
+            if (!schedule()) {
+                return true;
+            }
+        }
+        WRITER_EXECUTOR.execute(this::drain);
+        return true;
+    }
+
+    /**
+     * 广播入队，同一 key 的旧消息被替换，key 为null时不合并
+     */
+    void enqueueBroadcast(Object key, String message) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            Object slot = key != null ? key : new Object();
+            if (broadcasts.remove(slot) != null) {
+                broadcastsConflated.increment();
+            } else if (broadcasts.size() >= BROADCAST_CAPACITY) {
+                Iterator<String> eldest = broadcasts.values().iterator();
+                eldest.next();
+                eldest.remove();
+                broadcastsDropped.increment();
+            }
+            broadcasts.put(slot, message);
+            maxDepth = Math.max(maxDepth, commands.size() + broadcasts.size());
+            if (!schedule()) {
+                return;
+            }
+        }
+        WRITER_EXECUTOR.execute(this::drain);
+    }
+
+    /**
+     * 关闭队列，丢弃未发送的消息并唤醒等待的调用方
+     */
+    synchronized void close() {
+        closed = true;
+        commands.clear();
+        broadcasts.clear();
+        notifyAll();
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", session.getId());
+        stats.put("commandDepth", commands.size());
+        stats.put("broadcastDepth", broadcasts.size());
+        stats.put("maxDepth", maxDepth);
+        return stats;
+    }
+
+    synchronized int depth() {
+        return commands.size() + broadcasts.size();
+    }
+
+    /**
+     * 需要提交写任务时返回true，调用时持有锁
+     */
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    private void drain() {
+        for (int written = 0; written < DRAIN_BATCH; written++) {
+            String message;
+            boolean command;
+            synchronized (this) {
+                message = commands.poll();
+                command = message != null;
+                if (command) {
+                    notifyAll();
+                } else if (!broadcasts.isEmpty()) {
+                    Iterator<String> eldest = broadcasts.values().iterator();
+                    message = eldest.next();
+                    eldest.remove();
+                }
+                if (message == null || closed) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                if (!session.isOpen()) {
+                    throw new IllegalStateException("会话已关闭");
+                }
+                session.sendMessage(new TextMessage(message));
+                (command ? commandsSent : broadcastsSent).increment();
+            } catch (Exception e) {
+                writeFailures.increment();
+                log.info("发送WebSocket消息失败 [sessionId={}]: {}", session.getId(), e.getMessage());
+                synchronized (this) {
+                    scheduled = false;
+                }
+                WebSocketServer.cleanupSession(session);
+                return;
+            }
+        }
+        // 本轮已写满一批，重新排队让其他会话使用写线程
+        WRITER_EXECUTOR.execute(this::drain);
+    }
+}
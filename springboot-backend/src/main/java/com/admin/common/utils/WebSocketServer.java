@@ -1,17 +1,19 @@
 package com.admin.common.utils;
 
 
+import com.admin.common.cluster.ClusterRouter;
 import com.admin.common.dto.GostConfigDto;
 import com.admin.common.dto.GostDto;
+import com.admin.common.node.NodeTelemetryHub;
 import com.admin.common.task.CheckGostConfigAsync;
 import com.admin.entity.Node;
 import com.admin.service.ForwardService;
 import com.admin.service.NodeService;
-import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -19,17 +21,26 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.UUID;
 
 
 @Slf4j
 public class WebSocketServer extends TextWebSocketHandler {
 
+    // 等待节点响应的最长时间
+    private static final long RESPONSE_TIMEOUT_SECONDS = 10;
+
+    // 心跳确认消息
+    private static final String CALL_MESSAGE = "{\"type\":\"call\"}";
+
     @Resource
     NodeService nodeService;
 
@@ -37,107 +48,71 @@ public class WebSocketServer extends TextWebSocketHandler {
     @Lazy
     ForwardService forwardService;
 
+    @Resource
+    NodeTelemetryHub telemetryHub;
+
+    @Value("${flux.node.command.max-in-flight:4}")
+    public void setMaxInFlight(int maxInFlight) {
+        NodeCommandScheduler.setMaxInFlight(maxInFlight);
+    }
+
+    @Value("${flux.node.command.lane-capacity:1024}")
+    public void setLaneCapacity(int laneCapacity) {
+        NodeCommandScheduler.setLaneCapacity(laneCapacity);
+    }
+
+    @Value("${flux.node.command.timeout-ms:10000}")
+    public void setCommandTimeoutMs(long commandTimeoutMs) {
+        NodeCommandScheduler.setCommandTimeoutMs(commandTimeoutMs);
+    }
+
+    @Value("${flux.node.command.bulk-queue-timeout-ms:300000}")
+    public void setBulkQueueTimeoutMs(long bulkQueueTimeoutMs) {
+        NodeCommandScheduler.setBulkQueueTimeoutMs(bulkQueueTimeoutMs);
+    }
+
     // 存储所有活跃的 WebSocket 连接（
     private static final CopyOnWriteArraySet<WebSocketSession> activeSessions = new CopyOnWriteArraySet<>();
     
     // 存储节点ID和对应的WebSocket session映射
     private static final ConcurrentHashMap<Long, WebSocketSession> nodeSessions = new ConcurrentHashMap<>();
     
-    // 为每个session提供锁对象，防止并发发送消息
-    private static final ConcurrentHashMap<String, Object> sessionLocks = new ConcurrentHashMap<>();
+    // 每个session的发送队列，由写线程依次写出，调用方不会被慢速连接阻塞
+    private static final ConcurrentHashMap<String, SessionWriter> sessionWriters = new ConcurrentHashMap<>();
     
-    // 存储等待响应的请求，key为requestId，value为CompletableFuture
-    private static final ConcurrentHashMap<String, CompletableFuture<GostDto>> pendingRequests = new ConcurrentHashMap<>();
+    // 集群模式下转发命令到其他实例，单实例部署时为null
+    private static volatile ClusterRouter clusterRouter;
     
     // 缓存加密器实例，避免重复创建
     private static final ConcurrentHashMap<String, AESCrypto> cryptoCache = new ConcurrentHashMap<>();
 
-    /**
-     * 加密消息包装器
-     */
-    public static class EncryptedMessage {
-        private boolean encrypted;
-        private String data;
-        private Long timestamp;
-
-        // getters and setters
-        public boolean isEncrypted() { return encrypted; }
-        public void setEncrypted(boolean encrypted) { this.encrypted = encrypted; }
-        public String getData() { return data; }
-        public void setData(String data) { this.data = data; }
-        public Long getTimestamp() { return timestamp; }
-        public void setTimestamp(Long timestamp) { this.timestamp = timestamp; }
-    }
-
     //接受客户端消息
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
             if (StringUtils.isNoneBlank(message.getPayload())) {
                 
-                String id = session.getAttributes().get("id").toString();
+                Object id = session.getAttributes().get("id");
                 String type = session.getAttributes().get("type").toString();
                 String nodeSecret = (String) session.getAttributes().get("nodeSecret");
 
                 // 尝试解密消息
                 String decryptedPayload = decryptMessageIfNeeded(message.getPayload(), nodeSecret);
 
-                if (decryptedPayload.contains("memory_usage")){
-                    // 先发送确认消息
-                    sendToUser(session, "{\"type\":\"call\"}", nodeSecret);
-                }else if (decryptedPayload.contains("requestId")) {
-                    log.info("收到消息: {}", decryptedPayload);
-                    // 处理命令响应消息
-                    try {
-                        JSONObject responseJson = JSONObject.parseObject(decryptedPayload);
-                        String requestId = responseJson.getString("requestId");
-                        String responseMessage = responseJson.getString("message");
-                        String responseType = responseJson.getString("type");
-                        JSONObject responseData = responseJson.getJSONObject("data");
-                        
-                        if (requestId != null) {
-                            CompletableFuture<GostDto> future = pendingRequests.remove(requestId);
-
-                            if (future != null) {
-                                GostDto result = new GostDto();
-                                
-                                // 根据响应类型处理不同的数据
-                                if ("PingResponse".equals(responseType) && responseData != null) {
-                                    // 特殊处理ping响应，将完整的响应数据返回
-                                    result.setMsg(responseMessage != null ? responseMessage : "OK");
-                                    result.setData(responseData); // 保存ping详细结果
-                                } else {
-                                    // 其他类型的响应
-                                    result.setMsg(responseMessage != null ? responseMessage : "无响应消息");
-                                    if (responseData != null) {
-                                        result.setData(responseData);
-                                    }
-                                }
-                                
-                                future.complete(result);
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.info("处理响应消息失败: {}", e.getMessage(), e);
-                    }
-                } else {
-                    log.info("收到消息: {}", decryptedPayload);
+                if (!Objects.equals(type, "1")) {
+                    handleAdminMessage(session, decryptedPayload);
+                    return;
                 }
 
-                // 如果是节点类型，转发消息给其他会话
-                if (Objects.equals(type, "1")) {
-                    JSONObject jsonObject = new JSONObject();
-                    jsonObject.put("id", id);
-                    jsonObject.put("type", "info");
-                    jsonObject.put("data", decryptedPayload);
-                    String broadcastMessage = jsonObject.toJSONString();
-                    
-                    // 异步处理广播消息，避免阻塞当前线程
-                    for (WebSocketSession targetSession : activeSessions) {
-                        if (targetSession != null && targetSession.isOpen() && !targetSession.equals(session)) {
-                            sendToUser(targetSession, broadcastMessage, null);
-                        }
-                    }
+                switch (NodeFrames.kind(decryptedPayload)) {
+                    case HEARTBEAT:
+                        handleHeartbeat(session, id, decryptedPayload, nodeSecret);
+                        break;
+                    case COMMAND_RESPONSE:
+                        handleCommandResponse(nodeIdOf(id), decryptedPayload);
+                        break;
+                    default:
+                        log.info("收到消息: {}", decryptedPayload);
                 }
             }
         } catch (Exception e) {
@@ -145,6 +120,70 @@ public class WebSocketServer extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 心跳（系统信息）：回复确认，监控数据只记录最新一条，由 NodeTelemetryHub 定期推送给管理员。
+     * 确认不等待发送队列，队列满时直接丢弃，不阻塞该节点的入站处理，节点在下一次心跳时会再次收到确认
+     */
+    private void handleHeartbeat(WebSocketSession session, Object id, String payload, String nodeSecret) {
+        sendToUser(session, CALL_MESSAGE, nodeSecret, false);
+        telemetryHub.publish(nodeIdOf(id), payload);
+    }
+
+    // 节点会话的 id 属性在握手时写入的就是 Long
+    private static Long nodeIdOf(Object id) {
+        return id instanceof Long ? (Long) id : Long.valueOf(id.toString());
+    }
+
+    /**
+     * 命令响应：按 requestId 完成等待中的请求，没有等待方时不解码其余字段
+     */
+    private void handleCommandResponse(Long nodeId, String payload) {
+        log.info("收到消息: {}", payload);
+        try {
+            NodeFrames.Response response = NodeFrames.readResponse(payload);
+            if (response == null) {
+                return;
+            }
+            String responseMessage = response.getMessage();
+            JSONObject responseData = response.getData();
+            GostDto result = new GostDto();
+
+            // 根据响应类型处理不同的数据
+            if ("PingResponse".equals(response.getType()) && responseData != null) {
+                // 特殊处理ping响应，将完整的响应数据返回
+                result.setMsg(responseMessage != null ? responseMessage : "OK");
+                result.setData(responseData); // 保存ping详细结果
+            } else {
+                // 其他类型的响应
+                result.setMsg(responseMessage != null ? responseMessage : "无响应消息");
+                if (responseData != null) {
+                    result.setData(responseData);
+                }
+            }
+
+            PendingRequestRegistry.complete(nodeId, response.getRequestId(), result);
+        } catch (Exception e) {
+            log.info("处理响应消息失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 处理管理员消息，目前只有订阅节点监控数据：{"type":"subscribe","nodeIds":[1,2]}，nodeIds 为空表示所有节点
+     */
+    private void handleAdminMessage(WebSocketSession session, String payload) {
+        try {
+            JSONObject json = JSONObject.parseObject(payload);
+            if (json != null && "subscribe".equals(json.getString("type"))) {
+                JSONArray nodeIds = json.getJSONArray("nodeIds");
+                telemetryHub.subscribe(session, nodeIds == null ? null : nodeIds.toJavaList(Long.class));
+                return;
+            }
+        } catch (Exception e) {
+            log.info("解析管理员消息失败: {}", e.getMessage());
+        }
+        log.info("收到消息: {}", payload);
+    }
+
     /**
      * 尝试解密消息（如果需要）
      */
@@ -154,10 +193,10 @@ public class WebSocketServer extends TextWebSocketHandler {
         }
 
         try {
-            // 尝试解析为加密消息格式
-            EncryptedMessage encryptedMessage = JSON.parseObject(payload, EncryptedMessage.class);
+            // 直接从加密信封中截取密文，非加密格式返回null
+            String encryptedData = CryptoEnvelope.extractData(payload);
             
-            if (encryptedMessage.isEncrypted() && encryptedMessage.getData() != null) {
+            if (encryptedData != null) {
                 // 获取或创建加密器
                 AESCrypto crypto = getOrCreateCrypto(nodeSecret);
                 if (crypto == null) {
@@ -166,8 +205,7 @@ public class WebSocketServer extends TextWebSocketHandler {
                 }
                 
                 // 解密数据
-                String decryptedData = crypto.decryptString(encryptedMessage.getData());
-                return decryptedData;
+                return crypto.decryptString(encryptedData);
             }
         } catch (Exception e) {
             // 解析失败，可能是非加密格式，直接返回原始数据
@@ -188,15 +226,8 @@ public class WebSocketServer extends TextWebSocketHandler {
         try {
             AESCrypto crypto = getOrCreateCrypto(nodeSecret);
             if (crypto != null) {
-                String encryptedData = crypto.encrypt(message);
-                
                 // 创建加密消息包装器
-                JSONObject encryptedMessage = new JSONObject();
-                encryptedMessage.put("encrypted", true);
-                encryptedMessage.put("data", encryptedData);
-                encryptedMessage.put("timestamp", System.currentTimeMillis());
-                
-                return encryptedMessage.toJSONString();
+                return CryptoEnvelope.wrap(crypto.encrypt(message));
             }
         } catch (Exception e) {
             log.info("⚠️ WebSocket消息加密失败，发送原始数据: {}", e.getMessage());
@@ -225,6 +256,7 @@ public class WebSocketServer extends TextWebSocketHandler {
             if (!Objects.equals(type, "1")) {
                 // 网页管理员连接
                 activeSessions.add(session);
+                telemetryHub.addSession(session);
                 log.info("管理员连接建立，sessionId: {}", session.getId());
             } else {
                 // 客户端节点连接
@@ -240,12 +272,13 @@ public class WebSocketServer extends TextWebSocketHandler {
                 WebSocketSession existingSession = nodeSessions.get(nodeId);
                 if (existingSession != null && existingSession.isOpen()) {
                     log.info("节点 {} 已有连接存在: {}，新连接将覆盖旧连接", nodeId, existingSession.getId());
-                    // 清理旧连接的锁对象
-                    sessionLocks.remove(existingSession.getId());
+                    // 清理旧连接的发送队列
+                    removeWriter(existingSession.getId());
                 }
                 
                 // 直接覆盖会话映射（不主动关闭旧连接，让它自然断开）
                 nodeSessions.put(nodeId, session);
+                clusterNodeConnected(nodeId);
                 
                 // 如果有旧连接，在覆盖映射后主动关闭它
                 if (existingSession != null && existingSession.isOpen()) {
@@ -285,7 +318,7 @@ public class WebSocketServer extends TextWebSocketHandler {
                         res.put("id", id);
                         res.put("type", "status");
                         res.put("data", 1);
-                        broadcastMessage(res.toJSONString());
+                        broadcastMessage("status:" + id, res.toJSONString());
 
                         if (forwardService != null) {
                             forwardService.syncNodeConfig(nodeId);
@@ -297,6 +330,7 @@ public class WebSocketServer extends TextWebSocketHandler {
                     log.info("节点 {} 不存在，无法更新状态", nodeId);
                     // 移除无效的会话
                     nodeSessions.remove(nodeId);
+                    clusterNodeDisconnected(nodeId);
                 }
             }
 
@@ -309,6 +343,7 @@ public class WebSocketServer extends TextWebSocketHandler {
                 if (Objects.equals(type, "1")) {
                     Long nodeId = Long.valueOf(id);
                     nodeSessions.remove(nodeId);
+                    clusterNodeDisconnected(nodeId);
                     log.info("由于异常，移除节点 {} 的会话", nodeId);
                 }
             } catch (Exception cleanupException) {
@@ -330,6 +365,7 @@ public class WebSocketServer extends TextWebSocketHandler {
             if (!Objects.equals(type, "1")) {
                 // 管理员连接关闭
                 boolean removed = activeSessions.remove(session);
+                telemetryHub.removeSession(sessionId);
                 log.info("管理员连接关闭，sessionId: {}, 移除结果: {}", sessionId, removed);
             } else {
                 // 客户端节点连接关闭
@@ -339,13 +375,15 @@ public class WebSocketServer extends TextWebSocketHandler {
                 WebSocketSession currentSession = nodeSessions.get(nodeId);
                 if (currentSession == null || !currentSession.equals(session)) {
                     log.info("节点 {} 连接关闭，但已有新连接或会话不匹配，跳过状态更新", nodeId);
-                    sessionLocks.remove(sessionId);
+                    removeWriter(sessionId);
                     return;
                 }
                 
                 log.info("节点 {} 当前活跃连接关闭，开始验证并更新状态", nodeId);
                 
                     nodeSessions.remove(nodeId);
+                    clusterNodeDisconnected(nodeId);
+                    telemetryHub.removeNode(nodeId);
                     
                     // 更新节点状态为离线
                     Node node = nodeService.getById(nodeId);
@@ -360,7 +398,7 @@ public class WebSocketServer extends TextWebSocketHandler {
                             res.put("id", id);
                             res.put("type", "status");
                             res.put("data", 0);
-                            broadcastMessage(res.toJSONString());
+                            broadcastMessage("status:" + id, res.toJSONString());
                         } else {
                             log.info("节点 {} 状态更新为离线失败", nodeId);
                         }
@@ -369,8 +407,8 @@ public class WebSocketServer extends TextWebSocketHandler {
                     }
             }
             
-            // 清理session锁对象
-            sessionLocks.remove(sessionId);
+            // 清理session发送队列
+            removeWriter(sessionId);
 
         } catch (Exception e) {
             log.info("关闭连接时发生异常: {}", e.getMessage(), e);
@@ -378,57 +416,71 @@ public class WebSocketServer extends TextWebSocketHandler {
     }
 
     // 点对点发送消息
-    @SneakyThrows
-    public static void sendToUser(WebSocketSession socketSession, String message) {
-        sendToUser(socketSession, message, null);
+    public static boolean sendToUser(WebSocketSession socketSession, String message) {
+        return sendToUser(socketSession, message, null);
     }
 
-    // 点对点发送消息（支持加密）
-    @SneakyThrows
-    public static void sendToUser(WebSocketSession socketSession, String message, String nodeSecret) {
-        if (socketSession != null && socketSession.isOpen()) {
-            String sessionId = socketSession.getId();
-            Object lock = sessionLocks.computeIfAbsent(sessionId, k -> new Object());
-            
-            synchronized (lock) {
-                try {
-                    if (socketSession.isOpen()) {
-                        // 如果是节点连接且有密钥，尝试加密消息
-                        String finalMessage = message;
-                        if (nodeSecret != null && !nodeSecret.isEmpty()) {
-                            String type = (String) socketSession.getAttributes().get("type");
-                            if ("1".equals(type)) { // 节点连接
-                                finalMessage = encryptMessageIfPossible(message, nodeSecret);
-                            }
-                        }
-                        socketSession.sendMessage(new TextMessage(finalMessage));
-                    }
-                } catch (Exception e) {
-                    log.info("发送WebSocket消息失败 [sessionId={}]: {}", sessionId, e.getMessage());
-                    cleanupSession(socketSession);
-                }
-            }
-        } else {
+    /**
+     * 点对点发送消息（支持加密），进入会话的命令队列后立即返回，不丢弃
+     *
+     * @return 会话已关闭或发送队列持续满载时返回false
+     */
+    public static boolean sendToUser(WebSocketSession socketSession, String message, String nodeSecret) {
+        return sendToUser(socketSession, message, nodeSecret, true);
+    }
+
+    /**
+     * @param wait 发送队列满时是否等待腾出空间；在节点命令调度锁内发送和回复心跳时不能等待
+     */
+    private static boolean sendToUser(WebSocketSession socketSession, String message, String nodeSecret, boolean wait) {
+        if (socketSession == null || !socketSession.isOpen()) {
             cleanupSession(socketSession);
+            return false;
+        }
+        // 如果是节点连接且有密钥，尝试加密消息
+        String finalMessage = message;
+        if (nodeSecret != null && !nodeSecret.isEmpty()) {
+            String type = (String) socketSession.getAttributes().get("type");
+            if ("1".equals(type)) { // 节点连接
+                finalMessage = encryptMessageIfPossible(message, nodeSecret);
+            }
         }
+        SessionWriter writer = writerOf(socketSession);
+        boolean queued = wait ? writer.enqueueCommand(finalMessage) : writer.offerCommand(finalMessage);
+        if (!queued) {
+            log.info("发送WebSocket消息失败 [sessionId={}]: 发送队列已满或会话已关闭", socketSession.getId());
+        }
+        return queued;
     }
-    
+
+    private static SessionWriter writerOf(WebSocketSession session) {
+        return sessionWriters.computeIfAbsent(session.getId(), k -> new SessionWriter(session));
+    }
+
+    private static void removeWriter(String sessionId) {
+        SessionWriter writer = sessionWriters.remove(sessionId);
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
     /**
      * 清理失效的session，自动识别是节点session还是管理员session
      */
-    private static void cleanupSession(WebSocketSession session) {
+    static void cleanupSession(WebSocketSession session) {
         if (session == null) return;
         
         String sessionId = session.getId();
         
-        // 清理session锁
-        sessionLocks.remove(sessionId);
+        // 清理session发送队列
+        removeWriter(sessionId);
         
         boolean removedFromAdmin = activeSessions.remove(session);
         
         if (!removedFromAdmin) {
             nodeSessions.entrySet().removeIf(entry -> {
                 if (entry.getValue() == session) {
+                    clusterNodeDisconnected(entry.getKey());
                     return true;
                 }
                 return false;
@@ -438,39 +490,150 @@ public class WebSocketServer extends TextWebSocketHandler {
 
     // 广播消息
     public static void broadcastMessage(String message) {
+        broadcastMessage(null, message);
+    }
+
+    /**
+     * 广播消息给所有管理员，进入各会话的广播队列：同一 key 只保留最新一条，队列满时丢弃最早的消息
+     *
+     * @param key 合并键，为null时不合并
+     */
+    public static void broadcastMessage(Object key, String message) {
         for (WebSocketSession session : activeSessions) {
-            sendToUser(session, message);
+            if (session == null || !session.isOpen()) {
+                cleanupSession(session);
+                continue;
+            }
+            writerOf(session).enqueueBroadcast(key, message);
         }
     }
 
+    /**
+     * 发送到指定管理员会话的广播队列，同一 key 只保留最新一条
+     */
+    public static void sendBroadcast(WebSocketSession session, Object key, String message) {
+        if (session == null || !session.isOpen()) {
+            cleanupSession(session);
+            return;
+        }
+        writerOf(session).enqueueBroadcast(key, message);
+    }
+
+    /**
+     * 获取发送队列统计
+     */
+    public static Map<String, Object> getWriterStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessionWriters.size());
+        stats.put("commandsSent", SessionWriter.commandsSent.sum());
+        stats.put("commandsRejected", SessionWriter.commandsRejected.sum());
+        stats.put("broadcastsSent", SessionWriter.broadcastsSent.sum());
+        stats.put("broadcastsConflated", SessionWriter.broadcastsConflated.sum());
+        stats.put("broadcastsDropped", SessionWriter.broadcastsDropped.sum());
+        stats.put("writeFailures", SessionWriter.writeFailures.sum());
+        int totalDepth = 0;
+        List<Map<String, Object>> queues = new ArrayList<>();
+        for (SessionWriter writer : sessionWriters.values()) {
+            totalDepth += writer.depth();
+            queues.add(writer.getStats());
+        }
+        stats.put("queueDepth", totalDepth);
+        stats.put("queues", queues);
+        return stats;
+    }
 
 
+
+    /**
+     * 发送命令并阻塞等待节点响应，从提交起最多等待 flux.node.command.timeout-ms（默认10秒）；BULK 命令另计排队时间
+     */
     public static GostDto send_msg(Long node_id, Object msg, String type) {
+        return send_msg_async(node_id, msg, type).join();
+    }
+
+    /**
+     * 发送命令，不等待节点响应
+     * 返回的 future 在收到响应、超时或发送失败时完成，且不会异常完成，失败原因写在 GostDto.msg 中。
+     * 回调在 WebSocket 消息线程或超时线程上执行，不能在回调中做阻塞操作。
+     * 发送前先发出该节点排队中的服务命令（NodeCommandCoalescer），保持命令顺序。
+     */
+    public static CompletableFuture<GostDto> send_msg_async(Long node_id, Object msg, String type) {
+        NodeCommandCoalescer.flush(node_id);
+        return sendCommand(node_id, msg, type, NodeCommandScheduler.currentPriority());
+    }
+
+    /**
+     * 执行其他实例转发来的命令，只在本实例的连接上发送，不再转发
+     */
+    public static CompletableFuture<GostDto> executeForwarded(Long node_id, Object msg, String type,
+                                                              NodeCommandScheduler.Priority priority) {
+        NodeCommandCoalescer.flush(node_id);
+        return scheduleLocalCommand(node_id, msg, type, priority);
+    }
+
+    /**
+     * 集群模式由 ClusterRouter 启动时设置
+     */
+    public static void setClusterRouter(ClusterRouter router) {
+        clusterRouter = router;
+    }
+
+    private static void clusterNodeConnected(Long nodeId) {
+        ClusterRouter router = clusterRouter;
+        if (router != null) {
+            router.nodeConnected(nodeId);
+        }
+    }
+
+    private static void clusterNodeDisconnected(Long nodeId) {
+        ClusterRouter router = clusterRouter;
+        if (router != null) {
+            router.nodeDisconnected(nodeId);
+        }
+    }
+
+    /**
+     * 直接发送一帧命令，不经过合并队列；集群模式下节点不在本实例时转发到持有连接的实例
+     */
+    static CompletableFuture<GostDto> sendCommand(Long node_id, Object msg, String type,
+                                                  NodeCommandScheduler.Priority priority) {
+        ClusterRouter router = clusterRouter;
+        if (router != null && !nodeSessions.containsKey(node_id)) {
+            return router.forward(node_id, msg, type, priority);
+        }
+        return scheduleLocalCommand(node_id, msg, type, priority);
+    }
+
+    /**
+     * 按优先级和节点在途命令数发出（NodeCommandScheduler）
+     */
+    private static CompletableFuture<GostDto> scheduleLocalCommand(Long node_id, Object msg, String type,
+                                                                   NodeCommandScheduler.Priority priority) {
+        return NodeCommandScheduler.submit(node_id, priority, msg, () -> sendLocalCommand(node_id, msg, type));
+    }
+
+    private static CompletableFuture<GostDto> sendLocalCommand(Long node_id, Object msg, String type) {
         WebSocketSession nodeSession = nodeSessions.get(node_id);
 
         if (nodeSession == null) {
             log.info("发送消息失败：节点 {} 不在线或会话不存在", node_id);
             GostDto result = new GostDto();
             result.setMsg("节点不在线");
-            return result;
+            return CompletableFuture.completedFuture(result);
         }
 
         if (!nodeSession.isOpen()) {
             log.info("发送消息失败：节点 {} 连接已断开，清理会话", node_id);
             nodeSessions.remove(node_id);
-            sessionLocks.remove(nodeSession.getId());
+            clusterNodeDisconnected(node_id);
+            removeWriter(nodeSession.getId());
             GostDto result = new GostDto();
             result.setMsg("节点连接已断开");
-            return result;
+            return CompletableFuture.completedFuture(result);
         }
 
-        // 生成唯一的请求ID
-        String requestId = UUID.randomUUID().toString();
-        
-        // 创建CompletableFuture用于等待响应
-        CompletableFuture<GostDto> future = new CompletableFuture<>();
-        pendingRequests.put(requestId, future);
-        
+        PendingRequestRegistry.Pending request = PendingRequestRegistry.register(node_id, type, TimeUnit.SECONDS.toMillis(RESPONSE_TIMEOUT_SECONDS));
+
         // 获取节点密钥用于加密
         String nodeSecret = (String) nodeSession.getAttributes().get("nodeSecret");
 
@@ -478,28 +641,18 @@ public class WebSocketServer extends TextWebSocketHandler {
             JSONObject data = new JSONObject();
             data.put("type", type);
             data.put("data", msg);
-            data.put("requestId", requestId);
-            sendToUser(nodeSession, data.toJSONString(), nodeSecret);
-            GostDto result = future.get(10, TimeUnit.SECONDS);
-            
-            log.info("成功发送消息到节点 {} 并收到响应: {}", node_id, result.getMsg());
-            return result;
-            
-        } catch (Exception e) {
-            // 清理请求和映射关系
-            pendingRequests.remove(requestId);
-
-            GostDto result = new GostDto();
-            if (e instanceof java.util.concurrent.TimeoutException) {
-                result.setMsg("等待响应超时");
-                log.info("节点 {} 响应超时，可能存在连接问题", node_id);
-            } else {
-                result.setMsg("发送消息失败: " + e.getMessage());
-                log.info("发送消息到节点 {} 失败: {}", node_id, e.getMessage(), e);
+            data.put("requestId", request.requestId());
+            // 在节点调度锁内执行，队列满时直接失败，不阻塞调用线程（可能是 WebSocket 消息线程）
+            if (!sendToUser(nodeSession, data.toJSONString(), nodeSecret, false)) {
+                log.info("发送消息到节点 {} 失败: 发送队列已满或会话已关闭", node_id);
+                PendingRequestRegistry.fail(request, "发送消息失败: 发送队列已满或会话已关闭");
             }
-            return result;
+        } catch (Exception e) {
+            log.info("发送消息到节点 {} 失败: {}", node_id, e.getMessage(), e);
+            PendingRequestRegistry.fail(request, "发送消息失败: " + e.getMessage());
         }
+
+        return request.future();
     }
 
-    
 }
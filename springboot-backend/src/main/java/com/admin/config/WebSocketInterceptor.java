@@ -1,11 +1,11 @@
 package com.admin.config;
 
 
+import com.admin.common.node.NodeSecretRegistry;
 import com.admin.common.utils.IpUtils;
 import com.admin.common.utils.JwtUtil;
 import com.admin.entity.Node;
 import com.admin.service.NodeService;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.ServerHttpRequest;
@@ -27,6 +27,9 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
     @Resource
     NodeService nodeService;
 
+    @Resource
+    NodeSecretRegistry nodeSecretRegistry;
+
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception ex) {
 
@@ -43,7 +46,7 @@ public class WebSocketInterceptor extends HttpSessionHandshakeInterceptor {
         String socks = serverHttpRequest.getServletRequest().getParameter("socks");
         if (Objects.equals(type, "1")) {
             System.out.println("type: " + type + " - version: " + version + " - secret: " + secret + " - IP: " + getClientIp(request));
-            Node node = nodeService.getOne(new QueryWrapper<Node>().eq("secret", secret));
+            Node node = nodeSecretRegistry.getBySecret(secret);
             if (node == null) {
                 log.info("节点验证失败：未找到匹配的secret");
                 return false;
@@ -3,29 +3,26 @@ package com.admin.controller;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.FlowDto;
 import com.admin.common.dto.GostConfigDto;
-import com.admin.common.lang.R;
+import com.admin.common.flow.FlowEvent;
+import com.admin.common.flow.FlowIngestShards;
+import com.admin.common.flow.FlowRoute;
+import com.admin.common.flow.FlowRoutingTable;
+import com.admin.common.node.NodeSecretRegistry;
 import com.admin.common.task.CheckGostConfigAsync;
 import com.admin.common.utils.AESCrypto;
-import com.admin.common.utils.GostUtil;
+import com.admin.common.utils.CryptoEnvelope;
 import com.admin.entity.*;
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import org.springframework.web.bind.annotation.*;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Resource;
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 流量上报控制器
@@ -35,7 +32,7 @@ import java.util.stream.Collectors;
  * 1. 接收并处理节点上报的流量数据
  * 2. 更新转发、用户和隧道的流量统计
  * 3. 检查用户总流量限制，超限时暂停所有服务
- * 4. 检查隧道流量限制，超限时暂停对应服务
+ * 4. 检查用户隧道权限流量限制，超限时暂停该权限下的转发
  * 5. 检查用户到期时间，到期时暂停所有服务
  * 6. 检查隧道权限到期时间，到期时暂停对应服务
  * 7. 检查用户状态，状态不为1时暂停所有服务
@@ -43,9 +40,11 @@ import java.util.stream.Collectors;
  * 9. 检查用户隧道权限状态，状态不为1时暂停对应转发
  * <p>
  * 并发安全解决方案：
- * 1. 使用UpdateWrapper进行数据库层面的原子更新操作，避免读取-修改-写入的竞态条件
- * 2. 使用synchronized锁确保同一用户/隧道的流量更新串行执行
- * 3. 这样可以避免相同用户相同隧道不同转发同时上报时流量统计丢失的问题
+ * 1. 请求线程只做解析和倍率换算，生成的流量事件按用户ID分片交给FlowIngestShards
+ * 2. 每个分片由单线程累加流量并通过UserQuotaEngine判断限额，同一用户的处理天然串行，无需加锁
+ * 3. 分片定期把聚合后的增量交给FlowAccumulator，由其批量写回数据库
+ * 4. 流量事件写入FlowJournal（内存映射日志）后才返回 ok，进程崩溃后启动时回放未落库的流量
+ * 5. 分片积压或日志写入失败时返回 busy 而不是 ok，节点保留本次流量稍后重报，不丢数据
  */
 @RestController
 @RequestMapping("/flow")
@@ -55,11 +54,7 @@ public class FlowController extends BaseController {
 
     // 常量定义
     private static final String SUCCESS_RESPONSE = "ok";
-    private static final long BYTES_TO_GB = 1024L * 1024L * 1024L;
-
-    // 用于同步相同用户和隧道的流量更新操作
-    private static final ConcurrentHashMap<String, Object> USER_LOCKS = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Object> FORWARD_LOCKS = new ConcurrentHashMap<>();
+    private static final String BUSY_RESPONSE = "busy";
 
     // 缓存加密器实例，避免重复创建
     private static final ConcurrentHashMap<String, AESCrypto> CRYPTO_CACHE = new ConcurrentHashMap<>();
@@ -67,44 +62,19 @@ public class FlowController extends BaseController {
     @Resource
     CheckGostConfigAsync checkGostConfigAsync;
 
-    /**
-     * 加密消息包装器
-     */
-    public static class EncryptedMessage {
-        private boolean encrypted;
-        private String data;
-        private Long timestamp;
-
-        // getters and setters
-        public boolean isEncrypted() {
-            return encrypted;
-        }
-
-        public void setEncrypted(boolean encrypted) {
-            this.encrypted = encrypted;
-        }
-
-        public String getData() {
-            return data;
-        }
-
-        public void setData(String data) {
-            this.data = data;
-        }
+    @Resource
+    FlowIngestShards flowIngestShards;
 
-        public Long getTimestamp() {
-            return timestamp;
-        }
+    @Resource
+    FlowRoutingTable flowRoutingTable;
 
-        public void setTimestamp(Long timestamp) {
-            this.timestamp = timestamp;
-        }
-    }
+    @Resource
+    NodeSecretRegistry nodeSecretRegistry;
 
     @PostMapping("/config")
     @LogAnnotation
     public String config(@RequestBody String rawData, String secret) {
-        Node node = nodeService.getOne(new QueryWrapper<Node>().eq("secret", secret));
+        Node node = nodeSecretRegistry.getBySecret(secret);
         if (node == null) return SUCCESS_RESPONSE;
 
         try {
@@ -141,7 +111,7 @@ public class FlowController extends BaseController {
     @LogAnnotation
     public String uploadFlowData(@RequestBody String rawData, String secret) {
         // 1. 验证节点权限
-        Node node = nodeService.getOne(new QueryWrapper<Node>().eq("secret", secret));
+        Node node = nodeSecretRegistry.getBySecret(secret);
         if (node == null) {
             return SUCCESS_RESPONSE;
         }
@@ -150,7 +120,7 @@ public class FlowController extends BaseController {
         String decryptedData = decryptIfNeeded(rawData, secret);
 
         // 3. 解析为FlowDto列表
-        FlowDto flowDataList = JSONObject.parseObject(decryptedData, FlowDto.class);
+        FlowDto flowDataList = JSON.parseObject(decryptedData, FlowDto.class);
         if (Objects.equals(flowDataList.getN(), "web_api")) {
             return SUCCESS_RESPONSE;
         }
@@ -161,16 +131,57 @@ public class FlowController extends BaseController {
         return processFlowData(flowDataList, node);
     }
 
+    /**
+     * 批量处理流量数据上报
+     * 一个（可能加密的）请求体内携带多个服务的流量数据，只做一次节点校验和解密，
+     * 所有条目作为一个整体提交到分片，要么全部接收要么全部拒绝
+     *
+     * @param rawData 原始数据（可能是加密的），解密后为FlowDto数组
+     * @param secret  节点密钥
+     * @return 处理结果
+     */
+    @RequestMapping("/upload/batch")
+    @LogAnnotation
+    public String uploadFlowDataBatch(@RequestBody String rawData, String secret) {
+        // 1. 验证节点权限
+        Node node = nodeSecretRegistry.getBySecret(secret);
+        if (node == null) {
+            return SUCCESS_RESPONSE;
+        }
+
+        // 2. 尝试解密数据
+        String decryptedData = decryptIfNeeded(rawData, secret);
+
+        // 3. 解析为FlowDto列表，兼容单个对象
+        String trimmed = decryptedData.trim();
+        List<FlowDto> flowDataList = trimmed.startsWith("[")
+                ? JSON.parseArray(trimmed, FlowDto.class)
+                : Collections.singletonList(JSON.parseObject(trimmed, FlowDto.class));
+        if (flowDataList == null || flowDataList.isEmpty()) {
+            return SUCCESS_RESPONSE;
+        }
+
+        log.info("节点 {} 批量上报流量数据 {} 条", node.getId(), flowDataList.size());
+
+        // 4. 换算为流量事件，整体提交到分片
+        List<FlowEvent> events = new ArrayList<>(flowDataList.size());
+        for (FlowDto flowData : flowDataList) {
+            if (flowData == null || Objects.equals(flowData.getN(), "web_api")) {
+                continue;
+            }
+            FlowEvent event = toFlowEvent(flowData, node);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return submitEvents(events, node);
+    }
+
     /**
      * 检测消息是否为加密格式
      */
     private boolean isEncryptedMessage(String data) {
-        try {
-            JSONObject json = JSON.parseObject(data);
-            return json.getBooleanValue("encrypted");
-        } catch (Exception e) {
-            return false;
-        }
+        return CryptoEnvelope.isEnvelope(data);
     }
 
     /**
@@ -182,10 +193,10 @@ public class FlowController extends BaseController {
         }
 
         try {
-            // 尝试解析为加密消息格式
-            EncryptedMessage encryptedMessage = JSON.parseObject(rawData, EncryptedMessage.class);
+            // 直接从加密信封中截取密文，非加密格式返回null
+            String encryptedData = CryptoEnvelope.extractData(rawData);
 
-            if (encryptedMessage.isEncrypted() && encryptedMessage.getData() != null) {
+            if (encryptedData != null) {
                 // 获取或创建加密器
                 AESCrypto crypto = getOrCreateCrypto(secret);
                 if (crypto == null) {
@@ -194,8 +205,7 @@ public class FlowController extends BaseController {
                 }
 
                 // 解密数据
-                String decryptedData = crypto.decryptString(encryptedMessage.getData());
-                return decryptedData;
+                return crypto.decryptString(encryptedData);
             }
         } catch (Exception e) {
             // 解析失败，可能是非加密格式，直接返回原始数据
@@ -216,229 +226,59 @@ public class FlowController extends BaseController {
      * 处理流量数据的核心逻辑
      */
     private String processFlowData(FlowDto flowDataList, Node reportingNode) {
-        String[] serviceIds = parseServiceName(flowDataList.getN());
-        String forwardId = serviceIds[0];
-        String userId = serviceIds[1];
-        String userTunnelId = serviceIds[2];
-
-        if (StrUtil.isBlank(forwardId) || StrUtil.isBlank(userId) || !isNumeric(forwardId) || !isNumeric(userId)) {
+        FlowEvent event = toFlowEvent(flowDataList, reportingNode);
+        if (event == null) {
             return SUCCESS_RESPONSE;
         }
-
-        Forward forward = forwardService.getById(forwardId);
-
-        //  处理流量倍率及单双向计算
-        FlowDto flowStats = filterFlowData(flowDataList, forward, reportingNode);
-
-        // 先更新所有流量统计 - 确保流量数据的一致性
-        updateForwardFlow(forwardId, flowStats);
-        updateUserFlow(userId, flowStats);
-        // 7. 检查和服务暂停操作
-        String name = buildServiceName(forwardId, userId, userTunnelId);
-        checkUserRelatedLimits(userId, name);
-
-        return SUCCESS_RESPONSE;
-    }
-
-    private void checkUserRelatedLimits(String userId, String name) {
-
-        // 重新查询用户以获取最新的流量数据
-        User updatedUser = userService.getById(userId);
-        if (updatedUser == null) return;
-
-        // 检查用户总流量限制
-        long userFlowLimit = updatedUser.getFlow() * BYTES_TO_GB;
-        long userCurrentFlow = updatedUser.getInFlow() + updatedUser.getOutFlow();
-        if (userFlowLimit < userCurrentFlow) {
-            pauseAllUserServices(userId, name);
-            return;
-        }
-
-        // 检查用户到期时间
-        if (updatedUser.getExpTime() != null && updatedUser.getExpTime() <= new Date().getTime()) {
-            pauseAllUserServices(userId, name);
-            return;
-        }
-
-        // 检查用户状态
-        if (updatedUser.getStatus() != 1) {
-            pauseAllUserServices(userId, name);
-        }
-    }
-
-    public void pauseAllUserServices(String userId, String name) {
-        List<Forward> forwardList = forwardService.list(new QueryWrapper<Forward>().eq("user_id", userId));
-        pauseService(forwardList, name);
+        return submitEvents(Collections.singletonList(event), reportingNode);
     }
 
-    public void pauseService(List<Forward> forwardList, String name) {
-        for (Forward forward : forwardList) {
-            Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
-            if (tunnel != null){
-                for (Long inNodeId : resolveInNodeIds(tunnel)) {
-                    GostUtil.PauseService(inNodeId, name);
-                }
-                if (tunnel.getType() == 2 && !Boolean.TRUE.equals(tunnel.getMuxEnabled())) {
-                    for (Long outNodeId : resolveOutNodeIds(tunnel)) {
-                        GostUtil.PauseRemoteService(outNodeId, name);
-                    }
-                }
-            }
-            forward.setStatus(0);
-            forwardService.updateById(forward);
-        }
-    }
-
-    private List<Long> resolveOutNodeIds(Tunnel tunnel) {
-        if (tunnel == null) {
-            return Collections.emptyList();
-        }
-        List<Long> outNodeIds = new ArrayList<>();
-        if (tunnel.getOutNodeIds() != null && !tunnel.getOutNodeIds().trim().isEmpty()) {
-            String[] parts = tunnel.getOutNodeIds().split(",");
-            for (String part : parts) {
-                String trimmed = part.trim();
-                if (!trimmed.isEmpty()) {
-                    try {
-                        outNodeIds.add(Long.parseLong(trimmed));
-                    } catch (NumberFormatException ignored) {
-                    }
-                }
-            }
-        }
-        if (outNodeIds.isEmpty() && tunnel.getOutNodeId() != null) {
-            outNodeIds.add(tunnel.getOutNodeId());
+    /**
+     * 提交流量事件，分片积压或日志写入失败时返回 busy，节点收到非 ok 响应会保留流量稍后重报
+     */
+    private String submitEvents(List<FlowEvent> events, Node reportingNode) {
+        if (flowIngestShards.submit(events)) {
+            return SUCCESS_RESPONSE;
         }
-        return outNodeIds;
+        log.info("流量暂时无法接收，拒绝节点 {} 的 {} 条流量数据，等待重报", reportingNode.getId(), events.size());
+        return BUSY_RESPONSE;
     }
 
-    private List<Long> resolveInNodeIds(Tunnel tunnel) {
-        if (tunnel == null) {
-            return Collections.emptyList();
-        }
-        List<Long> inNodeIds = new ArrayList<>();
-        if (tunnel.getInNodeIds() != null && !tunnel.getInNodeIds().trim().isEmpty()) {
-            String[] parts = tunnel.getInNodeIds().split(",");
-            for (String part : parts) {
-                String trimmed = part.trim();
-                if (!trimmed.isEmpty()) {
-                    try {
-                        inNodeIds.add(Long.parseLong(trimmed));
-                    } catch (NumberFormatException ignored) {
-                    }
-                }
-            }
-        }
-        if (inNodeIds.isEmpty() && tunnel.getInNodeId() != null) {
-            inNodeIds.add(tunnel.getInNodeId());
-        }
-        return inNodeIds;
-    }
+    /**
+     * 解析服务名并按倍率换算为流量事件，服务名无效时返回null
+     */
+    private FlowEvent toFlowEvent(FlowDto flowDataList, Node reportingNode) {
+        String[] serviceIds = parseServiceName(flowDataList.getN());
+        String forwardId = serviceIds[0];
+        String userId = serviceIds[1];
 
-    private FlowDto filterFlowData(FlowDto flowDto, Forward forward, Node reportingNode) {
-        if (forward == null) {
-            return flowDto;
-        }
-        Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
-        if (tunnel == null) {
-            return flowDto;
+        if (StrUtil.isBlank(forwardId) || StrUtil.isBlank(userId) || !isNumeric(forwardId) || !isNumeric(userId)) {
+            return null;
         }
 
-        BigDecimal trafficRatio = calculateNodeTrafficRatio(tunnel, reportingNode);
-        BigDecimal originalD = BigDecimal.valueOf(flowDto.getD());
-        BigDecimal originalU = BigDecimal.valueOf(flowDto.getU());
+        long inFlow = toLong(flowDataList.getD());
+        long outFlow = toLong(flowDataList.getU());
 
-        BigDecimal newD = originalD.multiply(trafficRatio);
-        BigDecimal newU = originalU.multiply(trafficRatio);
-
-        flowDto.setD(newD.longValue());
-        flowDto.setU(newU.longValue());
-        return flowDto;
-    }
+        // 服务名中的用户隧道权限段目前固定为0，以路由表中的权限ID为准
+        long userTunnelId = isNumeric(serviceIds[2]) ? Long.parseLong(serviceIds[2]) : 0L;
 
-    private BigDecimal calculateNodeTrafficRatio(Tunnel tunnel, Node reportingNode) {
-        BigDecimal inRatio = getNodeTrafficRatio(reportingNode);
-        if (tunnel.getType() != null && tunnel.getType() == 2) {
-            BigDecimal outRatio = BigDecimal.ZERO;
-            for (Node outNode : resolveOutNodes(tunnel)) {
-                outRatio = outRatio.add(getNodeTrafficRatio(outNode));
+        // 处理流量倍率，转发或隧道不存在时按原始流量计
+        FlowRoute route = flowRoutingTable.getRoute(Long.parseLong(forwardId));
+        if (route != null) {
+            long ratio = flowRoutingTable.effectiveRatio(route, reportingNode);
+            inFlow = FlowRoutingTable.applyRatio(inFlow, ratio);
+            outFlow = FlowRoutingTable.applyRatio(outFlow, ratio);
+            if (route.getUserTunnelId() != 0) {
+                userTunnelId = route.getUserTunnelId();
             }
-            return inRatio.add(outRatio);
         }
-        return inRatio;
-    }
 
-    private BigDecimal getNodeTrafficRatio(Node node) {
-        if (node == null || node.getTrafficRatio() == null) {
-            return BigDecimal.ONE;
-        }
-        return node.getTrafficRatio();
+        return new FlowEvent(Long.parseLong(forwardId), Long.parseLong(userId), userTunnelId, inFlow, outFlow,
+                reportingNode.getId());
     }
 
-    private List<Node> resolveOutNodes(Tunnel tunnel) {
-        if (tunnel == null) {
-            return Collections.emptyList();
-        }
-        List<Long> outNodeIds = new ArrayList<>();
-        if (tunnel.getOutNodeIds() != null && !tunnel.getOutNodeIds().trim().isEmpty()) {
-            String[] parts = tunnel.getOutNodeIds().split(",");
-            for (String part : parts) {
-                String trimmed = part.trim();
-                if (!trimmed.isEmpty()) {
-                    try {
-                        outNodeIds.add(Long.parseLong(trimmed));
-                    } catch (NumberFormatException ignored) {
-                    }
-                }
-            }
-        }
-        if (outNodeIds.isEmpty() && tunnel.getOutNodeId() != null) {
-            outNodeIds.add(tunnel.getOutNodeId());
-        }
-        if (outNodeIds.isEmpty()) {
-            return Collections.emptyList();
-        }
-        List<Node> outNodes = new ArrayList<>();
-        for (Long nodeId : new LinkedHashSet<>(outNodeIds)) {
-            Node node = nodeService.getNodeById(nodeId);
-            if (node != null) {
-                outNodes.add(node);
-            }
-        }
-        return outNodes;
-    }
-
-    private void updateForwardFlow(String forwardId, FlowDto flowStats) {
-        // 对相同转发的流量更新进行同步，避免并发覆盖
-        synchronized (getForwardLock(forwardId)) {
-            UpdateWrapper<Forward> updateWrapper = new UpdateWrapper<>();
-            updateWrapper.eq("id", forwardId);
-            updateWrapper.setSql("in_flow = in_flow + " + flowStats.getD());
-            updateWrapper.setSql("out_flow = out_flow + " + flowStats.getU());
-
-            forwardService.update(null, updateWrapper);
-        }
-    }
-
-    private void updateUserFlow(String userId, FlowDto flowStats) {
-        // 对相同用户的流量更新进行同步，避免并发覆盖
-        synchronized (getUserLock(userId)) {
-            UpdateWrapper<User> updateWrapper = new UpdateWrapper<>();
-            updateWrapper.eq("id", userId);
-
-            updateWrapper.setSql("in_flow = in_flow + " + flowStats.getD());
-            updateWrapper.setSql("out_flow = out_flow + " + flowStats.getU());
-
-            userService.update(null, updateWrapper);
-        }
-    }
-
-    private Object getUserLock(String userId) {
-        return USER_LOCKS.computeIfAbsent(userId, k -> new Object());
-    }
-
-    private Object getForwardLock(String forwardId) {
-        return FORWARD_LOCKS.computeIfAbsent(forwardId, k -> new Object());
+    private long toLong(Long value) {
+        return value == null ? 0L : value;
     }
 
     private String[] parseServiceName(String serviceName) {
@@ -465,10 +305,6 @@ public class FlowController extends BaseController {
         return "tcp".equals(suffix) || "udp".equals(suffix) || "tls".equals(suffix) || "chains".equals(suffix);
     }
 
-    private String buildServiceName(String forwardId, String userId, String userTunnelId) {
-        return forwardId + "_" + userId + "_" + userTunnelId;
-    }
-
     private boolean isNumeric(String value) {
         return value != null && value.matches("\\d+");
     }
@@ -1,6 +1,7 @@
 package com.admin.controller;
 
 import com.admin.common.aop.LogAnnotation;
+import com.admin.common.annotation.EvictPackageCache;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
@@ -29,6 +30,7 @@ public class ForwardController extends BaseController {
     private ForwardService forwardService;
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/create")
     public R create(@Validated @RequestBody ForwardDto forwardDto) {
         return forwardService.createForward(forwardDto);
@@ -41,12 +43,14 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/update")
     public R update(@Validated @RequestBody ForwardUpdateDto forwardUpdateDto) {
         return forwardService.updateForward(forwardUpdateDto);
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/delete")
     public R delete(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -54,6 +58,7 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/force-delete")
     public R forceDelete(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -61,6 +66,7 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/pause")
     public R pause(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -68,6 +74,7 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/resume")
     public R resume(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -98,6 +105,7 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/batch/delete")
     public R batchDelete(@RequestBody Map<String, Object> params) {
         Object ids = params.get("ids");
@@ -114,6 +122,7 @@ public class ForwardController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/batch/update-tunnel")
     public R batchUpdateTunnel(@RequestBody Map<String, Object> params) {
         Object ids = params.get("ids");
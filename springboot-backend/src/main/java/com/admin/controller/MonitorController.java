@@ -0,0 +1,266 @@
+package com.admin.controller;
+
+
+import com.admin.common.annotation.RequireRole;
+import com.admin.common.aop.LogAnnotation;
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.cluster.ClusterRouter;
+import com.admin.common.dto.FlowSeriesQueryDto;
+import com.admin.common.flow.FlowIngestShards;
+import com.admin.common.flow.FlowRateRings;
+import com.admin.common.flow.FlowSeriesStore;
+import com.admin.common.flow.TopTalkers;
+import com.admin.common.lang.R;
+import com.admin.common.node.NodeSecretRegistry;
+import com.admin.common.node.NodeTelemetryHub;
+import com.admin.common.task.RetentionManager;
+import com.admin.common.utils.NodeCommandCoalescer;
+import com.admin.common.utils.NodeCommandScheduler;
+import com.admin.common.utils.PendingRequestRegistry;
+import com.admin.common.utils.WebSocketServer;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *  运行状态监控控制器
+ * </p>
+ */
+@RestController
+@CrossOrigin
+@RequestMapping("/api/v1/monitor")
+public class MonitorController extends BaseController {
+
+    private static final int DEFAULT_RANK_LIMIT = 20;
+    private static final int MAX_RANK_LIMIT = 200;
+    private static final int LIVE_WINDOW_MINUTES = 60;
+    private static final int DEFAULT_TOP_LIMIT = 10;
+
+    @Resource
+    NodeSecretRegistry nodeSecretRegistry;
+
+    @Resource
+    FlowIngestShards flowIngestShards;
+
+    @Resource
+    FlowSeriesStore flowSeriesStore;
+
+    @Resource
+    FlowRateRings flowRateRings;
+
+    @Resource
+    TopTalkers topTalkers;
+
+    @Resource
+    RetentionManager retentionManager;
+
+    @Resource
+    UserPackageCache userPackageCache;
+
+    @Resource
+    NodeTelemetryHub nodeTelemetryHub;
+
+    @Resource
+    ClusterRouter clusterRouter;
+
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/node-registry")
+    public R nodeRegistry() {
+        return R.ok(nodeSecretRegistry.getStats());
+    }
+
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/ingest")
+    public R ingest() {
+        return R.ok(flowIngestShards.getStats());
+    }
+
+    /**
+     * 流量排行：最近 5m / 1h / 24h 流量最大的转发、用户或远程目标（流式估计，bytes 为上界，error 为误差上界）
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/top-talkers")
+    public R topTalkers(@RequestBody Map<String, Object> params) {
+        TopTalkers.Dimension dimension = TopTalkers.Dimension.of(String.valueOf(params.get("dimension")));
+        TopTalkers.Window window = TopTalkers.Window.of(String.valueOf(params.get("window")));
+        if (dimension == null || window == null) {
+            return R.err("不支持的排行维度或时间窗口");
+        }
+        int limit = params.get("limit") == null ? DEFAULT_TOP_LIMIT
+                : Math.max(1, Integer.parseInt(params.get("limit").toString()));
+        return R.ok(topTalkers.top(dimension, window, limit));
+    }
+
+    /**
+     * 历史表保留清理：各策略的删除行数、批次数和耗时
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/retention")
+    public R retention() {
+        return R.ok(retentionManager.getStats());
+    }
+
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/package-cache")
+    public R packageCache() {
+        return R.ok(userPackageCache.getStats());
+    }
+
+    /**
+     * 节点服务命令合并：入队命令数、实际发送帧数、合并帧数和合并失败后重新发送的命令数
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/command-coalescer")
+    public R commandCoalescer() {
+        return R.ok(NodeCommandCoalescer.getStats());
+    }
+
+    /**
+     * 节点命令调度：各优先级通道的提交数、排队数和排队等待时间，当前有排队或在途命令的节点
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/command-lanes")
+    public R commandLanes() {
+        return R.ok(NodeCommandScheduler.getStats());
+    }
+
+    /**
+     * WebSocket 发送队列：各会话的队列深度、发送数、广播合并和丢弃数
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/ws-writers")
+    public R wsWriters() {
+        return R.ok(WebSocketServer.getWriterStats());
+    }
+
+    /**
+     * 等待节点响应的请求：在途请求数、超时和迟到的响应数，各节点、各命令类型的响应延迟（p50/p99）
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/pending-requests")
+    public R pendingRequests() {
+        return R.ok(PendingRequestRegistry.getStats());
+    }
+
+    /**
+     * 集群路由：本实例ID、持有的节点会话、转发和代为执行的命令数
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/cluster")
+    public R cluster() {
+        return R.ok(clusterRouter.getStats());
+    }
+
+    /**
+     * 节点监控数据推送：收到的上报数、推送周期数、推送帧数和推送的节点数据条数
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/telemetry")
+    public R telemetry() {
+        return R.ok(nodeTelemetryHub.getStats());
+    }
+
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/flow-rings")
+    public R flowRings() {
+        return R.ok(flowRateRings.getStats());
+    }
+
+    /**
+     * 实时看板：最近一小时每分钟的流量，直接读取环形缓冲区
+     * 返回 bucketTimes（分钟起始时间）与 bytes 两个等长数组，速率为 bytes / 60
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/flow-live")
+    public R flowLive(@RequestBody Map<String, Object> params) {
+        FlowSeriesStore.Dimension dimension = FlowSeriesStore.Dimension.of(String.valueOf(params.get("dimension")));
+        if (dimension == null) {
+            return R.err("不支持的统计维度");
+        }
+        long targetId = params.get("targetId") == null ? FlowSeriesStore.ALL_USERS
+                : Long.parseLong(params.get("targetId").toString());
+
+        long now = System.currentTimeMillis();
+        long[] bucketTimes = new long[LIVE_WINDOW_MINUTES];
+        long[] bytes = new long[LIVE_WINDOW_MINUTES];
+        int[] count = {0};
+        boolean cached = flowRateRings.read(dimension, targetId, FlowSeriesStore.Resolution.MINUTE,
+                now - (LIVE_WINDOW_MINUTES - 1) * 60_000L, now, (bucketTime, value) -> {
+                    if (count[0] < bucketTimes.length) {
+                        bucketTimes[count[0]] = bucketTime;
+                        bytes[count[0]++] = value;
+                    }
+                });
+        if (!cached) {
+            return R.err("该对象不在实时缓冲区中，请使用流量时序查询");
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("slotSeconds", 60);
+        result.put("bucketTimes", Arrays.copyOf(bucketTimes, count[0]));
+        result.put("bytes", Arrays.copyOf(bytes, count[0]));
+        return R.ok(result);
+    }
+
+    /**
+     * 查询单个用户、转发或节点的流量时序
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/flow-series")
+    public R flowSeries(@Validated @RequestBody FlowSeriesQueryDto queryDto) {
+        FlowSeriesStore.Dimension dimension = FlowSeriesStore.Dimension.of(queryDto.getDimension());
+        FlowSeriesStore.Resolution resolution = FlowSeriesStore.Resolution.of(queryDto.getResolution());
+        if (dimension == null || resolution == null) {
+            return R.err("不支持的统计维度或粒度");
+        }
+        if (queryDto.getTargetId() == null) {
+            return R.err("统计对象ID不能为空");
+        }
+        if (queryDto.getEndTime() < queryDto.getStartTime()) {
+            return R.err("结束时间不能早于开始时间");
+        }
+        return R.ok(flowSeriesStore.query(dimension, queryDto.getTargetId(), resolution,
+                queryDto.getStartTime(), queryDto.getEndTime()));
+    }
+
+    /**
+     * 按时间范围内的总流量对用户、转发或节点排行
+     */
+    @LogAnnotation
+    @RequireRole
+    @PostMapping("/flow-rank")
+    public R flowRank(@Validated @RequestBody FlowSeriesQueryDto queryDto) {
+        FlowSeriesStore.Dimension dimension = FlowSeriesStore.Dimension.of(queryDto.getDimension());
+        FlowSeriesStore.Resolution resolution = FlowSeriesStore.Resolution.of(queryDto.getResolution());
+        if (dimension == null || resolution == null) {
+            return R.err("不支持的统计维度或粒度");
+        }
+        if (queryDto.getEndTime() < queryDto.getStartTime()) {
+            return R.err("结束时间不能早于开始时间");
+        }
+        int limit = queryDto.getLimit() == null ? DEFAULT_RANK_LIMIT
+                : Math.max(1, Math.min(queryDto.getLimit(), MAX_RANK_LIMIT));
+        return R.ok(flowSeriesStore.rank(dimension, resolution,
+                queryDto.getStartTime(), queryDto.getEndTime(), limit));
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.admin.controller;
 
 
+import com.admin.common.annotation.EvictPackageCache;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.NodeDto;
@@ -38,12 +39,14 @@ public class NodeController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/update")
     public R update(@Validated @RequestBody NodeUpdateDto nodeUpdateDto) {
         return nodeService.updateNode(nodeUpdateDto);
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/delete")
     public R delete(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -59,6 +62,7 @@ public class NodeController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @EvictPackageCache
     @PostMapping("/user/assign")
     public R assignUserNode(@Validated @RequestBody com.admin.common.dto.UserNodeDto userNodeDto) {
         return userNodeService.assignUserNode(userNodeDto);
@@ -73,6 +77,7 @@ public class NodeController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @EvictPackageCache
     @PostMapping("/user/remove")
     public R removeUserNode(@RequestBody Map<String, Object> params) {
         Integer id = Integer.valueOf(params.get("id").toString());
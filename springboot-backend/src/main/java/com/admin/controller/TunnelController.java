@@ -1,5 +1,6 @@
 package com.admin.controller;
 
+import com.admin.common.annotation.EvictPackageCache;
 import com.admin.common.aop.LogAnnotation;
 import com.admin.common.dto.TunnelDto;
 import com.admin.common.dto.TunnelUpdateDto;
@@ -41,12 +42,14 @@ public class TunnelController extends BaseController {
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/update")
     public R update(@Validated @RequestBody TunnelUpdateDto tunnelUpdateDto) {
         return tunnelService.updateTunnel(tunnelUpdateDto);
     }
 
     @LogAnnotation
+    @EvictPackageCache
     @PostMapping("/delete")
     public R delete(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
@@ -2,12 +2,15 @@ package com.admin.controller;
 
 
 import com.admin.common.aop.LogAnnotation;
+import com.admin.common.annotation.EvictPackageCache;
 import com.admin.common.annotation.RequireRole;
 import com.admin.common.dto.*;
 import com.admin.common.lang.R;
+import org.springframework.http.HttpHeaders;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import java.util.Map;
 
 /**
@@ -46,6 +49,7 @@ public class UserController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @EvictPackageCache
     @PostMapping("/update")
     public R update(@Validated @RequestBody UserUpdateDto userUpdateDto) {
         return userService.updateUser(userUpdateDto);
@@ -53,16 +57,28 @@ public class UserController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @EvictPackageCache
     @PostMapping("/delete")
     public R delete(@RequestBody Map<String, Object> params) {
         Long id = Long.valueOf(params.get("id").toString());
         return userService.deleteUser(id);
     }
 
+    /**
+     * 套餐信息，响应头携带 ETag，请求头 If-None-Match 与之相同时返回 304
+     */
     @LogAnnotation
+    @CrossOrigin(exposedHeaders = HttpHeaders.ETAG)
     @PostMapping("/package")
-    public R getUserPackageInfo() {
-        return userService.getUserPackageInfo();
+    public R getUserPackageInfo(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                HttpServletResponse response) {
+        return userService.getUserPackageInfo(ifNoneMatch, response);
+    }
+
+    @LogAnnotation
+    @PostMapping("/flowSeries")
+    public R flowSeries(@Validated @RequestBody FlowSeriesQueryDto flowSeriesQueryDto) {
+        return userService.getFlowSeries(flowSeriesQueryDto);
     }
 
     @LogAnnotation
@@ -73,6 +89,7 @@ public class UserController extends BaseController {
 
     @LogAnnotation
     @RequireRole
+    @EvictPackageCache
     @PostMapping("/reset")
     public R reset(@Validated @RequestBody ResetFlowDto resetFlowDto) {
         return userService.reset(resetFlowDto);
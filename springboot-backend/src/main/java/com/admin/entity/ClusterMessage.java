@@ -0,0 +1,47 @@
+package com.admin.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 实例间转发的节点命令及其响应
+ * </p>
+ */
+@Data
+public class ClusterMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int KIND_REQUEST = 1;
+    public static final int KIND_RESPONSE = 2;
+
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    private String targetInstance;
+
+    private String sourceInstance;
+
+    // 1 命令请求、2 命令响应
+    private Integer kind;
+
+    // 发起实例生成的请求编号，响应原样带回
+    private Long correlationId;
+
+    private Long nodeId;
+
+    // 命令类型，例如 AddService
+    private String type;
+
+    // 命令优先级，NodeCommandScheduler.Priority 的序号，只用于请求
+    private Integer priority;
+
+    // 请求为命令数据，响应为 GostDto，均为 JSON
+    private String payload;
+
+    private Long createdTime;
+}
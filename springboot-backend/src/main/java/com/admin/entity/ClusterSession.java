@@ -0,0 +1,30 @@
+package com.admin.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 集群模式下节点会话的归属：节点的 WebSocket 连接在哪个后端实例上
+ * </p>
+ */
+@Data
+public class ClusterSession implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @TableId(value = "node_id", type = IdType.INPUT)
+    private Long nodeId;
+
+    // 持有连接的实例ID
+    private String instanceId;
+
+    // 连接建立时间，节点切换实例时以较新的连接为准
+    private Long connectedTime;
+
+    // 最近一次续约时间，超过租约时间未续约视为实例已下线
+    private Long leaseTime;
+}
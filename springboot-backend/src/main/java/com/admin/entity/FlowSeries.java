@@ -0,0 +1,31 @@
+package com.admin.entity;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * 流量时序数据点，主键为 (dimension, target_id, resolution, bucket_time)
+ * </p>
+ */
+@Data
+public class FlowSeries {
+
+    private static final long serialVersionUID = 1L;
+
+    // 统计维度：1 用户、2 转发、3 节点
+    private Integer dimension;
+
+    // 用户ID、转发ID或节点ID，用户维度下 0 表示全体用户汇总
+    private Long targetId;
+
+    // 统计粒度：1 分钟、2 小时、3 天
+    private Integer resolution;
+
+    // 时间桶起始时间（毫秒，按服务器时区对齐）
+    private Long bucketTime;
+
+    private Long inFlow;
+
+    private Long outFlow;
+
+}
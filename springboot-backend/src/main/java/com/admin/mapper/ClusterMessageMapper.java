@@ -0,0 +1,23 @@
+package com.admin.mapper;
+
+import com.admin.entity.ClusterMessage;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  实例间消息 Mapper 接口
+ * </p>
+ */
+public interface ClusterMessageMapper extends BaseMapper<ClusterMessage> {
+
+    /**
+     * 批量写入消息
+     * @param list 消息列表
+     * @return 影响行数
+     */
+    int batchInsert(@Param("list") List<ClusterMessage> list);
+
+}
@@ -0,0 +1,32 @@
+package com.admin.mapper;
+
+import com.admin.entity.ClusterSession;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ *  节点会话归属 Mapper 接口
+ * </p>
+ */
+public interface ClusterSessionMapper extends BaseMapper<ClusterSession> {
+
+    /**
+     * 批量登记或续约，已有较新连接的登记不会被覆盖
+     * @param list 本实例持有的节点会话
+     * @return 影响行数
+     */
+    int batchUpsert(@Param("list") List<ClusterSession> list);
+
+    /**
+     * 删除实例不再持有的登记
+     * @param instanceId 实例ID
+     * @param keepNodeIds 仍然持有的节点ID，为空时删除该实例的全部登记
+     * @return 删除行数
+     */
+    int deleteReleased(@Param("instanceId") String instanceId, @Param("keepNodeIds") Collection<Long> keepNodeIds);
+
+}
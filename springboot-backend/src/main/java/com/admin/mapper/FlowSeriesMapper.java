@@ -0,0 +1,34 @@
+package com.admin.mapper;
+
+import com.admin.entity.FlowSeries;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  流量时序 Mapper 接口
+ * </p>
+ */
+public interface FlowSeriesMapper extends BaseMapper<FlowSeries> {
+
+    /**
+     * 批量累加时序增量，时间桶不存在时插入
+     * @param list 增量列表
+     * @return 影响行数
+     */
+    int batchUpsert(@Param("list") List<FlowSeries> list);
+
+    /**
+     * 按对象汇总时间范围内的流量（只含 targetId、inFlow、outFlow）
+     * @param dimension 统计维度
+     * @param resolution 统计粒度
+     * @param startTime 开始时间桶（含）
+     * @param endTime 结束时间（含）
+     * @return 每个对象一行
+     */
+    List<FlowSeries> sumByTarget(@Param("dimension") int dimension, @Param("resolution") int resolution,
+                                 @Param("startTime") long startTime, @Param("endTime") long endTime);
+
+}
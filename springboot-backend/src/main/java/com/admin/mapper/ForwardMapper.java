@@ -2,6 +2,7 @@ package com.admin.mapper;
 
 import com.admin.entity.Forward;
 import com.admin.common.dto.ForwardWithTunnelDto;
+import com.admin.common.flow.FlowDelta;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 
@@ -30,4 +31,10 @@ public interface ForwardMapper extends BaseMapper<Forward> {
      */
     List<ForwardWithTunnelDto> selectForwardsWithTunnelByUserId(@Param("userId") Integer userId);
 
+    /**
+     * 批量累加转发流量（in_flow / out_flow 在原值上增加）
+     * @param list 流量增量列表
+     * @return 影响行数
+     */
+    int batchAddFlow(@Param("list") List<FlowDelta> list);
 }
@@ -0,0 +1,52 @@
+package com.admin.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *  历史表保留清理 Mapper 接口，表名、列名来自 RetentionPolicy 中的常量
+ * </p>
+ */
+public interface RetentionMapper {
+
+    /**
+     * 按主键顺序读取一批行的主键和时间（列名为 pk、ts）
+     * @param table 表名
+     * @param pkColumn 主键列
+     * @param timeColumn 时间列
+     * @param afterId 只读取主键大于该值的行
+     * @param limit 最多读取行数
+     * @return 按主键升序的行
+     */
+    List<Map<String, Object>> selectHead(@Param("table") String table, @Param("pkColumn") String pkColumn,
+                                         @Param("timeColumn") String timeColumn, @Param("afterId") long afterId,
+                                         @Param("limit") int limit);
+
+    /**
+     * 删除主键区间内的行
+     * @param table 表名
+     * @param pkColumn 主键列
+     * @param fromId 起始主键（含）
+     * @param toId 结束主键（含）
+     * @return 删除行数
+     */
+    int deleteRange(@Param("table") String table, @Param("pkColumn") String pkColumn,
+                    @Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 按固定条件删除一批过期行
+     * @param table 表名
+     * @param conditions 等值条件，列名 → 值
+     * @param timeColumn 时间列
+     * @param cutoff 删除时间早于该值的行
+     * @param limit 最多删除行数
+     * @return 删除行数
+     */
+    int deleteExpired(@Param("table") String table, @Param("conditions") Map<String, Object> conditions,
+                      @Param("timeColumn") String timeColumn, @Param("cutoff") long cutoff,
+                      @Param("limit") int limit);
+
+}
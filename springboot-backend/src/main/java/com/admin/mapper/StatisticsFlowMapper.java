@@ -2,6 +2,9 @@ package com.admin.mapper;
 
 import com.admin.entity.StatisticsFlow;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface StatisticsFlowMapper extends BaseMapper<StatisticsFlow> {
 
+    /**
+     * 查询每个用户最近一条快照（只含 userId、totalFlow）
+     * @return 快照列表
+     */
+    List<StatisticsFlow> selectLatestTotals();
+
+    /**
+     * 多行插入流量快照
+     * @param list 快照列表
+     * @return 影响行数
+     */
+    int insertBatch(@Param("list") List<StatisticsFlow> list);
+
 }
@@ -2,6 +2,7 @@ package com.admin.mapper;
 
 import com.admin.entity.UserTunnel;
 import com.admin.common.dto.UserTunnelWithDetailDto;
+import com.admin.common.flow.FlowDelta;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -21,4 +22,11 @@ public interface UserTunnelMapper extends BaseMapper<UserTunnel> {
 
     List<UserTunnelWithDetailDto> getUserTunnelWithDetails(@Param("userId") Integer userId);
 
+    /**
+     * 批量累加用户隧道权限流量（in_flow / out_flow 在原值上增加）
+     * @param list 流量增量列表
+     * @return 影响行数
+     */
+    int batchAddFlow(@Param("list") List<FlowDelta> list);
+
 }
@@ -4,9 +4,13 @@ import com.admin.common.dto.ForwardDto;
 import com.admin.common.dto.ForwardUpdateDto;
 import com.admin.common.dto.ForwardWithTunnelDto;
 import com.admin.common.dto.GostDto;
+import com.admin.common.flow.FlowRoute;
+import com.admin.common.flow.FlowRoutingTable;
+import com.admin.common.flow.UserQuotaEngine;
 import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.JwtUtil;
+import com.admin.common.utils.NodeCommandScheduler;
 import com.admin.common.utils.WebSocketServer;
 import com.admin.entity.*;
 import com.admin.mapper.ForwardMapper;
@@ -30,9 +34,12 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * <p>
@@ -80,6 +87,12 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     @Resource
     UserNodeService userNodeService;
 
+    @Resource
+    FlowRoutingTable flowRoutingTable;
+
+    @Resource
+    UserQuotaEngine userQuotaEngine;
+
     @PreDestroy
     public void shutdownRebuildExecutor() {
         REBUILD_EXECUTOR.shutdown();
@@ -150,6 +163,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             return gostResult;
         }
 
+        flowRoutingTable.refreshForward(forward.getId());
         return R.ok();
     }
 
@@ -313,6 +327,9 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         updatedForward.setStatus(1);
         // 9. 保存更新
         boolean result = this.updateById(updatedForward);
+        if (result) {
+            flowRoutingTable.refreshForward(updatedForward.getId());
+        }
         return result ? R.ok("端口转发更新成功") : R.err("端口转发更新失败");
     }
 
@@ -352,6 +369,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         // 7. 删除转发记录
         boolean result = this.removeById(id);
         if (result) {
+            flowRoutingTable.removeForward(id);
             return R.ok("端口转发删除成功");
         } else {
             return R.err("端口转发删除失败");
@@ -382,6 +400,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         // 3. 直接删除转发记录，跳过GOST服务删除
         boolean result = this.removeById(id);
         if (result) {
+            flowRoutingTable.removeForward(id);
             return R.ok("端口转发强制删除成功");
         } else {
             return R.err("端口转发强制删除失败");
@@ -447,46 +466,37 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         }
 
         boolean muxEnabled = Boolean.TRUE.equals(tunnel.getMuxEnabled());
-        if ("PauseService".equals(gostMethod)) {
-            for (Node inNode : inNodes) {
-                GostDto gostResult = GostUtil.PauseService(inNode.getId(), serviceName);
-                if (!isGostOperationSuccess(gostResult)) {
-                    return R.err(operation + "服务失败：" + gostResult.getMsg());
-                }
-            }
-
-            // 隧道转发需要同时暂停远端服务
-            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD && !muxEnabled) {
-                for (Node outNode : nodeInfo.getOutNodes()) {
-                    GostDto remoteResult = GostUtil.PauseRemoteService(outNode.getId(), serviceName);
-                    if (!isGostOperationSuccess(remoteResult)) {
-                        return R.err(operation + "远端服务失败：" + remoteResult.getMsg());
-                    }
-                }
-            }
-        } else {
-            for (Node inNode : inNodes) {
-                GostDto gostResult = GostUtil.ResumeService(inNode.getId(), serviceName);
-                if (!isGostOperationSuccess(gostResult)) {
-                    return R.err(operation + "服务失败：" + gostResult.getMsg());
-                }
-            }
-
-            // 隧道转发需要同时恢复远端服务
-            if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD && !muxEnabled) {
-                for (Node outNode : nodeInfo.getOutNodes()) {
-                    GostDto remoteResult = GostUtil.ResumeRemoteService(outNode.getId(), serviceName);
-                    if (!isGostOperationSuccess(remoteResult)) {
-                        return R.err(operation + "远端服务失败：" + remoteResult.getMsg());
-                    }
-                }
-            }
+        boolean pause = "PauseService".equals(gostMethod);
+        // 入口和远端（隧道转发）同时发出，等待全部响应
+        List<CompletableFuture<GostDto>> inResults = sendToNodes(inNodes, inNode -> pause
+                ? GostUtil.PauseServiceAsync(inNode.getId(), serviceName)
+                : GostUtil.ResumeServiceAsync(inNode.getId(), serviceName));
+        List<CompletableFuture<GostDto>> remoteResults = tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD && !muxEnabled
+                ? sendToNodes(nodeInfo.getOutNodes(), outNode -> pause
+                        ? GostUtil.PauseRemoteServiceAsync(outNode.getId(), serviceName)
+                        : GostUtil.ResumeRemoteServiceAsync(outNode.getId(), serviceName))
+                : Collections.emptyList();
+        R inResult = awaitGostResults(inResults, operation + "服务失败：");
+        R remoteResult = awaitGostResults(remoteResults, operation + "远端服务失败：");
+        if (inResult.getCode() != 0) {
+            return inResult;
+        }
+        if (remoteResult.getCode() != 0) {
+            return remoteResult;
         }
 
         // 9. 更新转发状态
         forward.setStatus(targetStatus);
         forward.setUpdatedTime(System.currentTimeMillis());
         boolean result = this.updateById(forward);
+        if (result && targetStatus == FORWARD_STATUS_ACTIVE) {
+            // 恢复后重新布防，仍超限时下一次上报会再次暂停
+            userQuotaEngine.resync(forward.getUserId().longValue());
+            FlowRoute route = flowRoutingTable.getRoute(forward.getId());
+            if (route != null && route.getUserTunnelId() != 0) {
+                userQuotaEngine.resyncUserTunnel(route.getUserTunnelId());
+            }
+        }
 
         return result ? R.ok("服务已" + operation) : R.err("更新状态失败");
     }
@@ -667,6 +677,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
 
             boolean removed = this.removeById(id);
             if (removed) {
+                flowRoutingTable.removeForward(id);
                 success++;
                 continue;
             }
@@ -1328,24 +1339,18 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                     return muxResult;
                 }
             }
-            for (Node inNode : inNodes) {
-                R chainResult = createChainService(inNode, serviceName, activeOutNodes, forward.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName(), muxEnabled, tunnel.getOutStrategy());
-                if (chainResult.getCode() != 0) {
-                    for (Node cleanupNode : inNodes) {
-                        GostUtil.DeleteChains(cleanupNode.getId(), serviceName);
-                    }
-                    if (!muxEnabled) {
-                        deleteRemoteServices(activeOutNodes, serviceName);
-                    }
-                    return chainResult;
+            R chainResult = createChainServices(inNodes, serviceName, activeOutNodes, forward.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName(), muxEnabled, tunnel.getOutStrategy());
+            if (chainResult.getCode() != 0) {
+                deleteChainsOnNodes(inNodes, serviceName);
+                if (!muxEnabled) {
+                    deleteRemoteServices(activeOutNodes, serviceName);
                 }
+                return chainResult;
             }
             if (!muxEnabled) {
                 R remoteResult = createRemoteServices(activeOutNodes, serviceName, forward, tunnel.getProtocol(), forward.getInterfaceName());
                 if (remoteResult.getCode() != 0) {
-                    for (Node cleanupNode : inNodes) {
-                        GostUtil.DeleteChains(cleanupNode.getId(), serviceName);
-                    }
+                    deleteChainsOnNodes(inNodes, serviceName);
                     deleteRemoteServices(activeOutNodes, serviceName);
                     return remoteResult;
                 }
@@ -1358,17 +1363,13 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             interfaceName = forward.getInterfaceName();
         }
 
-        for (Node inNode : inNodes) {
-            R serviceResult = createMainService(inNode, serviceName, forward, limiter, tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
-            if (serviceResult.getCode() != 0) {
-                for (Node cleanupNode : inNodes) {
-                    GostUtil.DeleteChains(cleanupNode.getId(), serviceName);
-                }
-                if (!muxEnabled) {
-                    deleteRemoteServices(activeOutNodes, serviceName);
-                }
-                return serviceResult;
+        R serviceResult = createMainServices(inNodes, serviceName, forward, limiter, tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
+        if (serviceResult.getCode() != 0) {
+            deleteChainsOnNodes(inNodes, serviceName);
+            if (!muxEnabled) {
+                deleteRemoteServices(activeOutNodes, serviceName);
             }
+            return serviceResult;
         }
         return R.ok();
     }
@@ -1396,12 +1397,10 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                     return muxResult;
                 }
             }
-            for (Node inNode : inNodes) {
-                R chainResult = updateChainService(inNode, serviceName, activeOutNodes, forward.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName(), muxEnabled, tunnel.getOutStrategy());
-                if (chainResult.getCode() != 0) {
-                    updateForwardStatusToError(forward);
-                    return chainResult;
-                }
+            R chainResult = updateChainServices(inNodes, serviceName, activeOutNodes, forward.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName(), muxEnabled, tunnel.getOutStrategy());
+            if (chainResult.getCode() != 0) {
+                updateForwardStatusToError(forward);
+                return chainResult;
             }
             if (!muxEnabled) {
                 R remoteResult = updateRemoteServices(activeOutNodes, serviceName, forward, tunnel.getProtocol(), forward.getInterfaceName());
@@ -1417,12 +1416,10 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             interfaceName = forward.getInterfaceName();
         }
         // 更新主服务
-        for (Node inNode : inNodes) {
-            R serviceResult = updateMainService(inNode, serviceName, forward, limiter, tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
-            if (serviceResult.getCode() != 0) {
-                updateForwardStatusToError(forward);
-                return serviceResult;
-            }
+        R serviceResult = updateMainServices(inNodes, serviceName, forward, limiter, tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
+        if (serviceResult.getCode() != 0) {
+            updateForwardStatusToError(forward);
+            return serviceResult;
         }
 
         return R.ok();
@@ -1471,38 +1468,31 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
 
         // 删除主服务（使用原隧道的入口节点）
         if (!oldNodeInfo.isHasError()) {
-            for (Node inNode : inNodes) {
-                GostDto serviceResult = GostUtil.DeleteService(inNode.getId(), serviceName);
-                if (!isGostOperationSuccess(serviceResult)) {
-                    log.info("删除主服务失败: {}", serviceResult.getMsg());
-                }
+            R serviceResult = awaitGostResults(sendToNodes(inNodes,
+                    inNode -> GostUtil.DeleteServiceAsync(inNode.getId(), serviceName)), "");
+            if (serviceResult.getCode() != 0) {
+                log.info("删除主服务失败: {}", serviceResult.getMsg());
             }
         }
 
         // 如果原隧道是隧道转发类型，需要删除链和远程服务
         if (oldTunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
             boolean muxEnabled = Boolean.TRUE.equals(oldTunnel.getMuxEnabled());
-            // 删除链服务
-            for (Node inNode : inNodes) {
-                GostDto chainResult = GostUtil.DeleteChains(inNode.getId(), serviceName);
-                if (!isGostOperationSuccess(chainResult)) {
-                    log.info("删除链服务失败: {}", chainResult.getMsg());
-                }
-            }
-
+            // 删除链服务和远程服务，同时发出
+            List<CompletableFuture<GostDto>> chainResults = sendToNodes(inNodes,
+                    inNode -> GostUtil.DeleteChainsAsync(inNode.getId(), serviceName));
+            List<CompletableFuture<GostDto>> remoteResults = Collections.emptyList();
             if (!muxEnabled) {
                 List<Node> outNodes = oldNodeInfo.isHasError() ? resolveOutNodes(oldTunnel) : oldNodeInfo.getOutNodes();
-                if (outNodes != null) {
-                    for (Node outNode : outNodes) {
-                        if (outNode == null) {
-                            continue;
-                        }
-                        GostDto remoteResult = GostUtil.DeleteRemoteService(outNode.getId(), serviceName);
-                        if (!isGostOperationSuccess(remoteResult)) {
-                            log.info("删除远程服务失败: {}", remoteResult.getMsg());
-                        }
-                    }
-                }
+                remoteResults = sendToNodes(outNodes, outNode -> GostUtil.DeleteRemoteServiceAsync(outNode.getId(), serviceName));
+            }
+            R chainResult = awaitGostResults(chainResults, "");
+            if (chainResult.getCode() != 0) {
+                log.info("删除链服务失败: {}", chainResult.getMsg());
+            }
+            R remoteResult = awaitGostResults(remoteResults, "");
+            if (remoteResult.getCode() != 0) {
+                log.info("删除远程服务失败: {}", remoteResult.getMsg());
             }
         }
 
@@ -1520,28 +1510,26 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         }
 
         // 删除主服务
-        for (Node inNode : inNodes) {
-            GostDto serviceResult = GostUtil.DeleteService(inNode.getId(), serviceName);
-            if (!isGostOperationSuccess(serviceResult)) {
-                return R.err(serviceResult.getMsg());
-            }
+        R serviceResult = awaitGostResults(sendToNodes(inNodes,
+                inNode -> GostUtil.DeleteServiceAsync(inNode.getId(), serviceName)), "");
+        if (serviceResult.getCode() != 0) {
+            return serviceResult;
         }
 
-        // 隧道转发需要删除链和远程服务
+        // 隧道转发需要删除链和远程服务，两者互不依赖，同时发出
         if (tunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
             boolean muxEnabled = Boolean.TRUE.equals(tunnel.getMuxEnabled());
-            for (Node inNode : inNodes) {
-                GostDto chainResult = GostUtil.DeleteChains(inNode.getId(), serviceName);
-                if (!isGostOperationSuccess(chainResult)) {
-                    return R.err(chainResult.getMsg());
-                }
+            List<CompletableFuture<GostDto>> chainResults = sendToNodes(inNodes,
+                    inNode -> GostUtil.DeleteChainsAsync(inNode.getId(), serviceName));
+            List<CompletableFuture<GostDto>> remoteResults = muxEnabled ? Collections.emptyList()
+                    : sendToNodes(nodeInfo.getOutNodes(), outNode -> GostUtil.DeleteRemoteServiceAsync(outNode.getId(), serviceName));
+            R chainResult = awaitGostResults(chainResults, "");
+            R remoteResult = awaitGostResults(remoteResults, "");
+            if (chainResult.getCode() != 0) {
+                return chainResult;
             }
-
-            if (!muxEnabled) {
-                R remoteResult = deleteRemoteServices(nodeInfo.getOutNodes(), serviceName);
-                if (remoteResult.getCode() != 0) {
-                    return remoteResult;
-                }
+            if (remoteResult.getCode() != 0) {
+                return remoteResult;
             }
         }
 
@@ -1549,15 +1537,15 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     }
 
     /**
-     * 创建链服务
+     * 在所有入口节点上创建链服务
      */
-    private R createChainService(Node inNode, String serviceName, List<Node> outNodes, Integer outPort, String protocol, String interfaceName, boolean useSocks, String strategy) {
+    private R createChainServices(List<Node> inNodes, String serviceName, List<Node> outNodes, Integer outPort, String protocol, String interfaceName, boolean useSocks, String strategy) {
         String remoteAddr = buildOutNodeRemoteAddr(outNodes, outPort);
         if (StringUtils.isBlank(remoteAddr)) {
             return R.err("出口节点未配置有效端口");
         }
-        GostDto result = GostUtil.AddChains(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy);
-        return isGostOperationSuccess(result) ? R.ok() : R.err(result.getMsg());
+        return awaitGostResults(sendToNodes(inNodes,
+                inNode -> GostUtil.AddChainsAsync(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy)), "");
     }
 
     /**
@@ -1567,20 +1555,15 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         if (outNodes == null || outNodes.isEmpty()) {
             return R.err("出口节点不存在");
         }
-        for (Node outNode : outNodes) {
-            GostDto result = GostUtil.AddRemoteService(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName);
-            if (!isGostOperationSuccess(result)) {
-                return R.err(result.getMsg());
-            }
-        }
-        return R.ok();
+        return awaitGostResults(sendToNodes(outNodes,
+                outNode -> GostUtil.AddRemoteServiceAsync(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName)), "");
     }
 
     private R ensureMuxService(List<Node> outNodes, Tunnel tunnel, String interfaceName) {
         if (outNodes == null || outNodes.isEmpty()) {
             return R.err("出口节点不存在");
         }
-        boolean hasOnline = false;
+        List<Node> onlineOutNodes = new ArrayList<>();
         for (Node outNode : outNodes) {
             if (outNode == null) {
                 continue;
@@ -1588,46 +1571,41 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             if (outNode.getStatus() == null || outNode.getStatus() != NODE_STATUS_ONLINE) {
                 continue;
             }
-            hasOnline = true;
             if (outNode.getOutPort() == null) {
                 return R.err("出口共享端口未配置");
             }
-            String muxServiceName = buildMuxServiceName(outNode.getId());
-            GostDto updateResult = GostUtil.UpdateMuxService(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), interfaceName);
-            if (updateResult.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-                updateResult = GostUtil.AddMuxService(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), interfaceName);
-            }
-            if (!isGostOperationSuccess(updateResult)) {
-                return R.err(updateResult.getMsg());
-            }
+            onlineOutNodes.add(outNode);
         }
-        if (!hasOnline) {
+        if (onlineOutNodes.isEmpty()) {
             return R.err("出口节点当前离线，请确保节点正常运行");
         }
-        return R.ok();
+        return awaitGostResults(sendToNodes(onlineOutNodes, outNode -> {
+            String muxServiceName = buildMuxServiceName(outNode.getId());
+            return addIfNotFound(
+                    GostUtil.UpdateMuxServiceAsync(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), interfaceName),
+                    () -> GostUtil.AddMuxServiceAsync(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), interfaceName));
+        }), "");
     }
 
     /**
-     * 创建主服务
+     * 在所有入口节点上创建主服务
      */
-    private R createMainService(Node inNode, String serviceName, Forward forward, Integer limiter, Integer tunnelType, Tunnel tunnel, String strategy, String interfaceName) {
-        GostDto result = GostUtil.AddService(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName);
-        return isGostOperationSuccess(result) ? R.ok() : R.err(result.getMsg());
+    private R createMainServices(List<Node> inNodes, String serviceName, Forward forward, Integer limiter, Integer tunnelType, Tunnel tunnel, String strategy, String interfaceName) {
+        return awaitGostResults(sendToNodes(inNodes,
+                inNode -> GostUtil.AddServiceAsync(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName)), "");
     }
 
     /**
-     * 更新链服务
+     * 在所有入口节点上更新链服务，不存在时创建
      */
-    private R updateChainService(Node inNode, String serviceName, List<Node> outNodes, Integer outPort, String protocol, String interfaceName, boolean useSocks, String strategy) {
+    private R updateChainServices(List<Node> inNodes, String serviceName, List<Node> outNodes, Integer outPort, String protocol, String interfaceName, boolean useSocks, String strategy) {
         String remoteAddr = buildOutNodeRemoteAddr(outNodes, outPort);
         if (StringUtils.isBlank(remoteAddr)) {
             return R.err("出口节点未配置有效端口");
         }
-        GostDto createResult = GostUtil.UpdateChains(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy);
-        if (createResult.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-            createResult = GostUtil.AddChains(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy);
-        }
-        return isGostOperationSuccess(createResult) ? R.ok() : R.err(createResult.getMsg());
+        return awaitGostResults(sendToNodes(inNodes, inNode -> addIfNotFound(
+                GostUtil.UpdateChainsAsync(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy),
+                () -> GostUtil.AddChainsAsync(inNode.getId(), serviceName, remoteAddr, protocol, interfaceName, useSocks, strategy))), "");
     }
 
     /**
@@ -1637,29 +1615,61 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         if (outNodes == null || outNodes.isEmpty()) {
             return R.err("出口节点不存在");
         }
-        for (Node outNode : outNodes) {
-            GostDto createResult = GostUtil.UpdateRemoteService(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName);
-            if (createResult.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-                createResult = GostUtil.AddRemoteService(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName);
-            }
-            if (!isGostOperationSuccess(createResult)) {
-                return R.err(createResult.getMsg());
-            }
-        }
-        return R.ok();
+        return awaitGostResults(sendToNodes(outNodes, outNode -> addIfNotFound(
+                GostUtil.UpdateRemoteServiceAsync(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName),
+                () -> GostUtil.AddRemoteServiceAsync(outNode.getId(), serviceName, forward.getOutPort(), forward.getRemoteAddr(), protocol, forward.getStrategy(), interfaceName))), "");
     }
 
     private R deleteRemoteServices(List<Node> outNodes, String serviceName) {
-        if (outNodes == null || outNodes.isEmpty()) {
-            return R.ok();
+        return awaitGostResults(sendToNodes(outNodes,
+                outNode -> GostUtil.DeleteRemoteServiceAsync(outNode.getId(), serviceName)), "");
+    }
+
+    /**
+     * 删除所有入口节点上的链服务（失败回滚时使用，不检查结果）
+     */
+    private void deleteChainsOnNodes(List<Node> inNodes, String serviceName) {
+        awaitGostResults(sendToNodes(inNodes, inNode -> GostUtil.DeleteChainsAsync(inNode.getId(), serviceName)), "");
+    }
+
+    /**
+     * 向每个节点发出一条命令，不等待响应，跳过空节点
+     */
+    private List<CompletableFuture<GostDto>> sendToNodes(List<Node> nodes, Function<Node, CompletableFuture<GostDto>> command) {
+        if (nodes == null || nodes.isEmpty()) {
+            return Collections.emptyList();
         }
-        for (Node outNode : outNodes) {
-            GostDto remoteResult = GostUtil.DeleteRemoteService(outNode.getId(), serviceName);
-            if (!isGostOperationSuccess(remoteResult)) {
-                return R.err(remoteResult.getMsg());
+        List<CompletableFuture<GostDto>> results = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node == null || node.getId() == null) {
+                continue;
             }
+            results.add(command.apply(node));
         }
-        return R.ok();
+        return results;
+    }
+
+    /**
+     * 等待所有命令完成，按发出顺序返回第一个失败，全部成功时返回 R.ok()
+     */
+    private R awaitGostResults(List<CompletableFuture<GostDto>> results, String errorPrefix) {
+        R failure = null;
+        for (CompletableFuture<GostDto> result : results) {
+            GostDto gostResult = result.join();
+            if (failure == null && !isGostOperationSuccess(gostResult)) {
+                failure = R.err(errorPrefix + gostResult.getMsg());
+            }
+        }
+        return failure != null ? failure : R.ok();
+    }
+
+    /**
+     * 更新命令返回 not found 时改为发出创建命令，创建命令沿用调用方的优先级（回调可能在任意线程执行）
+     */
+    private CompletableFuture<GostDto> addIfNotFound(CompletableFuture<GostDto> update, Supplier<CompletableFuture<GostDto>> add) {
+        NodeCommandScheduler.Priority priority = NodeCommandScheduler.currentPriority();
+        return update.thenCompose(result -> result.getMsg() != null && result.getMsg().contains(GOST_NOT_FOUND_MSG)
+                ? NodeCommandScheduler.call(priority, add) : CompletableFuture.completedFuture(result));
     }
 
     private String buildOutNodeRemoteAddr(List<Node> outNodes, Integer fallbackPort) {
@@ -1696,16 +1706,12 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     }
 
     /**
-     * 更新主服务
+     * 在所有入口节点上更新主服务，不存在时创建
      */
-    private R updateMainService(Node inNode, String serviceName, Forward forward, Integer limiter, Integer tunnelType, Tunnel tunnel, String strategy, String interfaceName) {
-        GostDto result = GostUtil.UpdateService(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName);
-
-        if (result.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-            result = GostUtil.AddService(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName);
-        }
-
-        return isGostOperationSuccess(result) ? R.ok() : R.err(result.getMsg());
+    private R updateMainServices(List<Node> inNodes, String serviceName, Forward forward, Integer limiter, Integer tunnelType, Tunnel tunnel, String strategy, String interfaceName) {
+        return awaitGostResults(sendToNodes(inNodes, inNode -> addIfNotFound(
+                GostUtil.UpdateServiceAsync(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName),
+                () -> GostUtil.AddServiceAsync(inNode.getId(), serviceName, forward.getInPort(), limiter, forward.getRemoteAddr(), tunnelType, tunnel, strategy, interfaceName))), "");
     }
 
     private String buildMuxServiceName(Long nodeId) {
@@ -1744,18 +1750,9 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             return R.err("限速规则不存在");
         }
         String speedInMBps = convertBitsToMBps(speedLimit.getSpeed());
-        for (Node inNode : onlineNodes) {
-            GostDto updateResult = GostUtil.UpdateLimiters(inNode.getId(), speedLimit.getId(), speedInMBps);
-            if (updateResult != null && updateResult.getMsg() != null && updateResult.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-                GostDto addResult = GostUtil.AddLimiters(inNode.getId(), speedLimit.getId(), speedInMBps);
-                if (!isGostOperationSuccess(addResult)) {
-                    return R.err("创建限速器失败：" + addResult.getMsg());
-                }
-            } else if (!isGostOperationSuccess(updateResult)) {
-                return R.err("更新限速器失败：" + (updateResult != null ? updateResult.getMsg() : "未知错误"));
-            }
-        }
-        return R.ok();
+        return awaitGostResults(sendToNodes(onlineNodes, inNode -> addIfNotFound(
+                GostUtil.UpdateLimitersAsync(inNode.getId(), speedLimit.getId(), speedInMBps),
+                () -> GostUtil.AddLimitersAsync(inNode.getId(), speedLimit.getId(), speedInMBps))), "同步限速器失败：");
     }
 
     private String convertBitsToMBps(Integer speedInBits) {
@@ -2020,6 +2017,11 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
     @Override
     @Async
     public void syncNodeConfig(Long nodeId) {
+        // 节点上线时的全量同步走批量通道，不挤占限额暂停和管理员操作
+        NodeCommandScheduler.run(NodeCommandScheduler.Priority.BULK, () -> syncNodeConfigNow(nodeId));
+    }
+
+    private void syncNodeConfigNow(Long nodeId) {
         if (nodeId == null) {
             return;
         }
@@ -2111,6 +2113,10 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
 
     @Override
     public R rebuildForwardsForTunnelUpdate(Tunnel oldTunnel, Tunnel newTunnel) {
+        return NodeCommandScheduler.call(NodeCommandScheduler.Priority.BULK, () -> rebuildForwards(oldTunnel, newTunnel));
+    }
+
+    private R rebuildForwards(Tunnel oldTunnel, Tunnel newTunnel) {
         if (oldTunnel == null || newTunnel == null) {
             return R.err("隧道信息不完整，无法重建转发规则");
         }
@@ -2200,24 +2206,13 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                 if (serviceName == null) {
                     continue;
                 }
-                for (Node inNode : onlineInNodes) {
-                    if (inNode == null || inNode.getId() == null) {
-                        continue;
-                    }
-                    R chainResult = createChainService(inNode, serviceName, activeOutNodes, forward.getOutPort(), newTunnel.getProtocol(), newTunnel.getInterfaceName(), newMuxEnabled, newTunnel.getOutStrategy());
-                    if (chainResult.getCode() != 0) {
-                        for (Node cleanupNode : onlineInNodes) {
-                            if (cleanupNode == null || cleanupNode.getId() == null) {
-                                continue;
-                            }
-                            GostUtil.DeleteChains(cleanupNode.getId(), serviceName);
-                        }
-                        if (!newMuxEnabled) {
-                            deleteRemoteServices(activeOutNodes, serviceName);
-                        }
-                        failedForwardIds.add(forward.getId());
-                        break;
+                R chainResult = createChainServices(onlineInNodes, serviceName, activeOutNodes, forward.getOutPort(), newTunnel.getProtocol(), newTunnel.getInterfaceName(), newMuxEnabled, newTunnel.getOutStrategy());
+                if (chainResult.getCode() != 0) {
+                    deleteChainsOnNodes(onlineInNodes, serviceName);
+                    if (!newMuxEnabled) {
+                        deleteRemoteServices(activeOutNodes, serviceName);
                     }
+                    failedForwardIds.add(forward.getId());
                 }
             }
         }
@@ -2315,18 +2310,17 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
 
         if (tunnelType != null && tunnelType == TUNNEL_TYPE_TUNNEL_FORWARD) {
             if (oldInNodes != null && !oldInNodes.isEmpty()) {
+                List<CompletableFuture<GostDto>> chainResults = new ArrayList<>();
                 for (String baseServiceName : baseServiceNames) {
                     if (baseServiceName == null) {
                         continue;
                     }
-                    for (Node node : oldInNodes) {
-                        if (node == null || node.getId() == null) {
-                            continue;
-                        }
-                        GostDto chainResult = GostUtil.DeleteChains(node.getId(), baseServiceName);
-                        if (!isGostOperationSuccess(chainResult)) {
-                            log.info("删除旧链服务失败: {}", chainResult.getMsg());
-                        }
+                    chainResults.addAll(sendToNodes(oldInNodes, node -> GostUtil.DeleteChainsAsync(node.getId(), baseServiceName)));
+                }
+                for (CompletableFuture<GostDto> chainResult : chainResults) {
+                    GostDto result = chainResult.join();
+                    if (!isGostOperationSuccess(result)) {
+                        log.info("删除旧链服务失败: {}", result.getMsg());
                     }
                 }
             }
@@ -2353,12 +2347,15 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
         if (nodeId == null || serviceNames == null || serviceNames.isEmpty()) {
             return;
         }
+        List<CompletableFuture<GostDto>> deleteResults = new ArrayList<>();
         for (int start = 0; start < serviceNames.size(); start += SERVICE_BATCH_SIZE) {
             int end = Math.min(start + SERVICE_BATCH_SIZE, serviceNames.size());
-            List<String> batch = serviceNames.subList(start, end);
-            GostDto deleteResult = GostUtil.DeleteServices(nodeId, batch);
-            if (!isGostOperationSuccess(deleteResult)) {
-                log.info("删除服务失败: {}", deleteResult.getMsg());
+            deleteResults.add(GostUtil.DeleteServicesAsync(nodeId, serviceNames.subList(start, end)));
+        }
+        for (CompletableFuture<GostDto> deleteResult : deleteResults) {
+            GostDto result = deleteResult.join();
+            if (!isGostOperationSuccess(result)) {
+                log.info("删除服务失败: {}", result.getMsg());
             }
         }
     }
@@ -2368,6 +2365,11 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
             return;
         }
         String logLabel = label == null ? "服务" : label;
+        // 所有节点的批次同时下发，创建失败的批次改为更新，最后统一收集结果
+        List<CompletableFuture<GostDto>> batchResults = new ArrayList<>();
+        List<Set<Long>> batchForwardIdList = new ArrayList<>();
+        // 改为更新的命令在回调中发出，回调可能在任意线程执行，沿用此处的优先级
+        NodeCommandScheduler.Priority priority = NodeCommandScheduler.currentPriority();
         for (Map.Entry<Long, List<ServicePayload>> entry : payloadsByNode.entrySet()) {
             Long nodeId = entry.getKey();
             if (nodeId == null) {
@@ -2393,16 +2395,17 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                 if (services.isEmpty()) {
                     continue;
                 }
-                GostDto addResult = GostUtil.AddServices(nodeId, services);
-                if (addResult == null || !isGostOperationSuccess(addResult)) {
-                    GostDto updateResult = GostUtil.UpdateServices(nodeId, services);
-                    if (updateResult == null || !isGostOperationSuccess(updateResult)) {
-                        failedForwardIds.addAll(batchForwardIds);
-                        String msg = updateResult != null ? updateResult.getMsg()
-                                : (addResult != null ? addResult.getMsg() : "未知错误");
-                        log.info("{}批量下发失败: {}", logLabel, msg);
-                    }
-                }
+                batchResults.add(GostUtil.AddServicesAsync(nodeId, services).thenCompose(addResult ->
+                        isGostOperationSuccess(addResult) ? CompletableFuture.completedFuture(addResult)
+                                : NodeCommandScheduler.call(priority, () -> GostUtil.UpdateServicesAsync(nodeId, services))));
+                batchForwardIdList.add(batchForwardIds);
+            }
+        }
+        for (int i = 0; i < batchResults.size(); i++) {
+            GostDto updateResult = batchResults.get(i).join();
+            if (!isGostOperationSuccess(updateResult)) {
+                failedForwardIds.addAll(batchForwardIdList.get(i));
+                log.info("{}批量下发失败: {}", logLabel, updateResult != null ? updateResult.getMsg() : "未知错误");
             }
         }
     }
@@ -2426,14 +2429,7 @@ public class ForwardServiceImpl extends ServiceImpl<ForwardMapper, Forward> impl
                 }
             }
             if (isTunnelForward) {
-                if (inNodes != null && !inNodes.isEmpty()) {
-                    for (Node inNode : inNodes) {
-                        if (inNode == null || inNode.getId() == null) {
-                            continue;
-                        }
-                        GostUtil.DeleteChains(inNode.getId(), serviceName);
-                    }
-                }
+                deleteChainsOnNodes(inNodes, serviceName);
                 if (!muxEnabled) {
                     deleteRemoteServices(outNodes, serviceName);
                 }
@@ -5,6 +5,8 @@ import cn.hutool.core.util.StrUtil;
 import com.admin.common.dto.GostDto;
 import com.admin.common.dto.NodeDto;
 import com.admin.common.dto.NodeUpdateDto;
+import com.admin.common.flow.FlowRoutingTable;
+import com.admin.common.node.NodeSecretRegistry;
 import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.WebSocketServer;
@@ -112,6 +114,12 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
 
     @Resource
     private UserNodeService userNodeService;
+
+    @Resource
+    private FlowRoutingTable flowRoutingTable;
+
+    @Resource
+    private NodeSecretRegistry nodeSecretRegistry;
 
 
     // ========== 公共接口实现 ==========
@@ -135,6 +143,10 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         Node node = buildNewNode(nodeDto);
         applyNodeOwnershipAndRatio(node, nodeDto, currentUser);
         boolean result = this.save(node);
+        if (result) {
+            flowRoutingTable.refreshNode(node.getId());
+            nodeSecretRegistry.refresh(node.getId());
+        }
         return result ? R.ok(SUCCESS_CREATE_MSG) : R.err(ERROR_CREATE_MSG);
     }
 
@@ -249,6 +261,10 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
         if (result && !Objects.equals(oldTunnelProtocol, updateNode.getTunnelProtocol())) {
             syncTunnelProtocolForTunnels(updateNode.getId(), updateNode.getTunnelProtocol());
         }
+        if (result) {
+            flowRoutingTable.refreshNode(updateNode.getId());
+            nodeSecretRegistry.refresh(updateNode.getId());
+        }
 
         return result ? R.ok(SUCCESS_UPDATE_MSG) : R.err(ERROR_UPDATE_MSG);
     }
@@ -280,6 +296,10 @@ public class NodeServiceImpl extends ServiceImpl<NodeMapper, Node> implements No
 
         // 3. 执行删除操作
         boolean result = this.removeById(id);
+        if (result) {
+            flowRoutingTable.refreshNode(id);
+            nodeSecretRegistry.remove(id);
+        }
         return result ? R.ok(SUCCESS_DELETE_MSG) : R.err(ERROR_DELETE_MSG);
     }
 
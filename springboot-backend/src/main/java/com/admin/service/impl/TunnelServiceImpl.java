@@ -2,10 +2,12 @@ package com.admin.service.impl;
 
 import cn.hutool.core.util.StrUtil;
 import com.admin.common.dto.*;
+import com.admin.common.flow.FlowRoutingTable;
 
 import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.JwtUtil;
+import com.admin.common.utils.NodeCommandScheduler;
 import com.admin.common.utils.WebSocketServer;
 import com.admin.entity.Forward;
 import com.admin.entity.Node;
@@ -27,6 +29,7 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -102,6 +105,9 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
 
     @Resource
     UserNodeService userNodeService;
+
+    @Resource
+    FlowRoutingTable flowRoutingTable;
 
     // ========== 公共接口实现 ==========
 
@@ -399,6 +405,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
             muxChanged = Boolean.TRUE.equals(oldTunnelSnapshot.getMuxEnabled());
         }
         this.updateById(existingTunnel);
+        flowRoutingTable.refreshTunnel(existingTunnel.getId());
         if (existingTunnel.getType() == TUNNEL_TYPE_TUNNEL_FORWARD) {
             R muxResult = ensureMuxService(existingTunnel);
             if (muxResult.getCode() != 0) {
@@ -446,6 +453,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
         if (!result) {
             return R.err(ERROR_DELETE_MSG);
         }
+        flowRoutingTable.refreshTunnel(id);
 
         if (forwardCleanupFailures > 0) {
             return R.ok("隧道删除成功，部分转发清理失败");
@@ -1011,7 +1019,7 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
         if (outNodes.isEmpty()) {
             return R.err(ERROR_OUT_NODE_NOT_FOUND);
         }
-        boolean hasOnline = false;
+        List<Node> onlineOutNodes = new ArrayList<>();
         for (Node outNode : outNodes) {
             if (outNode == null) {
                 continue;
@@ -1019,23 +1027,34 @@ public class TunnelServiceImpl extends ServiceImpl<TunnelMapper, Tunnel> impleme
             if (outNode.getStatus() == null || outNode.getStatus() != NODE_STATUS_ONLINE) {
                 continue;
             }
-            hasOnline = true;
             if (outNode.getOutPort() == null) {
                 return R.err("出口共享端口未配置");
             }
-            String muxServiceName = buildMuxServiceName(outNode.getId());
-            GostDto updateResult = GostUtil.UpdateMuxService(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName());
-            if (updateResult.getMsg().contains(GOST_NOT_FOUND_MSG)) {
-                updateResult = GostUtil.AddMuxService(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName());
-            }
-            if (!isGostOperationSuccess(updateResult)) {
-                return R.err(updateResult.getMsg());
-            }
+            onlineOutNodes.add(outNode);
         }
-        if (!hasOnline) {
+        if (onlineOutNodes.isEmpty()) {
             return R.err(ERROR_OUT_NODE_OFFLINE);
         }
-        return R.ok();
+        // 各出口节点同时下发，等待全部响应
+        List<CompletableFuture<GostDto>> results = new ArrayList<>(onlineOutNodes.size());
+        // 创建命令在回调中发出，回调可能在任意线程执行，沿用此处的优先级
+        NodeCommandScheduler.Priority priority = NodeCommandScheduler.currentPriority();
+        for (Node outNode : onlineOutNodes) {
+            String muxServiceName = buildMuxServiceName(outNode.getId());
+            results.add(GostUtil.UpdateMuxServiceAsync(outNode.getId(), muxServiceName, outNode.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName())
+                    .thenCompose(updateResult -> updateResult.getMsg() != null && updateResult.getMsg().contains(GOST_NOT_FOUND_MSG)
+                            ? NodeCommandScheduler.call(priority, () -> GostUtil.AddMuxServiceAsync(outNode.getId(), muxServiceName,
+                                    outNode.getOutPort(), tunnel.getProtocol(), tunnel.getInterfaceName()))
+                            : CompletableFuture.completedFuture(updateResult)));
+        }
+        R failure = null;
+        for (CompletableFuture<GostDto> result : results) {
+            GostDto gostResult = result.join();
+            if (failure == null && !isGostOperationSuccess(gostResult)) {
+                failure = R.err(gostResult.getMsg());
+            }
+        }
+        return failure != null ? failure : R.ok();
     }
 
     private boolean isGostOperationSuccess(GostDto gostResult) {
@@ -2,11 +2,18 @@ package com.admin.service.impl;
 
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
+import com.admin.common.cache.UserPackageCache;
 import com.admin.common.dto.*;
+import com.admin.common.flow.FlowAccumulator;
+import com.admin.common.flow.FlowIngestShards;
+import com.admin.common.flow.FlowRateRings;
+import com.admin.common.flow.FlowSeriesStore;
+import com.admin.common.flow.UserQuotaEngine;
 import com.admin.common.lang.R;
 import com.admin.common.utils.GostUtil;
 import com.admin.common.utils.JwtUtil;
 import com.admin.common.utils.Md5Util;
+import com.admin.common.utils.NodeCommandScheduler;
 import com.admin.entity.*;
 import com.admin.mapper.ForwardMapper;
 import com.admin.mapper.UserMapper;
@@ -17,16 +24,24 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -54,6 +69,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     
     /** 隧道类型常量 */
     private static final int TUNNEL_TYPE_TUNNEL_FORWARD = 2; // 隧道转发类型
+
+    /** 一小时的毫秒数 */
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    /** 套餐页流量图表的小时数 */
+    private static final int CHART_HOURS = 24;
     
     /** 成功响应消息 */
     private static final String SUCCESS_CREATE_MSG = "用户创建成功";
@@ -75,6 +96,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     private static final String ERROR_GET_PACKAGE_INFO_FAILED = "获取套餐信息失败";
     private static final String ERROR_CURRENT_PASSWORD_WRONG = "当前密码错误";
     private static final String ERROR_PASSWORD_NOT_MATCH = "新密码和确认密码不匹配";
+    private static final String ERROR_INVALID_RESOLUTION = "不支持的统计粒度";
+    private static final String ERROR_INVALID_TIME_RANGE = "结束时间不能早于开始时间";
 
     /** 默认账号密码 */
     private static final String DEFAULT_USERNAME = "admin_user";
@@ -113,6 +136,24 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Resource
     StatisticsFlowService statisticsFlowService;
 
+    @Resource
+    FlowIngestShards flowIngestShards;
+
+    @Resource
+    UserQuotaEngine userQuotaEngine;
+
+    @Resource
+    FlowAccumulator flowAccumulator;
+
+    @Resource
+    FlowSeriesStore flowSeriesStore;
+
+    @Resource
+    FlowRateRings flowRateRings;
+
+    @Resource
+    UserPackageCache userPackageCache;
+
     // ========== 公共接口实现 ==========
 
     /**
@@ -220,6 +261,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         boolean result = this.updateById(updateUser);
 
         if (result) {
+            userQuotaEngine.resync(existingUser.getId());
             if (!Objects.equals(oldSpeedId, userUpdateDto.getSpeedId())) {
                 updateUserForwardsSpeed(existingUser.getId(), userUpdateDto.getSpeedId());
             }
@@ -248,8 +290,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             // 2. 级联删除用户相关数据
             deleteUserRelatedData(id);
             statisticsFlowService.remove(new QueryWrapper<StatisticsFlow>().eq("user_id", id));
+            flowSeriesStore.remove(FlowSeriesStore.Dimension.USER, id);
             // 3. 删除用户
             boolean result = this.removeById(id);
+            if (result) {
+                userQuotaEngine.remove(id);
+            }
             return result ? R.ok(SUCCESS_DELETE_MSG) : R.err(ERROR_DELETE_FAILED);
             
         } catch (Exception e) {
@@ -265,22 +311,62 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @return 用户套餐信息响应
      */
     @Override
-    public R getUserPackageInfo() {
+    public R getUserPackageInfo(String ifNoneMatch, HttpServletResponse response) {
         try {
-                    // 1. 获取当前用户信息
+            // 1. 优先使用缓存，未命中时获取当前用户信息并构建套餐信息
+            Integer userId = JwtUtil.getUserIdFromToken();
+            UserPackageCache.Entry entry = userId == null ? null : userPackageCache.get(userId.longValue());
+            if (entry == null) {
+                long generation = userPackageCache.generation();
+                CurrentUserInfo currentUser = getCurrentUserInfo();
+                if (currentUser.isHasError()) {
+                    return R.err(currentUser.getErrorMessage());
+                }
+                UserPackageDto packageDto = buildUserPackageDto(currentUser);
+                entry = userPackageCache.put(currentUser.getUser().getId(), packageDto, generation);
+            }
+
+            // 2. 内容未变化时返回 304，不返回响应体
+            response.setHeader(HttpHeaders.ETAG, entry.getEtag());
+            if (entry.matches(ifNoneMatch)) {
+                userPackageCache.recordNotModified();
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return null;
+            }
+            return R.ok(entry.getPackageDto());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return R.err(ERROR_GET_PACKAGE_INFO_FAILED);
+        }
+    }
+
+    /**
+     * 查询流量时序数据
+     * 普通用户只能查询自己的数据，管理员可指定用户，用户ID为0时查询全体用户汇总
+     * 
+     * @param flowSeriesQueryDto 查询条件
+     * @return 按时间升序、空桶补0的数据点
+     */
+    @Override
+    public R getFlowSeries(FlowSeriesQueryDto flowSeriesQueryDto) {
         CurrentUserInfo currentUser = getCurrentUserInfo();
         if (currentUser.isHasError()) {
             return R.err(currentUser.getErrorMessage());
         }
+        FlowSeriesStore.Resolution resolution = FlowSeriesStore.Resolution.of(flowSeriesQueryDto.getResolution());
+        if (resolution == null) {
+            return R.err(ERROR_INVALID_RESOLUTION);
+        }
+        if (flowSeriesQueryDto.getEndTime() < flowSeriesQueryDto.getStartTime()) {
+            return R.err(ERROR_INVALID_TIME_RANGE);
+        }
 
-            // 2. 构建套餐信息
-            UserPackageDto packageDto = buildUserPackageDto(currentUser);
-            
-            return R.ok(packageDto);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return R.err(ERROR_GET_PACKAGE_INFO_FAILED);
+        long userId = currentUser.getUser().getId();
+        if (Objects.equals(currentUser.getRoleId(), ADMIN_ROLE_ID) && flowSeriesQueryDto.getTargetId() != null) {
+            userId = flowSeriesQueryDto.getTargetId();
         }
+        return R.ok(flowSeriesStore.query(FlowSeriesStore.Dimension.USER, userId, resolution,
+                flowSeriesQueryDto.getStartTime(), flowSeriesQueryDto.getEndTime()));
     }
 
     /**
@@ -340,9 +426,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (resetFlowDto.getType() == 1){ // 清零账号流量
             User user = this.getById(resetFlowDto.getId());
             if (user == null) return R.err(ERROR_USER_NOT_FOUND);
+            // 丢弃重置前尚未写回的流量，避免重置后被累加回去
+            flowIngestShards.discardUser(user.getId());
             user.setInFlow(0L);
             user.setOutFlow(0L);
             this.updateById(user);
+            userQuotaEngine.resync(user.getId());
         }
         return R.ok();
     }
@@ -657,6 +746,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     private void updateUserForwardsSpeed(Long userId, Integer speedId) {
+        // 用户的全部转发都要刷新，走批量通道
+        NodeCommandScheduler.run(NodeCommandScheduler.Priority.BULK, () -> refreshUserForwardsSpeed(userId, speedId));
+    }
+
+    private void refreshUserForwardsSpeed(Long userId, Integer speedId) {
         QueryWrapper<Forward> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("user_id", userId);
         List<Forward> forwards = forwardMapper.selectList(queryWrapper);
@@ -674,6 +768,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             speedInMBps = convertBitsToMBps(speedLimit.getSpeed());
         }
 
+        // 先发出所有更新再统一等待，同一节点的更新会被合并成一帧（NodeCommandCoalescer）
+        Set<Long> limiterNodeIds = new HashSet<>();
+        List<CompletableFuture<GostDto>> results = new ArrayList<>();
         for (Forward forward : forwards) {
             Tunnel tunnel = tunnelService.getById(forward.getTunnelId());
             if (tunnel == null) {
@@ -686,16 +783,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
             if (speedLimit != null) {
                 for (Node inNode : inNodes) {
-                    ensureLimiterOnNode(inNode, speedLimit, speedInMBps);
+                    if (limiterNodeIds.add(inNode.getId())) {
+                        ensureLimiterOnNode(inNode, speedLimit, speedInMBps);
+                    }
                 }
             }
 
             String interfaceName = tunnel.getType() != TUNNEL_TYPE_TUNNEL_FORWARD ? forward.getInterfaceName() : null;
             String serviceName = buildServiceName(forward.getId(), userId);
             for (Node inNode : inNodes) {
-                GostUtil.UpdateService(inNode.getId(), serviceName, forward.getInPort(), speedId, forward.getRemoteAddr(), tunnel.getType(), tunnel, forward.getStrategy(), interfaceName);
+                results.add(GostUtil.UpdateServiceAsync(inNode.getId(), serviceName, forward.getInPort(), speedId, forward.getRemoteAddr(), tunnel.getType(), tunnel, forward.getStrategy(), interfaceName));
             }
         }
+        results.forEach(CompletableFuture::join);
     }
 
     private void ensureLimiterOnNode(Node node, SpeedLimit speedLimit, String speedInMBps) {
@@ -785,7 +885,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         List<UserPackageDto.UserForwardDetailDto> forwards = userMapper.getUserForwardDetails(user.getId().intValue());
 
         // 4. 查询最近24小时流量信息，没有的补0
-        List<StatisticsFlow> statisticsFlows = getLast24HoursFlowStatistics(user.getId());
+        List<StatisticsFlow> statisticsFlows = getLast24HoursFlowStatistics(user);
         
         // 5. 构造返回结果
         UserPackageDto packageDto = new UserPackageDto();
@@ -838,71 +938,56 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     /**
-     * 获取用户最近24小时的流量统计数据，没有数据的时间点补0
+     * 获取用户最近24小时的流量统计数据，按小时倒序，没有流量的小时补0
+     * 每条记录的时间为该小时的结束时刻，与整点快照的时间含义一致
      * 
-     * @param userId 用户ID
+     * @param user 用户
      * @return 最近24小时流量统计列表
      */
-    private List<StatisticsFlow> getLast24HoursFlowStatistics(Long userId) {
-        // 按ID倒序查最近24条记录（ID越大越新，时间就是23:00, 22:00, 21:00...这样倒序）
-        List<StatisticsFlow> recentFlows = statisticsFlowService.list(
-                new QueryWrapper<StatisticsFlow>()
-                        .eq("user_id", userId)
-                        .orderByDesc("id")
-                        .last("LIMIT 24")
-        );
-
-        List<StatisticsFlow> result = new ArrayList<>(recentFlows);
-
-        // 如果查出来的记录不足24条，需要补0和对应的时间
-        if (result.size() < 24) {
-            // 获取最早记录的时间，继续往前推
-            int startHour = getCurrentHour();
-            if (!result.isEmpty()) {
-                // 从最后一条记录的时间继续往前推
-                String lastTime = result.get(result.size() - 1).getTime();
-                startHour = parseHour(lastTime) - 1;
+    private List<StatisticsFlow> getLast24HoursFlowStatistics(User user) {
+        long currentHour = flowSeriesStore.bucketOf(System.currentTimeMillis(), FlowSeriesStore.Resolution.HOUR);
+        long startHour = currentHour - CHART_HOURS * HOUR_MILLIS;
+
+        // 多取当前未结束的一小时，用于从当前累计流量倒推每个整点的累计流量
+        long[] bucketTimes = new long[CHART_HOURS + 1];
+        long[] flows = new long[CHART_HOURS + 1];
+        int[] count = {0};
+        FlowRateRings.SlotVisitor collector = (bucketTime, bytes) -> {
+            if (count[0] < bucketTimes.length) {
+                bucketTimes[count[0]] = bucketTime;
+                flows[count[0]++] = bytes;
             }
-
-            // 补0到24条
-            while (result.size() < 24) {
-                if (startHour < 0) startHour = 23; // 跨天处理
-
-                StatisticsFlow emptyFlow = new StatisticsFlow();
-                emptyFlow.setUserId(userId);
-                emptyFlow.setFlow(0L);
-                emptyFlow.setTotalFlow(0L);
-                emptyFlow.setTime(String.format("%02d:00", startHour));
-                result.add(emptyFlow);
-
-                startHour--;
+        };
+        // 优先读内存环形缓冲区，用户未被跟踪时回退到时序表
+        if (!flowRateRings.read(FlowSeriesStore.Dimension.USER, user.getId(), FlowSeriesStore.Resolution.HOUR,
+                startHour, currentHour, collector)) {
+            for (FlowSeries point : flowSeriesStore.query(FlowSeriesStore.Dimension.USER, user.getId(),
+                    FlowSeriesStore.Resolution.HOUR, startHour, currentHour)) {
+                collector.visit(point.getBucketTime(), point.getInFlow() + point.getOutFlow());
             }
         }
 
-        log.info("用户 {} 获取到 {} 条实际记录，补齐为 {} 条24小时记录", userId, recentFlows.size(), result.size());
+        long totalFlow = nullToZero(user.getInFlow()) + nullToZero(user.getOutFlow())
+                + flowAccumulator.getPendingUserFlow(user.getId());
+        List<StatisticsFlow> result = new ArrayList<>(CHART_HOURS);
+        for (int i = count[0] - 1; i >= 0; i--) {
+            if (bucketTimes[i] < currentHour) {
+                int endHour = Instant.ofEpochMilli(bucketTimes[i]).atZone(ZoneId.systemDefault())
+                        .plusHours(1).getHour();
+                StatisticsFlow statisticsFlow = new StatisticsFlow();
+                statisticsFlow.setUserId(user.getId());
+                statisticsFlow.setFlow(flows[i]);
+                statisticsFlow.setTotalFlow(Math.max(totalFlow, 0));
+                statisticsFlow.setTime(String.format("%02d:00", endHour));
+                result.add(statisticsFlow);
+            }
+            totalFlow -= flows[i];
+        }
         return result;
-
-    }
-
-    /**
-     * 获取当前小时（0-23）
-     */
-    private int getCurrentHour() {
-        return java.time.LocalDateTime.now().getHour();
     }
 
-    /**
-     * 解析时间字符串获取小时数
-     */
-    private int parseHour(String timeStr) {
-        try {
-            if (timeStr != null && timeStr.contains(":")) {
-                return Integer.parseInt(timeStr.split(":")[0]);
-            }
-        } catch (Exception e) {
-            // 解析失败，返回当前小时
-        }
-        return getCurrentHour();
+    private long nullToZero(Long value) {
+        return value == null ? 0L : value;
     }
 
 
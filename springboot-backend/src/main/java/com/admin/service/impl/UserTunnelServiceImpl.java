@@ -4,6 +4,8 @@ import com.admin.common.dto.UserTunnelDto;
 import com.admin.common.dto.UserTunnelQueryDto;
 import com.admin.common.dto.UserTunnelUpdateDto;
 import com.admin.common.dto.UserTunnelWithDetailDto;
+import com.admin.common.flow.FlowRoutingTable;
+import com.admin.common.flow.UserQuotaEngine;
 import com.admin.common.lang.R;
 import com.admin.entity.UserTunnel;
 import com.admin.mapper.TunnelMapper;
@@ -74,6 +76,12 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
     @Autowired
     private NodeService nodeService;
 
+    @Autowired
+    private FlowRoutingTable flowRoutingTable;
+
+    @Autowired
+    private UserQuotaEngine userQuotaEngine;
+
     // ========== 公共接口实现 ==========
 
     /**
@@ -97,6 +105,8 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         boolean success = this.save(userTunnel);
         
         if (success) {
+            flowRoutingTable.refreshUserTunnel(userTunnel.getUserId(), userTunnel.getTunnelId());
+            userQuotaEngine.resyncUserTunnel(userTunnel.getId().longValue());
             return R.ok(SUCCESS_ASSIGN_MSG);
         }
         
@@ -140,6 +150,10 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         
         // 4. 删除用户隧道权限记录
         boolean success = this.removeById(id);
+        if (success) {
+            flowRoutingTable.refreshUserTunnel(userTunnel.getUserId(), userTunnel.getTunnelId());
+            userQuotaEngine.removeUserTunnel(userTunnel.getId().longValue());
+        }
         return success ? R.ok(SUCCESS_REMOVE_MSG) : R.err(ERROR_PERMISSION_NOT_FOUND);
     }
 
@@ -169,6 +183,9 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
         boolean success = this.updateById(existingUserTunnel);
         
         if (success) {
+            // 5. 限额、到期时间或状态可能已变化，重新加载配额
+            userQuotaEngine.resyncUserTunnel(existingUserTunnel.getId().longValue());
+
             // 6. 如果限速规则发生变化，更新该用户隧道下的所有转发
             if (speedChanged) {
                 updateUserTunnelForwardsSpeed(existingUserTunnel.getUserId(), existingUserTunnel.getTunnelId(), updateDto.getSpeedId());
@@ -277,6 +294,7 @@ public class UserTunnelServiceImpl extends ServiceImpl<UserTunnelMapper, UserTun
 
                     // 然后删除数据库记录
                     forwardService.removeById(forward.getId());
+                    flowRoutingTable.removeForward(forward.getId());
 
                 } catch (Exception e) {
                     // 单个转发删除失败，记录错误但继续处理其他转发
@@ -0,0 +1,214 @@
+package com.admin.common.flow;
+
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.node.PauseDispatcher;
+import com.admin.mapper.ForwardMapper;
+import com.admin.mapper.UserMapper;
+import com.admin.mapper.UserTunnelMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FlowIngestShardsTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<FlowIngestShards> started = new ArrayList<>();
+
+    @AfterEach
+    void stop() {
+        // 不调用 shutdown：检查点线程池是静态的，关闭后同一 JVM 中无法再启动
+        for (FlowIngestShards shards : started) {
+            ReflectionTestUtils.setField(shards, "running", false);
+        }
+    }
+
+    @Test
+    void residualIsReplayedOnceAfterCheckpoint() {
+        UserMapper userMapper = mock(UserMapper.class);
+        when(userMapper.batchAddFlow(anyList())).thenThrow(new RuntimeException("db down"));
+        ForwardMapper forwardMapper = mock(ForwardMapper.class);
+        FlowAccumulator accumulator = accumulator(forwardMapper, userMapper);
+        FlowIngestShards shards = start(accumulator);
+
+        assertTrue(shards.submit(Arrays.asList(
+                new FlowEvent(11, 1, 0, 100, 10),
+                new FlowEvent(11, 1, 0, 50, 5))));
+        checkpoint(shards);
+        verify(forwardMapper).batchAddFlow(anyList());
+        // 用户增量写库失败，回填到计数器并重新写入当前日志段
+        assertEquals(165, accumulator.getPendingUserFlow(1L));
+        assertEquals(0, accumulator.getPendingForwardFlow(11L));
+
+        // 重启回放：旧日志段已删除，只回放补写的残留增量，转发流量已落库不再重复计入
+        FlowAccumulator replayed = accumulator(mock(ForwardMapper.class), mock(UserMapper.class));
+        start(replayed);
+        assertEquals(165, replayed.getPendingUserFlow(1L));
+        assertEquals(0, replayed.getPendingForwardFlow(11L));
+    }
+
+    @Test
+    void residualIsNotDoubledByRepeatedCheckpoints() {
+        UserMapper userMapper = mock(UserMapper.class);
+        when(userMapper.batchAddFlow(anyList())).thenThrow(new RuntimeException("db down"));
+        FlowAccumulator accumulator = accumulator(mock(ForwardMapper.class), userMapper);
+        FlowIngestShards shards = start(accumulator);
+
+        assertTrue(shards.submit(Arrays.asList(new FlowEvent(11, 1, 0, 100, 0))));
+        checkpoint(shards);
+        checkpoint(shards);
+        checkpoint(shards);
+        assertEquals(100, accumulator.getPendingUserFlow(1L));
+
+        FlowAccumulator replayed = accumulator(mock(ForwardMapper.class), mock(UserMapper.class));
+        start(replayed);
+        assertEquals(100, replayed.getPendingUserFlow(1L));
+    }
+
+    @Test
+    void discardUserWritesCompensatingRecord() {
+        FlowAccumulator accumulator = accumulator(mock(ForwardMapper.class), mock(UserMapper.class));
+        FlowIngestShards shards = start(accumulator);
+
+        assertTrue(shards.submit(Arrays.asList(
+                new FlowEvent(11, 1, 0, 100, 10),
+                new FlowEvent(12, 2, 0, 200, 20))));
+        shards.discardUser(1L);
+        assertEquals(0, accumulator.getPendingUserFlow(1L));
+        assertEquals(110, accumulator.getPendingForwardFlow(11L));
+
+        // 未经检查点直接重启：原始记录与补偿记录相互抵消，转发流量不受重置影响
+        FlowAccumulator replayed = accumulator(mock(ForwardMapper.class), mock(UserMapper.class));
+        start(replayed);
+        assertEquals(0, replayed.getPendingUserFlow(1L));
+        assertEquals(220, replayed.getPendingUserFlow(2L));
+        assertEquals(110, replayed.getPendingForwardFlow(11L));
+    }
+
+    @Test
+    void discardUserDrainsShardBeforeReset() {
+        UserMapper userMapper = mock(UserMapper.class);
+        FlowAccumulator accumulator = accumulator(mock(ForwardMapper.class), userMapper);
+        FlowIngestShards shards = start(accumulator);
+
+        // 交接间隔很长，事件只会在屏障处交给累加器
+        assertTrue(shards.submit(Arrays.asList(new FlowEvent(11, 1, 0, 100, 10))));
+        shards.discardUser(1L);
+        checkpoint(shards);
+
+        verify(userMapper, never()).batchAddFlow(anyList());
+        assertEquals(0, accumulator.getPendingUserFlow(1L));
+    }
+
+    @Test
+    void eventsAfterBarrierAreNotFlushedWithOldSegments() {
+        // 记录实际写库的用户流量
+        long[] persisted = {0};
+        UserMapper userMapper = mock(UserMapper.class);
+        when(userMapper.batchAddFlow(anyList())).thenAnswer(invocation -> {
+            List<FlowDelta> deltas = invocation.getArgument(0);
+            for (FlowDelta delta : deltas) {
+                persisted[0] += delta.getInFlow() + delta.getOutFlow();
+            }
+            return deltas.size();
+        });
+        FlowIngestShards[] holder = new FlowIngestShards[1];
+        // 分片越过屏障后、累加器写库前，再提交一批事件并等待超过交接间隔
+        FlowAccumulator accumulator = new FlowAccumulator() {
+            private boolean interleaved;
+
+            @Override
+            public FlushResult flush() {
+                if (!interleaved) {
+                    interleaved = true;
+                    assertTrue(holder[0].submit(Arrays.asList(
+                            new FlowEvent(11, 1, 0, 1000, 0),
+                            new FlowEvent(12, 2, 0, 2000, 0))));
+                    sleep(200);
+                }
+                return super.flush();
+            }
+        };
+        wire(accumulator, mock(ForwardMapper.class), userMapper);
+        holder[0] = start(accumulator, 10);
+
+        assertTrue(holder[0].submit(Arrays.asList(
+                new FlowEvent(11, 1, 0, 100, 0),
+                new FlowEvent(12, 2, 0, 200, 0))));
+        checkpoint(holder[0]);
+        assertEquals(300, persisted[0]);
+
+        // 崩溃后回放：已写库的流量加上回放的流量恰好等于提交的流量
+        FlowAccumulator replayed = accumulator(mock(ForwardMapper.class), mock(UserMapper.class));
+        start(replayed);
+        assertEquals(3000, replayed.getPendingUserFlow(1L) + replayed.getPendingUserFlow(2L));
+        assertEquals(3300, persisted[0] + replayed.getPendingUserFlow(1L) + replayed.getPendingUserFlow(2L));
+    }
+
+    private FlowIngestShards start(FlowAccumulator accumulator) {
+        return start(accumulator, 60_000);
+    }
+
+    private FlowIngestShards start(FlowAccumulator accumulator, long handoffIntervalMs) {
+        FlowJournal journal = new FlowJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", 48 * 1024);
+        ReflectionTestUtils.setField(journal, "fsync", false);
+
+        FlowIngestShards shards = new FlowIngestShards();
+        ReflectionTestUtils.setField(shards, "shardCount", 2);
+        ReflectionTestUtils.setField(shards, "queueCapacity", 100);
+        ReflectionTestUtils.setField(shards, "offerTimeoutMs", 50L);
+        ReflectionTestUtils.setField(shards, "handoffIntervalMs", handoffIntervalMs);
+        ReflectionTestUtils.setField(shards, "flushIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(shards, "flowAccumulator", accumulator);
+        ReflectionTestUtils.setField(shards, "flowJournal", journal);
+        ReflectionTestUtils.setField(shards, "flowSeriesStore", mock(FlowSeriesStore.class));
+        ReflectionTestUtils.setField(shards, "topTalkers", mock(TopTalkers.class));
+        ReflectionTestUtils.setField(shards, "userQuotaEngine", mock(UserQuotaEngine.class));
+        ReflectionTestUtils.setField(shards, "pauseDispatcher", mock(PauseDispatcher.class));
+        shards.start();
+        started.add(shards);
+        return shards;
+    }
+
+    private static FlowAccumulator accumulator(ForwardMapper forwardMapper, UserMapper userMapper) {
+        return wire(new FlowAccumulator(), forwardMapper, userMapper);
+    }
+
+    private static FlowAccumulator wire(FlowAccumulator accumulator, ForwardMapper forwardMapper, UserMapper userMapper) {
+        ReflectionTestUtils.setField(accumulator, "forwardMapper", forwardMapper);
+        ReflectionTestUtils.setField(accumulator, "userMapper", userMapper);
+        ReflectionTestUtils.setField(accumulator, "userTunnelMapper", mock(UserTunnelMapper.class));
+        ReflectionTestUtils.setField(accumulator, "userPackageCache", mock(UserPackageCache.class));
+        return accumulator;
+    }
+
+    private static void checkpoint(FlowIngestShards shards) {
+        ReflectionTestUtils.invokeMethod(shards, "checkpoint", true);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
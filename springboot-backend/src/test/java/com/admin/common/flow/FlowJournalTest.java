@@ -0,0 +1,142 @@
+package com.admin.common.flow;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FlowJournalTest {
+
+    private static final int RECORD_SIZE = 48;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRestoresAppendedRecords() throws IOException {
+        open(new ArrayList<>()).append(events(3));
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(3, replayed.size());
+        assertEquals(2, replayed.get(1).getUserId());
+        assertEquals(200, replayed.get(1).getInFlow());
+        assertEquals(20, replayed.get(1).getOutFlow());
+    }
+
+    @Test
+    void tornFinalRecordIsNotReplayed() throws IOException {
+        open(new ArrayList<>()).append(events(3));
+        // 崩溃在写魔数之前：正文和校验已写入，魔数仍为 0
+        overwrite(segment(1), 2L * RECORD_SIZE, new byte[4]);
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(2, replayed.size());
+        assertEquals(2, replayed.get(1).getUserId());
+    }
+
+    @Test
+    void crcMismatchStopsReplayOfSegment() throws IOException {
+        open(new ArrayList<>()).append(events(3));
+        // 破坏中间记录的下载字段
+        overwrite(segment(1), RECORD_SIZE + 32L, new byte[]{0x7F});
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(1, replayed.size());
+        assertEquals(1, replayed.get(0).getUserId());
+    }
+
+    @Test
+    void crcMismatchDoesNotAffectLaterSegments() throws IOException {
+        FlowJournal journal = open(new ArrayList<>());
+        journal.append(events(2));
+        journal.rotate();
+        journal.append(Arrays.asList(new FlowEvent(9, 9, 0, 900, 90)));
+        overwrite(segment(1), 32L, new byte[]{0x7F});
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(1, replayed.size());
+        assertEquals(9, replayed.get(0).getUserId());
+    }
+
+    @Test
+    void deleteBeforeDropsRotatedSegments() throws IOException {
+        FlowJournal journal = open(new ArrayList<>());
+        journal.append(events(2));
+        long cut = journal.rotate();
+        journal.append(Arrays.asList(new FlowEvent(0, 2, 0, 200, 20)));
+        journal.deleteBefore(cut);
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(1, replayed.size());
+        assertEquals(0, replayed.get(0).getForwardId());
+        assertEquals(200, replayed.get(0).getInFlow());
+    }
+
+    @Test
+    void recycledSegmentDoesNotReplayStaleRecords() throws IOException {
+        FlowJournal journal = open(new ArrayList<>());
+        journal.append(events(5));
+        journal.deleteBefore(journal.rotate());
+        journal.append(events(1));
+        // 新日志段复用第一个日志段的文件和映射，只覆盖了第一条记录
+        long cut = journal.rotate();
+        journal.append(Arrays.asList(new FlowEvent(9, 9, 0, 900, 90)));
+        journal.deleteBefore(cut);
+        assertEquals(1, journal.getStats().get("spareSegments"));
+        assertEquals(2, journal.getStats().get("mappedSegments"));
+
+        List<FlowEvent> replayed = new ArrayList<>();
+        open(replayed);
+        assertEquals(1, replayed.size());
+        assertEquals(9, replayed.get(0).getUserId());
+        // 上次运行的备用段在打开时删除
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.filter(path -> path.toString().endsWith(".spare")).count());
+        }
+    }
+
+    private FlowJournal open(List<FlowEvent> replayed) throws IOException {
+        FlowJournal journal = new FlowJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", dir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", RECORD_SIZE * 1024);
+        ReflectionTestUtils.setField(journal, "fsync", false);
+        journal.open(replayed::add);
+        return journal;
+    }
+
+    private Path segment(long id) {
+        return dir.resolve(String.format("flow-%016d.journal", id));
+    }
+
+    private static List<FlowEvent> events(int count) {
+        List<FlowEvent> events = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            events.add(new FlowEvent(10 + i, i, 0, i * 100L, i * 10L));
+        }
+        return events;
+    }
+
+    private static void overwrite(Path path, long offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+}
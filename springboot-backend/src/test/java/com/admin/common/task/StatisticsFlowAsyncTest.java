@@ -0,0 +1,104 @@
+package com.admin.common.task;
+
+import com.admin.common.cache.UserPackageCache;
+import com.admin.common.flow.FlowAccumulator;
+import com.admin.entity.StatisticsFlow;
+import com.admin.entity.User;
+import com.admin.mapper.StatisticsFlowMapper;
+import com.admin.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StatisticsFlowAsyncTest {
+
+    private static final int USERS = 1500;
+
+    private final StatisticsFlowAsync task = new StatisticsFlowAsync();
+    private final UserService userService = mock(UserService.class);
+    private final StatisticsFlowMapper mapper = mock(StatisticsFlowMapper.class);
+    private final List<User> users = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        task.userService = userService;
+        task.statisticsFlowMapper = mapper;
+        task.flowAccumulator = new FlowAccumulator();
+        task.userPackageCache = mock(UserPackageCache.class);
+        for (long id = 1; id <= USERS; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setInFlow(100L);
+            user.setOutFlow(0L);
+            users.add(user);
+        }
+        when(userService.list(any())).thenReturn(users);
+        when(mapper.selectLatestTotals()).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    void failedChunkDoesNotRecountCommittedUsers() {
+        // 第一批写入成功，第二批失败
+        int[] calls = {0};
+        doAnswer(invocation -> {
+            if (calls[0]++ == 1) {
+                throw new IllegalStateException("insert failed");
+            }
+            return 0;
+        }).when(mapper).insertBatch(anyList());
+        assertThrows(IllegalStateException.class, task::statistics_flow);
+
+        // 下一小时每个用户新增 50
+        users.forEach(user -> user.setInFlow(150L));
+        Map<Long, Long> flows = captureNextSnapshot();
+
+        // 已写入的用户只记本小时增量，未写入的用户按上一次基线（无）计算累计值
+        assertEquals(50L, flows.get(1L));
+        assertEquals(50L, flows.get(1000L));
+        assertEquals(150L, flows.get(1001L));
+        assertEquals(150L, flows.get((long) USERS));
+    }
+
+    @Test
+    void successfulSnapshotAdvancesBaseline() {
+        when(mapper.insertBatch(anyList())).thenReturn(0);
+        task.statistics_flow();
+
+        users.forEach(user -> user.setInFlow(130L));
+        Map<Long, Long> flows = captureNextSnapshot();
+        assertEquals(30L, flows.get(1L));
+        assertEquals(30L, flows.get((long) USERS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> captureNextSnapshot() {
+        StatisticsFlowMapper next = mock(StatisticsFlowMapper.class);
+        task.statisticsFlowMapper = next;
+        task.statistics_flow();
+        ArgumentCaptor<List<StatisticsFlow>> captor = ArgumentCaptor.forClass(List.class);
+        verify(next, atLeastOnce()).insertBatch(captor.capture());
+        Map<Long, Long> flows = new HashMap<>();
+        for (List<StatisticsFlow> batch : captor.getAllValues()) {
+            for (StatisticsFlow flow : batch) {
+                flows.put(flow.getUserId(), flow.getFlow());
+            }
+        }
+        return flows;
+    }
+}
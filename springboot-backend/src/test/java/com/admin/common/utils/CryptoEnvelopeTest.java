@@ -0,0 +1,74 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CryptoEnvelopeTest {
+
+    private static final String SECRET = "node-secret-0123456789";
+    private static final String MESSAGE = "{\"memory_usage\":42.5,\"name\":\"节点-1\",\"note\":\"a\\\"b\"}";
+
+    @Test
+    void newCodecDecryptsLegacyEnvelope() throws Exception {
+        LegacyAESCrypto legacy = new LegacyAESCrypto(SECRET);
+        String envelope = legacy.wrap(legacy.encrypt(MESSAGE));
+
+        String data = CryptoEnvelope.extractData(envelope);
+        assertEquals(LegacyAESCrypto.extractData(envelope), data);
+        assertEquals(MESSAGE, new AESCrypto(SECRET).decryptString(data));
+    }
+
+    @Test
+    void legacyCodecDecryptsNewEnvelope() throws Exception {
+        String envelope = CryptoEnvelope.wrap(new AESCrypto(SECRET).encrypt(MESSAGE));
+
+        String data = LegacyAESCrypto.extractData(envelope);
+        assertEquals(CryptoEnvelope.extractData(envelope), data);
+        assertEquals(MESSAGE, new LegacyAESCrypto(SECRET).decryptString(data));
+    }
+
+    @Test
+    void newCodecReadsAgentEnvelopeFieldOrder() throws Exception {
+        // 节点端 json.Marshal(map) 按字段名排序输出
+        String data = new LegacyAESCrypto(SECRET).encrypt(MESSAGE);
+        String envelope = "{\"data\":\"" + data + "\",\"encrypted\":true,\"timestamp\":1755147963}";
+        assertEquals(MESSAGE, new AESCrypto(SECRET).decryptString(CryptoEnvelope.extractData(envelope)));
+
+        String spaced = "{ \"timestamp\" : 1 , \"data\" : \"" + data + "\" , \"encrypted\" : true }";
+        assertEquals(data, CryptoEnvelope.extractData(spaced));
+    }
+
+    @Test
+    void extractDataUnescapesEscapedData() {
+        assertEquals("ab/c", CryptoEnvelope.extractData("{\"encrypted\":true,\"data\":\"ab\\/c\"}"));
+    }
+
+    @Test
+    void extractDataIgnoresPlainMessages() {
+        assertNull(CryptoEnvelope.extractData(MESSAGE));
+        assertNull(CryptoEnvelope.extractData("{\"encrypted\":false,\"data\":\"abc\"}"));
+        assertNull(CryptoEnvelope.extractData("{\"data\":{\"encrypted\":true}}"));
+        assertNull(CryptoEnvelope.extractData("{\"encrypted\":true,\"data\":\"abc"));
+        assertNull(CryptoEnvelope.extractData("not json"));
+    }
+
+    @Test
+    void decryptRejectsWrongKey() throws Exception {
+        String data = new LegacyAESCrypto(SECRET).encrypt(MESSAGE);
+        assertThrows(RuntimeException.class, () -> new AESCrypto("other-secret").decryptString(data));
+    }
+
+    @Test
+    void cipherReuseAcrossCallsKeepsIvsUnique() {
+        AESCrypto crypto = new AESCrypto(SECRET);
+        String first = crypto.encrypt(MESSAGE);
+        String second = crypto.encrypt(MESSAGE);
+        assertEquals(MESSAGE, crypto.decryptString(first));
+        assertEquals(MESSAGE, crypto.decryptString(second));
+        assertNotEquals(first, second);
+    }
+}
@@ -0,0 +1,55 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonScannerTest {
+
+    @Test
+    void scanStringSkipsEscapedQuotesAndBackslashes() {
+        String s = "\"a\\\"b\\\\\",1";
+        assertEquals(s.indexOf(','), JsonScanner.scanString(s, 0) + 1);
+        assertEquals(3, JsonScanner.scanString("\"\\\\\"", 0));
+    }
+
+    @Test
+    void scanStringReturnsMinusOneWhenUnterminated() {
+        assertEquals(-1, JsonScanner.scanString("\"abc", 0));
+        assertEquals(-1, JsonScanner.scanString("\"abc\\\"", 0));
+        assertEquals(-1, JsonScanner.scanString("\"abc\\", 0));
+    }
+
+    @Test
+    void skipValueHandlesNestedObjectsAndArrays() {
+        String value = "{\"a\":[1,{\"b\":\"}]\"},[]],\"c\":{}}";
+        String s = value + ",\"next\":1";
+        assertEquals(value.length(), JsonScanner.skipValue(s, 0));
+
+        String array = "[[1,2],{\"x\":\"[\"},\"]\"]";
+        assertEquals(array.length(), JsonScanner.skipValue(array + "}", 0));
+    }
+
+    @Test
+    void skipValueHandlesScalars() {
+        assertEquals(3, JsonScanner.skipValue("-12,", 0));
+        assertEquals(6, JsonScanner.skipValue("1.5e10}", 0));
+        assertEquals(4, JsonScanner.skipValue("true]", 0));
+        assertEquals(5, JsonScanner.skipValue("false ", 0));
+        assertEquals(4, JsonScanner.skipValue("null", 0));
+        assertEquals(4, JsonScanner.skipValue("\"\\\"\",", 0));
+    }
+
+    @Test
+    void skipValueReturnsMinusOneWhenTruncated() {
+        assertEquals(-1, JsonScanner.skipValue("{\"a\":[1,2", 0));
+        assertEquals(-1, JsonScanner.skipValue("[\"abc", 0));
+        assertEquals(-1, JsonScanner.skipValue("\"abc", 0));
+    }
+
+    @Test
+    void skipWhitespaceStopsAtFirstToken() {
+        assertEquals(4, JsonScanner.skipWhitespace(" \t\r\n{", 0));
+        assertEquals(3, JsonScanner.skipWhitespace("   ", 0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * 改造前的加解密实现（每次调用 Cipher.getInstance、ByteBuffer 拆分 IV、fastjson 解析信封），
+ * 作为线上已部署节点的格式基准，供兼容性测试和基准测试对照
+ */
+final class LegacyAESCrypto {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 16;
+
+    private final SecretKeySpec secretKey;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    LegacyAESCrypto(String secret) throws Exception {
+        byte[] keyBytes = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+        this.secretKey = new SecretKeySpec(keyBytes, "AES");
+    }
+
+    String encrypt(String data) throws Exception {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        byte[] ciphertext = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(iv.length + ciphertext.length);
+        buffer.put(iv);
+        buffer.put(ciphertext);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    String decryptString(String encryptedData) throws Exception {
+        byte[] encrypted = Base64.getDecoder().decode(encryptedData);
+        ByteBuffer buffer = ByteBuffer.wrap(encrypted);
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        buffer.get(iv);
+        byte[] ciphertext = new byte[buffer.remaining()];
+        buffer.get(ciphertext);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+    }
+
+    String wrap(String encryptedData) {
+        JSONObject envelope = new JSONObject();
+        envelope.put("encrypted", true);
+        envelope.put("data", encryptedData);
+        envelope.put("timestamp", System.currentTimeMillis());
+        return envelope.toJSONString();
+    }
+
+    /**
+     * @return 加密信封的 data 字段，非加密消息返回null
+     */
+    static String extractData(String payload) {
+        JSONObject envelope = JSON.parseObject(payload);
+        if (!envelope.getBooleanValue("encrypted")) {
+            return null;
+        }
+        return envelope.getString("data");
+    }
+}
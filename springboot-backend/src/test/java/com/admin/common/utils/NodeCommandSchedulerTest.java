@@ -0,0 +1,79 @@
+package com.admin.common.utils;
+
+import com.admin.common.dto.GostDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NodeCommandSchedulerTest {
+
+    private static final AtomicLong NODE_IDS = new AtomicLong(1_000_000);
+
+    @AfterEach
+    void restore() {
+        NodeCommandScheduler.setMaxInFlight(4);
+        NodeCommandScheduler.setCommandTimeoutMs(10000);
+        NodeCommandScheduler.setBulkQueueTimeoutMs(300000);
+    }
+
+    @Test
+    void bulkCommandsQueuedLongerThanResponseTimeoutStillComplete() {
+        // 每条命令 50ms 响应，一次只发一条：20 条排队总耗时约 1s，远超 200ms 的响应超时
+        NodeCommandScheduler.setMaxInFlight(1);
+        NodeCommandScheduler.setCommandTimeoutMs(200);
+        List<CompletableFuture<GostDto>> results = submitAll(NodeCommandScheduler.Priority.BULK, 20, 50);
+        for (CompletableFuture<GostDto> result : results) {
+            assertEquals("OK", result.join().getMsg());
+        }
+    }
+
+    @Test
+    void bulkCommandsExpireAfterQueueTimeout() {
+        NodeCommandScheduler.setMaxInFlight(1);
+        NodeCommandScheduler.setBulkQueueTimeoutMs(200);
+        List<CompletableFuture<GostDto>> results = submitAll(NodeCommandScheduler.Priority.BULK, 20, 50);
+        assertEquals("OK", results.get(0).join().getMsg());
+        assertEquals("排队等待超时", results.get(results.size() - 1).join().getMsg());
+    }
+
+    @Test
+    void interactiveCommandsAreTimedFromSubmit() {
+        NodeCommandScheduler.setMaxInFlight(1);
+        NodeCommandScheduler.setCommandTimeoutMs(200);
+        List<CompletableFuture<GostDto>> results = submitAll(NodeCommandScheduler.Priority.INTERACTIVE, 20, 50);
+        assertEquals("OK", results.get(0).join().getMsg());
+        assertEquals("等待响应超时", results.get(results.size() - 1).join().getMsg());
+    }
+
+    @Test
+    void bulkCommandTimesOutAfterSend() {
+        NodeCommandScheduler.setCommandTimeoutMs(100);
+        // 节点不响应
+        CompletableFuture<GostDto> result = NodeCommandScheduler.submit(NODE_IDS.incrementAndGet(),
+                NodeCommandScheduler.Priority.BULK, null, CompletableFuture::new);
+        assertEquals("等待响应超时", result.join().getMsg());
+    }
+
+    private static List<CompletableFuture<GostDto>> submitAll(NodeCommandScheduler.Priority priority, int count, long responseMs) {
+        Long nodeId = NODE_IDS.incrementAndGet();
+        List<CompletableFuture<GostDto>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(NodeCommandScheduler.submit(nodeId, priority, null, () -> respondAfter(responseMs)));
+        }
+        return results;
+    }
+
+    private static CompletableFuture<GostDto> respondAfter(long millis) {
+        GostDto ok = new GostDto();
+        ok.setMsg("OK");
+        return CompletableFuture.supplyAsync(() -> ok,
+                CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+    }
+}
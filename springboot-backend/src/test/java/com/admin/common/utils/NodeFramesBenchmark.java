@@ -0,0 +1,72 @@
+package com.admin.common.utils;
+
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点消息分类基准：NodeFrames.kind 与原来的子串匹配、整帧解析对比。
+ * <p>
+ * 运行：mvn test-compile 后执行 main 方法（已附带 -prof gc，查看 gc.alloc.rate.norm 确认心跳路径不分配内存）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeFramesBenchmark {
+
+    private final String heartbeat = "{\"cpu_usage\":12.5,\"uptime\":864000,\"bytes_received\":123456789,"
+            + "\"bytes_transmitted\":987654321,\"memory_usage\":43.2,\"version\":\"2.0.5\"}";
+
+    private final String response = "{\"type\":\"AddServiceResponse\",\"success\":true,\"message\":\"OK\","
+            + "\"data\":{\"services\":[\"1_1_0_tcp\",\"1_1_0_udp\"]},\"requestId\":\"0f6c2a1e-8b4d-4e0a-9c3f-1d2e3f4a5b6c\"}";
+
+    @Benchmark
+    public NodeFrames.Kind heartbeatKind() {
+        return NodeFrames.kind(heartbeat);
+    }
+
+    @Benchmark
+    public boolean heartbeatContains() {
+        return heartbeat.contains("memory_usage");
+    }
+
+    @Benchmark
+    public JSONObject heartbeatParse() {
+        return JSONObject.parseObject(heartbeat);
+    }
+
+    @Benchmark
+    public String responseRead() {
+        NodeFrames.Response frame = NodeFrames.readResponse(response);
+        return frame.getMessage();
+    }
+
+    @Benchmark
+    public String responseParse() {
+        return JSONObject.parseObject(response).getString("message");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(NodeFramesBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
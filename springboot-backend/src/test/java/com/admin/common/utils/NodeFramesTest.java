@@ -0,0 +1,68 @@
+package com.admin.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NodeFramesTest {
+
+    @Test
+    void kindRecognisesHeartbeatAndResponse() {
+        assertEquals(NodeFrames.Kind.HEARTBEAT, NodeFrames.kind("{\"cpu_usage\":1.5,\"memory_usage\":20}"));
+        assertEquals(NodeFrames.Kind.COMMAND_RESPONSE, NodeFrames.kind("{\"type\":\"AddServiceResponse\",\"requestId\":\"r1\"}"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"type\":\"event\"}"));
+    }
+
+    @Test
+    void kindSkipsNestedValuesBeforeTopLevelKey() {
+        String payload = "{\"data\":{\"list\":[{\"a\":[1,2]},{}],\"s\":\"}\"},\"arr\":[[],[\"]\"]],\"requestId\":\"r1\"}";
+        assertEquals(NodeFrames.Kind.COMMAND_RESPONSE, NodeFrames.kind(payload));
+    }
+
+    @Test
+    void kindIgnoresKeyNamesInsideNestedValues() {
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"data\":{\"memory_usage\":1},\"type\":\"x\"}"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"data\":[\"requestId\"],\"message\":\"memory_usage\"}"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"message\":\"\\\"requestId\\\":1\"}"));
+    }
+
+    @Test
+    void kindHandlesScalarValues() {
+        String payload = "{ \"a\" : -1.5e3 , \"b\":true,\"c\":false,\"d\":null,\"memory_usage\":0}";
+        assertEquals(NodeFrames.Kind.HEARTBEAT, NodeFrames.kind(payload));
+    }
+
+    @Test
+    void kindTreatsMalformedOrTruncatedInputAsEvent() {
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind(null));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind(""));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("[]"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"data\":{\"a\":1"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"type\":\"abc"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"memory_usa"));
+        assertEquals(NodeFrames.Kind.EVENT, NodeFrames.kind("{\"type\""));
+    }
+
+    @Test
+    void readResponseDecodesEscapedStrings() {
+        String payload = "{\"data\":{\"x\":[1,{\"requestId\":\"inner\"}]},\"message\":\"service \\\"a\\\\b\\\" failed\","
+                + "\"type\":\"PingResponse\",\"success\":false,\"requestId\":\"r-1\"}";
+        NodeFrames.Response response = NodeFrames.readResponse(payload);
+        assertNotNull(response);
+        assertEquals("r-1", response.getRequestId());
+        assertEquals("PingResponse", response.getType());
+        assertEquals("service \"a\\b\" failed", response.getMessage());
+        assertEquals(1, response.getData().getJSONArray("x").getIntValue(0));
+    }
+
+    @Test
+    void readResponseRejectsTruncatedOrMissingRequestId() {
+        assertNull(NodeFrames.readResponse("{\"requestId\":\"r1\",\"message\":\"O"));
+        assertNull(NodeFrames.readResponse("{\"requestId\":\"r1\""));
+        assertNull(NodeFrames.readResponse("{\"type\":\"x\"}"));
+        assertNull(NodeFrames.readResponse("{\"requestId\":1}"));
+    }
+}
@@ -65,6 +65,9 @@ function isTokenExpired(response: ApiResponse) {
           response.msg === '无法获取用户权限信息');
 }
 
+// 按接口和登录令牌缓存最近一次成功响应及其 ETag
+const etagCache = new Map<string, { etag: string; response: ApiResponse }>();
+
 const Network = {
   get: function<T = any>(path: string = '', data: any = {}): Promise<ApiResponse<T>> {
     return new Promise(function(resolve) {
@@ -138,6 +141,62 @@ const Network = {
            resolve({"code": -1, "msg": error.message || "网络请求失败", "data": null as T});
          });
     });
+  },
+
+  // 带 ETag 的 POST：携带上次响应的 ETag，服务端返回 304 时直接使用上次的数据
+  postCached: function<T = any>(path: string = '', data: any = {}): Promise<ApiResponse<T>> {
+    return new Promise(function(resolve) {
+      if (baseURL === '') {
+        resolve({"code": -1, "msg": " - 请先设置面板地址", "data": null as T});
+        return;
+      }
+
+      const token = window.localStorage.getItem('token');
+      const cacheKey = `${baseURL}${path}|${token}`;
+      const cached = etagCache.get(cacheKey);
+      const headers: Record<string, any> = {
+        "Authorization": token,
+        "Content-Type": "application/json"
+      };
+      if (cached) {
+        headers["If-None-Match"] = cached.etag;
+      }
+
+      axios.post(path, data, {
+        timeout: 30000,
+        headers,
+        validateStatus: (status: number) => (status >= 200 && status < 300) || status === 304
+      })
+        .then(function(response: AxiosResponse<ApiResponse<T>>) {
+          if (response.status === 304 && cached) {
+            resolve(cached.response as ApiResponse<T>);
+            return;
+          }
+          // 检查是否token失效
+          if (isTokenExpired(response.data)) {
+            handleTokenExpired();
+            return;
+          }
+          const etag = response.headers['etag'];
+          if (etag && response.data && response.data.code === 0) {
+            etagCache.set(cacheKey, { etag, response: response.data });
+          } else {
+            etagCache.delete(cacheKey);
+          }
+          resolve(response.data);
+        })
+        .catch(function(error: any) {
+          console.error('POST请求错误:', error);
+
+          // 检查是否是401错误（token失效）
+          if (error.response && error.response.status === 401) {
+            handleTokenExpired();
+            return;
+          }
+
+          resolve({"code": -1, "msg": error.message || "网络请求失败", "data": null as T});
+        });
+    });
   }
 };
 
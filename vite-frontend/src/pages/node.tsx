@@ -150,6 +150,7 @@ export default function NodePage() {
   const reconnectTimerRef = useRef<NodeJS.Timeout | null>(null);
   const reconnectAttemptsRef = useRef(0);
   const maxReconnectAttempts = 5;
+  const nodeIdsRef = useRef<number[]>([]);
 
   useEffect(() => {
     const adminFlag = localStorage.getItem('admin') === 'true';
@@ -167,6 +168,13 @@ export default function NodePage() {
     };
   }, []);
 
+  // 节点列表变化时更新订阅
+  const nodeIdsKey = nodeList.map((node) => node.id).join(',');
+  useEffect(() => {
+    nodeIdsRef.current = nodeList.map((node) => node.id);
+    sendSubscription();
+  }, [nodeIdsKey]);
+
   useEffect(() => {
     const handleConfigUpdated = (event: Event) => {
       if (isAdmin) {
@@ -283,6 +291,7 @@ export default function NodePage() {
       
       websocketRef.current.onopen = () => {
         reconnectAttemptsRef.current = 0;
+        sendSubscription();
       };
       
       websocketRef.current.onmessage = (event) => {
@@ -307,11 +316,86 @@ export default function NodePage() {
     }
   };
 
+  // 只订阅当前列表中的节点，服务端按固定周期推送合并后的监控数据
+  const sendSubscription = () => {
+    const ws = websocketRef.current;
+    if (!ws || ws.readyState !== WebSocket.OPEN) {
+      return;
+    }
+    ws.send(JSON.stringify({ type: 'subscribe', nodeIds: nodeIdsRef.current }));
+  };
+
+  // 根据一条监控数据计算速度并更新节点
+  const applySystemInfo = (node: Node, messageData: any): Node => {
+    try {
+      let systemInfo;
+      if (typeof messageData === 'string') {
+        systemInfo = JSON.parse(messageData);
+      } else {
+        systemInfo = messageData;
+      }
+
+      const currentUpload = parseInt(systemInfo.bytes_transmitted) || 0;
+      const currentDownload = parseInt(systemInfo.bytes_received) || 0;
+      const currentUptime = parseInt(systemInfo.uptime) || 0;
+
+      let uploadSpeed = 0;
+      let downloadSpeed = 0;
+
+      if (node.systemInfo && node.systemInfo.uptime) {
+        const timeDiff = currentUptime - node.systemInfo.uptime;
+
+        if (timeDiff > 0 && timeDiff <= 10) {
+          const lastUpload = node.systemInfo.uploadTraffic || 0;
+          const lastDownload = node.systemInfo.downloadTraffic || 0;
+
+          const uploadDiff = currentUpload - lastUpload;
+          const downloadDiff = currentDownload - lastDownload;
+
+          const uploadReset = currentUpload < lastUpload;
+          const downloadReset = currentDownload < lastDownload;
+
+          if (!uploadReset && uploadDiff >= 0) {
+            uploadSpeed = uploadDiff / timeDiff;
+          }
+
+          if (!downloadReset && downloadDiff >= 0) {
+            downloadSpeed = downloadDiff / timeDiff;
+          }
+        }
+      }
+
+      return {
+        ...node,
+        connectionStatus: 'online',
+        systemInfo: {
+          cpuUsage: parseFloat(systemInfo.cpu_usage) || 0,
+          memoryUsage: parseFloat(systemInfo.memory_usage) || 0,
+          uploadTraffic: currentUpload,
+          downloadTraffic: currentDownload,
+          uploadSpeed: uploadSpeed,
+          downloadSpeed: downloadSpeed,
+          uptime: currentUptime
+        }
+      };
+    } catch (error) {
+      return node;
+    }
+  };
+
   // 处理WebSocket消息
   const handleWebSocketMessage = (data: any) => {
     const { id, type, data: messageData } = data;
     
-    if (type === 'status') {
+    if (type === 'infos') {
+      if (!messageData) {
+        return;
+      }
+      setNodeList(prev => prev.map(node => {
+        const info = messageData[String(node.id)];
+        return info ? applySystemInfo(node, info) : node;
+      }));
+    } else if (type === 'status') {
       setNodeList(prev => prev.map(node => {
         if (node.id == id) {
           return {
@@ -323,65 +407,7 @@ export default function NodePage() {
         return node;
       }));
     } else if (type === 'info') {
-      setNodeList(prev => prev.map(node => {
-        if (node.id == id) {
-          try {
-            let systemInfo;
-            if (typeof messageData === 'string') {
-              systemInfo = JSON.parse(messageData);
-            } else {
-              systemInfo = messageData;
-            }
-            
-            const currentUpload = parseInt(systemInfo.bytes_transmitted) || 0;
-            const currentDownload = parseInt(systemInfo.bytes_received) || 0;
-            const currentUptime = parseInt(systemInfo.uptime) || 0;
-            
-            let uploadSpeed = 0;
-            let downloadSpeed = 0;
-            
-            if (node.systemInfo && node.systemInfo.uptime) {
-              const timeDiff = currentUptime - node.systemInfo.uptime;
-              
-              if (timeDiff > 0 && timeDiff <= 10) {
-                const lastUpload = node.systemInfo.uploadTraffic || 0;
-                const lastDownload = node.systemInfo.downloadTraffic || 0;
-                
-                const uploadDiff = currentUpload - lastUpload;
-                const downloadDiff = currentDownload - lastDownload;
-                
-                const uploadReset = currentUpload < lastUpload;
-                const downloadReset = currentDownload < lastDownload;
-                
-                if (!uploadReset && uploadDiff >= 0) {
-                  uploadSpeed = uploadDiff / timeDiff;
-                }
-                
-                if (!downloadReset && downloadDiff >= 0) {
-                  downloadSpeed = downloadDiff / timeDiff;
-                }
-              }
-            }
-            
-            return {
-              ...node,
-              connectionStatus: 'online',
-              systemInfo: {
-                cpuUsage: parseFloat(systemInfo.cpu_usage) || 0,
-                memoryUsage: parseFloat(systemInfo.memory_usage) || 0,
-                uploadTraffic: currentUpload,
-                downloadTraffic: currentDownload,
-                uploadSpeed: uploadSpeed,
-                downloadSpeed: downloadSpeed,
-                uptime: currentUptime
-              }
-            };
-          } catch (error) {
-            return node;
-          }
-        }
-        return node;
-      }));
+      setNodeList(prev => prev.map(node => node.id == id ? applySystemInfo(node, messageData) : node));
     }
   };
 